@@ -32,6 +32,14 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        unitTests.all {
+            // The JVM benchmarks are opt-in, they run once DataLayerBenchmark's sizes are given,
+            // e.g. ./gradlew testDebugUnitTest -Pbenchmark.sizes=1000,100000,1000000
+            it.systemProperty("benchmark.sizes", project.findProperty("benchmark.sizes") ?: "")
+            it.systemProperty("benchmark.dir", layout.buildDirectory.dir("benchmarks").get().asFile.path)
+        }
+    }
 }
 
 dependencies {
@@ -39,12 +47,14 @@ dependencies {
     implementation("androidx.appcompat:appcompat:1.6.1")
     implementation("com.google.android.material:material:1.11.0")
     implementation("androidx.constraintlayout:constraintlayout:2.1.4")
+    implementation("androidx.recyclerview:recyclerview:1.3.2")
     implementation("androidx.annotation:annotation:1.7.0")
     implementation("androidx.lifecycle:lifecycle-livedata-ktx:2.7.0")
     implementation("androidx.lifecycle:lifecycle-viewmodel-ktx:2.7.0")
     implementation("androidx.navigation:navigation-fragment:2.7.5")
     implementation("androidx.navigation:navigation-ui:2.7.5")
     testImplementation("junit:junit:4.13.2")
+    testImplementation("org.xerial:sqlite-jdbc:3.45.1.0")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.example.project;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * A 1,000-item batch edit through the repository against a single edit, both with undo. The
+ * batch is one transaction, so it pays for one commit like the single edit does.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatchEditBenchmark {
+    private static final String TAG = "BatchEditBenchmark";
+    private static final String DB_NAME = "batch-edit-benchmark.db";
+    private static final int ITEMS = 10_000;
+    private static final int BATCH = 1000;
+    private static final int ROUNDS = 5;
+    // A batch may cost this many single edits at most
+    private static final int MAX_BATCH_TO_SINGLE_RATIO = 5;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+    private InventoryRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            rows.add(new InventoryItem(0, "item" + i, 100));
+        }
+        helper.upsertItems(rows.iterator(), null);
+        repository = new InventoryRepository(new InventoryCache(helper, InventoryCache.DEFAULT_CAPACITY),
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+        // Loads the cache, so neither side pays for it
+        repository.getItemsPage(0, 1, null).get();
+    }
+
+    @After
+    public void tearDown() {
+        repository.shutdown();
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void batchEdit_costsAboutAsMuchAsASingleEdit() throws Exception {
+        long[] single = {1};
+        long[] batch = new long[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            batch[i] = 1 + i * (ITEMS / BATCH);
+        }
+
+        long singleNanos = Long.MAX_VALUE;
+        long batchNanos = Long.MAX_VALUE;
+        long undoNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            assertTrue(repository.adjustItemQuantities(single, 1, null).get());
+            singleNanos = Math.min(singleNanos, System.nanoTime() - start);
+            repository.undo(null).get();
+
+            start = System.nanoTime();
+            assertTrue(repository.adjustItemQuantities(batch, 1, null).get());
+            batchNanos = Math.min(batchNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            assertTrue(repository.undo(null).get());
+            undoNanos = Math.min(undoNanos, System.nanoTime() - start);
+        }
+        assertEquals(100, helper.getItem(batch[BATCH - 1]).getQuantity());
+
+        // Delete and restore a batch, the heaviest edit and its undo
+        long start = System.nanoTime();
+        assertTrue(repository.deleteItems(batch, null).get());
+        long deleteNanos = System.nanoTime() - start;
+        assertNull(helper.getItem(batch[0]));
+        start = System.nanoTime();
+        assertTrue(repository.undo(null).get());
+        long restoreNanos = System.nanoTime() - start;
+        assertEquals(ITEMS, countItems());
+
+        Log.i(TAG, String.format("single edit %.2f ms, %d-item batch %.2f ms (undo %.2f ms), " +
+                        "delete %.2f ms, restore %.2f ms", singleNanos / 1e6, BATCH, batchNanos / 1e6,
+                undoNanos / 1e6, deleteNanos / 1e6, restoreNanos / 1e6));
+        assertTrue(batchNanos < singleNanos * MAX_BATCH_TO_SINGLE_RATIO);
+    }
+
+    private int countItems() {
+        int count = 0;
+        long afterId = 0;
+        List<InventoryItem> page;
+        do {
+            page = helper.getItemsPage(afterId, InventoryStore.BATCH_SIZE);
+            count += page.size();
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == InventoryStore.BATCH_SIZE);
+        return count;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.project;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares per-operation write latency of the long-lived connection against the
+ * open-per-call pattern the helper used to follow.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseConnectionBenchmark {
+    private static final String TAG = "DatabaseConnectionBenchmark";
+    private static final String DB_NAME = "connection-benchmark.db";
+    private static final int OPERATIONS = 10_000;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void persistentConnection_isFasterThanOpenPerCall() {
+        long openPerCallNanos = runOpenPerCall();
+        context.deleteDatabase(DB_NAME);
+        long persistentNanos = runPersistent();
+
+        Log.i(TAG, String.format("open-per-call: %.1f us/op, persistent: %.1f us/op",
+                openPerCallNanos / 1000.0 / OPERATIONS, persistentNanos / 1000.0 / OPERATIONS));
+        assertTrue(persistentNanos < openPerCallNanos);
+    }
+
+    // Insert, update and delete through the helper's cached statements on one open connection
+    private long runPersistent() {
+        InventoryDatabaseHelper helper = new InventoryDatabaseHelper(context, DB_NAME);
+        helper.getWritableDatabase();
+        long id = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            switch (i % 3) {
+                case 0:
+                    id = helper.insertItem("item" + i, i);
+                    break;
+                case 1:
+                    helper.updateItemQuantity(id, i);
+                    break;
+                default:
+                    helper.deleteItem(id);
+                    break;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        helper.close();
+        return elapsed;
+    }
+
+    // The same mix, reopening the database for every operation and closing it afterwards
+    private long runOpenPerCall() {
+        InventoryDatabaseHelper helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long id = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            switch (i % 3) {
+                case 0:
+                    values.put("item", "item" + i);
+                    values.put("item_key", "item" + i);
+                    values.put("qty", i);
+                    id = db.insert("inventory", null, values);
+                    break;
+                case 1:
+                    values.put("qty", i);
+                    db.update("inventory", values, "_id=?", new String[]{String.valueOf(id)});
+                    break;
+                default:
+                    db.delete("inventory", "_id=?", new String[]{String.valueOf(id)});
+                    break;
+            }
+            db.close();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.project;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMaintenanceTest {
+    private static final String DB_NAME = "maintenance-test.db";
+    private static final int ITEMS = 20_000;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+    private InventoryRepository repository;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        // Laid out like a database created before version 9, without incremental auto-vacuum
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.execSQL("PRAGMA auto_vacuum=NONE");
+        db.execSQL("VACUUM");
+        repository = new InventoryRepository(new InventoryCache(helper, InventoryCache.DEFAULT_CAPACITY),
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+        // Fills a few thousand pages and then frees most of them
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            rows.add(new InventoryItem(0, "maintenance test item " + i, i % 50));
+        }
+        helper.upsertItems(rows.iterator(), null);
+        long[] ids = new long[ITEMS - 100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        helper.deleteItems(ids);
+    }
+
+    @After
+    public void tearDown() {
+        repository.shutdown();
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void run_shrinksTheFileAndRecordsTheRun() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertTrue(pragmaLong(db, "PRAGMA freelist_count") > 0);
+
+        DatabaseMaintenance.Report report = new DatabaseMaintenance(helper, repository)
+                .run(DatabaseMaintenance.DEFAULT_BUDGET_MILLIS);
+
+        assertTrue(report.isCompleted());
+        assertEquals(Boolean.TRUE, report.getIntegrityOk());
+        assertTrue(report.getPagesFreed() > 0);
+        assertTrue(report.getSizeAfter() < report.getSizeBefore());
+        assertEquals(0, pragmaLong(db, "PRAGMA freelist_count"));
+        assertEquals(2, pragmaLong(db, "PRAGMA auto_vacuum"));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "sqlite_master", "name = 'sqlite_stat1'"));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, InventoryDatabaseHelper.MaintenanceLogTable.TABLE));
+        assertEquals(100, helper.getItemsPage(0, ITEMS).size());
+    }
+
+    @Test
+    public void secondRun_freesPagesInChunksWithoutRebuilding() {
+        new DatabaseMaintenance(helper, repository).run(DatabaseMaintenance.DEFAULT_BUDGET_MILLIS);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            rows.add(new InventoryItem(0, "second run item " + i, 1));
+        }
+        helper.upsertItems(rows.iterator(), null);
+        long[] ids = new long[ITEMS];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ITEMS + 1 + i;
+        }
+        helper.deleteItems(ids);
+        long free = pragmaLong(db, "PRAGMA freelist_count");
+        assertTrue(free > DatabaseMaintenance.VACUUM_CHUNK_PAGES);
+
+        DatabaseMaintenance.Report report = new DatabaseMaintenance(helper, repository)
+                .run(DatabaseMaintenance.DEFAULT_BUDGET_MILLIS);
+
+        assertTrue(report.isCompleted());
+        // More than one chunk
+        assertTrue(report.getPagesFreed() > DatabaseMaintenance.VACUUM_CHUNK_PAGES);
+        assertEquals(0, pragmaLong(db, "PRAGMA freelist_count"));
+        assertEquals(2, DatabaseUtils.queryNumEntries(db, InventoryDatabaseHelper.MaintenanceLogTable.TABLE));
+    }
+
+    @Test
+    public void stoppedRun_skipsTheStepsButStillReports() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        long free = pragmaLong(db, "PRAGMA freelist_count");
+        DatabaseMaintenance maintenance = new DatabaseMaintenance(helper, repository);
+        maintenance.stop();
+
+        DatabaseMaintenance.Report report = maintenance.run(DatabaseMaintenance.DEFAULT_BUDGET_MILLIS);
+
+        assertFalse(report.isCompleted());
+        assertNull(report.getIntegrityOk());
+        assertEquals(0, report.getPagesFreed());
+        assertEquals(free, pragmaLong(db, "PRAGMA freelist_count"));
+        assertEquals(0, pragmaLong(db, "PRAGMA auto_vacuum"));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, InventoryDatabaseHelper.MaintenanceLogTable.TABLE));
+    }
+
+    private static long pragmaLong(SQLiteDatabase db, String sql) {
+        return DatabaseUtils.longForQuery(db, sql, null);
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.project;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class InventoryBackupTest {
+    private static final String DB_NAME = "backup-test.db";
+    private static final String OTHER_DB_NAME = "backup-test-other.db";
+    private static final int ITEMS = 5_000;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+    private InventoryBackup backup;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        context.deleteDatabase(DB_NAME + "-restore");
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        backup = new InventoryBackup(helper, context.getCacheDir());
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            rows.add(new InventoryItem(0, "backup test item " + i, i % 100));
+        }
+        helper.upsertItems(rows.iterator(), null);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+        context.deleteDatabase(DB_NAME + "-restore");
+    }
+
+    @Test
+    public void backupWhileWriting_isConsistentAndRestores() throws Exception {
+        // Without VACUUM INTO the repository keeps writes off the writer thread instead
+        assumeTrue(backup.supportsOnlineSnapshot());
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; writing.get(); i++) {
+                    helper.insertItem("written during backup " + i, 1);
+                }
+            }
+        });
+        writer.start();
+        byte[] bytes;
+        InventoryBackup.Result result;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            result = backup.write(snapshot(), out, null);
+            bytes = out.toByteArray();
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+
+        assertEquals(InventoryDatabaseHelper.DATABASE_VERSION, result.getSchemaVersion());
+        assertEquals(result.getChecksum(), backup.verify(new ByteArrayInputStream(bytes)).getChecksum());
+        long itemsAfterBackup = DatabaseUtils.queryNumEntries(helper.getReadableDatabase(),
+                InventoryDatabaseHelper.InventoryTable.TABLE);
+
+        backup.stageRestore(new ByteArrayInputStream(bytes));
+        helper.close();
+        File database = context.getDatabasePath(DB_NAME);
+        assertTrue(InventoryBackup.applyPendingRestore(database));
+        assertFalse(InventoryBackup.applyPendingRestore(database));
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+
+        // The snapshot holds the seeded rows and some of the ones written meanwhile, never a partial row
+        long restored = DatabaseUtils.queryNumEntries(helper.getReadableDatabase(),
+                InventoryDatabaseHelper.InventoryTable.TABLE);
+        assertTrue(restored >= ITEMS);
+        assertTrue(restored <= itemsAfterBackup);
+        assertEquals("ok", DatabaseUtils.stringForQuery(helper.getReadableDatabase(), "PRAGMA quick_check", null));
+        assertNotNull(helper.findItemByName("backup test item " + (ITEMS - 1)));
+    }
+
+    @Test
+    public void restoreAfterSync_pushesTheWritesThatFollow() throws Exception {
+        LocalSyncServer server = new LocalSyncServer();
+        InventoryDatabaseHelper other = new InventoryDatabaseHelper(context, OTHER_DB_NAME);
+        try {
+            long soda = helper.insertItem("Soda", 10);
+            new SyncEngine(helper, server).sync();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            backup.write(snapshot(), out, null);
+            helper.updateItemQuantity(soda, 7);
+            new SyncEngine(helper, server).sync();
+
+            backup.stageRestore(new ByteArrayInputStream(out.toByteArray()));
+            helper.close();
+            assertTrue(InventoryBackup.applyPendingRestore(context.getDatabasePath(DB_NAME)));
+            helper = new InventoryDatabaseHelper(context, DB_NAME);
+            backup = new InventoryBackup(helper, context.getCacheDir());
+            helper.resetSyncAfterRestore();
+            assertEquals(10, helper.getItem(soda).getQuantity());
+            // Its movement id is the one the rolled back change had
+            helper.updateItemQuantity(soda, 12);
+            SyncEngine.Result result = new SyncEngine(helper, server).sync();
+            new SyncEngine(other, server).sync();
+
+            assertEquals(1, result.getPushed());
+            // Both hold the insert, the change synced before the restore and the one after it
+            assertEquals(9, helper.getItem(soda).getQuantity());
+            assertEquals(9, other.findItemByName("soda").getQuantity());
+        } finally {
+            other.close();
+            context.deleteDatabase(OTHER_DB_NAME);
+        }
+    }
+
+    @Test
+    public void damagedBackup_isRejectedAndNothingIsStaged() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        backup.write(snapshot(), out, null);
+        byte[] bytes = out.toByteArray();
+        bytes[bytes.length / 2] ^= 0x01;
+
+        try {
+            backup.verify(new ByteArrayInputStream(bytes));
+            fail("Damaged backup verified");
+        } catch (IOException expected) {
+        }
+        try {
+            backup.stageRestore(new ByteArrayInputStream(bytes));
+            fail("Damaged backup staged");
+        } catch (IOException expected) {
+        }
+        assertFalse(InventoryBackup.applyPendingRestore(context.getDatabasePath(DB_NAME)));
+    }
+
+    @Test
+    public void backupFromANewerSchema_isRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(new GZIPOutputStream(bytes));
+        data.writeInt(InventoryBackup.MAGIC);
+        data.writeInt(InventoryBackup.FORMAT_VERSION);
+        data.writeInt(InventoryDatabaseHelper.DATABASE_VERSION + 1);
+        data.writeLong(0);
+        data.close();
+
+        try {
+            backup.stageRestore(new ByteArrayInputStream(bytes.toByteArray()));
+            fail("Newer schema staged");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(String.valueOf(InventoryDatabaseHelper.DATABASE_VERSION + 1)));
+        }
+        assertFalse(InventoryBackup.applyPendingRestore(context.getDatabasePath(DB_NAME)));
+    }
+
+    @Test
+    public void notABackup_isRejected() {
+        try {
+            backup.verify(new ByteArrayInputStream("item,qty\nSoda,3\n".getBytes()));
+            fail("CSV verified as a backup");
+        } catch (IOException expected) {
+        }
+    }
+
+    private File snapshot() throws IOException {
+        return backup.supportsOnlineSnapshot() ? backup.snapshotOnline() : backup.snapshotCheckpointed();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.project;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares a full refresh of the panel list, page by page, read through SQLite cursors against
+ * the same refresh answered by InventoryCache. Warm-up rounds run first, then the measured
+ * rounds are averaged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryCacheBenchmark {
+    private static final String TAG = "InventoryCacheBenchmark";
+    private static final String DB_NAME = "cache-benchmark.db";
+    private static final int ITEMS = 10_000;
+    private static final int PAGE_SIZE = 60;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            rows.add(new InventoryItem(0, "item" + i, i));
+        }
+        helper.upsertItems(rows.iterator(), null);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void refreshFromCache_isCheaperThanCursors() {
+        InventoryCache cache = new InventoryCache(helper, InventoryCache.DEFAULT_CAPACITY);
+        long cursorNanos = measure(helper);
+        long cacheNanos = measure(cache);
+
+        Log.i(TAG, String.format("cursor refresh: %.2f ms, cache refresh: %.2f ms",
+                cursorNanos / 1e6, cacheNanos / 1e6));
+        assertTrue(cacheNanos < cursorNanos);
+    }
+
+    @Test
+    public void lookupByName_fromCache_isCheaperThanIndexSeek() {
+        InventoryCache cache = new InventoryCache(helper, InventoryCache.DEFAULT_CAPACITY);
+        long seekNanos = measureLookups(helper);
+        long cacheNanos = measureLookups(cache);
+
+        Log.i(TAG, String.format("index seek: %.2f us/lookup, cache: %.2f us/lookup",
+                seekNanos / 1000.0 / ITEMS, cacheNanos / 1000.0 / ITEMS));
+        assertTrue(cacheNanos < seekNanos);
+    }
+
+    // Average time to page through every row the way InventoryPager does
+    private static long measure(InventoryStore store) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            refresh(store);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(ITEMS, refresh(store));
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+
+    private static int refresh(InventoryStore store) {
+        int rows = 0;
+        long afterId = 0;
+        List<InventoryItem> page;
+        do {
+            page = store.getItemsPage(afterId, PAGE_SIZE);
+            for (InventoryItem item : page) {
+                afterId = item.getId();
+                rows++;
+            }
+        } while (page.size() == PAGE_SIZE);
+        return rows;
+    }
+
+    // Total time to look every item up by a differently cased name
+    private static long measureLookups(InventoryStore store) {
+        store.findItemByName("warmup");
+        long start = System.nanoTime();
+        for (int i = 0; i < ITEMS; i++) {
+            assertNotNull(store.findItemByName("ITEM" + i));
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,482 @@
+package com.example.project;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class InventoryDatabaseHelperTest {
+    private static final String DB_NAME = "helper-test.db";
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (helper != null) {
+            helper.close();
+        }
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsRowsAndMergesDuplicateNames() {
+        // Schema and data as written by version 1 of the app
+        SQLiteDatabase v1 = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(DB_NAME), null);
+        v1.execSQL("CREATE TABLE inventory (_id INTEGER PRIMARY KEY AUTOINCREMENT, item TEXT, qty INTEGER)");
+        v1.execSQL("CREATE TABLE users (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, email TEXT UNIQUE, password TEXT)");
+        v1.execSQL("INSERT INTO inventory (item, qty) VALUES ('Soda', 3), ('Chips', 5), (' soda ', 4)");
+        v1.execSQL("INSERT INTO users (name, email, password) VALUES ('Ana', 'ana@example.com', 'secret')");
+        v1.setVersion(1);
+        v1.close();
+
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        List<InventoryItem> items = helper.getItemsPage(0, 10);
+
+        assertEquals(2, items.size());
+        assertEquals("Soda", items.get(0).getName());
+        assertEquals(7, items.get(0).getQuantity());
+        assertEquals("Chips", items.get(1).getName());
+        assertEquals("secret", helper.getPasswordHash("ana@example.com"));
+        // Merged quantities moved to the default location
+        assertEquals(7, helper.getLocationItemsPage(Location.DEFAULT_ID, 0, 10).get(0).getQuantity());
+    }
+
+    @Test
+    public void itemKey_rejectsDuplicateNames() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long id = helper.insertItem("Soda", 1);
+        long chips = helper.insertItem("Chips", 1);
+
+        assertTrue(id > 0);
+        assertEquals(-1, helper.insertItem("SODA ", 2));
+        assertFalse(helper.updateItemName(chips, "soda"));
+        assertTrue(helper.updateItemName(id, "Cola"));
+    }
+
+    @Test
+    public void search_followsInsertsRenamesAndDeletes() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long chips = helper.insertItem("Salted Chips", 4);
+        long soda = helper.insertItem("Soda", 2);
+        helper.insertItem("Chocolate", 1);
+
+        assertEquals(2, helper.searchItems("ch", 0, 10).size());
+        assertEquals(chips, helper.searchItems("CHI sal", 0, 10).get(0).getId());
+
+        helper.updateItemName(soda, "Cherry Soda");
+        helper.updateItemQuantity(chips, 9);
+        helper.deleteItem(chips);
+
+        List<InventoryItem> results = helper.searchItems("ch", 0, 10);
+        assertEquals(2, results.size());
+        assertEquals(soda, results.get(0).getId());
+        assertTrue(helper.searchItems("salted", 0, 10).isEmpty());
+        assertTrue(helper.searchItems(" \"* ", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void upgradeFromVersion3_indexesExistingRows() {
+        SQLiteDatabase v3 = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(DB_NAME), null);
+        v3.execSQL("CREATE TABLE inventory (_id INTEGER PRIMARY KEY AUTOINCREMENT, item TEXT, qty INTEGER, " +
+                "item_key TEXT, reorder_threshold INTEGER NOT NULL DEFAULT 0)");
+        v3.execSQL("CREATE UNIQUE INDEX idx_inventory_item_key ON inventory (item_key)");
+        v3.execSQL("CREATE TABLE users (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, email TEXT UNIQUE, password TEXT)");
+        v3.execSQL("INSERT INTO inventory (item, item_key, qty) VALUES ('Green Tea', 'green tea', 3)");
+        v3.setVersion(3);
+        v3.close();
+
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+
+        assertEquals(1, helper.searchItems("tea", 0, 10).size());
+    }
+
+    @Test
+    public void ledger_recordsEveryQuantityChange() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long soda = helper.insertItem("Soda", 5);
+        helper.updateItemQuantity(soda, 3);
+        // Unchanged quantities and renames aren't movements
+        helper.updateItemQuantity(soda, 3);
+        helper.updateItemName(soda, "Cola");
+        helper.upsertItems(Collections.singletonList(new InventoryItem(0, "cola", 10)).iterator(), null);
+
+        List<StockMovement> movements = helper.getMovements(soda, 0, null, 10);
+        assertEquals(3, movements.size());
+        assertEquals(7, movements.get(0).getDelta());
+        assertEquals(10, movements.get(0).getQuantityAfter());
+        assertEquals(-2, movements.get(1).getDelta());
+        assertEquals(5, movements.get(2).getDelta());
+
+        helper.deleteItem(soda);
+        assertEquals(0, helper.getMovements(soda, 0, null, 1).get(0).getQuantityAfter());
+    }
+
+    @Test
+    public void ledger_pagesNewestFirstWithoutGapsOrRepeats() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long soda = helper.insertItem("Soda", 0);
+        for (int i = 1; i <= 25; i++) {
+            helper.updateItemQuantity(soda, i);
+        }
+
+        List<StockMovement> all = new ArrayList<>();
+        List<StockMovement> page = helper.getMovements(soda, 0, null, 10);
+        while (!page.isEmpty()) {
+            all.addAll(page);
+            page = helper.getMovements(soda, 0, page.get(page.size() - 1), 10);
+        }
+
+        assertEquals(26, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(25 - i, all.get(i).getQuantityAfter());
+        }
+    }
+
+    @Test
+    public void compaction_keepsLevelsReadable() throws Exception {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long soda = helper.insertItem("Soda", 5);
+        helper.updateItemQuantity(soda, 8);
+        Thread.sleep(5);
+        long cutoff = System.currentTimeMillis();
+        Thread.sleep(5);
+        helper.updateItemQuantity(soda, 2);
+
+        assertEquals(2, helper.compactMovements(cutoff));
+
+        assertEquals(1, helper.getMovements(soda, 0, null, 10).size());
+        assertEquals(8, helper.getQuantityAt(soda, cutoff));
+        assertEquals(2, helper.getQuantityAt(soda, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void ledgerCursor_findsTimeRangesAndSkipsDeletedItems() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long soda = helper.insertItem("Soda", 0);
+        long chips = helper.insertItem("Chips", 0);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.execSQL("DELETE FROM stock_movements");
+        // Movements at t = 10, 20, ... 1000 with gaps in the ids
+        for (int i = 1; i <= 100; i++) {
+            db.execSQL("INSERT INTO stock_movements (_id, item_id, delta, qty_after, created_at) VALUES (?, ?, -1, 0, ?)",
+                    new Object[]{i * 3, i % 2 == 0 ? soda : chips, i * 10});
+        }
+
+        assertEquals(3, helper.findFirstMovementId(0));
+        assertEquals(3, helper.findFirstMovementId(10));
+        assertEquals(153, helper.findFirstMovementId(501));
+        assertEquals(300, helper.findFirstMovementId(1000));
+        assertEquals(301, helper.findFirstMovementId(1001));
+
+        helper.deleteItem(chips);
+        List<StockMovement> movements = helper.getMovementsAfter(150, 10);
+        assertEquals(10, movements.size());
+        assertEquals(156, movements.get(0).getId());
+        assertEquals(soda, movements.get(9).getItemId());
+        assertEquals(210, movements.get(9).getId());
+    }
+
+    @Test
+    public void ledgerCursor_findsTimeRangesAfterTheClockWentBack() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long soda = helper.insertItem("Soda", 0);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.execSQL("DELETE FROM stock_movements");
+        // Ids 1 to 50 at t = 510, 520, ... 1000, then the clock is set back and 51 to 100 run from t = 10
+        for (int i = 1; i <= 100; i++) {
+            db.execSQL("INSERT INTO stock_movements (_id, item_id, delta, qty_after, created_at) VALUES (?, ?, -1, 0, ?)",
+                    new Object[]{i, soda, i <= 50 ? 500 + i * 10 : (i - 50) * 10});
+        }
+
+        assertEquals(1, helper.findFirstMovementId(0));
+        assertEquals(1, helper.findFirstMovementId(500));
+        assertEquals(25, helper.findFirstMovementId(750));
+        assertEquals(50, helper.findFirstMovementId(1000));
+        assertEquals(101, helper.findFirstMovementId(1001));
+    }
+
+    @Test
+    public void updateItemNames_canMoveNamesBetweenTheRenamedItems() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long a = helper.insertItem("A", 1);
+        long a2 = helper.insertItem("A 2", 1);
+        long b = helper.insertItem("B", 1);
+
+        assertTrue(helper.updateItemNames(new long[]{a, a2}, new String[]{"A 2", "A 2 2"}));
+        assertEquals(a, helper.findItemByName("a 2").getId());
+        assertEquals("A 2 2", helper.getItem(a2).getName());
+        // A name held outside the edit still fails it, and nothing is renamed
+        assertFalse(helper.updateItemNames(new long[]{a, a2}, new String[]{"C", "B"}));
+        assertEquals("A 2", helper.getItem(a).getName());
+        assertEquals(b, helper.findItemByName("B").getId());
+        // The search index follows the names, not the temporary keys
+        assertEquals(2, helper.searchItems("2", 0, 10).size());
+    }
+
+    @Test
+    public void locationStock_rollsUpIntoTotals() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long soda = helper.insertItem("Soda", 10);
+        long back = helper.insertLocation("Back room");
+        assertEquals(-1, helper.insertLocation("back room"));
+
+        helper.setStockQuantity(soda, back, 4);
+        assertEquals(14, helper.getItem(soda).getQuantity());
+        // Item-level edits set the total through the default location
+        helper.updateItemQuantity(soda, 20);
+        helper.setStockQuantity(soda, back, 1);
+
+        assertEquals(17, helper.getItem(soda).getQuantity());
+        assertEquals(16, helper.getLocationItemsPage(Location.DEFAULT_ID, 0, 10).get(0).getQuantity());
+        assertEquals(1, helper.getLocationItemsPage(back, 0, 10).get(0).getQuantity());
+        // Each rollup is one movement in the item's ledger
+        assertEquals(17, helper.getMovements(soda, 0, null, 1).get(0).getQuantityAfter());
+        assertEquals(4, helper.getMovements(soda, 0, null, 10).size());
+
+        // The default location stops at zero, the back room keeps its stock
+        helper.updateItemQuantity(soda, 0);
+        assertEquals(1, helper.getItem(soda).getQuantity());
+        helper.adjustItemQuantity(soda, -5);
+        assertEquals(1, helper.getItem(soda).getQuantity());
+        assertEquals(0, helper.getLocationItemsPage(Location.DEFAULT_ID, 0, 10).get(0).getQuantity());
+
+        helper.deleteItem(soda);
+        assertTrue(helper.getLocationItemsPage(back, 0, 10).isEmpty());
+        helper.setStockQuantity(soda, back, 3);
+        assertTrue(helper.getLocationItemsPage(back, 0, 10).isEmpty());
+    }
+
+    @Test
+    public void locationStock_usesIndexesNotGroupBy() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        assertPlanContains("SELECT i._id, s.qty FROM stock s JOIN inventory i ON i._id = s.item_id" +
+                        " WHERE s.location_id = ? AND s.item_id > ? ORDER BY s.item_id LIMIT ?",
+                InventoryDatabaseHelper.StockTable.INDEX_LOCATION_ITEM);
+        assertPlanContains("UPDATE stock SET qty = ? WHERE item_id = ? AND location_id = ?", "USING PRIMARY KEY");
+    }
+
+    @Test
+    public void ledgerReads_useItemTimeIndex() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        assertPlanContains("SELECT _id, delta FROM stock_movements WHERE item_id = ? AND created_at BETWEEN ? AND ?" +
+                        " ORDER BY created_at DESC, _id DESC LIMIT ?",
+                InventoryDatabaseHelper.StockMovementTable.INDEX_ITEM_TIME);
+        assertPlanContains("SELECT MIN(_id) FROM stock_movements INDEXED BY idx_stock_movements_time" +
+                        " WHERE created_at >= ?", "COVERING INDEX " + InventoryDatabaseHelper.StockMovementTable.INDEX_TIME);
+        assertPlanContains("DELETE FROM stock_movements WHERE created_at < ?",
+                InventoryDatabaseHelper.StockMovementTable.INDEX_TIME);
+    }
+
+    @Test
+    public void mutators_seekByPrimaryKey() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        assertPlanContains("UPDATE inventory SET qty=? WHERE _id=?", "USING INTEGER PRIMARY KEY");
+        assertPlanContains("DELETE FROM inventory WHERE _id=?", "USING INTEGER PRIMARY KEY");
+    }
+
+    @Test
+    public void itemKeyLookup_usesUniqueIndex() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        assertPlanContains("SELECT _id FROM inventory WHERE item_key=?", InventoryDatabaseHelper.InventoryTable.INDEX_ITEM_KEY);
+    }
+
+    @Test
+    public void sku_isUniqueAndScansAdjustTheDefaultLocation() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long soda = helper.insertItem("Soda", 3);
+        long chips = helper.insertItem("Chips", 0);
+        long back = helper.insertLocation("Back room");
+        helper.setStockQuantity(soda, back, 2);
+
+        assertTrue(helper.updateItemSku(soda, "4006381333931"));
+        assertFalse(helper.updateItemSku(chips, "4006381333931"));
+        // Any number of items may have no code
+        assertTrue(helper.updateItemSku(chips, null));
+        assertTrue(helper.updateItemSku(helper.insertItem("Gum", 0), null));
+
+        assertEquals(soda, helper.findItemIdBySku("4006381333931"));
+        assertEquals(-1, helper.findItemIdBySku("0000000000000"));
+        helper.adjustItemQuantity(soda, 1);
+        assertEquals(6, helper.getItem(soda).getQuantity());
+        assertEquals(4, helper.getLocationItemsPage(Location.DEFAULT_ID, 0, 10).get(0).getQuantity());
+
+        helper.deleteItem(soda);
+        assertEquals(-1, helper.findItemIdBySku("4006381333931"));
+        assertTrue(helper.updateItemSku(chips, "4006381333931"));
+        assertEquals("4006381333931", helper.getItemSku(chips));
+    }
+
+    @Test
+    public void batchEdits_areAllOrNothingAndRestoreDeletedRows() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        long soda = helper.insertItem("Soda", 5);
+        long chips = helper.insertItem("Chips", 3);
+        long gum = helper.insertItem("Gum", 1);
+        helper.updateReorderThreshold(soda, 2);
+        assertTrue(helper.updateItemSku(soda, "4006381333931"));
+
+        // Chips' back room stock stays, only the default location's 3 can go
+        long back = helper.insertLocation("Back room");
+        helper.setStockQuantity(chips, back, 4);
+        assertArrayEquals(new int[]{2, -3}, helper.adjustItemQuantities(new long[]{soda, chips}, new int[]{2, -5}));
+        assertEquals(7, helper.getItem(soda).getQuantity());
+        assertEquals(4, helper.getItem(chips).getQuantity());
+
+        // The second rename collides with Gum, so the first one is rolled back
+        assertFalse(helper.updateItemNames(new long[]{soda, chips}, new String[]{"Cola", "gum"}));
+        assertEquals("Soda", helper.getItem(soda).getName());
+        assertTrue(helper.updateItemNames(new long[]{soda, chips}, new String[]{"Cola", "Crisps"}));
+        assertEquals("Crisps", helper.getItem(chips).getName());
+
+        InventoryItem cola = helper.getItem(soda);
+        helper.deleteItems(new long[]{soda, gum});
+        assertNull(helper.getItem(soda));
+        assertEquals(1, helper.getItemsPage(0, 10).size());
+
+        List<InventoryItem> deleted = new ArrayList<>();
+        deleted.add(cola);
+        deleted.add(new InventoryItem(gum, "Gum", 1));
+        assertTrue(helper.restoreItems(deleted, new String[]{"4006381333931", null}));
+        InventoryItem restored = helper.getItem(soda);
+        assertEquals("Cola", restored.getName());
+        assertEquals(7, restored.getQuantity());
+        assertEquals(2, restored.getReorderThreshold());
+        assertEquals(soda, helper.findItemIdBySku("4006381333931"));
+        // The stock row is back in the default location and the ledger ends at the restored level
+        assertEquals(7, helper.getLocationItemsPage(Location.DEFAULT_ID, soda - 1, 1).get(0).getQuantity());
+        assertEquals(7, helper.getQuantityAt(soda, System.currentTimeMillis() + 1000));
+
+        // Restoring again fails on the taken ids and inserts nothing
+        assertFalse(helper.restoreItems(deleted, new String[]{null, null}));
+        assertEquals(3, helper.getItemsPage(0, 10).size());
+    }
+
+    @Test
+    public void skuLookup_usesUniqueIndex() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        assertPlanContains("SELECT _id FROM inventory WHERE sku = ?", InventoryDatabaseHelper.InventoryTable.INDEX_SKU);
+    }
+
+    @Test
+    public void loginLookup_usesEmailIndex() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        assertPlanContains("SELECT password FROM users WHERE email = ?", "USING INDEX sqlite_autoindex_users_1");
+    }
+
+    @Test
+    public void sortedPages_pageThroughEveryOrderAndFilter() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        String[] names = {"pears", "Apples", "figs", "Dates", "bananas", "Cherries", "grapes"};
+        int[] quantities = {3, 0, 7, 3, 0, 1, 3};
+        for (int i = 0; i < names.length; i++) {
+            helper.insertItem(names[i], quantities[i]);
+        }
+
+        assertEquals(Arrays.asList("Apples", "bananas", "Cherries", "Dates", "figs", "grapes", "pears"),
+                names(readAll(ItemOrder.NAME, false)));
+        assertEquals(Arrays.asList("Cherries", "Dates", "figs", "grapes", "pears"),
+                names(readAll(ItemOrder.NAME, true)));
+        // Equal quantities A to Z
+        assertEquals(Arrays.asList("Apples", "bananas", "Cherries", "Dates", "grapes", "pears", "figs"),
+                names(readAll(ItemOrder.QUANTITY, false)));
+        assertEquals(Arrays.asList("Cherries", "Dates", "grapes", "pears", "figs"),
+                names(readAll(ItemOrder.QUANTITY, true)));
+        assertEquals(Arrays.asList("pears", "figs", "Dates", "Cherries", "grapes"),
+                names(readAll(ItemOrder.ID, true)));
+    }
+
+    @Test
+    public void sortedPages_readCoveringIndexesWithoutSorting() {
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        for (boolean inStockOnly : new boolean[]{false, true}) {
+            for (boolean hasAfter : new boolean[]{false, true}) {
+                assertSortedPlan(ItemOrder.NAME, inStockOnly, hasAfter,
+                        "COVERING INDEX " + InventoryDatabaseHelper.InventoryTable.INDEX_NAME_ORDER);
+                assertSortedPlan(ItemOrder.QUANTITY, inStockOnly, hasAfter,
+                        "COVERING INDEX " + InventoryDatabaseHelper.InventoryTable.INDEX_QTY_ORDER);
+                assertSortedPlan(ItemOrder.ID, inStockOnly, hasAfter, "inventory");
+            }
+        }
+        // Later pages seek to the key, they don't walk the index from the start
+        assertTrue(explain(InventoryDatabaseHelper.sortedItemsQuery(ItemOrder.QUANTITY, true, true))
+                .contains("(qty,item_key)>(?,?)"));
+        assertTrue(explain(InventoryDatabaseHelper.sortedItemsQuery(ItemOrder.NAME, true, true))
+                .contains("(item_key>?)"));
+        assertTrue(explain(InventoryDatabaseHelper.sortedItemsQuery(ItemOrder.ID, true, true))
+                .contains("INTEGER PRIMARY KEY"));
+    }
+
+    // Pages of two, so every page after the first continues from a keyset
+    private List<InventoryItem> readAll(ItemOrder order, boolean inStockOnly) {
+        List<InventoryItem> all = new ArrayList<>();
+        List<InventoryItem> page;
+        do {
+            page = helper.getSortedItemsPage(order, inStockOnly, all.isEmpty() ? null : all.get(all.size() - 1), 2);
+            all.addAll(page);
+        } while (page.size() == 2);
+        return all;
+    }
+
+    private static List<String> names(List<InventoryItem> items) {
+        List<String> names = new ArrayList<>();
+        for (InventoryItem item : items) {
+            names.add(item.getName());
+        }
+        return names;
+    }
+
+    private void assertSortedPlan(ItemOrder order, boolean inStockOnly, boolean hasAfter, String expected) {
+        String sql = InventoryDatabaseHelper.sortedItemsQuery(order, inStockOnly, hasAfter);
+        String plan = explain(sql);
+        assertTrue("Query plan for \"" + sql + "\" was: " + plan, plan.contains(expected));
+        assertFalse("Query plan for \"" + sql + "\" sorts: " + plan, plan.contains("TEMP B-TREE"));
+    }
+
+    private void assertPlanContains(String sql, String expected) {
+        String plan = explain(sql);
+        assertTrue("Query plan for \"" + sql + "\" was: " + plan, plan.contains(expected));
+        assertFalse("Query plan for \"" + sql + "\" scans: " + plan, plan.contains("SCAN"));
+    }
+
+    private String explain(String sql) {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        int parameters = sql.length() - sql.replace("?", "").length();
+        String[] args = new String[parameters];
+        for (int i = 0; i < parameters; i++) {
+            args[i] = "1";
+        }
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.project;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the full-text search against the LIKE '%q%' scan it replaces, on a 100k item table,
+ * for the first page of results the panel list asks for.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventorySearchBenchmark {
+    private static final String TAG = "InventorySearchBenchmark";
+    private static final String DB_NAME = "search-benchmark.db";
+    private static final int ITEMS = 100_000;
+    private static final String[] WORDS = {"salted", "chips", "cherry", "soda", "green", "tea", "dark",
+            "chocolate", "mint", "gum", "sparkling", "water", "energy", "bar", "lemon", "cookies"};
+    private static final String[] QUERIES = {"cho", "green tea", "spark wat 99", "lemon 4242", "zz"};
+    private static final int ROUNDS = 20;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            String name = WORDS[i % WORDS.length] + " " + WORDS[(i / WORDS.length) % WORDS.length] + " " + i;
+            rows.add(new InventoryItem(0, name, i));
+        }
+        helper.upsertItems(rows.iterator(), null);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void fullTextSearch_isFasterThanLikeScan() {
+        long totalSearchNanos = 0;
+        long totalLikeNanos = 0;
+        for (String query : QUERIES) {
+            // Warm up both paths
+            search(query);
+            like(query);
+            long searchNanos = 0;
+            long likeNanos = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                search(query);
+                searchNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                like(query);
+                likeNanos += System.nanoTime() - start;
+            }
+            searchNanos /= ROUNDS;
+            likeNanos /= ROUNDS;
+
+            Log.i(TAG, String.format("\"%s\": fts %.2f ms, like %.2f ms", query, searchNanos / 1e6, likeNanos / 1e6));
+            // A common word lets the LIKE scan fill a page early, so only the latency bound
+            // is per query. Rare words and misses are where the scan reads the whole table
+            assertTrue(query, searchNanos < TimeUnit.MILLISECONDS.toNanos(50));
+            totalSearchNanos += searchNanos;
+            totalLikeNanos += likeNanos;
+        }
+        assertTrue(totalSearchNanos < totalLikeNanos);
+    }
+
+    private int search(String query) {
+        return helper.searchItems(query, 0, InventoryPager.PAGE_SIZE).size();
+    }
+
+    // What a search without the index looks like: every word has to appear somewhere in the name
+    private int like(String query) {
+        List<String> words = InventorySearch.tokenize(query);
+        StringBuilder where = new StringBuilder();
+        String[] args = new String[words.size()];
+        for (int i = 0; i < words.size(); i++) {
+            where.append(i == 0 ? " WHERE" : " AND").append(" item LIKE ?");
+            args[i] = "%" + words.get(i) + "%";
+        }
+        SQLiteDatabase db = helper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT _id, item, qty FROM inventory" + where +
+                " ORDER BY _id LIMIT " + InventoryPager.PAGE_SIZE, args);
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+}
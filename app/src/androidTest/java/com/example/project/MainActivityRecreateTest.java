@@ -0,0 +1,77 @@
+package com.example.project;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recreates MainActivity the way a rotation or resize does. The grid comes back from
+ * InventoryViewModel with its loaded rows and selection, without any page being read again.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainActivityRecreateTest {
+    // Every repository read that fills the grid
+    private static final String[] PAGE_READS = {
+            "store.getItemsPage", "store.searchItems", "store.getLocationItemsPage", "snapshot.read"};
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void recreate_keepsRowsWithoutReadingPages() throws Exception {
+        InventoryRepository repository = InventoryRepository.getInstance(
+                InstrumentationRegistry.getInstrumentation().getTargetContext());
+        // Makes sure there is something to show, and waits for it to be written
+        repository.insertItem("Recreate test " + System.nanoTime(), 1, null).get();
+
+        ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class);
+        try {
+            // Wait for the first page before counting reads
+            int rowsBefore = 0;
+            for (int attempt = 0; attempt < 100 && rowsBefore == 0; attempt++) {
+                Thread.sleep(50);
+                rowsBefore = rowCount(scenario);
+            }
+            assertTrue(rowsBefore > 0);
+            Metrics.reset();
+            Metrics.setEnabled(true);
+
+            scenario.recreate();
+
+            assertEquals(rowsBefore, rowCount(scenario));
+            for (Metrics.Timer timer : Metrics.getTimers()) {
+                for (String read : PAGE_READS) {
+                    if (timer.getName().equals(read)) {
+                        assertEquals(read, 0, timer.getSummary().getCount());
+                    }
+                }
+            }
+        } finally {
+            scenario.close();
+        }
+    }
+
+    private static int rowCount(ActivityScenario<MainActivity> scenario) {
+        final AtomicInteger rows = new AtomicInteger();
+        scenario.onActivity(new ActivityScenario.ActivityAction<MainActivity>() {
+            @Override
+            public void perform(MainActivity activity) {
+                RecyclerView grid = activity.findViewById(R.id.recyclerView_panels);
+                rows.set(grid.getAdapter().getItemCount());
+            }
+        });
+        return rows.get();
+    }
+}
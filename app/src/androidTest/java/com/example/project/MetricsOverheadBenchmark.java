@@ -0,0 +1,104 @@
+package com.example.project;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Puts the cost of recording metrics next to the repository calls they measure: quantity
+ * writes and page reads through the app's cache over a real database. Each call records two
+ * timings, its queue wait and its run.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MetricsOverheadBenchmark {
+    private static final String TAG = "MetricsOverheadBenchmark";
+    private static final String DB_NAME = "metrics-benchmark.db";
+    private static final int ITEMS = 1000;
+    private static final int CALLS = 5000;
+    private static final int SECTIONS = 1_000_000;
+    private static final Metrics.Timer TIMER = Metrics.timer("benchmark.section");
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+    private InventoryRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        repository = new InventoryRepository(new InventoryCache(helper, InventoryCache.DEFAULT_CAPACITY),
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+        for (int i = 0; i < ITEMS - 1; i++) {
+            repository.insertItem("item" + i, i, null);
+        }
+        repository.insertItem("last", 0, null).get();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+        repository.shutdown();
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void recording_costsUnderOnePercent() throws Exception {
+        Metrics.setEnabled(true);
+        long sectionNanos = timeSections();
+        Metrics.setEnabled(false);
+        long disabledSectionNanos = timeSections();
+
+        long writeNanos = timeWrites();
+        long readNanos = timeReads();
+
+        Log.i(TAG, String.format("timed section %d ns (%d ns disabled), write %.1f us, page read %.1f us",
+                sectionNanos, disabledSectionNanos, writeNanos / 1000.0, readNanos / 1000.0));
+        assertTrue(2 * sectionNanos * 100 < writeNanos);
+        assertTrue(2 * sectionNanos * 100 < readNanos);
+        assertTrue(2 * disabledSectionNanos * 10_000 < readNanos);
+    }
+
+    private long timeSections() {
+        long start = System.nanoTime();
+        for (int i = 0; i < SECTIONS; i++) {
+            TIMER.stop(TIMER.start());
+        }
+        return (System.nanoTime() - start) / SECTIONS;
+    }
+
+    // Round trips, one call in flight at a time, as the UI makes them
+    private long timeWrites() throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            repository.updateItemQuantity(1 + i % ITEMS, i, null).get();
+        }
+        return (System.nanoTime() - start) / CALLS;
+    }
+
+    private long timeReads() throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            repository.getItemsPage(i % ITEMS, InventoryPager.PAGE_SIZE, null).get();
+        }
+        return (System.nanoTime() - start) / CALLS;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.project;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures a full login with the default scrypt costs against the latency budget: the indexed
+ * hash fetch plus verification, run through the repository as LoginActivity does.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PasswordHashBenchmark {
+    private static final String TAG = "PasswordHashBenchmark";
+    private static final String DB_NAME = "password-benchmark.db";
+    private static final long LOGIN_BUDGET_MILLIS = 500;
+    private static final int ROUNDS = 10;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+    private InventoryRepository repository;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        repository = new InventoryRepository(helper, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        repository.shutdown();
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void login_staysWithinBudget() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            helper.insertUser("User " + i, "user" + i + "@example.com", "plaintext" + i);
+        }
+        long start = System.nanoTime();
+        repository.insertUser("Ana", "ana@example.com", "secret", null).get();
+        long registerNanos = System.nanoTime() - start;
+        // Warm up
+        repository.validateUser("ana@example.com", "secret", null).get();
+
+        long loginNanos = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            start = System.nanoTime();
+            assertTrue(repository.validateUser("ana@example.com", "secret", null).get());
+            loginNanos += System.nanoTime() - start;
+        }
+        loginNanos /= ROUNDS;
+        start = System.nanoTime();
+        assertFalse(repository.validateUser("nobody@example.com", "secret", null).get());
+        long missNanos = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("register %.1f ms, login %.1f ms, unknown email %.1f ms",
+                registerNanos / 1e6, loginNanos / 1e6, missNanos / 1e6));
+        assertTrue(loginNanos < TimeUnit.MILLISECONDS.toNanos(LOGIN_BUDGET_MILLIS));
+        assertTrue(registerNanos < TimeUnit.MILLISECONDS.toNanos(LOGIN_BUDGET_MILLIS));
+    }
+
+    @Test
+    public void firstLogin_upgradesPlaintextRow() throws Exception {
+        helper.insertUser("Ana", "ana@example.com", "secret");
+
+        assertTrue(repository.validateUser("ana@example.com", "secret", null).get());
+
+        String stored = helper.getPasswordHash("ana@example.com");
+        assertFalse(new PasswordHasher().needsRehash(stored));
+        assertTrue(repository.validateUser("ana@example.com", "secret", null).get());
+    }
+}
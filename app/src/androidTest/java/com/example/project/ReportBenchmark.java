@@ -0,0 +1,95 @@
+package com.example.project;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reports over 50k items through the repository as MainActivity asks for them: the first one
+ * reads the window's movements, later ones only what was written since.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReportBenchmark {
+    private static final String TAG = "ReportBenchmark";
+    private static final String DB_NAME = "report-benchmark.db";
+    private static final int ITEMS = 50_000;
+    private static final int WRITES_BETWEEN_REPORTS = 100;
+    private static final int ROUNDS = 10;
+    private static final long REPORT_BUDGET_MILLIS = 100;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+    private InventoryRepository repository;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            rows.add(new InventoryItem(0, "item" + i, 1000));
+        }
+        helper.upsertItems(rows.iterator(), null);
+        // A second movement for every item, each one consumption
+        List<InventoryItem> used = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            used.add(new InventoryItem(0, "item" + i, 999 - i % 64));
+        }
+        helper.upsertItems(used.iterator(), null);
+        repository = new InventoryRepository(new InventoryCache(helper, InventoryCache.DEFAULT_CAPACITY),
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        repository.shutdown();
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void reports_renderWithinBudget() throws Exception {
+        long start = System.nanoTime();
+        ReportEngine.Report first = repository.getReport(20, null).get();
+        long firstNanos = System.nanoTime() - start;
+        assertEquals(20, first.getTopMovers().size());
+
+        Random random = new Random(42);
+        long worstNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < WRITES_BETWEEN_REPORTS; i++) {
+                repository.updateItemQuantity(1 + random.nextInt(ITEMS), random.nextInt(900), null);
+            }
+            // Writes run before the read that follows them is answered
+            repository.updateItemQuantity(1, 0, null).get();
+            start = System.nanoTime();
+            repository.getReport(20, null).get();
+            worstNanos = Math.max(worstNanos, System.nanoTime() - start);
+        }
+
+        Log.i(TAG, String.format("first report (reads %d movements) %.1f ms, later reports at most %.1f ms",
+                2 * ITEMS, firstNanos / 1e6, worstNanos / 1e6));
+        assertTrue(worstNanos < TimeUnit.MILLISECONDS.toNanos(REPORT_BUDGET_MILLIS));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.project;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Switches the grid between every order and filter on a 100k item table, reading the first
+ * page of each and a page from the middle. Each is a range scan of a covering index, so it
+ * costs about the same wherever it starts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SortOrderBenchmark {
+    private static final String TAG = "SortOrderBenchmark";
+    private static final String DB_NAME = "sort-order-benchmark.db";
+    private static final int ITEMS = 100_000;
+    private static final int ROUNDS = 20;
+    private static final long MAX_PAGE_MILLIS = 10;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            // Names and quantities that don't follow _id order, a fifth of the items out of stock
+            int scrambled = (int) ((i * 7919L) % ITEMS);
+            rows.add(new InventoryItem(0, "item " + scrambled, i % 5 == 0 ? 0 : scrambled % 500));
+        }
+        helper.upsertItems(rows.iterator(), null);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void switchingOrder_readsAPageInMilliseconds() {
+        for (ItemOrder order : ItemOrder.values()) {
+            for (boolean inStockOnly : new boolean[]{false, true}) {
+                // A row from the middle of the order to continue after
+                InventoryItem middle = helper.getSortedItemsPage(order, inStockOnly, null, ITEMS / 2)
+                        .get(ITEMS / 3);
+                long firstNanos = 0;
+                long middleNanos = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    long start = System.nanoTime();
+                    List<InventoryItem> first = helper.getSortedItemsPage(order, inStockOnly, null, InventoryPager.PAGE_SIZE);
+                    firstNanos += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    List<InventoryItem> next = helper.getSortedItemsPage(order, inStockOnly, middle, InventoryPager.PAGE_SIZE);
+                    middleNanos += System.nanoTime() - start;
+                    assertEquals(InventoryPager.PAGE_SIZE, first.size());
+                    assertTrue(order.compare(middle, next.get(0)) < 0);
+                }
+                firstNanos /= ROUNDS;
+                middleNanos /= ROUNDS;
+
+                String mode = order + (inStockOnly ? " in stock" : "");
+                Log.i(TAG, String.format("%s: first page %.2f ms, middle page %.2f ms", mode, firstNanos / 1e6,
+                        middleNanos / 1e6));
+                assertTrue(mode, firstNanos < TimeUnit.MILLISECONDS.toNanos(MAX_PAGE_MILLIS));
+                assertTrue(mode, middleNanos < TimeUnit.MILLISECONDS.toNanos(MAX_PAGE_MILLIS));
+            }
+        }
+    }
+}
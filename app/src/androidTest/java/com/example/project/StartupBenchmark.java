@@ -0,0 +1,125 @@
+package com.example.project;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cold and warm time to first content on a 50k item database, through the same repository,
+ * cache and snapshot the app starts with. Cold means a closed database and an empty cache.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final String TAG = "StartupBenchmark";
+    private static final String DB_NAME = "startup-benchmark.db";
+    private static final int ITEMS = 50_000;
+    private static final int ROUNDS = 5;
+    // One frame at 60 Hz
+    private static final long FIRST_CONTENT_BUDGET_MILLIS = 16;
+
+    private Context context;
+    private File snapshotFile;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        snapshotFile = new File(context.getCacheDir(), "startup-benchmark-snapshot.bin");
+        snapshotFile.delete();
+        InventoryDatabaseHelper helper = new InventoryDatabaseHelper(context, DB_NAME);
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            rows.add(new InventoryItem(0, "item" + i, i % 100));
+        }
+        helper.upsertItems(rows.iterator(), null);
+        helper.close();
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DB_NAME);
+        snapshotFile.delete();
+    }
+
+    @Test
+    public void firstContent_coldAndWarm() throws Exception {
+        // The first run has no snapshot yet and leaves one behind
+        start().shutdownAfterFirstPage();
+
+        long coldPageNanos = 0;
+        long coldSnapshotNanos = 0;
+        long warmPageNanos = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            Startup startup = start();
+            long begin = System.nanoTime();
+            List<InventoryItem> snapshot = startup.repository.getSnapshot(null).get();
+            coldSnapshotNanos += System.nanoTime() - begin;
+            begin = System.nanoTime();
+            List<InventoryItem> page = startup.repository.getItemsPage(0, InventoryPager.PAGE_SIZE, null).get();
+            coldPageNanos += System.nanoTime() - begin;
+            begin = System.nanoTime();
+            startup.repository.getItemsPage(0, InventoryPager.PAGE_SIZE, null).get();
+            warmPageNanos += System.nanoTime() - begin;
+            startup.close();
+
+            assertEquals(page.size(), snapshot.size());
+            assertEquals(page.get(0).getName(), snapshot.get(0).getName());
+        }
+        coldSnapshotNanos /= ROUNDS;
+        coldPageNanos /= ROUNDS;
+        warmPageNanos /= ROUNDS;
+
+        Log.i(TAG, String.format("cold: snapshot %.1f ms, first page %.1f ms; warm: first page %.1f ms",
+                coldSnapshotNanos / 1e6, coldPageNanos / 1e6, warmPageNanos / 1e6));
+        assertTrue(coldSnapshotNanos < TimeUnit.MILLISECONDS.toNanos(FIRST_CONTENT_BUDGET_MILLIS));
+        assertTrue(warmPageNanos < TimeUnit.MILLISECONDS.toNanos(FIRST_CONTENT_BUDGET_MILLIS));
+        assertTrue(coldSnapshotNanos < coldPageNanos);
+    }
+
+    private Startup start() {
+        return new Startup(new InventoryDatabaseHelper(context, DB_NAME));
+    }
+
+    // What InventoryRepository.getInstance() builds, over a database that hasn't been opened yet
+    private class Startup {
+        final InventoryDatabaseHelper helper;
+        final InventoryRepository repository;
+
+        Startup(InventoryDatabaseHelper helper) {
+            this.helper = helper;
+            repository = new InventoryRepository(new InventoryCache(helper, InventoryCache.DEFAULT_CAPACITY),
+                    new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            command.run();
+                        }
+                    });
+            repository.setSnapshot(new InventorySnapshot(snapshotFile));
+        }
+
+        void shutdownAfterFirstPage() throws Exception {
+            repository.warmUp().get();
+            close();
+        }
+
+        void close() {
+            repository.shutdown();
+            helper.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.project;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures what the ledger triggers add to a quantity edit, and checks that an append costs
+ * the same with a large ledger as with an empty one.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StockLedgerBenchmark {
+    private static final String TAG = "StockLedgerBenchmark";
+    private static final String DB_NAME = "ledger-benchmark.db";
+    private static final int ITEMS = 100;
+    private static final int EDITS = 10_000;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+        for (int i = 0; i < ITEMS; i++) {
+            helper.insertItem("item" + i, 0);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void appendCost_doesNotGrowWithTheLedger() {
+        long firstNanos = runEdits(0);
+        // Grow the ledger by 20 batches before measuring again
+        for (int i = 1; i <= 20; i++) {
+            runEdits(i * EDITS);
+        }
+        long lastNanos = runEdits(21 * EDITS);
+
+        Log.i(TAG, String.format("edit with %d movements: %.1f us, with %d: %.1f us", EDITS,
+                firstNanos / 1000.0 / EDITS, 22 * EDITS, lastNanos / 1000.0 / EDITS));
+        assertTrue(lastNanos < firstNanos * 2);
+    }
+
+    @Test
+    public void ledgerOverhead_onQuantityEdits() {
+        runEdits(0);
+        long withLedgerNanos = runEdits(EDITS);
+        helper.getWritableDatabase().execSQL("DROP TRIGGER " +
+                InventoryDatabaseHelper.StockMovementTable.TRIGGER_UPDATE);
+        runEdits(2 * EDITS);
+        long withoutLedgerNanos = runEdits(3 * EDITS);
+
+        Log.i(TAG, String.format("edit with ledger: %.1f us, without: %.1f us",
+                withLedgerNanos / 1000.0 / EDITS, withoutLedgerNanos / 1000.0 / EDITS));
+        // One extra row append in the same statement, never a second round trip
+        assertTrue(withLedgerNanos < withoutLedgerNanos * 2);
+    }
+
+    private long runEdits(int base) {
+        long start = System.nanoTime();
+        for (int i = 0; i < EDITS; i++) {
+            helper.updateItemQuantity(i % ITEMS + 1, base + i);
+        }
+        return System.nanoTime() - start;
+    }
+}
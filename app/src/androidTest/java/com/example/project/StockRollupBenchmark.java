@@ -0,0 +1,85 @@
+package com.example.project;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a per-location write, rollup included, costs the same with 100 locations of 50k
+ * items (5M stock rows) as with a single small location.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StockRollupBenchmark {
+    private static final String TAG = "StockRollupBenchmark";
+    private static final String DB_NAME = "rollup-benchmark.db";
+    private static final int ITEMS = 50_000;
+    private static final int LOCATIONS = 100;
+    private static final int WRITES = 5_000;
+
+    private Context context;
+    private InventoryDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        helper = new InventoryDatabaseHelper(context, DB_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void rollupCost_doesNotGrowWithStock() {
+        List<InventoryItem> rows = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            rows.add(new InventoryItem(0, "item" + i, 0));
+        }
+        helper.upsertItems(rows.iterator(), null);
+        long small = helper.insertLocation("Small");
+        for (int i = 1; i <= 1000; i++) {
+            helper.setStockQuantity(i, small, 1);
+        }
+        long smallNanos = runWrites(1000, small, small);
+
+        for (int i = 2; i < LOCATIONS; i++) {
+            helper.insertLocation("Location " + i);
+        }
+        // Every item in every location, each insert rolled up by the trigger like any other write
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.execSQL("INSERT OR IGNORE INTO stock SELECT i._id, l._id, 1 FROM inventory i, locations l");
+        assertEquals(LOCATIONS - 1, helper.getItem(4321).getQuantity());
+        long largeNanos = runWrites(ITEMS, 1, LOCATIONS);
+
+        Log.i(TAG, String.format("write with 1 location of 1000 items: %.1f us, with %d x %d: %.1f us",
+                smallNanos / 1000.0 / WRITES, LOCATIONS, ITEMS, largeNanos / 1000.0 / WRITES));
+        assertTrue(largeNanos < smallNanos * 2);
+    }
+
+    private long runWrites(int items, long firstLocation, long lastLocation) {
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < WRITES; i++) {
+            long location = firstLocation + random.nextInt((int) (lastLocation - firstLocation + 1));
+            helper.setStockQuantity(1 + random.nextInt(items), location, random.nextInt(100));
+        }
+        return System.nanoTime() - start;
+    }
+}
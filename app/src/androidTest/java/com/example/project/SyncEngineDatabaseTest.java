@@ -0,0 +1,106 @@
+package com.example.project;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Two SQLite databases standing in for two phones, synced through LocalSyncServer.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncEngineDatabaseTest {
+    private static final String TAG = "SyncEngineDatabaseTest";
+    private static final String DB_A = "sync-a.db";
+    private static final String DB_B = "sync-b.db";
+
+    private Context context;
+    private InventoryDatabaseHelper phoneA;
+    private InventoryDatabaseHelper phoneB;
+    private LocalSyncServer server;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_A);
+        context.deleteDatabase(DB_B);
+        phoneA = new InventoryDatabaseHelper(context, DB_A);
+        phoneB = new InventoryDatabaseHelper(context, DB_B);
+        server = new LocalSyncServer();
+    }
+
+    @After
+    public void tearDown() {
+        phoneA.close();
+        phoneB.close();
+        context.deleteDatabase(DB_A);
+        context.deleteDatabase(DB_B);
+    }
+
+    @Test
+    public void concurrentEdits_addUp() throws Exception {
+        long soda = phoneA.insertItem("Soda", 10);
+        new SyncEngine(phoneA, server).sync();
+        new SyncEngine(phoneB, server).sync();
+        long sodaOnB = phoneB.findItemByName("soda").getId();
+
+        phoneA.updateItemQuantity(soda, 7);
+        phoneB.updateItemQuantity(sodaOnB, 15);
+        new SyncEngine(phoneA, server).sync();
+        new SyncEngine(phoneB, server).sync();
+        SyncEngine.Result last = new SyncEngine(phoneA, server).sync();
+
+        assertEquals(0, last.getPushed());
+        assertEquals(12, phoneA.getItem(soda).getQuantity());
+        assertEquals(12, phoneB.getItem(sodaOnB).getQuantity());
+        // Pulled deltas show up in the receiving phone's history like any other change
+        assertEquals(-3, phoneB.getMovements(sodaOnB, 0, null, 1).get(0).getDelta());
+    }
+
+    @Test
+    public void compaction_keepsMovementsNotPushedYet() throws Exception {
+        long soda = phoneA.insertItem("Soda", 10);
+        new SyncEngine(phoneA, server).sync();
+        phoneA.updateItemQuantity(soda, 4);
+
+        phoneA.compactMovements(Long.MAX_VALUE);
+        new SyncEngine(phoneA, server).sync();
+        new SyncEngine(phoneB, server).sync();
+
+        assertEquals(4, phoneB.findItemByName("soda").getQuantity());
+    }
+
+    @Test
+    public void throughput_50kChangedRows() throws Exception {
+        int rows = 50_000;
+        List<InventoryItem> items = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            items.add(new InventoryItem(0, "item" + i, i % 100 + 1));
+        }
+        phoneA.upsertItems(items.iterator(), null);
+
+        long start = System.nanoTime();
+        SyncEngine.Result pushed = new SyncEngine(phoneA, server).sync();
+        long pushNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        SyncEngine.Result pulled = new SyncEngine(phoneB, server).sync();
+        long pullNanos = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("push %d rows: %d ms, pull: %d ms", rows, pushNanos / 1_000_000,
+                pullNanos / 1_000_000));
+        assertEquals(rows, pushed.getPushed());
+        assertEquals(rows, pulled.getPulled());
+        assertEquals(4321 % 100 + 1, phoneB.findItemByName("item4321").getQuantity());
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.project;
+
+import java.util.List;
+
+// Delivers a low-stock digest. Called on the alert engine's scheduler thread, never on the UI thread
+public interface AlertSender {
+    void sendDigest(List<InventoryItem> lowStockItems);
+}
@@ -0,0 +1,14 @@
+package com.example.project;
+
+// Source of decoded barcodes. Decoding is left to the implementation (a keyboard wedge
+// scanner, a camera library), the rest of the app only sees the codes. Listeners are called
+// on the main thread
+public interface BarcodeScanner {
+    interface Listener {
+        void onBarcode(String code);
+    }
+
+    void start(Listener listener);
+
+    void stop();
+}
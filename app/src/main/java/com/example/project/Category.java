@@ -0,0 +1,45 @@
+package com.example.project;
+
+// A node of the category tree items are filed under. The item count and units are totals
+// for the whole subtree, the category and every category below it, kept current by the
+// database as items and categories change rather than added up when they are read
+public class Category {
+    // Not a stored category: the parent of the top-level ones. As the grid's category it
+    // shows every item, filed or not
+    public static final long ROOT = 0;
+
+    private final long id;
+    private final long parentId;
+    private final String name;
+    private final int itemCount;
+    private final long units;
+
+    public Category(long id, long parentId, String name, int itemCount, long units) {
+        this.id = id;
+        this.parentId = parentId;
+        this.name = name;
+        this.itemCount = itemCount;
+        this.units = units;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getParentId() {
+        return parentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    // Sum of the quantities of the items in the subtree
+    public long getUnits() {
+        return units;
+    }
+}
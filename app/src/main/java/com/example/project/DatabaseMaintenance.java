@@ -0,0 +1,286 @@
+package com.example.project;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Keeps iventory.db small and its query plans current: folds old ledger rows into snapshots,
+// refreshes the planner statistics, hands free pages back to the file system, checkpoints the
+// WAL and checks the file. Each step is short and commits on its own, with the deadline and
+// stop() checked in between, so a foreground write waits at most for one step. Runs from
+// MaintenanceJobService while the device is idle and charging
+public class DatabaseMaintenance {
+    private static final String TAG = "DatabaseMaintenance";
+    public static final long DEFAULT_BUDGET_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Pages freed per incremental_vacuum step, 1 MB at the default 4 KB page size
+    static final int VACUUM_CHUNK_PAGES = 256;
+    private static final int PROBE_ROUNDS = 5;
+    // auto_vacuum values, see https://sqlite.org/pragma.html#pragma_auto_vacuum
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private static final Metrics.Timer RUN = Metrics.timer("db.maintenance");
+
+    public static class Report {
+        private final long startedAt;
+        private final long durationMillis;
+        private final long sizeBefore;
+        private final long sizeAfter;
+        private final long probeMicrosBefore;
+        private final long probeMicrosAfter;
+        private final int pagesFreed;
+        private final Boolean integrityOk;
+        private final boolean completed;
+
+        Report(long startedAt, long durationMillis, long sizeBefore, long sizeAfter, long probeMicrosBefore,
+               long probeMicrosAfter, int pagesFreed, Boolean integrityOk, boolean completed) {
+            this.startedAt = startedAt;
+            this.durationMillis = durationMillis;
+            this.sizeBefore = sizeBefore;
+            this.sizeAfter = sizeAfter;
+            this.probeMicrosBefore = probeMicrosBefore;
+            this.probeMicrosAfter = probeMicrosAfter;
+            this.pagesFreed = pagesFreed;
+            this.integrityOk = integrityOk;
+            this.completed = completed;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        // Main file plus WAL, in bytes
+        public long getSizeBefore() {
+            return sizeBefore;
+        }
+
+        public long getSizeAfter() {
+            return sizeAfter;
+        }
+
+        // Median total of the probe queries, in microseconds
+        public long getProbeMicrosBefore() {
+            return probeMicrosBefore;
+        }
+
+        public long getProbeMicrosAfter() {
+            return probeMicrosAfter;
+        }
+
+        public int getPagesFreed() {
+            return pagesFreed;
+        }
+
+        // Null when there was no time left to run the check
+        public Boolean getIntegrityOk() {
+            return integrityOk;
+        }
+
+        // False if the run was stopped or ran out of time before every step
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("size %d -> %d bytes, probe %d -> %d us, %d pages freed, integrity %s, %d ms%s",
+                    sizeBefore, sizeAfter, probeMicrosBefore, probeMicrosAfter, pagesFreed,
+                    integrityOk == null ? "not checked" : integrityOk ? "ok" : "FAILED", durationMillis,
+                    completed ? "" : ", incomplete");
+        }
+    }
+
+    private final InventoryDatabaseHelper helper;
+    private final InventoryRepository repository;
+    private volatile boolean stopped = false;
+
+    // Ledger compaction goes through the repository's writer thread like any other write
+    public DatabaseMaintenance(InventoryDatabaseHelper helper, InventoryRepository repository) {
+        this.helper = helper;
+        this.repository = repository;
+    }
+
+    // Ends the run after the step in progress, from any thread
+    public void stop() {
+        stopped = true;
+    }
+
+    // Method to run every step that fits in budgetMillis, on the calling thread
+    public Report run(long budgetMillis) {
+        long startNanos = RUN.start();
+        long startedAt = System.currentTimeMillis();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        long sizeBefore = fileSize(db);
+        long probeBefore = probe();
+        int pagesFreed = 0;
+        Boolean integrityOk = null;
+        boolean completed = false;
+        try {
+            if (canContinue(deadline)) {
+                repository.compactMovements(InventoryRepository.MOVEMENT_RETENTION_MILLIS, null).get();
+            }
+
+            // Databases created before version 9 keep every free page until this one-time
+            // rebuild. It blocks writes while it runs, which is why it waits for the idle job
+            if (canContinue(deadline) && pragmaLong(db, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                long freeBefore = pragmaLong(db, "PRAGMA freelist_count");
+                pragma(db, "PRAGMA auto_vacuum=INCREMENTAL");
+                db.execSQL("VACUUM");
+                pagesFreed += (int) freeBefore;
+            }
+
+            // A full ANALYZE the first time, after that optimize only re-analyzes the tables
+            // whose statistics have drifted
+            if (canContinue(deadline)) {
+                if (DatabaseUtils.queryNumEntries(db, "sqlite_master", "name = 'sqlite_stat1'") == 0) {
+                    db.execSQL("ANALYZE");
+                } else {
+                    pragma(db, "PRAGMA optimize");
+                }
+            }
+
+            while (canContinue(deadline)) {
+                long free = pragmaLong(db, "PRAGMA freelist_count");
+                if (free == 0) {
+                    break;
+                }
+                pragma(db, "PRAGMA incremental_vacuum(" + VACUUM_CHUNK_PAGES + ")");
+                long freed = free - pragmaLong(db, "PRAGMA freelist_count");
+                if (freed <= 0) {
+                    // Nothing more can be released, a writer keeps adding pages back meanwhile
+                    break;
+                }
+                pagesFreed += (int) freed;
+            }
+
+            if (canContinue(deadline)) {
+                checkpoint(db);
+            }
+
+            if (canContinue(deadline)) {
+                integrityOk = "ok".equals(pragma(db, "PRAGMA quick_check"));
+                completed = true;
+            }
+        } catch (ExecutionException | SQLException e) {
+            Log.w(TAG, "Maintenance step failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return finish(db, startNanos, startedAt, sizeBefore, probeBefore, pagesFreed, integrityOk, completed);
+    }
+
+    private boolean canContinue(long deadline) {
+        return !stopped && System.nanoTime() < deadline;
+    }
+
+    // Measures again, then logs and records the run
+    private Report finish(SQLiteDatabase db, long startNanos, long startedAt, long sizeBefore, long probeBefore,
+                          int pagesFreed, Boolean integrityOk, boolean completed) {
+        Report report = new Report(startedAt, System.currentTimeMillis() - startedAt, sizeBefore, fileSize(db),
+                probeBefore, probe(), pagesFreed, integrityOk, completed);
+        Log.i(TAG, report.toString());
+        if (Boolean.FALSE.equals(integrityOk)) {
+            Log.e(TAG, "quick_check found corruption in " + db.getPath());
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(InventoryDatabaseHelper.MaintenanceLogTable.COL_STARTED_AT, report.getStartedAt());
+        values.put(InventoryDatabaseHelper.MaintenanceLogTable.COL_DURATION_MILLIS, report.getDurationMillis());
+        values.put(InventoryDatabaseHelper.MaintenanceLogTable.COL_SIZE_BEFORE, report.getSizeBefore());
+        values.put(InventoryDatabaseHelper.MaintenanceLogTable.COL_SIZE_AFTER, report.getSizeAfter());
+        values.put(InventoryDatabaseHelper.MaintenanceLogTable.COL_PROBE_MICROS_BEFORE, report.getProbeMicrosBefore());
+        values.put(InventoryDatabaseHelper.MaintenanceLogTable.COL_PROBE_MICROS_AFTER, report.getProbeMicrosAfter());
+        values.put(InventoryDatabaseHelper.MaintenanceLogTable.COL_PAGES_FREED, report.getPagesFreed());
+        if (integrityOk != null) {
+            values.put(InventoryDatabaseHelper.MaintenanceLogTable.COL_INTEGRITY_OK, integrityOk ? 1 : 0);
+        }
+        values.put(InventoryDatabaseHelper.MaintenanceLogTable.COL_COMPLETED, completed ? 1 : 0);
+        try {
+            db.insert(InventoryDatabaseHelper.MaintenanceLogTable.TABLE, null, values);
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not record maintenance run", e);
+        }
+        RUN.stop(startNanos);
+        return report;
+    }
+
+    // Main file plus WAL, the WAL holds whatever hasn't been checkpointed yet
+    private static long fileSize(SQLiteDatabase db) {
+        return new File(db.getPath()).length() + new File(db.getPath() + "-wal").length();
+    }
+
+    // Method to time the reads the app depends on, straight from the database so the cache
+    // doesn't hide them. Returns the median total over a few rounds, in microseconds
+    private long probe() {
+        long maxId = DatabaseUtils.longForQuery(helper.getReadableDatabase(),
+                "SELECT IFNULL(MAX(" + InventoryDatabaseHelper.InventoryTable.COL_ID + "), 0) FROM " +
+                        InventoryDatabaseHelper.InventoryTable.TABLE, null);
+        long[] rounds = new long[PROBE_ROUNDS];
+        for (int i = 0; i < PROBE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            helper.getItemsPage(0, InventoryStore.BATCH_SIZE);
+            helper.getItemsPage(maxId / 2, InventoryStore.BATCH_SIZE);
+            helper.findItemByName("maintenance probe");
+            helper.searchItems("a", 0, InventoryStore.BATCH_SIZE);
+            helper.getLowStockItems();
+            helper.getMovementsAfter(0, InventoryStore.BATCH_SIZE);
+            rounds[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(rounds);
+        return TimeUnit.NANOSECONDS.toMicros(rounds[PROBE_ROUNDS / 2]);
+    }
+
+    // Method to copy the WAL back into the database file. PASSIVE never waits for readers or
+    // writers, frames still in use are left for later. Only once every frame is in does the
+    // WAL file get truncated, the VACUUM above went through it and left it as large as the
+    // database
+    private static void checkpoint(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        boolean complete;
+        try {
+            // busy, frames in the WAL, frames checkpointed
+            complete = cursor.moveToFirst() && cursor.getInt(0) == 0 && cursor.getInt(1) == cursor.getInt(2);
+        } finally {
+            cursor.close();
+        }
+        if (complete) {
+            pragma(db, "PRAGMA wal_checkpoint(TRUNCATE)");
+        }
+    }
+
+    // Runs a pragma to completion, returning the first column of its first row or null.
+    // Stepping through every row matters, incremental_vacuum frees one page per row it returns
+    // and those rows have no columns, so execSQL() would stop it after the first page
+    private static String pragma(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            String first = null;
+            while (cursor.moveToNext()) {
+                if (first == null && cursor.getColumnCount() > 0) {
+                    first = cursor.getString(0);
+                }
+            }
+            return first;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long pragmaLong(SQLiteDatabase db, String sql) {
+        String value = pragma(db, sql);
+        return value == null ? 0 : Long.parseLong(value);
+    }
+}
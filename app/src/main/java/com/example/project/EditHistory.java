@@ -0,0 +1,106 @@
+package com.example.project;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Undo and redo stacks of ItemEdits. Bounded by the number of edits and by the rows they hold
+// together, the oldest edits are forgotten first. Making a new edit clears the redo stack.
+// Not thread safe, InventoryRepository only uses it from the writer thread
+public class EditHistory {
+    public static final int DEFAULT_MAX_EDITS = 50;
+    // A deleted row keeps its item in memory until it leaves the history
+    public static final int DEFAULT_MAX_ROWS = 100_000;
+
+    private final int maxEdits;
+    private final int maxRows;
+    private final Deque<ItemEdit> undo = new ArrayDeque<>();
+    private final Deque<ItemEdit> redo = new ArrayDeque<>();
+    private int rows = 0;
+
+    public EditHistory(int maxEdits, int maxRows) {
+        this.maxEdits = maxEdits;
+        this.maxRows = maxRows;
+    }
+
+    // Method to record an edit that was just applied
+    public void push(ItemEdit edit) {
+        while (!redo.isEmpty()) {
+            rows -= redo.pop().size();
+        }
+        pushUndo(edit);
+    }
+
+    // Returns null when there is nothing to undo
+    public ItemEdit popUndo() {
+        ItemEdit edit = undo.pollFirst();
+        if (edit != null) {
+            rows -= edit.size();
+        }
+        return edit;
+    }
+
+    // Method to record an edit that was just undone, so it can be redone
+    public void pushRedo(ItemEdit edit) {
+        redo.push(edit);
+        rows += edit.size();
+        trim(redo);
+    }
+
+    // Returns null when there is nothing to redo
+    public ItemEdit popRedo() {
+        ItemEdit edit = redo.pollFirst();
+        if (edit != null) {
+            rows -= edit.size();
+        }
+        return edit;
+    }
+
+    // Method to record an edit that was just redone, keeping the rest of the redo stack
+    public void pushUndo(ItemEdit edit) {
+        undo.push(edit);
+        rows += edit.size();
+        trim(undo);
+    }
+
+    public ItemEdit peekUndo() {
+        return undo.peekFirst();
+    }
+
+    public ItemEdit peekRedo() {
+        return redo.peekFirst();
+    }
+
+    public int getUndoCount() {
+        return undo.size();
+    }
+
+    public int getRedoCount() {
+        return redo.size();
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public void clear() {
+        undo.clear();
+        redo.clear();
+        rows = 0;
+    }
+
+    // Drops the oldest edits, the bottom of the undo stack first and then the far end of the
+    // redo stack. The edit just pushed is kept even if it is larger than maxRows on its own
+    private void trim(Deque<ItemEdit> pushed) {
+        while (undo.size() + redo.size() > maxEdits || rows > maxRows) {
+            ItemEdit dropped;
+            if (undo.size() > (pushed == undo ? 1 : 0)) {
+                dropped = undo.pollLast();
+            } else if (redo.size() > (pushed == redo ? 1 : 0)) {
+                dropped = redo.pollLast();
+            } else {
+                return;
+            }
+            rows -= dropped.size();
+        }
+    }
+}
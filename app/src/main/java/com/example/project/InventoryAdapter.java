@@ -0,0 +1,358 @@
+package com.example.project;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageButton;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Recycling adapter for the inventory panels. Only the panels that are on screen are inflated
+// and bound, rows arrive page by page through appendItems(). A long press starts selecting
+// panels for a batch edit, while a selection is open a tap adds or removes a panel
+public class InventoryAdapter extends RecyclerView.Adapter<InventoryAdapter.PanelViewHolder> {
+    private static final Metrics.Timer INFLATE = Metrics.timer("ui.inflatePanel");
+    private static final Metrics.Timer BIND = Metrics.timer("ui.bindPanel");
+
+    public interface OnEditClickListener {
+        void onEditClick(InventoryItem item);
+    }
+
+    public interface OnSelectionChangeListener {
+        void onSelectionChanged(int selectedCount);
+    }
+
+    // Selected panels are dimmed
+    private static final float SELECTED_ALPHA = 0.5f;
+
+    private final List<InventoryItem> items = new ArrayList<>();
+    // The order pages are loaded in, changed rows are placed by it
+    private ItemOrder order = ItemOrder.ID;
+    // Set by the activity showing the adapter. The adapter can outlive it, see InventoryViewModel
+    private OnEditClickListener editClickListener;
+    // Ids rather than positions, so a selection survives rows being inserted or removed
+    private final Set<Long> selectedIds = new HashSet<>();
+    private OnSelectionChangeListener selectionChangeListener;
+
+    public InventoryAdapter() {
+        // Panels keep their identity across changes, so only the changed one is rebound
+        setHasStableIds(true);
+    }
+
+    // Method to add the next page of rows to the end of the list
+    public void appendItems(List<InventoryItem> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        int start = items.size();
+        items.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    // Method to add a newly inserted row after the last loaded one
+    public void appendItem(InventoryItem item) {
+        items.add(item);
+        notifyItemInserted(items.size() - 1);
+    }
+
+    // Method to put the first page of another scope in place of the loaded rows, both in _id
+    // order. Rows in both keep their panels and are only rebound if they changed, the rest are
+    // inserted or removed one by one, so the grid isn't cleared. Like unloadItem() the selection
+    // keeps removed rows
+    public void replaceItems(List<InventoryItem> page) {
+        int position = 0;
+        for (InventoryItem row : page) {
+            while (position < items.size() && items.get(position).getId() < row.getId()) {
+                items.remove(position);
+                notifyItemRemoved(position);
+            }
+            if (position == items.size() || items.get(position).getId() > row.getId()) {
+                items.add(position, row);
+                notifyItemInserted(position);
+            } else {
+                InventoryItem loaded = items.set(position, row);
+                if (loaded.getQuantity() != row.getQuantity() || !loaded.getName().equals(row.getName()) ||
+                        loaded.getReorderThreshold() != row.getReorderThreshold()) {
+                    notifyItemChanged(position);
+                }
+            }
+            position++;
+        }
+        if (position < items.size()) {
+            int count = items.size() - position;
+            items.subList(position, items.size()).clear();
+            notifyItemRangeRemoved(position, count);
+        }
+    }
+
+    // Method to set the order of the pages to come, before the first of them is appended
+    public void setOrder(ItemOrder order) {
+        this.order = order;
+    }
+
+    // Method to add a row that belongs among the loaded ones, a deleted row put back by undo
+    // or a row that changed into the loaded range
+    public void insertItem(InventoryItem item) {
+        if (updateItem(item)) {
+            return;
+        }
+        int position = insertionPoint(item);
+        items.add(position, item);
+        notifyItemInserted(position);
+    }
+
+    // Method to replace a loaded row, returns false if it isn't loaded. In an order other
+    // than _id the row moves if the change moved it
+    public boolean updateItem(InventoryItem item) {
+        int position = positionOf(item.getId());
+        if (position < 0) {
+            return false;
+        }
+        items.set(position, item);
+        boolean inPlace = (position == 0 || order.compare(items.get(position - 1), item) < 0) &&
+                (position == items.size() - 1 || order.compare(item, items.get(position + 1)) < 0);
+        if (!inPlace) {
+            items.remove(position);
+            int newPosition = insertionPoint(item);
+            items.add(newPosition, item);
+            notifyItemMoved(position, newPosition);
+            position = newPosition;
+        }
+        notifyItemChanged(position);
+        return true;
+    }
+
+    // Method to drop a row that moved past the loaded ones, it comes back with a later page.
+    // Unlike removeItem() the selection keeps it
+    public void unloadItem(long id) {
+        int position = positionOf(id);
+        if (position >= 0) {
+            items.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+
+    // Method to remove a loaded row, returns false if it isn't loaded
+    public boolean removeItem(long id) {
+        int position = positionOf(id);
+        if (position < 0) {
+            return false;
+        }
+        items.remove(position);
+        notifyItemRemoved(position);
+        if (selectedIds.remove(id)) {
+            notifySelectionChanged();
+        }
+        return true;
+    }
+
+    public void setOnEditClickListener(OnEditClickListener listener) {
+        this.editClickListener = listener;
+    }
+
+    public void setOnSelectionChangeListener(OnSelectionChangeListener listener) {
+        this.selectionChangeListener = listener;
+    }
+
+    public boolean isSelecting() {
+        return !selectedIds.isEmpty();
+    }
+
+    public int getSelectedCount() {
+        return selectedIds.size();
+    }
+
+    // The selected rows' ids, in ascending order
+    public long[] getSelectedIds() {
+        long[] ids = new long[selectedIds.size()];
+        int i = 0;
+        for (long id : selectedIds) {
+            ids[i++] = id;
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    // Method to select rows by id, loaded or not, used when restoring saved state
+    public void setSelectedIds(long[] ids) {
+        for (long id : ids) {
+            selectedIds.add(id);
+        }
+        notifySelectionChanged();
+    }
+
+    public void clearSelection() {
+        if (selectedIds.isEmpty()) {
+            return;
+        }
+        for (long id : selectedIds) {
+            int position = positionOf(id);
+            if (position >= 0) {
+                notifyItemChanged(position);
+            }
+        }
+        selectedIds.clear();
+        notifySelectionChanged();
+    }
+
+    private void toggleSelection(long id) {
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
+        }
+        int position = positionOf(id);
+        if (position >= 0) {
+            notifyItemChanged(position);
+        }
+        notifySelectionChanged();
+    }
+
+    private void notifySelectionChanged() {
+        if (selectionChangeListener != null) {
+            selectionChangeListener.onSelectionChanged(selectedIds.size());
+        }
+    }
+
+    // In _id order a binary search finds a row without walking the list, in the other orders
+    // the id isn't the key. A missing row gives -(insertion point + 1) in _id order, like
+    // Arrays.binarySearch(), and -1 otherwise
+    private int positionOf(long id) {
+        if (order != ItemOrder.ID) {
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).getId() == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int low = 0;
+        int high = items.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = items.get(mid).getId();
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Where a row that isn't loaded goes, the first loaded row after it in the order
+    private int insertionPoint(InventoryItem item) {
+        int low = 0;
+        int high = items.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(items.get(mid), item) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Method to drop every loaded row, used before reloading from the first page. The
+    // selection is kept, its rows may come back with the new pages
+    public void clear() {
+        int count = items.size();
+        items.clear();
+        notifyItemRangeRemoved(0, count);
+    }
+
+    @NonNull
+    @Override
+    public PanelViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        long start = INFLATE.start();
+        View panelView = LayoutInflater.from(parent.getContext()).inflate(R.layout.panel_layout, parent, false);
+        PanelViewHolder holder = new PanelViewHolder(panelView);
+        INFLATE.stop(start);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PanelViewHolder holder, int position) {
+        long start = BIND.start();
+        final InventoryItem item = items.get(position);
+        holder.textViewName.setText(item.getName());
+        holder.textViewQuantity.setText(String.valueOf(item.getQuantity()));
+
+        // Set background color based on the item id, so a panel keeps its color when others change
+        int colorResId;
+        switch ((int) (item.getId() % 3)) {
+            case 0:
+                colorResId = R.color.green;
+                break;
+            case 1:
+                colorResId = R.color.blue;
+                break;
+            case 2:
+            default:
+                colorResId = R.color.red;
+                break;
+        }
+        holder.itemView.setBackgroundColor(ContextCompat.getColor(holder.itemView.getContext(), colorResId));
+
+        holder.itemView.setAlpha(selectedIds.contains(item.getId()) ? SELECTED_ALPHA : 1f);
+
+        holder.editButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (editClickListener != null) {
+                    editClickListener.onEditClick(item);
+                }
+            }
+        });
+        holder.itemView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                toggleSelection(item.getId());
+                return true;
+            }
+        });
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (isSelecting()) {
+                    toggleSelection(item.getId());
+                }
+            }
+        });
+        BIND.stop(start);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return items.get(position).getId();
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    static class PanelViewHolder extends RecyclerView.ViewHolder {
+        final TextView textViewName;
+        final TextView textViewQuantity;
+        final ImageButton editButton;
+
+        PanelViewHolder(View panelView) {
+            super(panelView);
+            textViewName = panelView.findViewById(R.id.textView_item);
+            textViewQuantity = panelView.findViewById(R.id.textView_quantity);
+            editButton = panelView.findViewById(R.id.edit_button);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.project;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Backups of iventory.db taken while the app keeps writing, and restores that replace it.
+// A backup is a consistent copy of the database as of one moment, gzipped behind a small
+// header and followed by its SHA-256:
+//   magic, format version, schema version, length, database bytes, digest
+// A restore is checked in full before it is staged next to the database, and the staged
+// file takes the database's place the next time the process opens it, before any connection
+// exists. That swap is one rename, so an interrupted restore leaves either database whole
+public class InventoryBackup {
+    private static final String TAG = "InventoryBackup";
+    // "IVBK"
+    static final int MAGIC = 0x4956424B;
+    static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Progress is reported about this often, in bytes of database
+    private static final long PROGRESS_INTERVAL = 4L * 1024 * 1024;
+    private static final String DIGEST = "SHA-256";
+    private static final int DIGEST_LENGTH = 32;
+    private static final String RESTORE_SUFFIX = "-restore";
+    private static final String STAGING_SUFFIX = "-restore-tmp";
+    private static final String[] SIDE_FILE_SUFFIXES = {"-wal", "-shm", "-journal"};
+
+    public static class Result {
+        private final int schemaVersion;
+        private final long size;
+        private final String checksum;
+
+        Result(int schemaVersion, long size, String checksum) {
+            this.schemaVersion = schemaVersion;
+            this.size = size;
+            this.checksum = checksum;
+        }
+
+        // The database version the backup was taken at, see InventoryDatabaseHelper
+        public int getSchemaVersion() {
+            return schemaVersion;
+        }
+
+        // Uncompressed, in bytes
+        public long getSize() {
+            return size;
+        }
+
+        // SHA-256 of the database, in hex
+        public String getChecksum() {
+            return checksum;
+        }
+    }
+
+    private final InventoryDatabaseHelper helper;
+    // Snapshots are written here before they are compressed, the cache directory in the app
+    private final File workDir;
+
+    public InventoryBackup(InventoryDatabaseHelper helper, File workDir) {
+        this.helper = helper;
+        this.workDir = workDir;
+    }
+
+    // VACUUM INTO came with SQLite 3.27, which Android ships from version 11
+    public boolean supportsOnlineSnapshot() {
+        String version = DatabaseUtils.stringForQuery(helper.getReadableDatabase(), "SELECT sqlite_version()", null);
+        String[] parts = version.split("\\.");
+        int major = Integer.parseInt(parts[0]);
+        int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+        return major > 3 || (major == 3 && minor >= 27);
+    }
+
+    // Method to copy the database as of one moment into a new file. Runs on a read-only
+    // connection of its own, which WAL lets read an unchanging snapshot while the helper's
+    // connections carry on writing. The copy comes out vacuumed
+    public File snapshotOnline() {
+        File snapshot = newWorkFile();
+        SQLiteDatabase source = SQLiteDatabase.openDatabase(helper.getReadableDatabase().getPath(), null,
+                SQLiteDatabase.OPEN_READONLY);
+        try {
+            source.execSQL("VACUUM INTO ?", new Object[]{snapshot.getPath()});
+        } finally {
+            source.close();
+        }
+        return snapshot;
+    }
+
+    // Method to copy the database file once the WAL has been moved into it, for devices
+    // without VACUUM INTO. Nothing may be written until it returns, InventoryRepository runs
+    // it on the writer thread. Takes as long as copying the file, compression comes after
+    public File snapshotCheckpointed() throws IOException {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+        try {
+            if (!cursor.moveToFirst() || cursor.getInt(0) != 0) {
+                throw new IOException("Could not checkpoint the WAL, a reader is holding it");
+            }
+        } finally {
+            cursor.close();
+        }
+        File snapshot = newWorkFile();
+        InputStream in = new FileInputStream(db.getPath());
+        try {
+            OutputStream out = new FileOutputStream(snapshot);
+            try {
+                copy(in, out, null, Long.MAX_VALUE, null);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return snapshot;
+    }
+
+    // Method to check a snapshot and stream it out compressed, the stream is closed when done.
+    // The snapshot is deleted either way. Progress is reported in bytes of the database
+    public Result write(File snapshot, OutputStream out, InventoryStore.ProgressListener listener) throws IOException {
+        try {
+            int schemaVersion = check(snapshot);
+            long size = snapshot.length();
+            MessageDigest digest = newDigest();
+            DataOutputStream data = new DataOutputStream(new FastGzipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE)));
+            data.writeInt(MAGIC);
+            data.writeInt(FORMAT_VERSION);
+            data.writeInt(schemaVersion);
+            data.writeLong(size);
+            InputStream in = new FileInputStream(snapshot);
+            try {
+                copy(in, data, digest, size, listener);
+            } finally {
+                in.close();
+            }
+            byte[] checksum = digest.digest();
+            data.write(checksum);
+            // Writes the GZIP trailer, an error here means the backup is incomplete
+            data.close();
+            return new Result(schemaVersion, size, toHex(checksum));
+        } finally {
+            out.close();
+            SQLiteDatabase.deleteDatabase(snapshot);
+        }
+    }
+
+    // Method to read a backup through to the end and check its checksums, without writing it anywhere
+    public Result verify(InputStream in) throws IOException {
+        return read(in, null);
+    }
+
+    // Method to check a backup and stage it to replace the database on the next start, see
+    // applyPendingRestore(). The stream is closed when done. A backup from a newer version of
+    // the app is refused, an older one is brought up to date by the usual migrations
+    public Result stageRestore(InputStream in) throws IOException {
+        File database = new File(helper.getReadableDatabase().getPath());
+        // Next to the database, so putting it in place is a rename within one file system
+        File staging = new File(database.getPath() + STAGING_SUFFIX);
+        SQLiteDatabase.deleteDatabase(staging);
+        Result result;
+        try {
+            FileOutputStream out = new FileOutputStream(staging);
+            try {
+                result = read(in, out);
+                // On disk before the rename below can put it in place
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            int schemaVersion = check(staging);
+            if (schemaVersion != result.getSchemaVersion()) {
+                throw new IOException("Backup header says version " + result.getSchemaVersion() +
+                        " but the database is at " + schemaVersion);
+            }
+        } catch (IOException | SQLException e) {
+            SQLiteDatabase.deleteDatabase(staging);
+            throw e;
+        }
+        File pending = pendingRestoreFile(database);
+        if (!staging.renameTo(pending)) {
+            SQLiteDatabase.deleteDatabase(staging);
+            throw new IOException("Could not stage the restore");
+        }
+        return result;
+    }
+
+    // Method to put a staged restore in place of the database. Only safe before anything has
+    // opened it in this process, InventoryDatabaseHelper.acquire() calls it first and then
+    // resets what lives outside the file. Returns true if a restore was applied
+    public static boolean applyPendingRestore(File database) {
+        File pending = pendingRestoreFile(database);
+        if (!pending.exists()) {
+            return false;
+        }
+        // The old WAL would be replayed into the new file, so it goes first. If the process dies
+        // in between the restore is still pending and runs again on the next start
+        for (String suffix : SIDE_FILE_SUFFIXES) {
+            new File(database.getPath() + suffix).delete();
+        }
+        if (!pending.renameTo(database)) {
+            Log.e(TAG, "Could not restore " + database + " from " + pending);
+            return false;
+        }
+        Log.i(TAG, "Restored " + database);
+        return true;
+    }
+
+    private static File pendingRestoreFile(File database) {
+        return new File(database.getPath() + RESTORE_SUFFIX);
+    }
+
+    // Reads the header and the database into out, which may be null, and checks both checksums
+    private Result read(InputStream in, OutputStream out) throws IOException {
+        DataInputStream data;
+        try {
+            data = new DataInputStream(new GZIPInputStream(new BufferedInputStream(in, BUFFER_SIZE), BUFFER_SIZE));
+        } catch (IOException e) {
+            in.close();
+            throw new IOException("Not an inventory backup", e);
+        }
+        try {
+            if (data.readInt() != MAGIC) {
+                throw new IOException("Not an inventory backup");
+            }
+            int format = data.readInt();
+            if (format != FORMAT_VERSION) {
+                throw new IOException("Unsupported backup format " + format);
+            }
+            int schemaVersion = data.readInt();
+            if (schemaVersion < 1 || schemaVersion > InventoryDatabaseHelper.DATABASE_VERSION) {
+                throw new IOException("Backup is from database version " + schemaVersion +
+                        ", this app reads up to " + InventoryDatabaseHelper.DATABASE_VERSION);
+            }
+            long size = data.readLong();
+            MessageDigest digest = newDigest();
+            copy(data, out, digest, size, null);
+            byte[] expected = new byte[DIGEST_LENGTH];
+            data.readFully(expected);
+            byte[] actual = digest.digest();
+            if (!Arrays.equals(expected, actual)) {
+                throw new IOException("Backup checksum doesn't match, the file is damaged");
+            }
+            // Reading to the end makes GZIPInputStream check its own CRC and length
+            if (data.read() != -1) {
+                throw new IOException("Unexpected data after the backup");
+            }
+            return new Result(schemaVersion, size, toHex(actual));
+        } catch (EOFException e) {
+            throw new IOException("Backup is truncated", e);
+        } finally {
+            data.close();
+        }
+    }
+
+    // Copies exactly size bytes, or everything with Long.MAX_VALUE, into out when it isn't null
+    private static void copy(InputStream in, OutputStream out, MessageDigest digest, long size,
+                             InventoryStore.ProgressListener listener) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long copied = 0;
+        long nextProgress = PROGRESS_INTERVAL;
+        while (copied < size) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, size - copied));
+            if (read == -1) {
+                if (size == Long.MAX_VALUE) {
+                    break;
+                }
+                throw new EOFException();
+            }
+            if (digest != null) {
+                digest.update(buffer, 0, read);
+            }
+            if (out != null) {
+                out.write(buffer, 0, read);
+            }
+            copied += read;
+            if (listener != null && copied >= nextProgress) {
+                listener.onProgress(copied);
+                nextProgress += PROGRESS_INTERVAL;
+            }
+        }
+        if (listener != null) {
+            listener.onProgress(copied);
+        }
+    }
+
+    // Opens the file on its own and returns its schema version if it passes quick_check.
+    // Read-write because a copy still marked as WAL can't be opened read-only without its -shm
+    private static int check(File file) throws IOException {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            String result = DatabaseUtils.stringForQuery(db, "PRAGMA quick_check", null);
+            if (!"ok".equals(result)) {
+                throw new IOException("Database failed its integrity check: " + result);
+            }
+            return db.getVersion();
+        } finally {
+            db.close();
+        }
+    }
+
+    private File newWorkFile() {
+        return new File(workDir, "backup-" + System.nanoTime() + ".db");
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    // A database compresses well even at the fastest level, which keeps a large backup
+    // bound by storage rather than by the CPU
+    private static class FastGzipOutputStream extends GZIPOutputStream {
+        FastGzipOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
@@ -0,0 +1,573 @@
+package com.example.project;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Write-through, in-memory copy of the inventory table in front of another InventoryStore.
+// The whole table is loaded on the first read. From then on reads by id, by name and by page
+// are answered from memory, and every write is applied to the store first and then to the copy.
+// Catalogs larger than the capacity aren't cached, reads then go straight to the store
+public class InventoryCache implements InventoryStore {
+    public static final int DEFAULT_CAPACITY = 50_000;
+    // Barcodes scanned recently, resolved without a query. Receiving scans the same few
+    // codes over and over, so a small LRU covers nearly every scan
+    static final int SKU_CACHE_SIZE = 1024;
+
+    private final InventoryStore store;
+    private final int capacity;
+
+    // All guarded by this
+    private final LongObjectMap<InventoryItem> itemsById;
+    private final Map<String, InventoryItem> itemsByKey;
+    // Ids of the cached rows in ascending order, for keyset pages
+    private long[] sortedIds = new long[InventoryStore.BATCH_SIZE];
+    private int count = 0;
+    private boolean loaded = false;
+    private boolean overCapacity = false;
+    // Guarded by itself, independent of the table copy. Only codes that resolved are kept
+    private final Map<String, Long> idsBySku = new LinkedHashMap<String, Long>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > SKU_CACHE_SIZE;
+        }
+    };
+
+    public InventoryCache(InventoryStore store, int capacity) {
+        this.store = store;
+        this.capacity = capacity;
+        int expected = Math.min(capacity, InventoryStore.BATCH_SIZE);
+        this.itemsById = new LongObjectMap<>(expected);
+        this.itemsByKey = new HashMap<>(expected * 2);
+    }
+
+    @Override
+    public long insertUser(String name, String email, String passwordHash) {
+        return store.insertUser(name, email, passwordHash);
+    }
+
+    @Override
+    public String getPasswordHash(String email) {
+        return store.getPasswordHash(email);
+    }
+
+    @Override
+    public void updatePasswordHash(String email, String passwordHash) {
+        store.updatePasswordHash(email, passwordHash);
+    }
+
+    @Override
+    public long insertItem(String itemName, int quantity) {
+        long id = store.insertItem(itemName, quantity);
+        if (id != -1) {
+            synchronized (this) {
+                if (loaded) {
+                    // A new row starts with the column default threshold
+                    put(new InventoryItem(id, itemName, quantity));
+                    if (count > capacity) {
+                        dropAll();
+                        loaded = false;
+                        overCapacity = true;
+                    }
+                }
+            }
+        }
+        return id;
+    }
+
+    @Override
+    public void deleteItem(long id) {
+        store.deleteItem(id);
+        synchronized (this) {
+            if (loaded) {
+                remove(id);
+            }
+        }
+        synchronized (idsBySku) {
+            idsBySku.values().removeAll(Collections.singleton(id));
+        }
+    }
+
+    @Override
+    public void adjustItemQuantity(long id, int delta) {
+        store.adjustItemQuantity(id, delta);
+        synchronized (this) {
+            InventoryItem item = loaded ? itemsById.get(id) : null;
+            if (item != null) {
+                putQuantity(item, item.getQuantity() + delta, delta < 0);
+            }
+        }
+    }
+
+    @Override
+    public void updateItemQuantity(long id, int newQuantity) {
+        store.updateItemQuantity(id, newQuantity);
+        synchronized (this) {
+            InventoryItem item = loaded ? itemsById.get(id) : null;
+            if (item != null) {
+                putQuantity(item, newQuantity, newQuantity < item.getQuantity());
+            }
+        }
+    }
+
+    // Only a decrease can stop at zero in the default location, that total is read back by
+    // primary key instead of assumed
+    private void putQuantity(InventoryItem item, int quantity, boolean decreased) {
+        if (!decreased) {
+            put(new InventoryItem(item.getId(), item.getName(), quantity, item.getReorderThreshold()));
+            return;
+        }
+        InventoryItem stored = store.getItem(item.getId());
+        if (stored != null) {
+            put(stored);
+        }
+    }
+
+    // The rollup changes the item's total in the store, which is read back by primary key
+    @Override
+    public void setStockQuantity(long itemId, long locationId, int quantity) {
+        store.setStockQuantity(itemId, locationId, quantity);
+        synchronized (this) {
+            if (loaded && itemsById.get(itemId) != null) {
+                InventoryItem item = store.getItem(itemId);
+                if (item != null) {
+                    put(item);
+                }
+            }
+        }
+    }
+
+    @Override
+    public long insertLocation(String name) {
+        return store.insertLocation(name);
+    }
+
+    @Override
+    public List<Location> getLocations() {
+        return store.getLocations();
+    }
+
+    // Per-location quantities aren't cached, the location index answers these directly
+    @Override
+    public List<InventoryItem> getLocationItemsPage(long locationId, long afterId, int limit) {
+        return store.getLocationItemsPage(locationId, afterId, limit);
+    }
+
+    // Categories aren't cached either. Filing an item doesn't change its cached row, and the
+    // subtree totals are read from the category rows
+    @Override
+    public long insertCategory(long parentId, String name) {
+        return store.insertCategory(parentId, name);
+    }
+
+    @Override
+    public List<Category> getCategories(long parentId) {
+        return store.getCategories(parentId);
+    }
+
+    @Override
+    public List<Category> getCategoryPath(long id) {
+        return store.getCategoryPath(id);
+    }
+
+    @Override
+    public boolean moveCategory(long id, long newParentId) {
+        return store.moveCategory(id, newParentId);
+    }
+
+    @Override
+    public boolean deleteCategory(long id) {
+        return store.deleteCategory(id);
+    }
+
+    @Override
+    public boolean setItemCategory(long[] itemIds, long categoryId) {
+        return store.setItemCategory(itemIds, categoryId);
+    }
+
+    @Override
+    public List<InventoryItem> getCategoryItemsPage(long categoryId, long afterId, int limit) {
+        return store.getCategoryItemsPage(categoryId, afterId, limit);
+    }
+
+    @Override
+    public boolean updateItemName(long id, String newName) {
+        boolean renamed = store.updateItemName(id, newName);
+        if (renamed) {
+            synchronized (this) {
+                InventoryItem item = loaded ? itemsById.get(id) : null;
+                if (item != null) {
+                    put(new InventoryItem(id, newName, item.getQuantity(), item.getReorderThreshold()));
+                }
+            }
+        }
+        return renamed;
+    }
+
+    @Override
+    public void updateReorderThreshold(long id, int threshold) {
+        store.updateReorderThreshold(id, threshold);
+        synchronized (this) {
+            InventoryItem item = loaded ? itemsById.get(id) : null;
+            if (item != null) {
+                put(new InventoryItem(id, item.getName(), item.getQuantity(), threshold));
+            }
+        }
+    }
+
+    @Override
+    public void deleteItems(long[] ids) {
+        store.deleteItems(ids);
+        synchronized (this) {
+            if (loaded) {
+                for (long id : ids) {
+                    InventoryItem previous = itemsById.remove(id);
+                    if (previous != null) {
+                        itemsByKey.remove(InventoryItem.normalizeName(previous.getName()));
+                    }
+                }
+                // One pass over the sorted ids instead of a shift per removed row
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    if (itemsById.get(sortedIds[i]) != null) {
+                        sortedIds[kept++] = sortedIds[i];
+                    }
+                }
+                count = kept;
+            }
+        }
+        long[] deleted = Arrays.copyOf(ids, ids.length);
+        Arrays.sort(deleted);
+        synchronized (idsBySku) {
+            Iterator<Long> it = idsBySku.values().iterator();
+            while (it.hasNext()) {
+                if (Arrays.binarySearch(deleted, it.next()) >= 0) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    // The store says what each row changed by, where the default location stopped at zero
+    @Override
+    public int[] adjustItemQuantities(long[] ids, int[] deltas) {
+        int[] applied = store.adjustItemQuantities(ids, deltas);
+        synchronized (this) {
+            for (int i = 0; loaded && i < ids.length; i++) {
+                InventoryItem item = itemsById.get(ids[i]);
+                if (item != null) {
+                    put(new InventoryItem(ids[i], item.getName(), item.getQuantity() + applied[i],
+                            item.getReorderThreshold()));
+                }
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public boolean updateItemNames(long[] ids, String[] names) {
+        boolean renamed = store.updateItemNames(ids, names);
+        if (renamed) {
+            synchronized (this) {
+                // Every old name leaves the key index before any new one goes in, names can
+                // move between the renamed items
+                for (int i = 0; loaded && i < ids.length; i++) {
+                    InventoryItem item = itemsById.get(ids[i]);
+                    if (item != null) {
+                        itemsByKey.remove(InventoryItem.normalizeName(item.getName()));
+                    }
+                }
+                for (int i = 0; loaded && i < ids.length; i++) {
+                    InventoryItem item = itemsById.get(ids[i]);
+                    if (item != null) {
+                        item = new InventoryItem(ids[i], names[i], item.getQuantity(), item.getReorderThreshold());
+                        itemsById.put(ids[i], item);
+                        itemsByKey.put(InventoryItem.normalizeName(names[i]), item);
+                    }
+                }
+            }
+        }
+        return renamed;
+    }
+
+    @Override
+    public boolean restoreItems(List<InventoryItem> items, String[] skus) {
+        boolean restored = store.restoreItems(items, skus);
+        if (restored) {
+            synchronized (this) {
+                if (loaded) {
+                    for (InventoryItem item : items) {
+                        put(item);
+                    }
+                    if (count > capacity) {
+                        dropAll();
+                        loaded = false;
+                        overCapacity = true;
+                    }
+                }
+            }
+        }
+        return restored;
+    }
+
+    @Override
+    public List<InventoryItem> getLowStockItems() {
+        synchronized (this) {
+            if (ensureLoaded()) {
+                List<InventoryItem> items = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    InventoryItem item = itemsById.get(sortedIds[i]);
+                    if (item.isLowStock()) {
+                        items.add(item);
+                    }
+                }
+                return items;
+            }
+        }
+        return store.getLowStockItems();
+    }
+
+    @Override
+    public InventoryItem getItem(long id) {
+        synchronized (this) {
+            if (ensureLoaded()) {
+                return itemsById.get(id);
+            }
+        }
+        return store.getItem(id);
+    }
+
+    @Override
+    public InventoryItem findItemByName(String name) {
+        synchronized (this) {
+            if (ensureLoaded()) {
+                return itemsByKey.get(InventoryItem.normalizeName(name));
+            }
+        }
+        return store.findItemByName(name);
+    }
+
+    @Override
+    public long findItemIdBySku(String sku) {
+        synchronized (idsBySku) {
+            Long id = idsBySku.get(sku);
+            if (id != null) {
+                return id;
+            }
+        }
+        long id = store.findItemIdBySku(sku);
+        if (id != -1) {
+            synchronized (idsBySku) {
+                idsBySku.put(sku, id);
+            }
+        }
+        return id;
+    }
+
+    @Override
+    public String getItemSku(long id) {
+        return store.getItemSku(id);
+    }
+
+    @Override
+    public boolean updateItemSku(long id, String sku) {
+        boolean updated = store.updateItemSku(id, sku);
+        if (updated) {
+            synchronized (idsBySku) {
+                // The item's old code no longer resolves
+                idsBySku.values().removeAll(Collections.singleton(id));
+                if (sku != null) {
+                    idsBySku.put(sku, id);
+                }
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public List<InventoryItem> getItemsPage(long afterId, int limit) {
+        synchronized (this) {
+            if (ensureLoaded()) {
+                int start = indexOf(afterId);
+                // Not cached means the position it would be inserted at, the first id after it
+                start = start >= 0 ? start + 1 : -(start + 1);
+                int end = Math.min(count, start + limit);
+                List<InventoryItem> page = new ArrayList<>(Math.max(0, end - start));
+                for (int i = start; i < end; i++) {
+                    page.add(itemsById.get(sortedIds[i]));
+                }
+                return page;
+            }
+        }
+        return store.getItemsPage(afterId, limit);
+    }
+
+    // Only _id order is kept in memory, the other orders come sorted from the store's indexes
+    @Override
+    public List<InventoryItem> getSortedItemsPage(ItemOrder order, boolean inStockOnly, InventoryItem after, int limit) {
+        if (order == ItemOrder.ID && !inStockOnly) {
+            return getItemsPage(after == null ? 0 : after.getId(), limit);
+        }
+        return store.getSortedItemsPage(order, inStockOnly, after, limit);
+    }
+
+    // Searches use the store's full-text index
+    @Override
+    public List<InventoryItem> searchItems(String query, long afterId, int limit) {
+        return store.searchItems(query, afterId, limit);
+    }
+
+    // The ledger isn't cached, history is read far less often than the current levels
+    @Override
+    public List<StockMovement> getMovements(long itemId, long fromMillis, StockMovement after, int limit) {
+        return store.getMovements(itemId, fromMillis, after, limit);
+    }
+
+    @Override
+    public int getQuantityAt(long itemId, long atMillis) {
+        return store.getQuantityAt(itemId, atMillis);
+    }
+
+    @Override
+    public int compactMovements(long beforeMillis) {
+        return store.compactMovements(beforeMillis);
+    }
+
+    @Override
+    public List<StockMovement> getMovementsAfter(long afterId, int limit) {
+        return store.getMovementsAfter(afterId, limit);
+    }
+
+    @Override
+    public long findFirstMovementId(long fromMillis) {
+        return store.findFirstMovementId(fromMillis);
+    }
+
+    @Override
+    public String getSyncState(String key) {
+        return store.getSyncState(key);
+    }
+
+    @Override
+    public void setSyncState(String key, String value) {
+        store.setSyncState(key, value);
+    }
+
+    @Override
+    public List<SyncChange> getUnsyncedChanges(long afterId, int limit) {
+        return store.getUnsyncedChanges(afterId, limit);
+    }
+
+    // Remote changes can touch any number of rows, so they replace the copy like an import
+    @Override
+    public void applyRemoteChanges(List<SyncChange> changes, String cursorKey, String cursorValue) {
+        try {
+            store.applyRemoteChanges(changes, cursorKey, cursorValue);
+        } finally {
+            if (!changes.isEmpty()) {
+                invalidate();
+            }
+        }
+    }
+
+    // Bulk writes replace the copy: it is dropped and loaded again on the next read
+    @Override
+    public int upsertItems(Iterator<InventoryItem> items, ProgressListener listener) {
+        try {
+            return store.upsertItems(items, listener);
+        } finally {
+            invalidate();
+        }
+    }
+
+    // Export streams from the store's cursor, it doesn't need the copy
+    @Override
+    public void forEachItem(ItemVisitor visitor) throws IOException {
+        store.forEachItem(visitor);
+    }
+
+    // Method to drop the copy, the next read loads it again. Also gives a catalog that
+    // outgrew the capacity another chance once it has shrunk
+    public synchronized void invalidate() {
+        dropAll();
+        loaded = false;
+        overCapacity = false;
+    }
+
+    // Returns true if reads can be answered from memory
+    private boolean ensureLoaded() {
+        if (loaded) {
+            return true;
+        }
+        if (overCapacity) {
+            return false;
+        }
+        // Loaded a page at a time, so the store never holds a cursor over the whole table
+        long afterId = 0;
+        List<InventoryItem> page;
+        do {
+            page = store.getItemsPage(afterId, InventoryStore.BATCH_SIZE);
+            for (InventoryItem item : page) {
+                put(item);
+                afterId = item.getId();
+            }
+            if (count > capacity) {
+                dropAll();
+                overCapacity = true;
+                return false;
+            }
+        } while (page.size() == InventoryStore.BATCH_SIZE);
+        loaded = true;
+        return true;
+    }
+
+    // Adds or replaces a row in every index
+    private void put(InventoryItem item) {
+        InventoryItem previous = itemsById.put(item.getId(), item);
+        if (previous != null) {
+            itemsByKey.remove(InventoryItem.normalizeName(previous.getName()));
+        } else {
+            insertId(item.getId());
+        }
+        itemsByKey.put(InventoryItem.normalizeName(item.getName()), item);
+    }
+
+    private void remove(long id) {
+        InventoryItem previous = itemsById.remove(id);
+        if (previous == null) {
+            return;
+        }
+        itemsByKey.remove(InventoryItem.normalizeName(previous.getName()));
+        int index = indexOf(id);
+        System.arraycopy(sortedIds, index + 1, sortedIds, index, count - index - 1);
+        count--;
+    }
+
+    private void dropAll() {
+        itemsById.clear();
+        itemsByKey.clear();
+        sortedIds = new long[InventoryStore.BATCH_SIZE];
+        count = 0;
+    }
+
+    private void insertId(long id) {
+        if (count == sortedIds.length) {
+            sortedIds = Arrays.copyOf(sortedIds, count * 2);
+        }
+        // New rows get the highest id so far, which makes this an append
+        int index = count == 0 || sortedIds[count - 1] < id ? count : -(indexOf(id) + 1);
+        System.arraycopy(sortedIds, index, sortedIds, index + 1, count - index);
+        sortedIds[index] = id;
+        count++;
+    }
+
+    private int indexOf(long id) {
+        return Arrays.binarySearch(sortedIds, 0, count, id);
+    }
+}
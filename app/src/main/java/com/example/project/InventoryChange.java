@@ -0,0 +1,51 @@
+package com.example.project;
+
+// A single row-level change published by InventoryRepository after a write has been applied
+public class InventoryChange {
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE,
+        // Too many rows changed to describe one by one (bulk import), reload from the start
+        RELOAD
+    }
+
+    private final Type type;
+    private final long id;
+    private final InventoryItem item;
+
+    private InventoryChange(Type type, long id, InventoryItem item) {
+        this.type = type;
+        this.id = id;
+        this.item = item;
+    }
+
+    public static InventoryChange inserted(InventoryItem item) {
+        return new InventoryChange(Type.INSERT, item.getId(), item);
+    }
+
+    public static InventoryChange updated(InventoryItem item) {
+        return new InventoryChange(Type.UPDATE, item.getId(), item);
+    }
+
+    public static InventoryChange deleted(long id) {
+        return new InventoryChange(Type.DELETE, id, null);
+    }
+
+    public static InventoryChange reload() {
+        return new InventoryChange(Type.RELOAD, -1, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    // The row as it is after the change, null for DELETE and RELOAD
+    public InventoryItem getItem() {
+        return item;
+    }
+}
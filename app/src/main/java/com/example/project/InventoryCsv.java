@@ -0,0 +1,191 @@
+package com.example.project;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Bulk CSV import and export for the inventory. Files use an "item,qty" header. Import streams
+// records straight from the parser into InventoryStore.upsertItems(), which applies them in
+// batched transactions; export streams rows from the store's cursor to the writer
+public class InventoryCsv {
+    public static final String HEADER_ITEM = "item";
+    public static final String HEADER_QTY = "qty";
+
+    public static class ImportResult {
+        private final int imported;
+        private final int skipped;
+
+        ImportResult(int imported, int skipped) {
+            this.imported = imported;
+            this.skipped = skipped;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        // Records with an empty name or a quantity that isn't a whole number
+        public int getSkipped() {
+            return skipped;
+        }
+    }
+
+    private final InventoryStore store;
+
+    public InventoryCsv(InventoryStore store) {
+        this.store = store;
+    }
+
+    // Method to insert new items and overwrite the quantity of existing ones from CSV
+    public ImportResult importFrom(Reader source, InventoryStore.ProgressListener listener) throws IOException {
+        CsvReader reader = new CsvReader(source);
+        RecordIterator records = new RecordIterator(reader);
+        try {
+            int imported = store.upsertItems(records, listener);
+            return new ImportResult(imported, records.skipped);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Method to write every item as CSV, returns the number of rows written
+    public int exportTo(final Writer target, final InventoryStore.ProgressListener listener) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        final int[] count = {0};
+        line.append(HEADER_ITEM).append(',').append(HEADER_QTY).append("\r\n");
+        target.write(line.toString());
+        store.forEachItem(new InventoryStore.ItemVisitor() {
+            @Override
+            public void visit(InventoryItem item) throws IOException {
+                line.setLength(0);
+                appendField(line, item.getName());
+                line.append(',').append(item.getQuantity()).append("\r\n");
+                target.write(line.toString());
+                count[0]++;
+                if (listener != null && count[0] % InventoryStore.BATCH_SIZE == 0) {
+                    listener.onProgress(count[0]);
+                }
+            }
+        });
+        target.flush();
+        if (listener != null) {
+            listener.onProgress(count[0]);
+        }
+        return count[0];
+    }
+
+    static void appendField(StringBuilder line, String value) {
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!needsQuotes) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    // Turns CSV records into items lazily, so nothing beyond the current record is held in memory
+    private static class RecordIterator implements Iterator<InventoryItem> {
+        private final CsvReader reader;
+        private int itemColumn = 0;
+        private int qtyColumn = 1;
+        private boolean firstRecord = true;
+        private InventoryItem next;
+        private int skipped = 0;
+
+        RecordIterator(CsvReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null) {
+                    List<String> record = reader.readRecord();
+                    if (record == null) {
+                        return false;
+                    }
+                    if (firstRecord) {
+                        firstRecord = false;
+                        if (readHeader(record)) {
+                            continue;
+                        }
+                    }
+                    next = toItem(record);
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public InventoryItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            InventoryItem item = next;
+            next = null;
+            return item;
+        }
+
+        // Returns true if the record is a header, in which case its column order is used
+        private boolean readHeader(List<String> record) {
+            int item = -1;
+            int qty = -1;
+            for (int i = 0; i < record.size(); i++) {
+                String name = record.get(i).trim();
+                if (HEADER_ITEM.equalsIgnoreCase(name)) {
+                    item = i;
+                } else if (HEADER_QTY.equalsIgnoreCase(name)) {
+                    qty = i;
+                }
+            }
+            if (item == -1 || qty == -1) {
+                return false;
+            }
+            itemColumn = item;
+            qtyColumn = qty;
+            return true;
+        }
+
+        private InventoryItem toItem(List<String> record) {
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                // Blank line
+                return null;
+            }
+            if (record.size() <= Math.max(itemColumn, qtyColumn)) {
+                skipped++;
+                return null;
+            }
+            String name = record.get(itemColumn).trim();
+            if (name.isEmpty()) {
+                skipped++;
+                return null;
+            }
+            try {
+                return new InventoryItem(0, name, Integer.parseInt(record.get(qtyColumn).trim()));
+            } catch (NumberFormatException e) {
+                skipped++;
+                return null;
+            }
+        }
+    }
+}
@@ -1,17 +1,77 @@
 package com.example.project;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
-public class InventoryDatabaseHelper extends SQLiteOpenHelper {
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class InventoryDatabaseHelper extends SQLiteOpenHelper implements InventoryStore {
 
     private static final String DATABASE_NAME = "iventory.db";
-    private static final int DATABASE_VERSION = 1;
+    // Bump together with a new case in migrate()
+    static final int DATABASE_VERSION = 12;
+
+    private static InventoryDatabaseHelper instance;
+    private static int referenceCount = 0;
+
+    // Compiled statements for the hot write paths, reused until the connection is closed
+    private final Map<String, SQLiteStatement> statementCache = new HashMap<>();
 
     public InventoryDatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    // Lets tests and benchmarks work on their own database file, null means in-memory
+    InventoryDatabaseHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    // Method to get the process-wide helper and hold a reference to its connection.
+    // Every acquire() must be paired with a release()
+    public static synchronized InventoryDatabaseHelper acquire(Context context) {
+        if (instance == null) {
+            // Nothing has the file open yet, so a restore staged by the last run can replace it
+            boolean restored = InventoryBackup.applyPendingRestore(context.getDatabasePath(DATABASE_NAME));
+            instance = new InventoryDatabaseHelper(context.getApplicationContext());
+            if (restored) {
+                afterRestore(context.getApplicationContext(), instance);
+            }
+        }
+        referenceCount++;
+        return instance;
+    }
+
+    // Nothing kept outside the database may describe the data it replaced. The sync state is
+    // fixed before anyone can sync, and the first page snapshot is dropped before the
+    // repository reads it
+    private static void afterRestore(Context appContext, InventoryDatabaseHelper helper) {
+        helper.resetSyncAfterRestore();
+        new File(appContext.getFilesDir(), InventoryRepository.SNAPSHOT_FILE).delete();
+    }
+
+    // Method to drop a reference, the connection is closed once the last holder lets go
+    public static synchronized void release() {
+        if (referenceCount == 0) {
+            return;
+        }
+        referenceCount--;
+        if (referenceCount == 0 && instance != null) {
+            instance.close();
+        }
     }
 
     public static final class InventoryTable {
@@ -19,8 +79,228 @@ public class InventoryDatabaseHelper extends SQLiteOpenHelper {
         public static final String COL_ID = "_id";
         public static final String COL_ITEM = "item";
         public static final String COL_QTY = "qty";
+        // Normalized form of item, see InventoryItem.normalizeName(). Unique, so lookups and
+        // duplicate checks are index seeks
+        public static final String COL_ITEM_KEY = "item_key";
+        public static final String INDEX_ITEM_KEY = "idx_inventory_item_key";
+        // Low-stock alerts fire when qty drops to or below this
+        public static final String COL_REORDER_THRESHOLD = "reorder_threshold";
+        // Barcode or SKU, null for items without one. Unique among the items that have one
+        public static final String COL_SKU = "sku";
+        public static final String INDEX_SKU = "idx_inventory_sku";
+        // Covering indexes for the sorted grid, see getSortedItemsPage()
+        public static final String INDEX_NAME_ORDER = "idx_inventory_name_order";
+        public static final String INDEX_QTY_ORDER = "idx_inventory_qty_order";
+        // Null for items not filed under a category
+        public static final String COL_CATEGORY_ID = "category_id";
+        public static final String INDEX_CATEGORY = "idx_inventory_category";
+    }
+
+    // Full-text index over inventory.item for search. External content table: it stores only
+    // the index, names are read from inventory. Kept in sync by the triggers below
+    public static final class InventorySearchTable {
+        public static final String TABLE = "inventory_fts";
+        public static final String COL_ITEM = "item";
+        public static final String TRIGGER_INSERT = "inventory_fts_after_insert";
+        public static final String TRIGGER_BEFORE_UPDATE = "inventory_fts_before_update";
+        public static final String TRIGGER_AFTER_UPDATE = "inventory_fts_after_update";
+        public static final String TRIGGER_DELETE = "inventory_fts_before_delete";
+    }
+
+    // Append-only ledger of quantity changes, written by triggers on inventory so every write
+    // path (edits, inserts, imports, deletes) is recorded without an extra round trip
+    public static final class StockMovementTable {
+        public static final String TABLE = "stock_movements";
+        public static final String COL_ID = "_id";
+        public static final String COL_ITEM_ID = "item_id";
+        public static final String COL_DELTA = "delta";
+        public static final String COL_QTY_AFTER = "qty_after";
+        // Milliseconds since the epoch
+        public static final String COL_CREATED_AT = "created_at";
+        public static final String INDEX_ITEM_TIME = "idx_stock_movements_item_time";
+        public static final String INDEX_TIME = "idx_stock_movements_time";
+        public static final String TRIGGER_INSERT = "stock_movements_after_insert";
+        public static final String TRIGGER_UPDATE = "stock_movements_after_update";
+        public static final String TRIGGER_DELETE = "stock_movements_before_delete";
+        // 1 for movements applied from other devices by sync, which are never pushed back
+        public static final String COL_REMOTE = "remote";
+    }
+
+    // Key-value bookkeeping for SyncEngine: device id and the push and pull cursors
+    public static final class SyncStateTable {
+        public static final String TABLE = "sync_state";
+        public static final String COL_KEY = "key";
+        public static final String COL_VALUE = "value";
+    }
+
+    // Per item opening balance for the ledger: the level left by the last movement that was
+    // compacted away, so history that is still kept always starts from a known level
+    public static final class StockSnapshotTable {
+        public static final String TABLE = "stock_snapshots";
+        public static final String COL_ITEM_ID = "item_id";
+        public static final String COL_QTY = "qty";
+        public static final String COL_AS_OF = "as_of";
+        public static final String COL_LAST_MOVEMENT_ID = "last_movement_id";
+    }
+
+    // Stockrooms. Location.DEFAULT_ID is created with the table and can't be removed
+    public static final class LocationTable {
+        public static final String TABLE = "locations";
+        public static final String COL_ID = "_id";
+        public static final String COL_NAME = "name";
+    }
+
+    // Quantity of each item per location. inventory.qty is the rollup of these rows, kept
+    // current by triggers that add each row's change to its item: one primary key seek per
+    // write however many locations and items there are, and no GROUP BY on reads
+    public static final class StockTable {
+        public static final String TABLE = "stock";
+        public static final String COL_ITEM_ID = "item_id";
+        public static final String COL_LOCATION_ID = "location_id";
+        public static final String COL_QTY = "qty";
+        public static final String INDEX_LOCATION_ITEM = "idx_stock_location_item";
+        public static final String TRIGGER_ROLLUP_INSERT = "stock_rollup_after_insert";
+        public static final String TRIGGER_ROLLUP_UPDATE = "stock_rollup_after_update";
+        public static final String TRIGGER_ROLLUP_DELETE = "stock_rollup_after_delete";
+        public static final String TRIGGER_ITEM_INSERT = "stock_after_item_insert";
+        public static final String TRIGGER_ITEM_DELETE = "stock_after_item_delete";
+    }
+
+    // The category tree. item_count and units are the subtree totals, kept current by triggers
+    // on inventory that add each item's change to its category's ancestors, found through the
+    // closure table: a handful of primary key writes per edit however deep or wide the tree
+    public static final class CategoryTable {
+        public static final String TABLE = "categories";
+        public static final String COL_ID = "_id";
+        // Category.ROOT for the top level
+        public static final String COL_PARENT_ID = "parent_id";
+        public static final String COL_NAME = "name";
+        public static final String COL_ITEM_COUNT = "item_count";
+        public static final String COL_UNITS = "units";
+        // Unique among siblings, and serves the children of a category in name order
+        public static final String INDEX_PARENT_NAME = "idx_categories_parent_name";
+        public static final String TRIGGER_INSERT = "categories_after_insert";
+        public static final String TRIGGER_ITEM_INSERT = "categories_after_item_insert";
+        public static final String TRIGGER_ITEM_QTY = "categories_after_item_qty";
+        public static final String TRIGGER_ITEM_MOVE = "categories_after_item_move";
+        public static final String TRIGGER_ITEM_DELETE = "categories_after_item_delete";
+    }
+
+    // One row per category and each of its ancestors, itself included at depth 0. A subtree
+    // is a primary key range on the ancestor, the path to the top an index range on the descendant
+    public static final class CategoryClosureTable {
+        public static final String TABLE = "category_closure";
+        public static final String COL_ANCESTOR_ID = "ancestor_id";
+        public static final String COL_DESCENDANT_ID = "descendant_id";
+        public static final String COL_DEPTH = "depth";
+        public static final String INDEX_DESCENDANT = "idx_category_closure_descendant";
+    }
+
+    // One row per DatabaseMaintenance run, what it did and what it changed
+    public static final class MaintenanceLogTable {
+        public static final String TABLE = "maintenance_log";
+        public static final String COL_ID = "_id";
+        // Milliseconds since the epoch
+        public static final String COL_STARTED_AT = "started_at";
+        public static final String COL_DURATION_MILLIS = "duration_millis";
+        // Main file plus WAL, in bytes
+        public static final String COL_SIZE_BEFORE = "size_before";
+        public static final String COL_SIZE_AFTER = "size_after";
+        // Total of DatabaseMaintenance's probe queries, in microseconds
+        public static final String COL_PROBE_MICROS_BEFORE = "probe_micros_before";
+        public static final String COL_PROBE_MICROS_AFTER = "probe_micros_after";
+        public static final String COL_PAGES_FREED = "pages_freed";
+        // 1 if the integrity check ran and passed, 0 if it failed, null if it didn't run
+        public static final String COL_INTEGRITY_OK = "integrity_ok";
+        // 0 if the run was stopped or ran out of time before every step
+        public static final String COL_COMPLETED = "completed";
     }
 
+    // Columns read into a StockMovement by readMovement(), in order
+    private static final String MOVEMENT_COLUMNS = StockMovementTable.COL_ID + ", " +
+            StockMovementTable.COL_ITEM_ID + ", " + StockMovementTable.COL_DELTA + ", " +
+            StockMovementTable.COL_QTY_AFTER + ", " + StockMovementTable.COL_CREATED_AT;
+
+    // Columns read into an InventoryItem by readItem(), in order
+    private static final String ITEM_COLUMNS = InventoryTable.COL_ID + ", " + InventoryTable.COL_ITEM + ", " +
+            InventoryTable.COL_QTY + ", " + InventoryTable.COL_REORDER_THRESHOLD;
+
+    // Statements the JVM benchmarks in src/test also run, through JDBC against a copy of the schema
+    static final String INSERT_ITEM_SQL = "INSERT INTO " + InventoryTable.TABLE + " (" +
+            InventoryTable.COL_ITEM + ", " + InventoryTable.COL_ITEM_KEY + ", " + InventoryTable.COL_QTY + ") VALUES (?, ?, ?)";
+    static final String DELETE_ITEM_SQL = "DELETE FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_ID + "=?";
+    // The default location stops at zero, a total below the other locations' stock leaves them as they are
+    static final String UPDATE_ITEM_QUANTITY_SQL = "UPDATE " + StockTable.TABLE +
+            " SET " + StockTable.COL_QTY + " = MAX(0, " + StockTable.COL_QTY + " + ? - (SELECT " + InventoryTable.COL_QTY +
+            " FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_ID + " = ?))" +
+            " WHERE " + StockTable.COL_ITEM_ID + " = ? AND " + StockTable.COL_LOCATION_ID + " = " + Location.DEFAULT_ID;
+    static final String ITEMS_PAGE_SQL = "SELECT " + ITEM_COLUMNS + " FROM " + InventoryTable.TABLE +
+            " WHERE " + InventoryTable.COL_ID + " > ? ORDER BY " + InventoryTable.COL_ID + " LIMIT ?";
+    static final String PASSWORD_HASH_SQL = "SELECT " + UserTable.COL_PASSWORD + " FROM " + UserTable.TABLE +
+            " WHERE " + UserTable.COL_EMAIL + " = ?";
+
+    // Category statements, run by the category methods below in the order they use them
+    private static final String CATEGORY_COLUMNS = CategoryTable.COL_ID + ", " + CategoryTable.COL_PARENT_ID + ", " +
+            CategoryTable.COL_NAME + ", " + CategoryTable.COL_ITEM_COUNT + ", " + CategoryTable.COL_UNITS;
+    private static final String SUBTREE_OF = " IN (SELECT " + CategoryClosureTable.COL_DESCENDANT_ID + " FROM " +
+            CategoryClosureTable.TABLE + " WHERE " + CategoryClosureTable.COL_ANCESTOR_ID + " = ?)";
+    private static final String ANCESTORS_OF = " IN (SELECT " + CategoryClosureTable.COL_ANCESTOR_ID + " FROM " +
+            CategoryClosureTable.TABLE + " WHERE " + CategoryClosureTable.COL_DESCENDANT_ID + " = ? AND " +
+            CategoryClosureTable.COL_DEPTH + " > 0)";
+    static final String INSERT_CATEGORY_SQL = "INSERT INTO " + CategoryTable.TABLE + " (" +
+            CategoryTable.COL_PARENT_ID + ", " + CategoryTable.COL_NAME + ") VALUES (?, ?)";
+    static final String CATEGORY_SQL = "SELECT " + CATEGORY_COLUMNS + " FROM " + CategoryTable.TABLE +
+            " WHERE " + CategoryTable.COL_ID + " = ?";
+    static final String CHILD_CATEGORIES_SQL = "SELECT " + CATEGORY_COLUMNS + " FROM " + CategoryTable.TABLE +
+            " WHERE " + CategoryTable.COL_PARENT_ID + " = ? ORDER BY " + CategoryTable.COL_NAME + " COLLATE NOCASE";
+    static final String CATEGORY_PATH_SQL = "SELECT c." + CategoryTable.COL_ID + ", c." + CategoryTable.COL_PARENT_ID +
+            ", c." + CategoryTable.COL_NAME + ", c." + CategoryTable.COL_ITEM_COUNT + ", c." + CategoryTable.COL_UNITS +
+            " FROM " + CategoryClosureTable.TABLE + " p JOIN " + CategoryTable.TABLE + " c ON c." + CategoryTable.COL_ID +
+            " = p." + CategoryClosureTable.COL_ANCESTOR_ID + " WHERE p." + CategoryClosureTable.COL_DESCENDANT_ID +
+            " = ? ORDER BY p." + CategoryClosureTable.COL_DEPTH + " DESC";
+    // Bound with a category and an ancestor candidate, 1 if it is one (or the same category)
+    static final String IS_ANCESTOR_SQL = "SELECT COUNT(*) FROM " + CategoryClosureTable.TABLE + " WHERE " +
+            CategoryClosureTable.COL_ANCESTOR_ID + " = ? AND " + CategoryClosureTable.COL_DESCENDANT_ID + " = ?";
+    // Item count and units to add to every ancestor of a category, itself left out
+    static final String ADJUST_ANCESTORS_SQL = "UPDATE " + CategoryTable.TABLE + " SET " +
+            CategoryTable.COL_ITEM_COUNT + " = " + CategoryTable.COL_ITEM_COUNT + " + ?, " +
+            CategoryTable.COL_UNITS + " = " + CategoryTable.COL_UNITS + " + ? WHERE " + CategoryTable.COL_ID + ANCESTORS_OF;
+    static final String SET_CATEGORY_PARENT_SQL = "UPDATE " + CategoryTable.TABLE + " SET " +
+            CategoryTable.COL_PARENT_ID + " = ? WHERE " + CategoryTable.COL_ID + " = ?";
+    // Cuts a subtree from the ancestors above its top, bound with the top twice
+    static final String DETACH_SUBTREE_SQL = "DELETE FROM " + CategoryClosureTable.TABLE + " WHERE " +
+            CategoryClosureTable.COL_DESCENDANT_ID + SUBTREE_OF + " AND " + CategoryClosureTable.COL_ANCESTOR_ID +
+            " NOT" + SUBTREE_OF;
+    // Joins a subtree under a new parent: every ancestor of the parent, itself included, to every
+    // category of the subtree. Bound with the parent and the top of the subtree
+    static final String ATTACH_SUBTREE_SQL = "INSERT INTO " + CategoryClosureTable.TABLE + " SELECT a." +
+            CategoryClosureTable.COL_ANCESTOR_ID + ", d." + CategoryClosureTable.COL_DESCENDANT_ID + ", a." +
+            CategoryClosureTable.COL_DEPTH + " + d." + CategoryClosureTable.COL_DEPTH + " + 1 FROM " +
+            CategoryClosureTable.TABLE + " a, " + CategoryClosureTable.TABLE + " d WHERE a." +
+            CategoryClosureTable.COL_DESCENDANT_ID + " = ? AND d." + CategoryClosureTable.COL_ANCESTOR_ID + " = ?";
+    static final String REPARENT_CHILDREN_SQL = "UPDATE " + CategoryTable.TABLE + " SET " +
+            CategoryTable.COL_PARENT_ID + " = ? WHERE " + CategoryTable.COL_PARENT_ID + " = ?";
+    static final String REFILE_ITEMS_SQL = "UPDATE " + InventoryTable.TABLE + " SET " +
+            InventoryTable.COL_CATEGORY_ID + " = ? WHERE " + InventoryTable.COL_CATEGORY_ID + " = ?";
+    // The paths through a category that is going away get one step shorter, bound with it twice
+    static final String SHORTEN_PATHS_SQL = "UPDATE " + CategoryClosureTable.TABLE + " SET " +
+            CategoryClosureTable.COL_DEPTH + " = " + CategoryClosureTable.COL_DEPTH + " - 1 WHERE " +
+            CategoryClosureTable.COL_DESCENDANT_ID + " IN (SELECT " + CategoryClosureTable.COL_DESCENDANT_ID + " FROM " +
+            CategoryClosureTable.TABLE + " WHERE " + CategoryClosureTable.COL_ANCESTOR_ID + " = ? AND " +
+            CategoryClosureTable.COL_DEPTH + " > 0) AND " + CategoryClosureTable.COL_ANCESTOR_ID + ANCESTORS_OF;
+    static final String DELETE_CATEGORY_DESCENDANTS_SQL = "DELETE FROM " + CategoryClosureTable.TABLE + " WHERE " +
+            CategoryClosureTable.COL_ANCESTOR_ID + " = ?";
+    static final String DELETE_CATEGORY_ANCESTORS_SQL = "DELETE FROM " + CategoryClosureTable.TABLE + " WHERE " +
+            CategoryClosureTable.COL_DESCENDANT_ID + " = ?";
+    static final String DELETE_CATEGORY_SQL = "DELETE FROM " + CategoryTable.TABLE + " WHERE " +
+            CategoryTable.COL_ID + " = ?";
+    static final String SET_ITEM_CATEGORY_SQL = "UPDATE " + InventoryTable.TABLE + " SET " +
+            InventoryTable.COL_CATEGORY_ID + " = ? WHERE " + InventoryTable.COL_ID + " = ?";
+    // A range on the category index per category of the subtree, merged into _id order
+    static final String CATEGORY_ITEMS_PAGE_SQL = "SELECT " + ITEM_COLUMNS + " FROM " + InventoryTable.TABLE +
+            " WHERE " + InventoryTable.COL_CATEGORY_ID + SUBTREE_OF + " AND " + InventoryTable.COL_ID + " > ?" +
+            " ORDER BY " + InventoryTable.COL_ID + " LIMIT ?";
+
     public static final class UserTable {
         public static final String TABLE = "users";
         public static final String COL_ID = "_id";
@@ -29,7 +309,21 @@ public class InventoryDatabaseHelper extends SQLiteOpenHelper {
         public static final String COL_PASSWORD = "password";
     }
 
-    // When the database is created for the first time
+    // Called for every new connection, before onCreate/onUpgrade
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // WAL lets the read pool keep querying while the writer commits,
+        // and NORMAL sync only fsyncs at checkpoints instead of on every commit
+        db.enableWriteAheadLogging();
+        db.execSQL("PRAGMA synchronous=NORMAL");
+        // Takes effect on a new database only, existing ones are rebuilt once by DatabaseMaintenance.
+        // Deletes then leave free pages that the maintenance job hands back a chunk at a time
+        db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+    }
+
+    // When the database is created for the first time. Tables are created at version 1 and
+    // brought up to date by the same migrations an upgrading install runs
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL("CREATE TABLE IF NOT EXISTS " + InventoryTable.TABLE + " (" +
@@ -42,65 +336,1397 @@ public class InventoryDatabaseHelper extends SQLiteOpenHelper {
                 UserTable.COL_NAME + " TEXT, " +
                 UserTable.COL_EMAIL + " TEXT UNIQUE, " +
                 UserTable.COL_PASSWORD + " TEXT)");
+
+        onUpgrade(db, 1, DATABASE_VERSION);
     }
 
-    // When the database needs to be upgraded
+    // When the database needs to be upgraded. Runs inside a transaction, so a failing
+    // migration leaves the old schema and data untouched
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Drop older tables if existed
-        db.execSQL("DROP TABLE IF EXISTS " + InventoryTable.TABLE);
-        db.execSQL("DROP TABLE IF EXISTS " + UserTable.TABLE);
-        // Create tables again
-        onCreate(db);
-    }
-
-    // Method to insert a user into the User database
-    public long insertUser(String name, String email, String password) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put("name", name);
-        values.put("email", email);
-        values.put("password", password);
-        // Insert the new row, returning the primary key value of the new row
-        long newRowId = db.insert("users", null, values);
-        db.close();
-        return newRowId;
-    }
-
-    // Method to insert an item into the Inventory database
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrate(db, version);
+        }
+    }
+
+    // Method to bring the schema from version - 1 up to version, keeping existing rows
+    private void migrate(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                migrateToItemKey(db);
+                break;
+            case 3:
+                // Version 3: per-item reorder threshold, 0 keeps the old "alert at zero" behavior
+                db.execSQL("ALTER TABLE " + InventoryTable.TABLE + " ADD COLUMN " +
+                        InventoryTable.COL_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0");
+                break;
+            case 4:
+                createSearchIndex(db);
+                break;
+            case 5:
+                createStockLedger(db);
+                break;
+            case 6:
+                // Version 6: sync bookkeeping
+                db.execSQL("ALTER TABLE " + StockMovementTable.TABLE + " ADD COLUMN " +
+                        StockMovementTable.COL_REMOTE + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("CREATE TABLE " + SyncStateTable.TABLE + " (" +
+                        SyncStateTable.COL_KEY + " TEXT PRIMARY KEY, " +
+                        SyncStateTable.COL_VALUE + " TEXT NOT NULL)");
+                break;
+            case 7:
+                createLocations(db);
+                break;
+            case 8:
+                // Version 8: barcodes. Partial index, items without one don't take up entries
+                db.execSQL("ALTER TABLE " + InventoryTable.TABLE + " ADD COLUMN " + InventoryTable.COL_SKU + " TEXT");
+                db.execSQL("CREATE UNIQUE INDEX " + InventoryTable.INDEX_SKU + " ON " + InventoryTable.TABLE +
+                        " (" + InventoryTable.COL_SKU + ") WHERE " + InventoryTable.COL_SKU + " IS NOT NULL");
+                break;
+            case 9:
+                // Version 9: maintenance history. Incremental auto-vacuum for databases created
+                // before onConfigure() asked for it comes with the first maintenance run, the
+                // VACUUM it takes can't run inside this transaction
+                db.execSQL("CREATE TABLE " + MaintenanceLogTable.TABLE + " (" +
+                        MaintenanceLogTable.COL_ID + " INTEGER PRIMARY KEY, " +
+                        MaintenanceLogTable.COL_STARTED_AT + " INTEGER NOT NULL, " +
+                        MaintenanceLogTable.COL_DURATION_MILLIS + " INTEGER NOT NULL, " +
+                        MaintenanceLogTable.COL_SIZE_BEFORE + " INTEGER NOT NULL, " +
+                        MaintenanceLogTable.COL_SIZE_AFTER + " INTEGER NOT NULL, " +
+                        MaintenanceLogTable.COL_PROBE_MICROS_BEFORE + " INTEGER NOT NULL, " +
+                        MaintenanceLogTable.COL_PROBE_MICROS_AFTER + " INTEGER NOT NULL, " +
+                        MaintenanceLogTable.COL_PAGES_FREED + " INTEGER NOT NULL, " +
+                        MaintenanceLogTable.COL_INTEGRITY_OK + " INTEGER, " +
+                        MaintenanceLogTable.COL_COMPLETED + " INTEGER NOT NULL)");
+                break;
+            case 10:
+                createSortIndexes(db);
+                break;
+            case 11:
+                createCategories(db);
+                break;
+            case 12:
+                // Version 12: time ranges across all items, for reports and compaction. created_at
+                // comes from the wall clock and can go backwards, so _id order can't stand in for it
+                db.execSQL("CREATE INDEX " + StockMovementTable.INDEX_TIME + " ON " + StockMovementTable.TABLE +
+                        " (" + StockMovementTable.COL_CREATED_AT + ")");
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
+    }
+
+    // Version 10: one index per sort order, each holding every column a page reads, so a sorted
+    // page is a range scan of the index alone with no table lookups and no sort step. Both
+    // hold qty, so a quantity write updates them as well
+    private void createSortIndexes(SQLiteDatabase db) {
+        String rest = InventoryTable.COL_ITEM + ", " + InventoryTable.COL_REORDER_THRESHOLD + ")";
+        db.execSQL("CREATE INDEX " + InventoryTable.INDEX_NAME_ORDER + " ON " + InventoryTable.TABLE + " (" +
+                InventoryTable.COL_ITEM_KEY + ", " + InventoryTable.COL_QTY + ", " + rest);
+        db.execSQL("CREATE INDEX " + InventoryTable.INDEX_QTY_ORDER + " ON " + InventoryTable.TABLE + " (" +
+                InventoryTable.COL_QTY + ", " + InventoryTable.COL_ITEM_KEY + ", " + rest);
+    }
+
+    // Version 11: the category tree. Existing items start out without a category
+    private void createCategories(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + CategoryTable.TABLE + " (" +
+                CategoryTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                CategoryTable.COL_PARENT_ID + " INTEGER NOT NULL, " +
+                CategoryTable.COL_NAME + " TEXT NOT NULL, " +
+                CategoryTable.COL_ITEM_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                CategoryTable.COL_UNITS + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE UNIQUE INDEX " + CategoryTable.INDEX_PARENT_NAME + " ON " + CategoryTable.TABLE + " (" +
+                CategoryTable.COL_PARENT_ID + ", " + CategoryTable.COL_NAME + " COLLATE NOCASE)");
+        String closure = CategoryClosureTable.TABLE;
+        db.execSQL("CREATE TABLE " + closure + " (" +
+                CategoryClosureTable.COL_ANCESTOR_ID + " INTEGER NOT NULL, " +
+                CategoryClosureTable.COL_DESCENDANT_ID + " INTEGER NOT NULL, " +
+                CategoryClosureTable.COL_DEPTH + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + CategoryClosureTable.COL_ANCESTOR_ID + ", " +
+                CategoryClosureTable.COL_DESCENDANT_ID + ")) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX " + CategoryClosureTable.INDEX_DESCENDANT + " ON " + closure + " (" +
+                CategoryClosureTable.COL_DESCENDANT_ID + ", " + CategoryClosureTable.COL_DEPTH + ", " +
+                CategoryClosureTable.COL_ANCESTOR_ID + ")");
+        // Partial, items without a category don't take up entries
+        db.execSQL("ALTER TABLE " + InventoryTable.TABLE + " ADD COLUMN " + InventoryTable.COL_CATEGORY_ID + " INTEGER");
+        db.execSQL("CREATE INDEX " + InventoryTable.INDEX_CATEGORY + " ON " + InventoryTable.TABLE + " (" +
+                InventoryTable.COL_CATEGORY_ID + ") WHERE " + InventoryTable.COL_CATEGORY_ID + " IS NOT NULL");
+
+        // A new category is below everything its parent is below
+        db.execSQL("CREATE TRIGGER " + CategoryTable.TRIGGER_INSERT + " AFTER INSERT ON " + CategoryTable.TABLE +
+                " BEGIN INSERT INTO " + closure + " SELECT " + CategoryClosureTable.COL_ANCESTOR_ID + ", new._id, " +
+                CategoryClosureTable.COL_DEPTH + " + 1 FROM " + closure + " WHERE " +
+                CategoryClosureTable.COL_DESCENDANT_ID + " = new." + CategoryTable.COL_PARENT_ID + ";" +
+                " INSERT INTO " + closure + " VALUES (new._id, new._id, 0); END");
+        // Each item change is added to its category and every category above it
+        db.execSQL("CREATE TRIGGER " + CategoryTable.TRIGGER_ITEM_INSERT + " AFTER INSERT ON " + InventoryTable.TABLE +
+                " WHEN new.category_id IS NOT NULL BEGIN" + addToCategories("1", "IFNULL(new.qty, 0)", "new") + " END");
+        db.execSQL("CREATE TRIGGER " + CategoryTable.TRIGGER_ITEM_QTY + " AFTER UPDATE OF " + InventoryTable.COL_QTY +
+                " ON " + InventoryTable.TABLE + " WHEN new.category_id IS NOT NULL AND new.category_id IS old.category_id" +
+                " AND new.qty IS NOT old.qty BEGIN" +
+                addToCategories("0", "IFNULL(new.qty, 0) - IFNULL(old.qty, 0)", "new") + " END");
+        db.execSQL("CREATE TRIGGER " + CategoryTable.TRIGGER_ITEM_MOVE + " AFTER UPDATE OF " +
+                InventoryTable.COL_CATEGORY_ID + " ON " + InventoryTable.TABLE +
+                " WHEN new.category_id IS NOT old.category_id BEGIN" +
+                addToCategories("-1", "-IFNULL(old.qty, 0)", "old") +
+                addToCategories("1", "IFNULL(new.qty, 0)", "new") + " END");
+        db.execSQL("CREATE TRIGGER " + CategoryTable.TRIGGER_ITEM_DELETE + " AFTER DELETE ON " + InventoryTable.TABLE +
+                " WHEN old.category_id IS NOT NULL BEGIN" +
+                addToCategories("-1", "-IFNULL(old.qty, 0)", "old") + " END");
+    }
+
+    // Trigger statement adding to the item count and units of the row's category and its ancestors
+    private static String addToCategories(String count, String units, String row) {
+        return " UPDATE " + CategoryTable.TABLE + " SET " + CategoryTable.COL_ITEM_COUNT + " = " +
+                CategoryTable.COL_ITEM_COUNT + " + " + count + ", " + CategoryTable.COL_UNITS + " = " +
+                CategoryTable.COL_UNITS + " + " + units + " WHERE " + CategoryTable.COL_ID + " IN (SELECT " +
+                CategoryClosureTable.COL_ANCESTOR_ID + " FROM " + CategoryClosureTable.TABLE + " WHERE " +
+                CategoryClosureTable.COL_DESCENDANT_ID + " = " + row + "." + InventoryTable.COL_CATEGORY_ID + ");";
+    }
+
+    // Version 4: FTS4 index over item names. FTS5 isn't compiled into every device's SQLite,
+    // FTS4 is. Prefix indexes for 2 and 3 characters keep short prefix queries from
+    // walking every term
+    private void createSearchIndex(SQLiteDatabase db) {
+        String fts = InventorySearchTable.TABLE;
+        db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts4(" +
+                "content=\"" + InventoryTable.TABLE + "\", " + InventorySearchTable.COL_ITEM + ", " +
+                "tokenize=unicode61, prefix=\"2,3\")");
+        // An external content index has to be told the old text to remove it, so rows leave
+        // the index before they change and enter it again afterwards. Quantity updates don't
+        // touch the index at all
+        String insertRow = " INSERT INTO " + fts + "(docid, " + InventorySearchTable.COL_ITEM + ")" +
+                " VALUES (new." + InventoryTable.COL_ID + ", new." + InventoryTable.COL_ITEM + "); END";
+        String deleteRow = " DELETE FROM " + fts + " WHERE docid = old." + InventoryTable.COL_ID + "; END";
+        db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_INSERT + " AFTER INSERT ON " +
+                InventoryTable.TABLE + " BEGIN" + insertRow);
+        db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_BEFORE_UPDATE + " BEFORE UPDATE OF " +
+                InventoryTable.COL_ITEM + " ON " + InventoryTable.TABLE + " BEGIN" + deleteRow);
+        db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_AFTER_UPDATE + " AFTER UPDATE OF " +
+                InventoryTable.COL_ITEM + " ON " + InventoryTable.TABLE + " BEGIN" + insertRow);
+        db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_DELETE + " BEFORE DELETE ON " +
+                InventoryTable.TABLE + " BEGIN" + deleteRow);
+        // Index the rows that are already there
+        db.execSQL("INSERT INTO " + fts + "(" + fts + ") VALUES ('rebuild')");
+    }
+
+    // Version 5: stock movement ledger and snapshots. Existing rows get no movements, their
+    // current level becomes the opening snapshot instead
+    private void createStockLedger(SQLiteDatabase db) {
+        String ledger = StockMovementTable.TABLE;
+        db.execSQL("CREATE TABLE " + ledger + " (" +
+                StockMovementTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                StockMovementTable.COL_ITEM_ID + " INTEGER NOT NULL, " +
+                StockMovementTable.COL_DELTA + " INTEGER NOT NULL, " +
+                StockMovementTable.COL_QTY_AFTER + " INTEGER NOT NULL, " +
+                StockMovementTable.COL_CREATED_AT + " INTEGER NOT NULL)");
+        // History reads are a range on (item, time), and the _id tie-break makes pages stable
+        db.execSQL("CREATE INDEX " + StockMovementTable.INDEX_ITEM_TIME + " ON " + ledger + " (" +
+                StockMovementTable.COL_ITEM_ID + ", " + StockMovementTable.COL_CREATED_AT + ", " +
+                StockMovementTable.COL_ID + ")");
+        db.execSQL("CREATE TABLE " + StockSnapshotTable.TABLE + " (" +
+                StockSnapshotTable.COL_ITEM_ID + " INTEGER PRIMARY KEY, " +
+                StockSnapshotTable.COL_QTY + " INTEGER NOT NULL, " +
+                StockSnapshotTable.COL_AS_OF + " INTEGER NOT NULL, " +
+                StockSnapshotTable.COL_LAST_MOVEMENT_ID + " INTEGER NOT NULL)");
+
+        // Each append is a rowid append plus one index entry, whatever the ledger size
+        String now = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+        String append = " INSERT INTO " + ledger + " (" + StockMovementTable.COL_ITEM_ID + ", " +
+                StockMovementTable.COL_DELTA + ", " + StockMovementTable.COL_QTY_AFTER + ", " +
+                StockMovementTable.COL_CREATED_AT + ") VALUES ";
+        db.execSQL("CREATE TRIGGER " + StockMovementTable.TRIGGER_INSERT + " AFTER INSERT ON " +
+                InventoryTable.TABLE + " BEGIN" + append +
+                "(new._id, new.qty, new.qty, " + now + "); END");
+        db.execSQL("CREATE TRIGGER " + StockMovementTable.TRIGGER_UPDATE + " AFTER UPDATE OF " +
+                InventoryTable.COL_QTY + " ON " + InventoryTable.TABLE + " WHEN new.qty IS NOT old.qty BEGIN" +
+                append + "(new._id, new.qty - old.qty, new.qty, " + now + "); END");
+        db.execSQL("CREATE TRIGGER " + StockMovementTable.TRIGGER_DELETE + " BEFORE DELETE ON " +
+                InventoryTable.TABLE + " BEGIN" + append + "(old._id, -old.qty, 0, " + now + "); END");
+
+        db.execSQL("INSERT INTO " + StockSnapshotTable.TABLE + " SELECT " + InventoryTable.COL_ID + ", " +
+                "IFNULL(" + InventoryTable.COL_QTY + ", 0), " + now + ", 0 FROM " + InventoryTable.TABLE);
+    }
+
+    // Version 7: locations and per-location stock. Existing quantities move to the default
+    // location, so totals are unchanged and the ledger records nothing
+    private void createLocations(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + LocationTable.TABLE + " (" +
+                LocationTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                LocationTable.COL_NAME + " TEXT NOT NULL UNIQUE COLLATE NOCASE)");
+        db.execSQL("INSERT INTO " + LocationTable.TABLE + " (" + LocationTable.COL_ID + ", " +
+                LocationTable.COL_NAME + ") VALUES (" + Location.DEFAULT_ID + ", 'Main stockroom')");
+        // Clustered on (item, location) so the rollup and per-item writes are seeks, and the
+        // location index serves a location's grid in item order without touching the table
+        String stock = StockTable.TABLE;
+        db.execSQL("CREATE TABLE " + stock + " (" +
+                StockTable.COL_ITEM_ID + " INTEGER NOT NULL, " +
+                StockTable.COL_LOCATION_ID + " INTEGER NOT NULL, " +
+                StockTable.COL_QTY + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + StockTable.COL_ITEM_ID + ", " + StockTable.COL_LOCATION_ID + ")) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX " + StockTable.INDEX_LOCATION_ITEM + " ON " + stock + " (" +
+                StockTable.COL_LOCATION_ID + ", " + StockTable.COL_ITEM_ID + ", " + StockTable.COL_QTY + ")");
+        db.execSQL("INSERT INTO " + stock + " SELECT " + InventoryTable.COL_ID + ", " + Location.DEFAULT_ID +
+                ", IFNULL(" + InventoryTable.COL_QTY + ", 0) FROM " + InventoryTable.TABLE);
+
+        // A new item's quantity starts out in the default location. That row is created with
+        // the item, already counted in its total, so it doesn't roll up again
+        String rollup = " UPDATE " + InventoryTable.TABLE + " SET " + InventoryTable.COL_QTY + " = " +
+                InventoryTable.COL_QTY + " + ";
+        db.execSQL("CREATE TRIGGER " + StockTable.TRIGGER_ROLLUP_INSERT + " AFTER INSERT ON " + stock +
+                " WHEN new." + StockTable.COL_LOCATION_ID + " <> " + Location.DEFAULT_ID + " BEGIN" + rollup +
+                "new.qty WHERE " + InventoryTable.COL_ID + " = new.item_id; END");
+        db.execSQL("CREATE TRIGGER " + StockTable.TRIGGER_ROLLUP_UPDATE + " AFTER UPDATE OF " + StockTable.COL_QTY +
+                " ON " + stock + " WHEN new.qty IS NOT old.qty BEGIN" + rollup +
+                "new.qty - old.qty WHERE " + InventoryTable.COL_ID + " = new.item_id; END");
+        db.execSQL("CREATE TRIGGER " + StockTable.TRIGGER_ROLLUP_DELETE + " AFTER DELETE ON " + stock + " BEGIN" +
+                rollup + "-old.qty WHERE " + InventoryTable.COL_ID + " = old.item_id; END");
+        db.execSQL("CREATE TRIGGER " + StockTable.TRIGGER_ITEM_INSERT + " AFTER INSERT ON " + InventoryTable.TABLE +
+                " BEGIN INSERT INTO " + stock + " VALUES (new._id, " + Location.DEFAULT_ID + ", IFNULL(new.qty, 0)); END");
+        // After the item is gone, so the rollup of the removed rows finds nothing to update
+        db.execSQL("CREATE TRIGGER " + StockTable.TRIGGER_ITEM_DELETE + " AFTER DELETE ON " + InventoryTable.TABLE +
+                " BEGIN DELETE FROM " + stock + " WHERE " + StockTable.COL_ITEM_ID + " = old._id; END");
+    }
+
+    // Version 2: unique normalized item key. Rows whose names only differ by case or
+    // surrounding spaces are merged into the oldest one, adding up their quantities
+    private void migrateToItemKey(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + InventoryTable.TABLE + " ADD COLUMN " + InventoryTable.COL_ITEM_KEY + " TEXT");
+
+        // Normalized in Java, SQLite's lower() only folds ASCII
+        SQLiteStatement setKey = db.compileStatement("UPDATE " + InventoryTable.TABLE +
+                " SET " + InventoryTable.COL_ITEM_KEY + "=? WHERE " + InventoryTable.COL_ID + "=?");
+        Cursor cursor = db.rawQuery("SELECT " + InventoryTable.COL_ID + ", " + InventoryTable.COL_ITEM +
+                " FROM " + InventoryTable.TABLE, null);
+        try {
+            while (cursor.moveToNext()) {
+                setKey.bindString(1, InventoryItem.normalizeName(cursor.isNull(1) ? "" : cursor.getString(1)));
+                setKey.bindLong(2, cursor.getLong(0));
+                setKey.executeUpdateDelete();
+            }
+        } finally {
+            cursor.close();
+            setKey.close();
+        }
+
+        db.execSQL("UPDATE " + InventoryTable.TABLE + " SET " + InventoryTable.COL_QTY + " = (" +
+                "SELECT SUM(d." + InventoryTable.COL_QTY + ") FROM " + InventoryTable.TABLE + " d" +
+                " WHERE d." + InventoryTable.COL_ITEM_KEY + " = " + InventoryTable.TABLE + "." + InventoryTable.COL_ITEM_KEY + ")" +
+                " WHERE " + InventoryTable.COL_ID + " IN (SELECT MIN(" + InventoryTable.COL_ID + ") FROM " +
+                InventoryTable.TABLE + " GROUP BY " + InventoryTable.COL_ITEM_KEY + " HAVING COUNT(*) > 1)");
+        db.execSQL("DELETE FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_ID +
+                " NOT IN (SELECT MIN(" + InventoryTable.COL_ID + ") FROM " + InventoryTable.TABLE +
+                " GROUP BY " + InventoryTable.COL_ITEM_KEY + ")");
+
+        db.execSQL("CREATE UNIQUE INDEX " + InventoryTable.INDEX_ITEM_KEY + " ON " +
+                InventoryTable.TABLE + " (" + InventoryTable.COL_ITEM_KEY + ")");
+    }
+
+    // Method to insert a user into the User database. The password column holds the
+    // PasswordHasher output, never the password itself
+    @Override
+    public long insertUser(String name, String email, String passwordHash) {
+        SQLiteStatement statement = getStatement("INSERT INTO " + UserTable.TABLE + " (" +
+                UserTable.COL_NAME + ", " + UserTable.COL_EMAIL + ", " + UserTable.COL_PASSWORD + ") VALUES (?, ?, ?)");
+        synchronized (statement) {
+            statement.bindString(1, name);
+            statement.bindString(2, email);
+            statement.bindString(3, passwordHash);
+            try {
+                // Insert the new row, returning the primary key value of the new row
+                return statement.executeInsert();
+            } catch (SQLException e) {
+                Log.e("InventoryDatabaseHelper", "Error inserting user " + email, e);
+                return -1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    // Method to fetch the stored password hash for a login, or null for an unknown email.
+    // A single seek on the unique email index
+    @Override
+    public String getPasswordHash(String email) {
+        SQLiteStatement statement = getStatement(PASSWORD_HASH_SQL);
+        synchronized (statement) {
+            statement.bindString(1, email);
+            try {
+                return statement.simpleQueryForString();
+            } catch (SQLiteDoneException e) {
+                return null;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    // Method to replace a stored password hash, used to upgrade old rows after a login
+    @Override
+    public void updatePasswordHash(String email, String passwordHash) {
+        SQLiteStatement statement = getStatement("UPDATE " + UserTable.TABLE + " SET " + UserTable.COL_PASSWORD +
+                " = ? WHERE " + UserTable.COL_EMAIL + " = ?");
+        synchronized (statement) {
+            statement.bindString(1, passwordHash);
+            statement.bindString(2, email);
+            statement.executeUpdateDelete();
+            statement.clearBindings();
+        }
+    }
+
+    // Method to insert an item into the Inventory database.
+    // Returns -1 if the name is empty or another item already uses it
+    @Override
     public long insertItem(String itemName, int quantity) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put("item", itemName);
-        values.put("qty", quantity);
-        // Insert the new row, returning the primary key value of the new row
-        long newRowId = db.insert("inventory", null, values);
-        db.close(); // Close the database connection
-        return newRowId;
+        SQLiteStatement statement = getStatement(INSERT_ITEM_SQL);
+        synchronized (statement) {
+            statement.bindString(1, itemName);
+            statement.bindString(2, InventoryItem.normalizeName(itemName));
+            statement.bindLong(3, quantity);
+            try {
+                // Insert the new row, returning the primary key value of the new row
+                return statement.executeInsert();
+            } catch (SQLException e) {
+                Log.e("InventoryDatabaseHelper", "Error inserting " + itemName, e);
+                return -1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
     }
 
     // Method to delete an item from the Inventory database
-    public void deleteItem(String itemName) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete("inventory", "item=?", new String[]{String.valueOf(itemName)});
-        db.close();
-    }
-
-    // Method to update the quantity of an item in the Inventory database
-    public void updateItemQuantity(String itemName, int newQuantity) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put("qty", newQuantity);
-        db.update("inventory", values, "item=?", new String[]{String.valueOf(itemName)});
-        db.close();
-    }
-
-    public void updateItemName(String oldName, String newName) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put("item", newName);
-        db.update("inventory", values, "item = ?", new String[]{oldName});
-        db.close();
+    @Override
+    public void deleteItem(long id) {
+        SQLiteStatement statement = getStatement(DELETE_ITEM_SQL);
+        synchronized (statement) {
+            statement.bindLong(1, id);
+            statement.executeUpdateDelete();
+            statement.clearBindings();
+        }
+    }
+
+    // Method to update the total quantity of an item in the Inventory database. The
+    // difference goes to the default location and reaches inventory.qty through the rollup.
+    // The total can't go below the stock held in other locations
+    @Override
+    public void updateItemQuantity(long id, int newQuantity) {
+        SQLiteStatement statement = getStatement(UPDATE_ITEM_QUANTITY_SQL);
+        synchronized (statement) {
+            statement.bindLong(1, newQuantity);
+            statement.bindLong(2, id);
+            statement.bindLong(3, id);
+            statement.executeUpdateDelete();
+            statement.clearBindings();
+        }
+    }
+
+    // Method to add to an item's quantity, in the default location like other item-level
+    // writes, which stops at zero. One statement, a primary key seek
+    @Override
+    public void adjustItemQuantity(long id, int delta) {
+        SQLiteStatement statement = getStatement("UPDATE " + StockTable.TABLE +
+                " SET " + StockTable.COL_QTY + " = MAX(0, " + StockTable.COL_QTY + " + ?)" +
+                " WHERE " + StockTable.COL_ITEM_ID + " = ? AND " + StockTable.COL_LOCATION_ID + " = " + Location.DEFAULT_ID);
+        synchronized (statement) {
+            statement.bindLong(1, delta);
+            statement.bindLong(2, id);
+            statement.executeUpdateDelete();
+            statement.clearBindings();
+        }
+    }
+
+    // Method to set an item's quantity in one location, adding the item to it if needed
+    @Override
+    public void setStockQuantity(long itemId, long locationId, int quantity) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement update = getStatement("UPDATE " + StockTable.TABLE + " SET " + StockTable.COL_QTY + " = ?" +
+                " WHERE " + StockTable.COL_ITEM_ID + " = ? AND " + StockTable.COL_LOCATION_ID + " = ?");
+        SQLiteStatement insert = getStatement("INSERT INTO " + StockTable.TABLE + " (" + StockTable.COL_ITEM_ID + ", " +
+                StockTable.COL_LOCATION_ID + ", " + StockTable.COL_QTY + ") SELECT ?, ?, ?" +
+                " WHERE EXISTS (SELECT 1 FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_ID + " = ?)");
+        synchronized (update) {
+            synchronized (insert) {
+                db.beginTransaction();
+                try {
+                    update.bindLong(1, quantity);
+                    update.bindLong(2, itemId);
+                    update.bindLong(3, locationId);
+                    if (update.executeUpdateDelete() == 0) {
+                        insert.bindLong(1, itemId);
+                        insert.bindLong(2, locationId);
+                        insert.bindLong(3, quantity);
+                        insert.bindLong(4, itemId);
+                        insert.executeInsert();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                    update.clearBindings();
+                    insert.clearBindings();
+                }
+            }
+        }
+    }
+
+    // Method to add a location. Returns -1 if another location already uses the name
+    @Override
+    public long insertLocation(String name) {
+        SQLiteStatement statement = getStatement("INSERT INTO " + LocationTable.TABLE + " (" +
+                LocationTable.COL_NAME + ") VALUES (?)");
+        synchronized (statement) {
+            statement.bindString(1, name);
+            try {
+                return statement.executeInsert();
+            } catch (SQLException e) {
+                Log.e("InventoryDatabaseHelper", "Error inserting location " + name, e);
+                return -1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    @Override
+    public List<Location> getLocations() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<Location> locations = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT " + LocationTable.COL_ID + ", " + LocationTable.COL_NAME +
+                " FROM " + LocationTable.TABLE + " ORDER BY " + LocationTable.COL_ID, null);
+        try {
+            while (cursor.moveToNext()) {
+                locations.add(new Location(cursor.getLong(0), cursor.getString(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return locations;
+    }
+
+    // Method to page through the items stocked in one location, with their quantity there.
+    // A range on the location index joined to inventory by primary key, like getItemsPage()
+    @Override
+    public List<InventoryItem> getLocationItemsPage(long locationId, long afterId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<InventoryItem> items = new ArrayList<>(limit);
+        Cursor cursor = db.rawQuery("SELECT i." + InventoryTable.COL_ID + ", i." + InventoryTable.COL_ITEM +
+                        ", s." + StockTable.COL_QTY + ", i." + InventoryTable.COL_REORDER_THRESHOLD +
+                        " FROM " + StockTable.TABLE + " s JOIN " + InventoryTable.TABLE + " i" +
+                        " ON i." + InventoryTable.COL_ID + " = s." + StockTable.COL_ITEM_ID +
+                        " WHERE s." + StockTable.COL_LOCATION_ID + " = ? AND s." + StockTable.COL_ITEM_ID + " > ?" +
+                        " ORDER BY s." + StockTable.COL_ITEM_ID + " LIMIT ?",
+                new String[]{String.valueOf(locationId), String.valueOf(afterId), String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                items.add(readItem(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    // Method to add a category under parentId, Category.ROOT for the top level. Returns -1 if a
+    // sibling already uses the name or the parent is gone. The insert trigger adds its closure rows
+    @Override
+    public long insertCategory(long parentId, String name) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (parentId != Category.ROOT && readCategory(db, parentId) == null) {
+                return -1;
+            }
+            SQLiteStatement statement = getStatement(INSERT_CATEGORY_SQL);
+            long id;
+            synchronized (statement) {
+                statement.bindLong(1, parentId);
+                statement.bindString(2, name);
+                try {
+                    id = statement.executeInsert();
+                } finally {
+                    statement.clearBindings();
+                }
+            }
+            db.setTransactionSuccessful();
+            return id;
+        } catch (SQLException e) {
+            Log.e("InventoryDatabaseHelper", "Error inserting category " + name, e);
+            return -1;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Method to list a category's children by name, with their subtree totals as stored
+    @Override
+    public List<Category> getCategories(long parentId) {
+        return readCategories(CHILD_CATEGORIES_SQL, parentId);
+    }
+
+    @Override
+    public List<Category> getCategoryPath(long id) {
+        return readCategories(CATEGORY_PATH_SQL, id);
+    }
+
+    // Method to move a category and everything below it under another parent. Only the closure
+    // rows that link the subtree to its old ancestors are replaced, and the subtree's totals
+    // move between the two sets of ancestors in one update each
+    @Override
+    public boolean moveCategory(long id, long newParentId) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            Category category = readCategory(db, id);
+            if (category == null || (newParentId != Category.ROOT && readCategory(db, newParentId) == null)) {
+                return false;
+            }
+            if (category.getParentId() == newParentId) {
+                return true;
+            }
+            // Under itself would make a cycle
+            if (newParentId != Category.ROOT && DatabaseUtils.longForQuery(db, IS_ANCESTOR_SQL,
+                    new String[]{String.valueOf(id), String.valueOf(newParentId)}) != 0) {
+                return false;
+            }
+            // First, so a name taken among the new siblings fails before anything else is written
+            db.execSQL(SET_CATEGORY_PARENT_SQL, new Object[]{newParentId, id});
+            db.execSQL(ADJUST_ANCESTORS_SQL, new Object[]{-category.getItemCount(), -category.getUnits(), id});
+            db.execSQL(DETACH_SUBTREE_SQL, new Object[]{id, id});
+            if (newParentId != Category.ROOT) {
+                db.execSQL(ATTACH_SUBTREE_SQL, new Object[]{newParentId, id});
+                db.execSQL(ADJUST_ANCESTORS_SQL, new Object[]{category.getItemCount(), category.getUnits(), id});
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } catch (SQLException e) {
+            Log.e("InventoryDatabaseHelper", "Error moving category " + id, e);
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Method to remove a category, handing its children and items to its parent. The parent's
+    // totals already include them, the item triggers only take them off the removed category
+    @Override
+    public boolean deleteCategory(long id) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            Category category = readCategory(db, id);
+            if (category == null) {
+                return false;
+            }
+            long parentId = category.getParentId();
+            db.execSQL(REPARENT_CHILDREN_SQL, new Object[]{parentId, id});
+            db.execSQL(REFILE_ITEMS_SQL, new Object[]{parentId == Category.ROOT ? null : parentId, id});
+            db.execSQL(SHORTEN_PATHS_SQL, new Object[]{id, id});
+            db.execSQL(DELETE_CATEGORY_DESCENDANTS_SQL, new Object[]{id});
+            db.execSQL(DELETE_CATEGORY_ANCESTORS_SQL, new Object[]{id});
+            db.execSQL(DELETE_CATEGORY_SQL, new Object[]{id});
+            db.setTransactionSuccessful();
+            return true;
+        } catch (SQLException e) {
+            // A child's name is taken among the parent's children
+            Log.e("InventoryDatabaseHelper", "Error deleting category " + id, e);
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public boolean setItemCategory(long[] itemIds, long categoryId) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement statement = getStatement(SET_ITEM_CATEGORY_SQL);
+        synchronized (statement) {
+            db.beginTransaction();
+            try {
+                if (categoryId != Category.ROOT && readCategory(db, categoryId) == null) {
+                    return false;
+                }
+                for (long itemId : itemIds) {
+                    if (categoryId == Category.ROOT) {
+                        statement.bindNull(1);
+                    } else {
+                        statement.bindLong(1, categoryId);
+                    }
+                    statement.bindLong(2, itemId);
+                    statement.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+                return true;
+            } catch (SQLException e) {
+                Log.e("InventoryDatabaseHelper", "Error filing items under category " + categoryId, e);
+                return false;
+            } finally {
+                db.endTransaction();
+                statement.clearBindings();
+            }
+        }
+    }
+
+    // Method to page through the items filed anywhere under a category, with their totals.
+    // Each category of the subtree is a range on the category index, however many items the
+    // rest of the inventory has
+    @Override
+    public List<InventoryItem> getCategoryItemsPage(long categoryId, long afterId, int limit) {
+        if (categoryId == Category.ROOT) {
+            return getItemsPage(afterId, limit);
+        }
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<InventoryItem> items = new ArrayList<>(limit);
+        Cursor cursor = db.rawQuery(CATEGORY_ITEMS_PAGE_SQL,
+                new String[]{String.valueOf(categoryId), String.valueOf(afterId), String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                items.add(readItem(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    private List<Category> readCategories(String sql, long id) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<Category> categories = new ArrayList<>();
+        Cursor cursor = db.rawQuery(sql, new String[]{String.valueOf(id)});
+        try {
+            while (cursor.moveToNext()) {
+                categories.add(readCategory(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return categories;
+    }
+
+    // Returns null if there is no category with that id
+    private static Category readCategory(SQLiteDatabase db, long id) {
+        Cursor cursor = db.rawQuery(CATEGORY_SQL, new String[]{String.valueOf(id)});
+        try {
+            return cursor.moveToFirst() ? readCategory(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Reads the row at the cursor's position, columns as in CATEGORY_COLUMNS
+    private static Category readCategory(Cursor cursor) {
+        return new Category(cursor.getLong(0), cursor.getLong(1), cursor.getString(2), cursor.getInt(3),
+                cursor.getLong(4));
+    }
+
+    // Method to rename an item. Returns false if another item already uses the new name
+    @Override
+    public boolean updateItemName(long id, String newName) {
+        SQLiteStatement statement = getStatement("UPDATE " + InventoryTable.TABLE +
+                " SET " + InventoryTable.COL_ITEM + "=?, " + InventoryTable.COL_ITEM_KEY + "=?" +
+                " WHERE " + InventoryTable.COL_ID + "=?");
+        synchronized (statement) {
+            statement.bindString(1, newName);
+            statement.bindString(2, InventoryItem.normalizeName(newName));
+            statement.bindLong(3, id);
+            try {
+                return statement.executeUpdateDelete() > 0;
+            } catch (SQLException e) {
+                Log.e("InventoryDatabaseHelper", "Error renaming item " + id + " to " + newName, e);
+                return false;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    // Method to read a single item by primary key
+    @Override
+    public InventoryItem getItem(long id) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + ITEM_COLUMNS +
+                        " FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_ID + " = ?",
+                new String[]{String.valueOf(id)});
+        try {
+            return cursor.moveToFirst() ? readItem(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Method to read a single item by name, a seek on the unique item key index
+    @Override
+    public InventoryItem findItemByName(String name) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + ITEM_COLUMNS +
+                        " FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_ITEM_KEY + " = ?",
+                new String[]{InventoryItem.normalizeName(name)});
+        try {
+            return cursor.moveToFirst() ? readItem(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Method to resolve a barcode to an item id, -1 if no item has it. A seek on the SKU index
+    @Override
+    public long findItemIdBySku(String sku) {
+        SQLiteStatement statement = getStatement("SELECT " + InventoryTable.COL_ID + " FROM " + InventoryTable.TABLE +
+                " WHERE " + InventoryTable.COL_SKU + " = ?");
+        synchronized (statement) {
+            statement.bindString(1, sku);
+            try {
+                return statement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return -1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    @Override
+    public String getItemSku(long id) {
+        SQLiteStatement statement = getStatement("SELECT " + InventoryTable.COL_SKU + " FROM " + InventoryTable.TABLE +
+                " WHERE " + InventoryTable.COL_ID + " = ?");
+        synchronized (statement) {
+            statement.bindLong(1, id);
+            try {
+                return statement.simpleQueryForString();
+            } catch (SQLiteDoneException e) {
+                return null;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    // Method to attach a barcode to an item, or remove it with null. Returns false if another
+    // item already has the barcode
+    @Override
+    public boolean updateItemSku(long id, String sku) {
+        SQLiteStatement statement = getStatement("UPDATE " + InventoryTable.TABLE +
+                " SET " + InventoryTable.COL_SKU + " = ? WHERE " + InventoryTable.COL_ID + " = ?");
+        synchronized (statement) {
+            if (sku == null) {
+                statement.bindNull(1);
+            } else {
+                statement.bindString(1, sku);
+            }
+            statement.bindLong(2, id);
+            try {
+                return statement.executeUpdateDelete() > 0;
+            } catch (SQLException e) {
+                Log.e("InventoryDatabaseHelper", "Error setting barcode " + sku + " on item " + id, e);
+                return false;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    // Method to load one page of items ordered by _id, starting after the given id.
+    // Keyset paging keeps every page an index range scan on the primary key, no matter how deep
+    @Override
+    public List<InventoryItem> getItemsPage(long afterId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<InventoryItem> items = new ArrayList<>(limit);
+        Cursor cursor = db.rawQuery(ITEMS_PAGE_SQL, new String[]{String.valueOf(afterId), String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                items.add(readItem(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    // Method to load one page of items in the given order, continuing after the given item.
+    // Keyset paging on the order's unique key, so every page is a range scan however deep
+    @Override
+    public List<InventoryItem> getSortedItemsPage(ItemOrder order, boolean inStockOnly, InventoryItem after, int limit) {
+        String[] args;
+        if (after == null) {
+            args = new String[]{String.valueOf(limit)};
+        } else if (order == ItemOrder.QUANTITY) {
+            args = new String[]{String.valueOf(after.getQuantity()), InventoryItem.normalizeName(after.getName()),
+                    String.valueOf(limit)};
+        } else if (order == ItemOrder.NAME) {
+            args = new String[]{InventoryItem.normalizeName(after.getName()), String.valueOf(limit)};
+        } else {
+            args = new String[]{String.valueOf(after.getId()), String.valueOf(limit)};
+        }
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<InventoryItem> items = new ArrayList<>(limit);
+        Cursor cursor = db.rawQuery(sortedItemsQuery(order, inStockOnly, after != null), args);
+        try {
+            while (cursor.moveToNext()) {
+                items.add(readItem(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    // The query behind getSortedItemsPage(), its plans are checked by InventoryDatabaseHelperTest
+    static String sortedItemsQuery(ItemOrder order, boolean inStockOnly, boolean hasAfter) {
+        String orderBy;
+        String keyset;
+        switch (order) {
+            case NAME:
+                orderBy = InventoryTable.COL_ITEM_KEY;
+                keyset = InventoryTable.COL_ITEM_KEY + " > ?";
+                break;
+            case QUANTITY:
+                orderBy = InventoryTable.COL_QTY + ", " + InventoryTable.COL_ITEM_KEY;
+                // A row value, so the index is entered at the key instead of at the quantity
+                keyset = "(" + orderBy + ") > (?, ?)";
+                break;
+            case ID:
+            default:
+                orderBy = InventoryTable.COL_ID;
+                keyset = InventoryTable.COL_ID + " > ?";
+                break;
+        }
+        List<String> where = new ArrayList<>(2);
+        if (hasAfter) {
+            where.add(keyset);
+        }
+        // In quantity order a page after an in-stock row starts above zero already, and the
+        // extra range would keep the row value from being used
+        if (inStockOnly && !(order == ItemOrder.QUANTITY && hasAfter)) {
+            where.add(InventoryTable.COL_QTY + " > 0");
+        }
+        StringBuilder sql = new StringBuilder("SELECT ").append(ITEM_COLUMNS).append(" FROM ").append(InventoryTable.TABLE);
+        for (int i = 0; i < where.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ").append(where.get(i));
+        }
+        return sql.append(" ORDER BY ").append(orderBy).append(" LIMIT ?").toString();
+    }
+
+    @Override
+    public int upsertItems(Iterator<InventoryItem> items, ProgressListener listener) {
+        SQLiteDatabase db = getWritableDatabase();
+        // Sets the total like updateItemQuantity(), by key
+        SQLiteStatement update = getStatement("UPDATE " + StockTable.TABLE +
+                " SET " + StockTable.COL_QTY + " = MAX(0, " + StockTable.COL_QTY + " + ?1 - (SELECT " + InventoryTable.COL_QTY +
+                " FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_ITEM_KEY + " = ?2))" +
+                " WHERE " + StockTable.COL_LOCATION_ID + " = " + Location.DEFAULT_ID + " AND " + StockTable.COL_ITEM_ID +
+                " = (SELECT " + InventoryTable.COL_ID + " FROM " + InventoryTable.TABLE +
+                " WHERE " + InventoryTable.COL_ITEM_KEY + " = ?2)");
+        SQLiteStatement insert = getStatement(INSERT_ITEM_SQL);
+        int count = 0;
+        synchronized (update) {
+            synchronized (insert) {
+                while (items.hasNext()) {
+                    db.beginTransaction();
+                    try {
+                        for (int i = 0; i < BATCH_SIZE && items.hasNext(); i++) {
+                            InventoryItem item = items.next();
+                            String key = InventoryItem.normalizeName(item.getName());
+                            update.bindLong(1, item.getQuantity());
+                            update.bindString(2, key);
+                            if (update.executeUpdateDelete() == 0) {
+                                insert.bindString(1, item.getName());
+                                insert.bindString(2, key);
+                                insert.bindLong(3, item.getQuantity());
+                                insert.executeInsert();
+                            }
+                            count++;
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                        update.clearBindings();
+                        insert.clearBindings();
+                    }
+                    if (listener != null) {
+                        listener.onProgress(count);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // The cursor only holds one window of rows at a time, however big the table is
+    @Override
+    public void forEachItem(ItemVisitor visitor) throws IOException {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + ITEM_COLUMNS +
+                " FROM " + InventoryTable.TABLE + " ORDER BY " + InventoryTable.COL_ID, null);
+        try {
+            while (cursor.moveToNext()) {
+                visitor.visit(readItem(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Method to set the level at or below which an item counts as low on stock
+    @Override
+    public void updateReorderThreshold(long id, int threshold) {
+        SQLiteStatement statement = getStatement("UPDATE " + InventoryTable.TABLE +
+                " SET " + InventoryTable.COL_REORDER_THRESHOLD + "=? WHERE " + InventoryTable.COL_ID + "=?");
+        synchronized (statement) {
+            statement.bindLong(1, threshold);
+            statement.bindLong(2, id);
+            statement.executeUpdateDelete();
+            statement.clearBindings();
+        }
+    }
+
+    // Batch edits reuse the single-row statements inside one transaction, so a batch of a
+    // thousand rows pays for one commit and one WAL sync like a single edit does
+    @Override
+    public void deleteItems(long[] ids) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (long id : ids) {
+                deleteItem(id);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Each row's default location stock is read first, so the change made is known without
+    // reading the row back. One more primary key seek per row, inside the same transaction
+    @Override
+    public int[] adjustItemQuantities(long[] ids, int[] deltas) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement defaultStock = getStatement("SELECT " + StockTable.COL_QTY + " FROM " + StockTable.TABLE +
+                " WHERE " + StockTable.COL_ITEM_ID + " = ? AND " + StockTable.COL_LOCATION_ID + " = " + Location.DEFAULT_ID);
+        int[] applied = new int[ids.length];
+        db.beginTransaction();
+        try {
+            synchronized (defaultStock) {
+                try {
+                    for (int i = 0; i < ids.length; i++) {
+                        defaultStock.bindLong(1, ids[i]);
+                        long quantity;
+                        try {
+                            quantity = defaultStock.simpleQueryForLong();
+                        } catch (SQLiteDoneException e) {
+                            // Deleted
+                            continue;
+                        }
+                        applied[i] = (int) Math.max(deltas[i], -quantity);
+                        adjustItemQuantity(ids[i], applied[i]);
+                    }
+                } finally {
+                    defaultStock.clearBindings();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return applied;
+    }
+
+    // Leaving the transaction without marking it successful rolls back the renames already made
+    @Override
+    public boolean updateItemNames(long[] ids, String[] names) {
+        SQLiteDatabase db = getWritableDatabase();
+        // Every renamed row first gives up its key for one no name normalizes to, a leading
+        // space, so names can move between the renamed items: "A" and "A 2" renamed to
+        // "* 2" don't collide halfway. Only the key changes, the search triggers don't fire
+        SQLiteStatement release = getStatement("UPDATE " + InventoryTable.TABLE +
+                " SET " + InventoryTable.COL_ITEM_KEY + " = ' ' || " + InventoryTable.COL_ID +
+                " WHERE " + InventoryTable.COL_ID + " = ?");
+        db.beginTransaction();
+        try {
+            synchronized (release) {
+                try {
+                    for (long id : ids) {
+                        release.bindLong(1, id);
+                        if (release.executeUpdateDelete() == 0) {
+                            return false;
+                        }
+                    }
+                } finally {
+                    release.clearBindings();
+                }
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (!updateItemName(ids[i], names[i])) {
+                    return false;
+                }
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // The insert triggers recreate the default location's stock row and record the quantity in
+    // the ledger, as for a new item
+    @Override
+    public boolean restoreItems(List<InventoryItem> items, String[] skus) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement statement = getStatement("INSERT INTO " + InventoryTable.TABLE + " (" +
+                InventoryTable.COL_ID + ", " + InventoryTable.COL_ITEM + ", " + InventoryTable.COL_ITEM_KEY + ", " +
+                InventoryTable.COL_QTY + ", " + InventoryTable.COL_REORDER_THRESHOLD + ", " +
+                InventoryTable.COL_SKU + ") VALUES (?, ?, ?, ?, ?, ?)");
+        synchronized (statement) {
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < items.size(); i++) {
+                    InventoryItem item = items.get(i);
+                    statement.bindLong(1, item.getId());
+                    statement.bindString(2, item.getName());
+                    statement.bindString(3, InventoryItem.normalizeName(item.getName()));
+                    statement.bindLong(4, item.getQuantity());
+                    statement.bindLong(5, item.getReorderThreshold());
+                    if (skus[i] == null) {
+                        statement.bindNull(6);
+                    } else {
+                        statement.bindString(6, skus[i]);
+                    }
+                    statement.executeInsert();
+                }
+                db.setTransactionSuccessful();
+                return true;
+            } catch (SQLException e) {
+                Log.e("InventoryDatabaseHelper", "Error restoring " + items.size() + " items", e);
+                return false;
+            } finally {
+                db.endTransaction();
+                statement.clearBindings();
+            }
+        }
+    }
+
+    // Method to search item names, see InventorySearch for how the query is read. Results come
+    // in _id order after afterId, so they page the same way getItemsPage() does
+    @Override
+    public List<InventoryItem> searchItems(String query, long afterId, int limit) {
+        List<InventoryItem> items = new ArrayList<>();
+        String match = InventorySearch.toMatchQuery(query);
+        if (match == null) {
+            return items;
+        }
+        SQLiteDatabase db = this.getReadableDatabase();
+        // The index hands back matching docids, each one a primary key seek into inventory
+        Cursor cursor = db.rawQuery("SELECT " + ITEM_COLUMNS + " FROM " + InventoryTable.TABLE +
+                        " WHERE " + InventoryTable.COL_ID + " IN (SELECT docid FROM " + InventorySearchTable.TABLE +
+                        " WHERE " + InventorySearchTable.TABLE + " MATCH ?)" +
+                        " AND " + InventoryTable.COL_ID + " > ?" +
+                        " ORDER BY " + InventoryTable.COL_ID + " LIMIT ?",
+                new String[]{match, String.valueOf(afterId), String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                items.add(readItem(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    // Method to page through an item's movements, newest first. Movements from fromMillis on
+    // are returned, continuing after the given movement or from the newest when it's null
+    @Override
+    public List<StockMovement> getMovements(long itemId, long fromMillis, StockMovement after, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<StockMovement> movements = new ArrayList<>(limit);
+        long beforeTime = after == null ? Long.MAX_VALUE : after.getCreatedAt();
+        long beforeId = after == null ? Long.MAX_VALUE : after.getId();
+        // A descending range scan on the (item_id, created_at, _id) index
+        Cursor cursor = db.rawQuery("SELECT " + MOVEMENT_COLUMNS + " FROM " + StockMovementTable.TABLE +
+                        " WHERE " + StockMovementTable.COL_ITEM_ID + " = ?" +
+                        " AND " + StockMovementTable.COL_CREATED_AT + " BETWEEN ? AND ?" +
+                        " AND (" + StockMovementTable.COL_CREATED_AT + " < ? OR " + StockMovementTable.COL_ID + " < ?)" +
+                        " ORDER BY " + StockMovementTable.COL_CREATED_AT + " DESC, " + StockMovementTable.COL_ID + " DESC" +
+                        " LIMIT ?",
+                new String[]{String.valueOf(itemId), String.valueOf(fromMillis), String.valueOf(beforeTime),
+                        String.valueOf(beforeTime), String.valueOf(beforeId), String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                movements.add(new StockMovement(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2),
+                        cursor.getInt(3), cursor.getLong(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return movements;
+    }
+
+    // Method to read an item's level at a point in time: the last movement up to then, or the
+    // snapshot if that movement was compacted away. Returns -1 if nothing is known that far back
+    @Override
+    public int getQuantityAt(long itemId, long atMillis) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + StockMovementTable.COL_QTY_AFTER + " FROM " + StockMovementTable.TABLE +
+                        " WHERE " + StockMovementTable.COL_ITEM_ID + " = ? AND " + StockMovementTable.COL_CREATED_AT + " <= ?" +
+                        " ORDER BY " + StockMovementTable.COL_CREATED_AT + " DESC, " + StockMovementTable.COL_ID + " DESC" +
+                        " LIMIT 1",
+                new String[]{String.valueOf(itemId), String.valueOf(atMillis)});
+        try {
+            if (cursor.moveToFirst()) {
+                return cursor.getInt(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        cursor = db.rawQuery("SELECT " + StockSnapshotTable.COL_QTY + " FROM " + StockSnapshotTable.TABLE +
+                        " WHERE " + StockSnapshotTable.COL_ITEM_ID + " = ? AND " + StockSnapshotTable.COL_AS_OF + " <= ?",
+                new String[]{String.valueOf(itemId), String.valueOf(atMillis)});
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Method to fold movements older than beforeMillis into the per-item snapshots and drop
+    // them from the ledger. Returns the number of movements removed. Once sync is set up, local
+    // movements the server hasn't received yet are kept whatever their age
+    @Override
+    public int compactMovements(long beforeMillis) {
+        SQLiteDatabase db = getWritableDatabase();
+        String where = StockMovementTable.COL_CREATED_AT + " < ?";
+        String[] args = {String.valueOf(beforeMillis)};
+        db.beginTransaction();
+        try {
+            if (getSyncState(SyncEngine.KEY_DEVICE_ID) != null) {
+                String pushCursor = getSyncState(SyncEngine.KEY_PUSH_CURSOR);
+                where += " AND (" + StockMovementTable.COL_REMOTE + " = 1 OR " + StockMovementTable.COL_ID + " <= ?)";
+                args = new String[]{String.valueOf(beforeMillis), pushCursor == null ? "0" : pushCursor};
+            }
+            // SQLite takes the bare columns from the row that holds MAX(_id), the item's
+            // last movement before the cutoff
+            db.execSQL("INSERT OR REPLACE INTO " + StockSnapshotTable.TABLE + " (" +
+                    StockSnapshotTable.COL_ITEM_ID + ", " + StockSnapshotTable.COL_QTY + ", " +
+                    StockSnapshotTable.COL_AS_OF + ", " + StockSnapshotTable.COL_LAST_MOVEMENT_ID + ")" +
+                    " SELECT " + StockMovementTable.COL_ITEM_ID + ", " + StockMovementTable.COL_QTY_AFTER + ", " +
+                    StockMovementTable.COL_CREATED_AT + ", MAX(" + StockMovementTable.COL_ID + ")" +
+                    " FROM " + StockMovementTable.TABLE + " WHERE " + where +
+                    " GROUP BY " + StockMovementTable.COL_ITEM_ID, args);
+            int removed = db.delete(StockMovementTable.TABLE, where, args);
+            db.setTransactionSuccessful();
+            return removed;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Method to read every item's movements in ledger order, a range scan on the primary key.
+    // Movements of deleted items drop out with the join
+    @Override
+    public List<StockMovement> getMovementsAfter(long afterId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<StockMovement> movements = new ArrayList<>(limit);
+        Cursor cursor = db.rawQuery("SELECT m." + StockMovementTable.COL_ID + ", m." + StockMovementTable.COL_ITEM_ID +
+                        ", m." + StockMovementTable.COL_DELTA + ", m." + StockMovementTable.COL_QTY_AFTER +
+                        ", m." + StockMovementTable.COL_CREATED_AT +
+                        " FROM " + StockMovementTable.TABLE + " m JOIN " + InventoryTable.TABLE + " i" +
+                        " ON i." + InventoryTable.COL_ID + " = m." + StockMovementTable.COL_ITEM_ID +
+                        " WHERE m." + StockMovementTable.COL_ID + " > ?" +
+                        " ORDER BY m." + StockMovementTable.COL_ID + " LIMIT ?",
+                new String[]{String.valueOf(afterId), String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                movements.add(new StockMovement(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2),
+                        cursor.getInt(3), cursor.getLong(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return movements;
+    }
+
+    // Method to find where a time range starts in the ledger: the lowest _id stamped at or after
+    // fromMillis. Movements recorded before a clock change can carry later times than the ones
+    // after them, so the rowid order can't be searched. Left to itself SQLite answers MIN(_id)
+    // by walking the rowids from the oldest movement, the created_at index only reads the range
+    @Override
+    public long findFirstMovementId(long fromMillis) {
+        SQLiteStatement statement = getStatement("SELECT IFNULL((SELECT MIN(" + StockMovementTable.COL_ID +
+                ") FROM " + StockMovementTable.TABLE + " INDEXED BY " + StockMovementTable.INDEX_TIME +
+                " WHERE " + StockMovementTable.COL_CREATED_AT + " >= ?), (SELECT IFNULL(MAX(" + StockMovementTable.COL_ID + "), 0) + 1 FROM " + StockMovementTable.TABLE + "))");
+        synchronized (statement) {
+            statement.bindLong(1, fromMillis);
+            long first = statement.simpleQueryForLong();
+            statement.clearBindings();
+            return first;
+        }
+    }
+
+    @Override
+    public String getSyncState(String key) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + SyncStateTable.COL_VALUE + " FROM " + SyncStateTable.TABLE +
+                " WHERE " + SyncStateTable.COL_KEY + " = ?", new String[]{key});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void setSyncState(String key, String value) {
+        SQLiteStatement statement = getStatement("INSERT OR REPLACE INTO " + SyncStateTable.TABLE +
+                " (" + SyncStateTable.COL_KEY + ", " + SyncStateTable.COL_VALUE + ") VALUES (?, ?)");
+        synchronized (statement) {
+            statement.bindString(1, key);
+            statement.bindString(2, value);
+            statement.executeInsert();
+            statement.clearBindings();
+        }
+    }
+
+    // Method to give a restored database a sync identity of its own. The movement ids restart
+    // from the backup's, so under the old device id the server would skip every new movement
+    // up to the ones it already had. A new device id starts from nothing on the server, and
+    // the restored movements are taken as pushed: they were, under the old id, or they are
+    // lost with the rest of what the restore rolled back. The pull cursor stays, so the
+    // changes the server has after the backup's point, this device's own included, are
+    // pulled again and the device converges with the others
+    void resetSyncAfterRestore() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long lastMovementId = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(" + StockMovementTable.COL_ID +
+                    "), 0) FROM " + StockMovementTable.TABLE, null);
+            setSyncState(SyncEngine.KEY_DEVICE_ID, UUID.randomUUID().toString());
+            setSyncState(SyncEngine.KEY_PUSH_CURSOR, String.valueOf(lastMovementId));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Method to read local movements to push, a range scan on the ledger's primary key.
+    // Movements of deleted items drop out with the join, deletes stay on the device
+    @Override
+    public List<SyncChange> getUnsyncedChanges(long afterId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<SyncChange> changes = new ArrayList<>(limit);
+        Cursor cursor = db.rawQuery("SELECT m." + StockMovementTable.COL_ID + ", i." + InventoryTable.COL_ITEM +
+                        ", m." + StockMovementTable.COL_DELTA +
+                        " FROM " + StockMovementTable.TABLE + " m JOIN " + InventoryTable.TABLE + " i" +
+                        " ON i." + InventoryTable.COL_ID + " = m." + StockMovementTable.COL_ITEM_ID +
+                        " WHERE m." + StockMovementTable.COL_ID + " > ? AND m." + StockMovementTable.COL_REMOTE + " = 0" +
+                        " ORDER BY m." + StockMovementTable.COL_ID + " LIMIT ?",
+                new String[]{String.valueOf(afterId), String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                changes.add(new SyncChange(cursor.getLong(0), cursor.getString(1), cursor.getInt(2)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return changes;
+    }
+
+    // Method to add other devices' deltas in one transaction. Movements the triggers write for
+    // them are marked remote, the writer thread is the only writer so nothing else lands in
+    // between
+    @Override
+    public void applyRemoteChanges(List<SyncChange> changes, String cursorKey, String cursorValue) {
+        SQLiteDatabase db = getWritableDatabase();
+        // Deltas from other devices land in the default location
+        SQLiteStatement add = getStatement("UPDATE " + StockTable.TABLE +
+                " SET " + StockTable.COL_QTY + " = " + StockTable.COL_QTY + " + ?" +
+                " WHERE " + StockTable.COL_LOCATION_ID + " = " + Location.DEFAULT_ID + " AND " + StockTable.COL_ITEM_ID +
+                " = (SELECT " + InventoryTable.COL_ID + " FROM " + InventoryTable.TABLE +
+                " WHERE " + InventoryTable.COL_ITEM_KEY + " = ?)");
+        SQLiteStatement insert = getStatement("INSERT INTO " + InventoryTable.TABLE + " (" +
+                InventoryTable.COL_ITEM + ", " + InventoryTable.COL_ITEM_KEY + ", " +
+                InventoryTable.COL_QTY + ") VALUES (?, ?, ?)");
+        SQLiteStatement lastMovement = getStatement("SELECT IFNULL(MAX(" + StockMovementTable.COL_ID + "), 0)" +
+                " FROM " + StockMovementTable.TABLE);
+        SQLiteStatement markRemote = getStatement("UPDATE " + StockMovementTable.TABLE +
+                " SET " + StockMovementTable.COL_REMOTE + " = 1 WHERE " + StockMovementTable.COL_ID + " > ?");
+        synchronized (add) {
+            synchronized (insert) {
+                db.beginTransaction();
+                try {
+                    long before;
+                    synchronized (lastMovement) {
+                        before = lastMovement.simpleQueryForLong();
+                    }
+                    for (SyncChange change : changes) {
+                        String key = InventoryItem.normalizeName(change.getItemName());
+                        add.bindLong(1, change.getDelta());
+                        add.bindString(2, key);
+                        if (add.executeUpdateDelete() == 0) {
+                            insert.bindString(1, change.getItemName());
+                            insert.bindString(2, key);
+                            insert.bindLong(3, change.getDelta());
+                            insert.executeInsert();
+                        }
+                    }
+                    synchronized (markRemote) {
+                        markRemote.bindLong(1, before);
+                        markRemote.executeUpdateDelete();
+                        markRemote.clearBindings();
+                    }
+                    setSyncState(cursorKey, cursorValue);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                    add.clearBindings();
+                    insert.clearBindings();
+                }
+            }
+        }
+    }
+
+    // Method to list every item at or below its reorder threshold, used after bulk writes
+    @Override
+    public List<InventoryItem> getLowStockItems() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<InventoryItem> items = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT " + ITEM_COLUMNS + " FROM " + InventoryTable.TABLE +
+                " WHERE " + InventoryTable.COL_QTY + " <= " + InventoryTable.COL_REORDER_THRESHOLD, null);
+        try {
+            while (cursor.moveToNext()) {
+                items.add(readItem(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    // Reads a row selected with ITEM_COLUMNS
+    private static InventoryItem readItem(Cursor cursor) {
+        return new InventoryItem(cursor.getLong(0), cursor.getString(1), cursor.getInt(2), cursor.getInt(3));
+    }
+
+    // Method to get a compiled statement for the given SQL, compiling it on first use
+    private SQLiteStatement getStatement(String sql) {
+        // Opened outside the cache lock, close() takes the locks in the opposite order
+        SQLiteDatabase db = getWritableDatabase();
+        synchronized (statementCache) {
+            SQLiteStatement statement = statementCache.get(sql);
+            if (statement == null) {
+                statement = db.compileStatement(sql);
+                statementCache.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+
+    // Compiled statements belong to the connection, so they go when it does
+    @Override
+    public synchronized void close() {
+        synchronized (statementCache) {
+            for (SQLiteStatement statement : statementCache.values()) {
+                statement.close();
+            }
+            statementCache.clear();
+        }
+        super.close();
     }
 
 }
@@ -0,0 +1,1104 @@
+package com.example.project;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Optional LAN API for back-office tools and scanners: HTTP/1.1 with JSON bodies, served by one
+// non-blocking event loop thread. Requests are parsed on the loop and run through the
+// repository like the UI's own calls, so they share its writer thread, undo history and change
+// notifications. Results come back to the loop through a task queue, the repository's threads
+// never touch a socket. Pipelined requests on a connection are answered in order: its reads run
+// side by side, but never alongside its writes. Item lists are streamed in chunks a page at a
+// time, the next page is read only once the last one has mostly been sent.
+//
+//   POST /api/token              {"email":..., "password":...} -> {"token":..., "expiresInSeconds":...}
+//   GET  /api/items              ?q=, location= or category=, after=, limit= -> [item, ...] in _id order
+//   GET  /api/items/{id}         -> item
+//   POST /api/items/{id}/adjust  {"delta":n} -> item
+//   POST /api/adjust             {"items":[{"id":..., "delta":n}, ...]} -> {"adjusted":true}, one edit
+//   POST /api/scan               {"sku":..., "quantity":n} -> item, like receiving by barcode
+//
+// Everything but /api/token needs "Authorization: Bearer <token>". Tokens are issued against the
+// users table's password hashes and only kept in memory, they end with the server. Plain HTTP,
+// meant for a trusted store LAN, so only the device's LAN address is bound and never mobile data
+// or a VPN
+public class InventoryHttpServer {
+    public static final int DEFAULT_PORT = 8080;
+    static final long TOKEN_TTL_MILLIS = TimeUnit.HOURS.toMillis(12);
+    // Items read from the repository per page while a list streams
+    static final int STREAM_PAGE_SIZE = 500;
+    private static final int TOKEN_BYTES = 32;
+    private static final int MAX_CONNECTIONS = 64;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+    // Requests parsed ahead on one connection before it stops being read
+    private static final int MAX_PIPELINED = 16;
+    // Repository calls outstanding across all connections, kept under its read queue's capacity
+    private static final int MAX_IN_FLIGHT = 48;
+    // A streamed list reads its next page once less than this is left to send
+    private static final int STREAM_LOW_WATER_BYTES = 64 * 1024;
+    // Per bulk adjust and per delta, so deltas summed for one item can't overflow an int
+    private static final int MAX_BULK_ITEMS = InventoryStore.BATCH_SIZE;
+    private static final int MAX_DELTA = 1000000;
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    // From a request being parsed to its whole response being queued for the socket
+    private static final Metrics.Timer REQUEST = Metrics.timer("http.request");
+    private static final Metrics.Counter REJECTED = Metrics.counter("http.rejected");
+
+    private static InventoryHttpServer instance;
+
+    private final InventoryRepository repository;
+    // Null for the LAN address, looked up on each start()
+    private final InetAddress requestedAddress;
+    private final int requestedPort;
+    // Results coming back from the repository's threads, run on the loop
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final SecureRandom random = new SecureRandom();
+    // Only used on the loop thread
+    private final Map<String, Long> tokenExpiries = new HashMap<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private int inFlight = 0;
+    // Bumped by each start(). Callbacks of calls made by an earlier run are dropped, their
+    // connections are gone and they aren't counted in this run's inFlight
+    private int generation = 0;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running = false;
+    private volatile int port = -1;
+    private volatile String address = null;
+
+    private interface Handler<T> {
+        void onResult(Exchange exchange, T result);
+    }
+
+    private static final class Request {
+        final String method;
+        final String path;
+        final Map<String, String> query;
+        final Map<String, String> headers;
+        final String body;
+
+        Request(String method, String path, Map<String, String> query, Map<String, String> headers, String body) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    // One request and its response, queued on the connection in arrival order
+    private static final class Exchange {
+        final Connection connection;
+        // Null when the request couldn't be parsed, the response is then already set
+        final Request request;
+        final boolean writes;
+        final boolean closeAfter;
+        final long startNanos;
+        // Response bytes not yet moved to the connection's output
+        final ArrayDeque<ByteBuffer> ready = new ArrayDeque<>();
+        boolean dispatched = false;
+        // Set once the whole response is in ready or sent
+        boolean complete = false;
+        ItemStream stream = null;
+
+        Exchange(Connection connection, Request request, boolean writes, boolean closeAfter) {
+            this.connection = connection;
+            this.request = request;
+            this.writes = writes;
+            this.closeAfter = closeAfter;
+            this.startNanos = Metrics.isEnabled() ? System.nanoTime() : 0;
+        }
+    }
+
+    public InventoryHttpServer(InventoryRepository repository, int port) {
+        this(repository, null, port);
+    }
+
+    // Lets tests serve on the loopback address
+    InventoryHttpServer(InventoryRepository repository, InetAddress address, int port) {
+        this.repository = repository;
+        this.requestedAddress = address;
+        this.requestedPort = port;
+    }
+
+    // Process-wide server on DEFAULT_PORT, over the app's repository. Not started
+    public static synchronized InventoryHttpServer getInstance(Context context) {
+        if (instance == null) {
+            instance = new InventoryHttpServer(InventoryRepository.getInstance(context), DEFAULT_PORT);
+        }
+        return instance;
+    }
+
+    // Method to bind the port on the LAN address and start the loop thread. Port 0 picks a free
+    // port, see getPort(). Throws if the device isn't on a LAN
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        InetAddress bindAddress = requestedAddress != null ? requestedAddress : findLanAddress();
+        if (bindAddress == null) {
+            throw new IOException("No LAN address to serve on");
+        }
+        selector = Selector.open();
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.bind(new InetSocketAddress(bindAddress, requestedPort));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            closeQuietly();
+            throw e;
+        }
+        port = serverChannel.socket().getLocalPort();
+        address = bindAddress.getHostAddress();
+        tasks.clear();
+        inFlight = 0;
+        generation++;
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "inventory-http");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Method to close the port and every connection, and forget the tokens issued
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // The port bound by start(), -1 before
+    public int getPort() {
+        return port;
+    }
+
+    // The address bound by start(), null before
+    public String getAddress() {
+        return address;
+    }
+
+    // The device's first site-local IPv4 address, what a LAN client connects to. Null without one
+    public static String getLanAddress() {
+        InetAddress address = findLanAddress();
+        return address == null ? null : address.getHostAddress();
+    }
+
+    private static InetAddress findLanAddress() {
+        try {
+            for (NetworkInterface network : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!network.isUp() || network.isLoopback()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(network.getInetAddresses())) {
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        return address;
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            // No interfaces to list
+        }
+        return null;
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                boolean ranTasks = false;
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                    ranTasks = true;
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isWritable()) {
+                        connection.flush();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        connection.read();
+                    }
+                }
+                // Calls that finished made room, hand it to requests waiting on other connections
+                if (ranTasks) {
+                    for (Connection connection : new ArrayList<>(connections)) {
+                        connection.process();
+                    }
+                }
+                closeIdleConnections();
+            }
+        } catch (IOException e) {
+            // The selector failed, nothing more can be served
+        } finally {
+            running = false;
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            tokenExpiries.clear();
+            closeQuietly();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (connections.size() >= MAX_CONNECTIONS) {
+                REJECTED.increment();
+                channel.close();
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            Connection connection = new Connection(channel, key);
+            key.attach(connection);
+            connections.add(connection);
+        }
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (Connection connection : new ArrayList<>(connections)) {
+            // Waiting on the repository doesn't count, waiting on the client does
+            boolean waitingOnClient = connection.exchanges.isEmpty() || !connection.output.isEmpty();
+            if (waitingOnClient && now - connection.lastActiveMillis > IDLE_TIMEOUT_MILLIS) {
+                connection.close();
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    // Runs a task on the loop thread, from any thread
+    private void post(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    // A repository callback that brings the result back to the loop and counts the call as in flight
+    private <T> InventoryRepository.Callback<T> onLoop(final Exchange exchange, final Handler<T> handler) {
+        final int callGeneration = generation;
+        inFlight++;
+        return new InventoryRepository.DirectCallback<T>() {
+            @Override
+            public void onResult(final T result) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (callGeneration != generation) {
+                            return;
+                        }
+                        inFlight--;
+                        if (exchange.connection.closed) {
+                            return;
+                        }
+                        try {
+                            handler.onResult(exchange, result);
+                        } catch (RuntimeException e) {
+                            fail(exchange, e);
+                        }
+                        exchange.connection.process();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (callGeneration != generation) {
+                            return;
+                        }
+                        inFlight--;
+                        if (!exchange.connection.closed) {
+                            fail(exchange, error);
+                            exchange.connection.process();
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        // Filled up to its position, parsed from the start
+        ByteBuffer input = ByteBuffer.allocate(MAX_HEADER_BYTES);
+        final ArrayDeque<Exchange> exchanges = new ArrayDeque<>();
+        final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        int outputBytes = 0;
+        boolean inputClosed = false;
+        // Nothing more is parsed, the connection closes once the queued responses are sent
+        boolean closing = false;
+        boolean closed = false;
+        long lastActiveMillis = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() {
+            int read;
+            try {
+                read = channel.read(input);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read == -1) {
+                inputClosed = true;
+                closing = true;
+            } else if (read > 0) {
+                lastActiveMillis = System.currentTimeMillis();
+            }
+            process();
+        }
+
+        void process() {
+            if (closed) {
+                return;
+            }
+            while (!closing && exchanges.size() < MAX_PIPELINED && parseRequest()) {
+                // Parsed as many as there are
+            }
+            dispatch();
+            flush();
+        }
+
+        // Method to hand queued requests to the repository in order. A read waits for earlier
+        // writes on the connection to finish and a write for earlier reads, writes go to the
+        // single writer thread which keeps their order by itself
+        private void dispatch() {
+            boolean readsPending = false;
+            boolean writesPending = false;
+            for (Exchange exchange : exchanges) {
+                if (!exchange.dispatched) {
+                    if (inFlight >= MAX_IN_FLIGHT || (exchange.writes ? readsPending : writesPending)) {
+                        return;
+                    }
+                    exchange.dispatched = true;
+                    route(exchange);
+                }
+                if (!exchange.complete) {
+                    if (exchange.writes) {
+                        writesPending = true;
+                    } else {
+                        readsPending = true;
+                    }
+                }
+            }
+        }
+
+        void flush() {
+            if (closed) {
+                return;
+            }
+            advance();
+            write();
+            // Having sent most of a streamed page, read the next one
+            if (outputBytes < STREAM_LOW_WATER_BYTES) {
+                advance();
+            }
+            if (closed) {
+                return;
+            }
+            if (output.isEmpty() && exchanges.isEmpty() && closing) {
+                close();
+                return;
+            }
+            int ops = 0;
+            if (!closing && exchanges.size() < MAX_PIPELINED && input.hasRemaining()) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!output.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        // Moves finished responses to the output in request order, up to the first unfinished one
+        private void advance() {
+            while (!exchanges.isEmpty()) {
+                Exchange head = exchanges.peek();
+                while (!head.ready.isEmpty()) {
+                    ByteBuffer buffer = head.ready.poll();
+                    outputBytes += buffer.remaining();
+                    output.add(buffer);
+                }
+                if (!head.complete) {
+                    if (head.stream != null && outputBytes < STREAM_LOW_WATER_BYTES) {
+                        head.stream.requestPage();
+                    }
+                    return;
+                }
+                exchanges.poll();
+                if (head.startNanos != 0) {
+                    REQUEST.record(System.nanoTime() - head.startNanos);
+                }
+                if (head.closeAfter) {
+                    closing = true;
+                }
+            }
+        }
+
+        private void write() {
+            try {
+                while (!output.isEmpty()) {
+                    ByteBuffer buffer = output.peek();
+                    int written = channel.write(buffer);
+                    outputBytes -= written;
+                    if (written > 0) {
+                        lastActiveMillis = System.currentTimeMillis();
+                    }
+                    if (buffer.hasRemaining()) {
+                        return;
+                    }
+                    output.poll();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        // Method to parse one request from the start of the input. Returns false if it hasn't
+        // fully arrived yet. Requests that can't be served queue an error response and end the connection
+        private boolean parseRequest() {
+            byte[] bytes = input.array();
+            int filled = input.position();
+            // Empty lines before a request line are ignored
+            int start = 0;
+            while (start + 1 < filled && bytes[start] == '\r' && bytes[start + 1] == '\n') {
+                start += 2;
+            }
+            int headerEnd = indexOfHeaderEnd(bytes, start, Math.min(filled, MAX_HEADER_BYTES));
+            if (headerEnd == -1) {
+                if (filled >= MAX_HEADER_BYTES) {
+                    reject(431, "Request headers are too large");
+                }
+                consume(start);
+                return false;
+            }
+            String[] lines = new String(bytes, start, headerEnd - start, StandardCharsets.ISO_8859_1).split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/")) {
+                reject(400, "Malformed request line");
+                return false;
+            }
+            if (!requestLine[2].equals("HTTP/1.1") && !requestLine[2].equals("HTTP/1.0")) {
+                reject(505, "Only HTTP/1.1 and HTTP/1.0 are supported");
+                return false;
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    reject(400, "Malformed header");
+                    return false;
+                }
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.US), lines[i].substring(colon + 1).trim());
+            }
+            if (headers.containsKey("transfer-encoding")) {
+                reject(501, "Chunked request bodies aren't supported, send a Content-Length");
+                return false;
+            }
+            int contentLength = 0;
+            String length = headers.get("content-length");
+            if (length != null) {
+                try {
+                    contentLength = Integer.parseInt(length);
+                } catch (NumberFormatException e) {
+                    contentLength = -1;
+                }
+                if (contentLength < 0) {
+                    reject(400, "Invalid Content-Length");
+                    return false;
+                }
+                if (contentLength > MAX_BODY_BYTES) {
+                    reject(413, "Request body is too large");
+                    return false;
+                }
+            }
+            int end = headerEnd + 4 + contentLength;
+            if (end > input.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(end);
+                larger.put(bytes, 0, filled);
+                input = larger;
+                return false;
+            }
+            if (filled < end) {
+                return false;
+            }
+            String body = new String(bytes, headerEnd + 4, contentLength, StandardCharsets.UTF_8);
+            consume(end);
+
+            String target = requestLine[1];
+            int question = target.indexOf('?');
+            String path = question == -1 ? target : target.substring(0, question);
+            Map<String, String> query;
+            try {
+                query = parseQuery(question == -1 ? "" : target.substring(question + 1));
+            } catch (IllegalArgumentException e) {
+                reject(400, "Malformed query string");
+                return false;
+            }
+            String connectionHeader = headers.get("connection");
+            boolean close = requestLine[2].equals("HTTP/1.0") ||
+                    (connectionHeader != null && connectionHeader.equalsIgnoreCase("close"));
+            Request request = new Request(requestLine[0], path, query, headers, body);
+            boolean writes = request.method.equals("POST") && !path.equals("/api/token");
+            exchanges.add(new Exchange(this, request, writes, close));
+            if (close) {
+                closing = true;
+            }
+            return true;
+        }
+
+        private void reject(int status, String message) {
+            Exchange exchange = new Exchange(this, null, false, true);
+            exchange.dispatched = true;
+            respondError(exchange, status, message);
+            exchanges.add(exchange);
+            closing = true;
+        }
+
+        // Drops parsed bytes from the start of the input
+        private void consume(int count) {
+            if (count == 0) {
+                return;
+            }
+            byte[] bytes = input.array();
+            int remaining = input.position() - count;
+            System.arraycopy(bytes, count, bytes, 0, remaining);
+            input.position(remaining);
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+            connections.remove(this);
+        }
+    }
+
+    // Streams a list of items as a JSON array, one repository page at a time
+    private final class ItemStream {
+        final Exchange exchange;
+        final String query;
+        final long locationId;
+        final long categoryId;
+        final boolean chunked;
+        long afterId;
+        int remaining;
+        int sent = 0;
+        boolean loading = false;
+        boolean started = false;
+
+        ItemStream(Exchange exchange, String query, long locationId, long categoryId, long afterId, int limit) {
+            this.exchange = exchange;
+            this.query = query;
+            this.locationId = locationId;
+            this.categoryId = categoryId;
+            this.afterId = afterId;
+            this.remaining = limit;
+            // HTTP/1.0 clients get the plain body, ended by closing the connection
+            this.chunked = !exchange.closeAfter;
+        }
+
+        void requestPage() {
+            if (loading || exchange.complete) {
+                return;
+            }
+            loading = true;
+            final int limit = Math.min(STREAM_PAGE_SIZE, remaining);
+            InventoryRepository.Callback<List<InventoryItem>> callback = onLoop(exchange,
+                    new Handler<List<InventoryItem>>() {
+                        @Override
+                        public void onResult(Exchange exchange, List<InventoryItem> page) {
+                            onPage(page, limit);
+                        }
+                    });
+            if (query != null) {
+                repository.searchItems(query, afterId, limit, callback);
+            } else if (locationId != Location.ALL) {
+                repository.getLocationItemsPage(locationId, afterId, limit, callback);
+            } else if (categoryId != Category.ROOT) {
+                repository.getCategoryItemsPage(categoryId, afterId, limit, callback);
+            } else {
+                repository.getItemsPage(afterId, limit, callback);
+            }
+        }
+
+        private void onPage(List<InventoryItem> page, int limit) {
+            loading = false;
+            StringBuilder json = new StringBuilder(page.size() * 64 + 2);
+            if (!started) {
+                json.append('[');
+            }
+            for (InventoryItem item : page) {
+                if (sent++ > 0) {
+                    json.append(',');
+                }
+                appendItem(json, item);
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+            remaining -= page.size();
+            boolean last = page.size() < limit || remaining == 0;
+            if (last) {
+                json.append(']');
+            }
+            if (!started) {
+                started = true;
+                exchange.ready.add(ByteBuffer.wrap(header(200, chunked ? -1 : 0, exchange.closeAfter, null)));
+            }
+            byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+            if (chunked) {
+                exchange.ready.add(ByteBuffer.wrap((Integer.toHexString(bytes.length) + "\r\n")
+                        .getBytes(StandardCharsets.US_ASCII)));
+                exchange.ready.add(ByteBuffer.wrap(bytes));
+                exchange.ready.add(ByteBuffer.wrap(CRLF));
+                if (last) {
+                    exchange.ready.add(ByteBuffer.wrap(LAST_CHUNK));
+                }
+            } else {
+                exchange.ready.add(ByteBuffer.wrap(bytes));
+            }
+            if (last) {
+                exchange.complete = true;
+            }
+        }
+    }
+
+    private void route(Exchange exchange) {
+        Request request = exchange.request;
+        try {
+            if (request.path.equals("/api/token")) {
+                if (requireMethod(exchange, "POST")) {
+                    issueToken(exchange);
+                }
+                return;
+            }
+            if (!request.path.startsWith("/api/")) {
+                respondError(exchange, 404, "Not found");
+                return;
+            }
+            if (!isAuthorized(request)) {
+                respond(exchange, 401, error("Missing, invalid or expired token"), "WWW-Authenticate: Bearer\r\n");
+                return;
+            }
+            String[] segments = request.path.substring("/api/".length()).split("/");
+            if (segments[0].equals("items") && segments.length == 1) {
+                if (requireMethod(exchange, "GET")) {
+                    listItems(exchange);
+                }
+            } else if (segments[0].equals("items") && segments.length == 2) {
+                if (requireMethod(exchange, "GET")) {
+                    getItem(exchange, parseId(segments[1]));
+                }
+            } else if (segments[0].equals("items") && segments.length == 3 && segments[2].equals("adjust")) {
+                if (requireMethod(exchange, "POST")) {
+                    adjustItem(exchange, parseId(segments[1]));
+                }
+            } else if (segments[0].equals("adjust") && segments.length == 1) {
+                if (requireMethod(exchange, "POST")) {
+                    adjustItems(exchange);
+                }
+            } else if (segments[0].equals("scan") && segments.length == 1) {
+                if (requireMethod(exchange, "POST")) {
+                    receiveScan(exchange);
+                }
+            } else {
+                respondError(exchange, 404, "Not found");
+            }
+        } catch (IllegalArgumentException e) {
+            respondError(exchange, 400, e.getMessage());
+        }
+    }
+
+    private void issueToken(Exchange exchange) {
+        Map<String, Object> body = parseObject(exchange.request);
+        String email = stringField(body, "email").trim();
+        String password = stringField(body, "password").trim();
+        repository.validateUser(email, password, onLoop(exchange, new Handler<Boolean>() {
+            @Override
+            public void onResult(Exchange exchange, Boolean valid) {
+                if (!valid) {
+                    respondError(exchange, 401, "Invalid email or password");
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                Iterator<Map.Entry<String, Long>> tokens = tokenExpiries.entrySet().iterator();
+                while (tokens.hasNext()) {
+                    if (tokens.next().getValue() <= now) {
+                        tokens.remove();
+                    }
+                }
+                byte[] bytes = new byte[TOKEN_BYTES];
+                random.nextBytes(bytes);
+                String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+                tokenExpiries.put(token, now + TOKEN_TTL_MILLIS);
+                StringBuilder json = new StringBuilder("{\"token\":");
+                Json.appendString(json, token).append(",\"expiresInSeconds\":")
+                        .append(TimeUnit.MILLISECONDS.toSeconds(TOKEN_TTL_MILLIS)).append('}');
+                respond(exchange, 200, json.toString(), null);
+            }
+        }));
+    }
+
+    private boolean isAuthorized(Request request) {
+        String authorization = request.headers.get("authorization");
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return false;
+        }
+        Long expiry = tokenExpiries.get(authorization.substring(7).trim());
+        return expiry != null && expiry > System.currentTimeMillis();
+    }
+
+    private void listItems(Exchange exchange) {
+        Map<String, String> query = exchange.request.query;
+        String search = query.get("q");
+        if (search != null && InventorySearch.toMatchQuery(search) == null) {
+            respondError(exchange, 400, "q has nothing to search for");
+            return;
+        }
+        long afterId = query.containsKey("after") ? parseLong(query.get("after"), "after") : 0;
+        long limit = query.containsKey("limit") ? parseLong(query.get("limit"), "limit") : Integer.MAX_VALUE;
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit can't be negative");
+        }
+        long locationId = query.containsKey("location") ? parseLong(query.get("location"), "location") : Location.ALL;
+        long categoryId = query.containsKey("category") ? parseLong(query.get("category"), "category") : Category.ROOT;
+        if (limit == 0) {
+            respond(exchange, 200, "[]", null);
+            return;
+        }
+        exchange.stream = new ItemStream(exchange, search, locationId, categoryId, afterId,
+                (int) Math.min(limit, Integer.MAX_VALUE));
+    }
+
+    private void getItem(Exchange exchange, long id) {
+        repository.getItem(id, onLoop(exchange, new Handler<InventoryItem>() {
+            @Override
+            public void onResult(Exchange exchange, InventoryItem item) {
+                respondItem(exchange, item);
+            }
+        }));
+    }
+
+    private void adjustItem(Exchange exchange, final long id) {
+        int delta = deltaField(parseObject(exchange.request), "delta");
+        repository.adjustItemQuantities(new long[]{id}, delta, onLoop(exchange, new Handler<Boolean>() {
+            @Override
+            public void onResult(Exchange exchange, Boolean adjusted) {
+                if (adjusted) {
+                    getItem(exchange, id);
+                } else {
+                    respondError(exchange, 404, "No such item");
+                }
+            }
+        }));
+    }
+
+    private void adjustItems(Exchange exchange) {
+        Object items = parseObject(exchange.request).get("items");
+        if (!(items instanceof List) || ((List<?>) items).isEmpty() || ((List<?>) items).size() > MAX_BULK_ITEMS) {
+            throw new IllegalArgumentException("items must be an array of 1 to " + MAX_BULK_ITEMS + " objects");
+        }
+        List<?> list = (List<?>) items;
+        long[] ids = new long[list.size()];
+        int[] deltas = new int[list.size()];
+        for (int i = 0; i < ids.length; i++) {
+            if (!(list.get(i) instanceof Map)) {
+                throw new IllegalArgumentException("items must be an array of objects");
+            }
+            Map<?, ?> item = (Map<?, ?>) list.get(i);
+            ids[i] = longField(item, "id");
+            deltas[i] = deltaField(item, "delta");
+        }
+        repository.adjustItemQuantities(ids, deltas, onLoop(exchange, new Handler<Boolean>() {
+            @Override
+            public void onResult(Exchange exchange, Boolean adjusted) {
+                if (adjusted) {
+                    respond(exchange, 200, "{\"adjusted\":true}", null);
+                } else {
+                    respondError(exchange, 404, "None of the items exist");
+                }
+            }
+        }));
+    }
+
+    private void receiveScan(Exchange exchange) {
+        Map<String, Object> body = parseObject(exchange.request);
+        String sku = stringField(body, "sku").trim();
+        int quantity = body.containsKey("quantity") ? deltaField(body, "quantity") : 1;
+        repository.receiveScan(sku, quantity, onLoop(exchange, new Handler<InventoryItem>() {
+            @Override
+            public void onResult(Exchange exchange, InventoryItem item) {
+                if (item == null) {
+                    respondError(exchange, 404, "Unknown barcode");
+                } else {
+                    respondItem(exchange, item);
+                }
+            }
+        }));
+    }
+
+    private static boolean requireMethod(Exchange exchange, String method) {
+        if (exchange.request.method.equals(method)) {
+            return true;
+        }
+        respond(exchange, 405, error("Use " + method), "Allow: " + method + "\r\n");
+        return false;
+    }
+
+    private static void respondItem(Exchange exchange, InventoryItem item) {
+        if (item == null) {
+            respondError(exchange, 404, "No such item");
+        } else {
+            respond(exchange, 200, appendItem(new StringBuilder(), item).toString(), null);
+        }
+    }
+
+    private static void fail(Exchange exchange, Throwable error) {
+        if (exchange.stream != null && exchange.stream.started) {
+            // Part of the list is sent already, cut it off so the client sees it incomplete
+            exchange.connection.close();
+        } else if (error instanceof RejectedExecutionException) {
+            REJECTED.increment();
+            respond(exchange, 503, error("Busy, try again"), "Retry-After: 1\r\n");
+        } else {
+            respondError(exchange, 500, "Internal error");
+        }
+    }
+
+    private static void respondError(Exchange exchange, int status, String message) {
+        respond(exchange, status, error(message), null);
+    }
+
+    private static void respond(Exchange exchange, int status, String json, String extraHeaders) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.ready.add(ByteBuffer.wrap(header(status, body.length, exchange.closeAfter, extraHeaders)));
+        exchange.ready.add(ByteBuffer.wrap(body));
+        exchange.complete = true;
+    }
+
+    // A contentLength of -1 sends the body chunked
+    private static byte[] header(int status, int contentLength, boolean close, String extraHeaders) {
+        StringBuilder header = new StringBuilder(128);
+        header.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n")
+                .append("Content-Type: application/json; charset=utf-8\r\n");
+        if (contentLength == -1) {
+            header.append("Transfer-Encoding: chunked\r\n");
+        } else if (contentLength > 0 || !close) {
+            header.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+        if (close) {
+            header.append("Connection: close\r\n");
+        }
+        if (extraHeaders != null) {
+            header.append(extraHeaders);
+        }
+        return header.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 400:
+                return "Bad Request";
+            case 401:
+                return "Unauthorized";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 413:
+                return "Payload Too Large";
+            case 431:
+                return "Request Header Fields Too Large";
+            case 501:
+                return "Not Implemented";
+            case 503:
+                return "Service Unavailable";
+            case 505:
+                return "HTTP Version Not Supported";
+            default:
+                return "Internal Server Error";
+        }
+    }
+
+    private static String error(String message) {
+        return Json.appendString(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    static StringBuilder appendItem(StringBuilder json, InventoryItem item) {
+        json.append("{\"id\":").append(item.getId()).append(",\"name\":");
+        Json.appendString(json, item.getName()).append(",\"quantity\":").append(item.getQuantity())
+                .append(",\"reorderThreshold\":").append(item.getReorderThreshold())
+                .append(",\"lowStock\":").append(item.isLowStock()).append('}');
+        return json;
+    }
+
+    // Offset of the \r\n\r\n ending the headers, -1 if it isn't within [start, end)
+    private static int indexOfHeaderEnd(byte[] bytes, int start, int end) {
+        for (int i = start; i + 3 < end; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query.isEmpty()) {
+            return parameters;
+        }
+        try {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                String name = URLDecoder.decode(equals == -1 ? pair : pair.substring(0, equals), "UTF-8");
+                String value = equals == -1 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                parameters.put(name, value);
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        return parameters;
+    }
+
+    private static Map<String, Object> parseObject(Request request) {
+        Object value = Json.parse(request.body);
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> object = (Map<String, Object>) value;
+        return object;
+    }
+
+    private static long parseId(String segment) {
+        return parseLong(segment, "Item id");
+    }
+
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+    }
+
+    private static String stringField(Map<?, ?> object, String name) {
+        Object value = object.get(name);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException(name + " must be a string");
+        }
+        return (String) value;
+    }
+
+    private static long longField(Map<?, ?> object, String name) {
+        Object value = object.get(name);
+        if (!(value instanceof Long)) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+        return (Long) value;
+    }
+
+    private static int deltaField(Map<?, ?> object, String name) {
+        long delta = longField(object, name);
+        if (Math.abs(delta) > MAX_DELTA) {
+            throw new IllegalArgumentException(name + " must be between " + -MAX_DELTA + " and " + MAX_DELTA);
+        }
+        return (int) delta;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.project;
+
+import java.util.Locale;
+
+// Immutable snapshot of a single row in the inventory table
+public class InventoryItem {
+    private final long id;
+    private final String name;
+    private final int quantity;
+    private final int reorderThreshold;
+
+    public InventoryItem(long id, String name, int quantity) {
+        this(id, name, quantity, 0);
+    }
+
+    public InventoryItem(long id, String name, int quantity, int reorderThreshold) {
+        this.id = id;
+        this.name = name;
+        this.quantity = quantity;
+        this.reorderThreshold = reorderThreshold;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public int getReorderThreshold() {
+        return reorderThreshold;
+    }
+
+    public boolean isLowStock() {
+        return quantity <= reorderThreshold;
+    }
+
+    // Key used to match item names: case and surrounding whitespace don't make a different item
+    public static String normalizeName(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.project;
+
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+// Loads inventory rows into the adapter one keyset page at a time as the user scrolls,
+// and applies row-level changes from the repository to the rows already loaded. With a
+// search query set, the pages come from the search instead of the whole table, and with a
+// location set they come from that location with its quantities instead of the totals, and
+// with a category set from the items filed anywhere under it. Browsing the totals, the pages
+// can come in another order and leave out items without stock
+public class InventoryPager extends RecyclerView.OnScrollListener implements InventoryRepository.ChangeListener {
+    public static final int PAGE_SIZE = 60;
+    // How many rows before the end of the loaded list the next page is requested
+    private static final int PREFETCH_DISTANCE = 20;
+    // From the request to the rows reaching the adapter, queueing and the main thread hop included
+    private static final Metrics.Timer LOAD_PAGE = Metrics.timer("ui.loadPage");
+
+    private final InventoryRepository repository;
+    private final InventoryAdapter adapter;
+    // The keyset cursor, null until the first page is loaded
+    private InventoryItem lastLoaded = null;
+    private boolean endReached = false;
+    private boolean loadPending = false;
+    // True while the adapter holds the saved snapshot instead of a loaded page
+    private boolean showingSnapshot = false;
+    private boolean firstPageLoaded = false;
+    // True while the first page of a new location is loading to replace the rows on screen
+    private boolean replacePending = false;
+    // Null when browsing the whole inventory
+    private String query = null;
+    // Location.ALL shows every item with its total. A search always shows totals
+    private long locationId = Location.ALL;
+    // Category.ROOT shows every item. Not combined with a location, setting one clears the other
+    private long categoryId = Category.ROOT;
+    // Only applied to the totals, a search, location or category is shown in _id order with every item
+    private ItemOrder order = ItemOrder.ID;
+    private boolean inStockOnly = false;
+    // Bumped on reload so a page that was still loading for the old list is dropped
+    private int generation = 0;
+
+    public InventoryPager(InventoryRepository repository, InventoryAdapter adapter) {
+        this.repository = repository;
+        this.adapter = adapter;
+    }
+
+    // Method to throw away loaded rows and start again from the first page
+    public void reload() {
+        generation++;
+        lastLoaded = null;
+        endReached = false;
+        loadPending = false;
+        replacePending = false;
+        showingSnapshot = false;
+        adapter.clear();
+        adapter.setOrder(activeOrder());
+        loadNextPage();
+    }
+
+    // Method to load the first page of a search, location or category, order and filter at
+    // once, restored after process death
+    public void start(String query, long locationId, long categoryId, ItemOrder order, boolean inStockOnly) {
+        this.query = normalizeQuery(query);
+        this.locationId = locationId;
+        this.categoryId = locationId == Location.ALL ? categoryId : Category.ROOT;
+        this.order = order;
+        this.inStockOnly = inStockOnly;
+        reload();
+    }
+
+    // Method to sort the totals another way. Reloads from the first page of the new order
+    public void setOrder(ItemOrder order) {
+        if (this.order == order) {
+            return;
+        }
+        this.order = order;
+        if (isBrowsingTotals()) {
+            reload();
+        }
+    }
+
+    // Method to leave out or show again the items with no stock
+    public void setInStockOnly(boolean inStockOnly) {
+        if (this.inStockOnly == inStockOnly) {
+            return;
+        }
+        this.inStockOnly = inStockOnly;
+        if (isBrowsingTotals()) {
+            reload();
+        }
+    }
+
+    // Method to switch to the results of a search, or back to every item with null or blank
+    public void setQuery(String query) {
+        String newQuery = normalizeQuery(query);
+        if (newQuery == null ? this.query == null : newQuery.equals(this.query)) {
+            return;
+        }
+        this.query = newQuery;
+        reload();
+    }
+
+    // Method to show the rows saved by the last run until the first page arrives.
+    // Ignored once a page has loaded, or while the grid shows anything but the first page in _id order
+    public void showSnapshot(List<InventoryItem> items) {
+        if (firstPageLoaded || !isBrowsingTotals() || order != ItemOrder.ID || inStockOnly || items.isEmpty() ||
+                adapter.getItemCount() != 0) {
+            return;
+        }
+        showingSnapshot = true;
+        adapter.appendItems(items);
+    }
+
+    // Method to show one location's stock, or the totals with Location.ALL. Only the first
+    // page of the new list is read, from the location index. When the grid is in _id order
+    // before and after, the page refilters the rows on screen instead of reloading them
+    public void setLocation(long locationId) {
+        if (this.locationId == locationId) {
+            return;
+        }
+        boolean refilter = firstPageLoaded && !showingSnapshot && activeOrder() == ItemOrder.ID;
+        this.locationId = locationId;
+        categoryId = Category.ROOT;
+        if (!refilter || activeOrder() != ItemOrder.ID) {
+            reload();
+            return;
+        }
+        // The rows stay until the page replaces them, a page still loading for them is dropped
+        generation++;
+        lastLoaded = null;
+        endReached = false;
+        loadPending = false;
+        replacePending = true;
+        loadNextPage();
+    }
+
+    // Method to show the items under a category and its subcategories, or every item with
+    // Category.ROOT. Only the first page is read, from the category index
+    public void setCategory(long categoryId) {
+        if (this.categoryId == categoryId) {
+            return;
+        }
+        this.categoryId = categoryId;
+        locationId = Location.ALL;
+        reload();
+    }
+
+    public void loadNextPage() {
+        if (endReached || loadPending) {
+            return;
+        }
+        loadPending = true;
+        final int requestGeneration = generation;
+        final long requestedNanos = Metrics.isEnabled() ? System.nanoTime() : 0;
+        InventoryRepository.Callback<List<InventoryItem>> callback = new InventoryRepository.Callback<List<InventoryItem>>() {
+            @Override
+            public void onResult(List<InventoryItem> page) {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                loadPending = false;
+                firstPageLoaded = true;
+                if (showingSnapshot) {
+                    showingSnapshot = false;
+                    adapter.clear();
+                }
+                if (!page.isEmpty()) {
+                    lastLoaded = page.get(page.size() - 1);
+                }
+                endReached = page.size() < PAGE_SIZE;
+                if (replacePending) {
+                    replacePending = false;
+                    adapter.replaceItems(page);
+                } else {
+                    adapter.appendItems(page);
+                }
+                if (requestedNanos != 0) {
+                    LOAD_PAGE.record(System.nanoTime() - requestedNanos);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                if (requestGeneration == generation) {
+                    loadPending = false;
+                }
+            }
+        };
+        if (query != null) {
+            repository.searchItems(query, lastLoadedId(), PAGE_SIZE, callback);
+        } else if (locationId != Location.ALL) {
+            repository.getLocationItemsPage(locationId, lastLoadedId(), PAGE_SIZE, callback);
+        } else if (categoryId != Category.ROOT) {
+            repository.getCategoryItemsPage(categoryId, lastLoadedId(), PAGE_SIZE, callback);
+        } else if (order != ItemOrder.ID || inStockOnly) {
+            repository.getSortedItemsPage(order, inStockOnly, lastLoaded, PAGE_SIZE, callback);
+        } else {
+            repository.getItemsPage(lastLoadedId(), PAGE_SIZE, callback);
+        }
+    }
+
+    @Override
+    public void onChange(InventoryChange change) {
+        if (query == null && (locationId != Location.ALL || categoryId != Category.ROOT)) {
+            onScopedChange(change);
+            return;
+        }
+        InventoryItem item = change.getItem();
+        switch (change.getType()) {
+            case INSERT:
+                // An undone delete puts the row back among the loaded rows. New rows get the
+                // highest _id, until the last page is loaded they arrive with it instead
+                if (isShown(item) && isInLoadedRange(item)) {
+                    adapter.insertItem(item);
+                    if (lastLoaded == null || activeOrder().compare(item, lastLoaded) > 0) {
+                        lastLoaded = item;
+                    }
+                }
+                break;
+            case UPDATE:
+                if (!isShown(item)) {
+                    // Renamed out of the search results, or out of stock while those are hidden
+                    adapter.unloadItem(change.getId());
+                } else if (isInLoadedRange(item)) {
+                    // Updated in place, moved within the loaded rows, or renamed or restocked into them
+                    adapter.insertItem(item);
+                } else if (showingSnapshot) {
+                    adapter.updateItem(item);
+                } else {
+                    // Moved past the loaded rows by its new name or quantity, a later page has it
+                    adapter.unloadItem(change.getId());
+                }
+                break;
+            case DELETE:
+                adapter.removeItem(change.getId());
+                break;
+            case RELOAD:
+            default:
+                reload();
+                break;
+        }
+    }
+
+    // Changes carry totals but not where the item is, so an updated row is read again for its
+    // quantity in the location, or to find out whether it is still under the category
+    private void onScopedChange(InventoryChange change) {
+        switch (change.getType()) {
+            case INSERT:
+                // New and restored items start out in the default location only, with all of
+                // their stock, and without a category
+                if (locationId != Location.DEFAULT_ID) {
+                    break;
+                }
+                if (change.getId() <= lastLoadedId()) {
+                    adapter.insertItem(change.getItem());
+                } else if (endReached && !loadPending) {
+                    adapter.appendItem(change.getItem());
+                    lastLoaded = change.getItem();
+                }
+                break;
+            case UPDATE:
+                refreshScopedRow(change.getId());
+                break;
+            case DELETE:
+                adapter.removeItem(change.getId());
+                break;
+            case RELOAD:
+            default:
+                reload();
+                break;
+        }
+    }
+
+    private void refreshScopedRow(final long id) {
+        final int requestGeneration = generation;
+        InventoryRepository.Callback<List<InventoryItem>> callback = new InventoryRepository.Callback<List<InventoryItem>>() {
+            @Override
+            public void onResult(List<InventoryItem> page) {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                if (page.isEmpty() || page.get(0).getId() != id) {
+                    adapter.removeItem(id);
+                } else if (!adapter.updateItem(page.get(0)) && (endReached || id <= lastLoadedId())) {
+                    // Newly stocked or filed here, somewhere among the rows already shown
+                    reload();
+                }
+            }
+        };
+        if (locationId != Location.ALL) {
+            repository.getLocationItemsPage(locationId, id - 1, 1, callback);
+        } else {
+            repository.getCategoryItemsPage(categoryId, id - 1, 1, callback);
+        }
+    }
+
+    private static String normalizeQuery(String query) {
+        return query != null && InventorySearch.toMatchQuery(query) != null ? query : null;
+    }
+
+    private boolean isBrowsingTotals() {
+        return query == null && locationId == Location.ALL && categoryId == Category.ROOT;
+    }
+
+    private ItemOrder activeOrder() {
+        return isBrowsingTotals() ? order : ItemOrder.ID;
+    }
+
+    private long lastLoadedId() {
+        return lastLoaded == null ? 0 : lastLoaded.getId();
+    }
+
+    private boolean isShown(InventoryItem item) {
+        if (query != null) {
+            return InventorySearch.matches(item.getName(), query);
+        }
+        return !inStockOnly || item.getQuantity() > 0;
+    }
+
+    // Whether the row sorts at or before the last loaded one, or every page is loaded already
+    private boolean isInLoadedRange(InventoryItem item) {
+        return (endReached && !loadPending) || (lastLoaded != null && activeOrder().compare(item, lastLoaded) <= 0);
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy <= 0 || loadPending || endReached) {
+            return;
+        }
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+            // The page is delivered on a later main thread turn, never inside this scroll callback
+            loadNextPage();
+        }
+    }
+}
@@ -0,0 +1,1077 @@
+package com.example.project;
+
+import android.content.Context;
+import android.os.Trace;
+
+import androidx.core.content.ContextCompat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Asynchronous front for InventoryStore. Every inventory write goes through one writer thread so
+// writes are applied in the order they were made, reads run on a small separate pool and
+// password hashing on its own thread so a login never waits behind an import. Results are
+// handed back through a Future and, optionally, a Callback run on the callback executor
+// (the main thread in the app)
+public class InventoryRepository {
+    private static final int WRITE_QUEUE_CAPACITY = 256;
+    private static final int READ_QUEUE_CAPACITY = 64;
+    private static final int READ_THREADS = 2;
+    // One hash at a time: each one holds PasswordHasher's work memory while it runs
+    private static final int AUTH_QUEUE_CAPACITY = 16;
+    // Stock movements older than this are folded into snapshots by the idle maintenance job, see DatabaseMaintenance
+    public static final long MOVEMENT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(90);
+    // In filesDir. Deleted when a restore is applied, see InventoryDatabaseHelper.acquire()
+    static final String SNAPSHOT_FILE = "inventory-snapshot.bin";
+    // Longest closeInstance() waits for the read and auth pools to finish their queued calls
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+    // Ledger rows read per query while the report engine catches up
+    private static final int REPORT_BATCH_SIZE = 1000;
+
+    // Time spent running each call, store (cache and database) work included. Waits in the
+    // queues are timed separately per executor
+    private static final Metrics.Timer INSERT_USER = Metrics.timer("auth.insertUser");
+    private static final Metrics.Timer VALIDATE_USER = Metrics.timer("auth.validateUser");
+    private static final Metrics.Timer INSERT_ITEM = Metrics.timer("store.insertItem");
+    private static final Metrics.Timer DELETE_ITEM = Metrics.timer("store.deleteItem");
+    private static final Metrics.Timer UPDATE_ITEM_QUANTITY = Metrics.timer("store.updateItemQuantity");
+    private static final Metrics.Timer RECEIVE_SCAN = Metrics.timer("store.receiveScan");
+    private static final Metrics.Timer UPDATE_ITEM_SKU = Metrics.timer("store.updateItemSku");
+    private static final Metrics.Timer GET_ITEM_SKU = Metrics.timer("store.getItemSku");
+    private static final Metrics.Timer SET_STOCK_QUANTITY = Metrics.timer("store.setStockQuantity");
+    private static final Metrics.Timer INSERT_LOCATION = Metrics.timer("store.insertLocation");
+    private static final Metrics.Timer GET_LOCATIONS = Metrics.timer("store.getLocations");
+    private static final Metrics.Timer GET_LOCATION_ITEMS_PAGE = Metrics.timer("store.getLocationItemsPage");
+    private static final Metrics.Timer INSERT_CATEGORY = Metrics.timer("store.insertCategory");
+    private static final Metrics.Timer GET_CATEGORIES = Metrics.timer("store.getCategories");
+    private static final Metrics.Timer EDIT_CATEGORIES = Metrics.timer("store.editCategories");
+    private static final Metrics.Timer SET_ITEM_CATEGORY = Metrics.timer("store.setItemCategory");
+    private static final Metrics.Timer GET_CATEGORY_ITEMS_PAGE = Metrics.timer("store.getCategoryItemsPage");
+    private static final Metrics.Timer UPDATE_REORDER_THRESHOLD = Metrics.timer("store.updateReorderThreshold");
+    private static final Metrics.Timer UPDATE_ITEM_NAME = Metrics.timer("store.updateItemName");
+    private static final Metrics.Timer EDIT_ITEMS = Metrics.timer("store.editItems");
+    private static final Metrics.Timer UNDO = Metrics.timer("store.undo");
+    private static final Metrics.Timer REDO = Metrics.timer("store.redo");
+    private static final Metrics.Timer GET_ITEM = Metrics.timer("store.getItem");
+    private static final Metrics.Timer FIND_ITEM_BY_NAME = Metrics.timer("store.findItemByName");
+    private static final Metrics.Timer GET_ITEMS_PAGE = Metrics.timer("store.getItemsPage");
+    private static final Metrics.Timer GET_SORTED_ITEMS_PAGE = Metrics.timer("store.getSortedItemsPage");
+    private static final Metrics.Timer GET_SNAPSHOT = Metrics.timer("snapshot.read");
+    private static final Metrics.Timer SEARCH_ITEMS = Metrics.timer("store.searchItems");
+    private static final Metrics.Timer GET_MOVEMENTS = Metrics.timer("store.getMovements");
+    private static final Metrics.Timer COMPACT_MOVEMENTS = Metrics.timer("store.compactMovements");
+    private static final Metrics.Timer IMPORT_CSV = Metrics.timer("csv.import");
+    private static final Metrics.Timer SYNC = Metrics.timer("sync.run");
+    private static final Metrics.Timer EXPORT_CSV = Metrics.timer("csv.export");
+    private static final Metrics.Timer EXPORT_METRICS = Metrics.timer("metrics.export");
+    private static final Metrics.Timer BACKUP = Metrics.timer("db.backup");
+    private static final Metrics.Timer RESTORE = Metrics.timer("db.restore");
+    private static final Metrics.Timer GET_REPORT = Metrics.timer("report.build");
+    private static final Metrics.Timer CLOSE = Metrics.timer("repository.close");
+    private static final Metrics.Timer WRITE_QUEUE_WAIT = Metrics.timer("queue.write");
+    private static final Metrics.Timer READ_QUEUE_WAIT = Metrics.timer("queue.read");
+    private static final Metrics.Timer AUTH_QUEUE_WAIT = Metrics.timer("queue.auth");
+    private static final Metrics.Counter REJECTED = Metrics.counter("queue.rejected");
+    private static final Metrics.Counter FAILED = Metrics.counter("calls.failed");
+
+    private static InventoryRepository instance;
+
+    public interface ChangeListener {
+        void onChange(InventoryChange change);
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+
+        default void onError(Throwable error) {
+        }
+    }
+
+    // Called on the worker thread that finished the call instead of the callback executor, for
+    // callers with their own thread such as InventoryHttpServer. Must only hand the result on
+    public interface DirectCallback<T> extends Callback<T> {
+    }
+
+    private final InventoryStore store;
+    private final Executor callbackExecutor;
+    private final ThreadPoolExecutor writeExecutor;
+    private final ThreadPoolExecutor readExecutor;
+    private final ThreadPoolExecutor authExecutor;
+    private final PasswordHasher passwordHasher;
+    // Verified against when an email is unknown, so a miss costs as much as a wrong password
+    private String dummyPasswordHash;
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile LowStockAlertEngine alertEngine;
+    private volatile InventorySnapshot snapshot;
+    private volatile InventoryBackup backup;
+    // Guarded by itself. Fed from the ledger when a report is asked for, so writes never wait on it
+    private final ReportEngine reportEngine = new ReportEngine(ReportEngine.DEFAULT_WINDOW_DAYS);
+    private boolean reportEngineSeeded = false;
+    // Only used on the writer thread, the labels are copied out for the menu
+    private final EditHistory editHistory = new EditHistory(EditHistory.DEFAULT_MAX_EDITS, EditHistory.DEFAULT_MAX_ROWS);
+    private volatile String undoLabel = null;
+    private volatile String redoLabel = null;
+
+    public InventoryRepository(InventoryStore store, Executor callbackExecutor) {
+        this(store, callbackExecutor, new PasswordHasher());
+    }
+
+    public InventoryRepository(InventoryStore store, Executor callbackExecutor, PasswordHasher passwordHasher) {
+        this.store = store;
+        this.callbackExecutor = callbackExecutor;
+        this.passwordHasher = passwordHasher;
+        this.writeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(WRITE_QUEUE_CAPACITY), new NamedThreadFactory("inventory-write"));
+        this.readExecutor = new ThreadPoolExecutor(READ_THREADS, READ_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(READ_QUEUE_CAPACITY), new NamedThreadFactory("inventory-read"));
+        this.authExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(AUTH_QUEUE_CAPACITY), new NamedThreadFactory("inventory-auth"));
+    }
+
+    // Process-wide repository, so every screen shares the same writer thread and store
+    public static synchronized InventoryRepository getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            // Timed sections show up in systrace and Perfetto while metrics are enabled
+            Metrics.setTracer(new Metrics.Tracer() {
+                @Override
+                public void beginSection(String name) {
+                    Trace.beginSection(name);
+                }
+
+                @Override
+                public void endSection() {
+                    Trace.endSection();
+                }
+            });
+            // The repository lives as long as the process, its reference is only released by
+            // closeInstance() ahead of a restore.
+            // Reads are answered from the write-through cache once it has loaded
+            InventoryDatabaseHelper helper = InventoryDatabaseHelper.acquire(appContext);
+            InventoryStore store = new InventoryCache(helper, InventoryCache.DEFAULT_CAPACITY);
+            instance = new InventoryRepository(store, ContextCompat.getMainExecutor(appContext));
+            instance.setLowStockAlertEngine(new LowStockAlertEngine(new SmsAlertSender(appContext),
+                    Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("inventory-alerts")),
+                    LowStockAlertEngine.DEFAULT_WINDOW_MILLIS));
+            instance.setSnapshot(new InventorySnapshot(new File(appContext.getFilesDir(), SNAPSHOT_FILE)));
+            instance.setBackup(new InventoryBackup(helper, appContext.getCacheDir()));
+            // Ledger compaction, vacuum and statistics run while the device is idle and charging
+            MaintenanceJobService.schedule(appContext);
+        }
+        return instance;
+    }
+
+    // Every quantity write made through the repository is evaluated by the engine on the writer thread
+    public void setLowStockAlertEngine(LowStockAlertEngine alertEngine) {
+        this.alertEngine = alertEngine;
+    }
+
+    // The first page of items is saved here whenever it is read, for the next cold start
+    public void setSnapshot(InventorySnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    // Needed by backup() and restore()
+    public void setBackup(InventoryBackup backup) {
+        this.backup = backup;
+    }
+
+    // Listeners are called on the callback executor after each write, with the row as written
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    // The password is hashed before it reaches the store. The users table isn't touched by
+    // inventory writes, so the insert stays on the auth thread with its hash
+    public Future<Long> insertUser(final String name, final String email, final String password,
+                                   Callback<Long> callback) {
+        return submit(authExecutor, INSERT_USER, new Callable<Long>() {
+            @Override
+            public Long call() {
+                return store.insertUser(name, email, passwordHasher.hash(password));
+            }
+        }, callback);
+    }
+
+    // One indexed fetch of the stored hash, then verification on the auth thread. Rows still
+    // holding a plaintext password (or a hash with older costs) are rehashed after a successful login
+    public Future<Boolean> validateUser(final String email, final String password, Callback<Boolean> callback) {
+        return submit(authExecutor, VALIDATE_USER, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                String stored = store.getPasswordHash(email);
+                if (stored == null) {
+                    if (dummyPasswordHash == null) {
+                        dummyPasswordHash = passwordHasher.hash("");
+                    }
+                    passwordHasher.verify(password, dummyPasswordHash);
+                    return false;
+                }
+                if (!passwordHasher.verify(password, stored)) {
+                    return false;
+                }
+                if (passwordHasher.needsRehash(stored)) {
+                    store.updatePasswordHash(email, passwordHasher.hash(password));
+                }
+                return true;
+            }
+        }, callback);
+    }
+
+    public Future<Long> insertItem(final String itemName, final int quantity, Callback<Long> callback) {
+        return submit(writeExecutor, INSERT_ITEM, new Callable<Long>() {
+            @Override
+            public Long call() {
+                long id = store.insertItem(itemName, quantity);
+                if (id != -1) {
+                    publishRow(id, InventoryChange.Type.INSERT);
+                }
+                return id;
+            }
+        }, callback);
+    }
+
+    public Future<Void> deleteItem(final long id, Callback<Void> callback) {
+        return submit(writeExecutor, DELETE_ITEM, new Callable<Void>() {
+            @Override
+            public Void call() {
+                store.deleteItem(id);
+                publish(InventoryChange.deleted(id));
+                LowStockAlertEngine engine = alertEngine;
+                if (engine != null) {
+                    engine.onItemRemoved(id);
+                }
+                return null;
+            }
+        }, callback);
+    }
+
+    public Future<Void> updateItemQuantity(final long id, final int newQuantity, Callback<Void> callback) {
+        return submit(writeExecutor, UPDATE_ITEM_QUANTITY, new Callable<Void>() {
+            @Override
+            public Void call() {
+                store.updateItemQuantity(id, newQuantity);
+                publishRow(id, InventoryChange.Type.UPDATE);
+                return null;
+            }
+        }, callback);
+    }
+
+    // Method to receive stock by barcode: resolves the code (from the cache's recently scanned
+    // codes, or one index seek) and adds to the item's quantity in one statement. The result
+    // is the updated item, or null when no item has the code
+    public Future<InventoryItem> receiveScan(final String sku, final int quantity, Callback<InventoryItem> callback) {
+        return submit(writeExecutor, RECEIVE_SCAN, new Callable<InventoryItem>() {
+            @Override
+            public InventoryItem call() {
+                long id = store.findItemIdBySku(sku);
+                if (id == -1) {
+                    return null;
+                }
+                store.adjustItemQuantity(id, quantity);
+                return publishRow(id, InventoryChange.Type.UPDATE);
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> updateItemSku(final long id, final String sku, Callback<Boolean> callback) {
+        return submit(writeExecutor, UPDATE_ITEM_SKU, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return store.updateItemSku(id, sku);
+            }
+        }, callback);
+    }
+
+    public Future<String> getItemSku(final long id, Callback<String> callback) {
+        return submit(readExecutor, GET_ITEM_SKU, new Callable<String>() {
+            @Override
+            public String call() {
+                return store.getItemSku(id);
+            }
+        }, callback);
+    }
+
+    // Listeners get the item with its new total
+    public Future<Void> setStockQuantity(final long itemId, final long locationId, final int quantity,
+                                         Callback<Void> callback) {
+        return submit(writeExecutor, SET_STOCK_QUANTITY, new Callable<Void>() {
+            @Override
+            public Void call() {
+                store.setStockQuantity(itemId, locationId, quantity);
+                publishRow(itemId, InventoryChange.Type.UPDATE);
+                return null;
+            }
+        }, callback);
+    }
+
+    public Future<Long> insertLocation(final String name, Callback<Long> callback) {
+        return submit(writeExecutor, INSERT_LOCATION, new Callable<Long>() {
+            @Override
+            public Long call() {
+                return store.insertLocation(name);
+            }
+        }, callback);
+    }
+
+    public Future<List<Location>> getLocations(Callback<List<Location>> callback) {
+        return submit(readExecutor, GET_LOCATIONS, new Callable<List<Location>>() {
+            @Override
+            public List<Location> call() {
+                return store.getLocations();
+            }
+        }, callback);
+    }
+
+    public Future<List<InventoryItem>> getLocationItemsPage(final long locationId, final long afterId, final int limit,
+                                                            Callback<List<InventoryItem>> callback) {
+        return submit(readExecutor, GET_LOCATION_ITEMS_PAGE, new Callable<List<InventoryItem>>() {
+            @Override
+            public List<InventoryItem> call() {
+                return store.getLocationItemsPage(locationId, afterId, limit);
+            }
+        }, callback);
+    }
+
+    public Future<Long> insertCategory(final long parentId, final String name, Callback<Long> callback) {
+        return submit(writeExecutor, INSERT_CATEGORY, new Callable<Long>() {
+            @Override
+            public Long call() {
+                return store.insertCategory(parentId, name);
+            }
+        }, callback);
+    }
+
+    public Future<List<Category>> getCategories(final long parentId, Callback<List<Category>> callback) {
+        return submit(readExecutor, GET_CATEGORIES, new Callable<List<Category>>() {
+            @Override
+            public List<Category> call() {
+                return store.getCategories(parentId);
+            }
+        }, callback);
+    }
+
+    public Future<List<Category>> getCategoryPath(final long id, Callback<List<Category>> callback) {
+        return submit(readExecutor, GET_CATEGORIES, new Callable<List<Category>>() {
+            @Override
+            public List<Category> call() {
+                return store.getCategoryPath(id);
+            }
+        }, callback);
+    }
+
+    // Moving or deleting a category changes which items are under the ones above it, so a
+    // grid scoped to a category reads its rows again
+    public Future<Boolean> moveCategory(final long id, final long newParentId, Callback<Boolean> callback) {
+        return submit(writeExecutor, EDIT_CATEGORIES, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                boolean moved = store.moveCategory(id, newParentId);
+                if (moved) {
+                    publish(InventoryChange.reload());
+                }
+                return moved;
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> deleteCategory(final long id, Callback<Boolean> callback) {
+        return submit(writeExecutor, EDIT_CATEGORIES, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                boolean deleted = store.deleteCategory(id);
+                if (deleted) {
+                    publish(InventoryChange.reload());
+                }
+                return deleted;
+            }
+        }, callback);
+    }
+
+    // Totals don't change, each item is published as updated so a category grid can drop or
+    // pick up its row
+    public Future<Boolean> setItemCategory(final long[] itemIds, final long categoryId, Callback<Boolean> callback) {
+        return submit(writeExecutor, SET_ITEM_CATEGORY, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                boolean filed = store.setItemCategory(itemIds, categoryId);
+                if (filed) {
+                    for (long id : itemIds) {
+                        publishRow(id, InventoryChange.Type.UPDATE);
+                    }
+                }
+                return filed;
+            }
+        }, callback);
+    }
+
+    public Future<List<InventoryItem>> getCategoryItemsPage(final long categoryId, final long afterId, final int limit,
+                                                            Callback<List<InventoryItem>> callback) {
+        return submit(readExecutor, GET_CATEGORY_ITEMS_PAGE, new Callable<List<InventoryItem>>() {
+            @Override
+            public List<InventoryItem> call() {
+                return store.getCategoryItemsPage(categoryId, afterId, limit);
+            }
+        }, callback);
+    }
+
+    public Future<Void> updateReorderThreshold(final long id, final int threshold, Callback<Void> callback) {
+        return submit(writeExecutor, UPDATE_REORDER_THRESHOLD, new Callable<Void>() {
+            @Override
+            public Void call() {
+                store.updateReorderThreshold(id, threshold);
+                publishRow(id, InventoryChange.Type.UPDATE);
+                return null;
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> updateItemName(final long id, final String newName, Callback<Boolean> callback) {
+        return submit(writeExecutor, UPDATE_ITEM_NAME, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                boolean renamed = store.updateItemName(id, newName);
+                if (renamed) {
+                    publishRow(id, InventoryChange.Type.UPDATE);
+                }
+                return renamed;
+            }
+        }, callback);
+    }
+
+    // Batch edits for a multi-selection. Each one is a single transaction, published as one
+    // set of row changes, and recorded in the undo history. The result is false when nothing
+    // was changed: the items are gone, or a rename would give two items the same name
+    public Future<Boolean> deleteItems(final long[] ids, Callback<Boolean> callback) {
+        return submit(writeExecutor, EDIT_ITEMS, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return applyEdit(ItemEdit.delete(store, ids));
+            }
+        }, callback);
+    }
+
+    // Adds delta to each item's quantity in the default location, stopping at zero
+    public Future<Boolean> adjustItemQuantities(final long[] ids, final int delta, Callback<Boolean> callback) {
+        return submit(writeExecutor, EDIT_ITEMS, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return applyEdit(ItemEdit.adjustQuantity(store, ids, delta));
+            }
+        }, callback);
+    }
+
+    // Adds deltas[i] to item ids[i], stopping at zero, as one edit
+    public Future<Boolean> adjustItemQuantities(final long[] ids, final int[] deltas, Callback<Boolean> callback) {
+        return submit(writeExecutor, EDIT_ITEMS, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return applyEdit(ItemEdit.adjustQuantities(store, ids, deltas));
+            }
+        }, callback);
+    }
+
+    // The undoable form of updateItemQuantity()
+    public Future<Boolean> setItemQuantity(final long id, final int quantity, Callback<Boolean> callback) {
+        return submit(writeExecutor, EDIT_ITEMS, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return applyEdit(ItemEdit.setQuantity(store, id, quantity));
+            }
+        }, callback);
+    }
+
+    // The undoable form of updateItemName()
+    public Future<Boolean> setItemName(final long id, final String name, Callback<Boolean> callback) {
+        return submit(writeExecutor, EDIT_ITEMS, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return applyEdit(ItemEdit.setName(store, id, name));
+            }
+        }, callback);
+    }
+
+    // ItemEdit.NAME_PLACEHOLDER in the pattern stands for each item's current name
+    public Future<Boolean> renameItems(final long[] ids, final String pattern, Callback<Boolean> callback) {
+        return submit(writeExecutor, EDIT_ITEMS, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return applyEdit(ItemEdit.rename(store, ids, pattern));
+            }
+        }, callback);
+    }
+
+    // Method to revert the latest edit. An edit that can't be reverted any more, because a
+    // name it would put back has been taken since for example, is dropped and false returned
+    public Future<Boolean> undo(Callback<Boolean> callback) {
+        return submit(writeExecutor, UNDO, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                ItemEdit edit = editHistory.popUndo();
+                boolean reverted = edit != null && edit.revert(store);
+                if (reverted) {
+                    editHistory.pushRedo(edit);
+                    publishEdit(edit, true);
+                }
+                updateEditLabels();
+                return reverted;
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> redo(Callback<Boolean> callback) {
+        return submit(writeExecutor, REDO, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                ItemEdit edit = editHistory.popRedo();
+                boolean applied = edit != null && edit.apply(store);
+                if (applied) {
+                    editHistory.pushUndo(edit);
+                    publishEdit(edit, false);
+                }
+                updateEditLabels();
+                return applied;
+            }
+        }, callback);
+    }
+
+    // Describes the edit undo() would revert, null when there is none
+    public String getUndoLabel() {
+        return undoLabel;
+    }
+
+    public String getRedoLabel() {
+        return redoLabel;
+    }
+
+    // The result is null if there is no item with that id
+    public Future<InventoryItem> getItem(final long id, Callback<InventoryItem> callback) {
+        return submit(readExecutor, GET_ITEM, new Callable<InventoryItem>() {
+            @Override
+            public InventoryItem call() {
+                return store.getItem(id);
+            }
+        }, callback);
+    }
+
+    public Future<InventoryItem> findItemByName(final String name, Callback<InventoryItem> callback) {
+        return submit(readExecutor, FIND_ITEM_BY_NAME, new Callable<InventoryItem>() {
+            @Override
+            public InventoryItem call() {
+                return store.findItemByName(name);
+            }
+        }, callback);
+    }
+
+    public Future<List<InventoryItem>> getItemsPage(final long afterId, final int limit,
+                                                    Callback<List<InventoryItem>> callback) {
+        return submit(readExecutor, GET_ITEMS_PAGE, new Callable<List<InventoryItem>>() {
+            @Override
+            public List<InventoryItem> call() {
+                List<InventoryItem> page = store.getItemsPage(afterId, limit);
+                InventorySnapshot current = snapshot;
+                if (afterId == 0 && limit >= InventoryPager.PAGE_SIZE && current != null) {
+                    try {
+                        current.write(page);
+                    } catch (IOException e) {
+                        // Only costs the next cold start its early panels
+                    }
+                }
+                return page;
+            }
+        }, callback);
+    }
+
+    // Method to read a page in another order or without the items that are out of stock.
+    // Only the default order's first page goes into the snapshot, see getItemsPage()
+    public Future<List<InventoryItem>> getSortedItemsPage(final ItemOrder order, final boolean inStockOnly,
+                                                          final InventoryItem after, final int limit,
+                                                          Callback<List<InventoryItem>> callback) {
+        return submit(readExecutor, GET_SORTED_ITEMS_PAGE, new Callable<List<InventoryItem>>() {
+            @Override
+            public List<InventoryItem> call() {
+                return store.getSortedItemsPage(order, inStockOnly, after, limit);
+            }
+        }, callback);
+    }
+
+    // Method to read the first page saved by an earlier run, without touching the database
+    public Future<List<InventoryItem>> getSnapshot(Callback<List<InventoryItem>> callback) {
+        return submit(readExecutor, GET_SNAPSHOT, new Callable<List<InventoryItem>>() {
+            @Override
+            public List<InventoryItem> call() {
+                InventorySnapshot current = snapshot;
+                return current != null ? current.read() : Collections.<InventoryItem>emptyList();
+            }
+        }, callback);
+    }
+
+    // Method to open the database, run any migrations and fill the cache in the background,
+    // so the first screen that needs items doesn't wait for them. Refreshes the snapshot too
+    public Future<List<InventoryItem>> warmUp() {
+        return getItemsPage(0, InventoryPager.PAGE_SIZE, null);
+    }
+
+    public Future<List<InventoryItem>> searchItems(final String query, final long afterId, final int limit,
+                                                   Callback<List<InventoryItem>> callback) {
+        return submit(readExecutor, SEARCH_ITEMS, new Callable<List<InventoryItem>>() {
+            @Override
+            public List<InventoryItem> call() {
+                return store.searchItems(query, afterId, limit);
+            }
+        }, callback);
+    }
+
+    public Future<List<StockMovement>> getMovements(final long itemId, final long fromMillis, final StockMovement after,
+                                                    final int limit, Callback<List<StockMovement>> callback) {
+        return submit(readExecutor, GET_MOVEMENTS, new Callable<List<StockMovement>>() {
+            @Override
+            public List<StockMovement> call() {
+                return store.getMovements(itemId, fromMillis, after, limit);
+            }
+        }, callback);
+    }
+
+    // Method to rank items by consumption and by days of stock left, over the report window.
+    // Only the movements since the last report are read, the ranking comes from the engine's
+    // running sums. Runs on the read pool
+    public Future<ReportEngine.Report> getReport(final int limit, Callback<ReportEngine.Report> callback) {
+        return submit(readExecutor, GET_REPORT, new Callable<ReportEngine.Report>() {
+            @Override
+            public ReportEngine.Report call() {
+                synchronized (reportEngine) {
+                    long now = System.currentTimeMillis();
+                    long afterId;
+                    if (reportEngineSeeded) {
+                        afterId = reportEngine.getLastMovementId();
+                    } else {
+                        // The first report reads the window's movements, later ones what's new
+                        afterId = store.findFirstMovementId(now -
+                                TimeUnit.DAYS.toMillis(reportEngine.getWindowDays())) - 1;
+                        reportEngineSeeded = true;
+                    }
+                    List<StockMovement> batch;
+                    do {
+                        batch = store.getMovementsAfter(afterId, REPORT_BATCH_SIZE);
+                        for (StockMovement movement : batch) {
+                            reportEngine.onMovement(movement);
+                        }
+                        if (!batch.isEmpty()) {
+                            afterId = batch.get(batch.size() - 1).getId();
+                        }
+                    } while (batch.size() == REPORT_BATCH_SIZE);
+                    return nameReport(reportEngine.buildReport(now, limit), now, limit);
+                }
+            }
+        }, callback);
+    }
+
+    // Items deleted since their movements were read are dropped from the engine, and the report
+    // is ranked again without them
+    private ReportEngine.Report nameReport(ReportEngine.Report report, long now, int limit) {
+        while (true) {
+            LongObjectMap<String> names = new LongObjectMap<>();
+            boolean removed = false;
+            for (List<ReportEngine.ItemReport> list : Arrays.asList(report.getTopMovers(), report.getLowestCover())) {
+                for (ReportEngine.ItemReport itemReport : list) {
+                    InventoryItem item = store.getItem(itemReport.getItemId());
+                    if (item == null) {
+                        reportEngine.onItemRemoved(itemReport.getItemId());
+                        removed = true;
+                    } else {
+                        names.put(item.getId(), item.getName());
+                    }
+                }
+            }
+            if (removed) {
+                report = reportEngine.buildReport(now, limit);
+                continue;
+            }
+            return report.withNames(names);
+        }
+    }
+
+    // Method to compact ledger history older than the retention period, on the writer thread
+    public Future<Integer> compactMovements(final long retentionMillis, Callback<Integer> callback) {
+        return submit(writeExecutor, COMPACT_MOVEMENTS, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return store.compactMovements(System.currentTimeMillis() - retentionMillis);
+            }
+        }, callback);
+    }
+
+    // Method to import CSV on the writer thread. Progress is reported on the callback executor
+    public Future<InventoryCsv.ImportResult> importCsv(final InputStream in, InventoryStore.ProgressListener listener,
+                                                      Callback<InventoryCsv.ImportResult> callback) {
+        final InventoryStore.ProgressListener progress = onCallbackExecutor(listener);
+        return submit(writeExecutor, IMPORT_CSV, new Callable<InventoryCsv.ImportResult>() {
+            @Override
+            public InventoryCsv.ImportResult call() throws IOException {
+                Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+                try {
+                    return new InventoryCsv(store).importFrom(reader, progress);
+                } finally {
+                    // Batches committed before a failure are kept, so reload either way
+                    publish(InventoryChange.reload());
+                    LowStockAlertEngine engine = alertEngine;
+                    if (engine != null) {
+                        engine.onBulkChange(store.getLowStockItems());
+                    }
+                }
+            }
+        }, callback);
+    }
+
+    // Method to run a sync on the writer thread, so pulled changes are ordered with local writes
+    public Future<SyncEngine.Result> sync(final SyncEngine engine, Callback<SyncEngine.Result> callback) {
+        return submit(writeExecutor, SYNC, new Callable<SyncEngine.Result>() {
+            @Override
+            public SyncEngine.Result call() throws IOException {
+                SyncEngine.Result result;
+                try {
+                    result = engine.sync();
+                } catch (IOException e) {
+                    // Batches pulled before the failure are kept
+                    onRemoteChanges();
+                    throw e;
+                }
+                if (result.getPulled() > 0) {
+                    onRemoteChanges();
+                }
+                return result;
+            }
+        }, callback);
+    }
+
+    private void onRemoteChanges() {
+        publish(InventoryChange.reload());
+        LowStockAlertEngine engine = alertEngine;
+        if (engine != null) {
+            engine.onBulkChange(store.getLowStockItems());
+        }
+    }
+
+    // Method to export every item as CSV on the read pool, the stream is closed when done
+    public Future<Integer> exportCsv(final OutputStream out, InventoryStore.ProgressListener listener,
+                                     Callback<Integer> callback) {
+        final InventoryStore.ProgressListener progress = onCallbackExecutor(listener);
+        return submit(readExecutor, EXPORT_CSV, new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                try {
+                    return new InventoryCsv(store).exportTo(writer, progress);
+                } finally {
+                    writer.close();
+                }
+            }
+        }, callback);
+    }
+
+    // Method to back up the database to the stream on the read pool, the stream is closed when
+    // done. Writes carry on meanwhile, except on devices without VACUUM INTO, where the file
+    // is copied on the writer thread first. Progress is reported in bytes on the callback executor
+    public Future<InventoryBackup.Result> backup(final OutputStream out, InventoryStore.ProgressListener listener,
+                                                 Callback<InventoryBackup.Result> callback) {
+        final InventoryBackup engine = backup;
+        final InventoryStore.ProgressListener progress = onCallbackExecutor(listener);
+        return submit(readExecutor, BACKUP, new Callable<InventoryBackup.Result>() {
+            @Override
+            public InventoryBackup.Result call() throws Exception {
+                File snapshot;
+                try {
+                    if (engine.supportsOnlineSnapshot()) {
+                        snapshot = engine.snapshotOnline();
+                    } else {
+                        snapshot = writeExecutor.submit(new Callable<File>() {
+                            @Override
+                            public File call() throws IOException {
+                                return engine.snapshotCheckpointed();
+                            }
+                        }).get();
+                    }
+                } catch (ExecutionException e) {
+                    out.close();
+                    // The writer thread's own failure, rather than the wrapper
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                } catch (Exception e) {
+                    out.close();
+                    throw e;
+                }
+                return engine.write(snapshot, out, progress);
+            }
+        }, callback);
+    }
+
+    // Method to check a backup and stage it on the read pool, the stream is closed when done.
+    // The database is replaced the next time the process starts, see InventoryBackup
+    public Future<InventoryBackup.Result> restore(final InputStream in, Callback<InventoryBackup.Result> callback) {
+        final InventoryBackup engine = backup;
+        return submit(readExecutor, RESTORE, new Callable<InventoryBackup.Result>() {
+            @Override
+            public InventoryBackup.Result call() throws IOException {
+                return engine.stageRestore(in);
+            }
+        }, callback);
+    }
+
+    // Method to write Metrics.toJson() to the stream on the read pool, the stream is closed when done
+    public Future<Void> exportMetrics(final OutputStream out, Callback<Void> callback) {
+        return submit(readExecutor, EXPORT_METRICS, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                try {
+                    writer.write(Metrics.toJson());
+                } finally {
+                    writer.close();
+                }
+                return null;
+            }
+        }, callback);
+    }
+
+    // Method to stop the worker threads once queued work has finished, used by tests
+    public void shutdown() {
+        writeExecutor.shutdown();
+        readExecutor.shutdown();
+        authExecutor.shutdown();
+    }
+
+    // Method to close the process-wide repository before its database file is replaced. The
+    // calls already queued finish, then the helper reference taken by getInstance() is released,
+    // which closes the connection. Calls made afterwards are rejected
+    public static synchronized Future<Void> closeInstance(Callback<Void> callback) {
+        final InventoryRepository repository = instance;
+        // Queued behind the writes, then waits out the other pools
+        Future<Void> closed = repository.submit(repository.writeExecutor, CLOSE, new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException, TimeoutException {
+                if (!repository.readExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS) ||
+                        !repository.authExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new TimeoutException("Reads still running after " + CLOSE_TIMEOUT_SECONDS + " s");
+                }
+                InventoryDatabaseHelper.release();
+                return null;
+            }
+        }, callback);
+        repository.shutdown();
+        return closed;
+    }
+
+    private <T> Future<T> submit(Executor executor, final Metrics.Timer timer, final Callable<T> task,
+                                 final Callback<T> callback) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Metrics.Timer queueWait = executor == writeExecutor ? WRITE_QUEUE_WAIT
+                : executor == readExecutor ? READ_QUEUE_WAIT : AUTH_QUEUE_WAIT;
+        final long queuedNanos = Metrics.isEnabled() ? System.nanoTime() : 0;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (queuedNanos != 0) {
+                        queueWait.record(System.nanoTime() - queuedNanos);
+                    }
+                    long start = timer.start();
+                    try {
+                        T result = task.call();
+                        timer.stop(start);
+                        future.complete(result);
+                        deliverResult(callback, result);
+                    } catch (Exception e) {
+                        timer.stop(start);
+                        FAILED.increment();
+                        future.completeExceptionally(e);
+                        deliverError(callback, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The queue is full, fail fast rather than block the caller
+            REJECTED.increment();
+            future.completeExceptionally(e);
+            deliverError(callback, e);
+        }
+        return future;
+    }
+
+    // Re-reads one row by primary key on the writer thread and publishes it, so listeners
+    // never have to query the table again. The same row feeds the low-stock check
+    private InventoryItem publishRow(long id, InventoryChange.Type type) {
+        InventoryItem item = store.getItem(id);
+        if (item == null) {
+            return null;
+        }
+        publish(type == InventoryChange.Type.INSERT ? InventoryChange.inserted(item) : InventoryChange.updated(item));
+        LowStockAlertEngine engine = alertEngine;
+        if (engine != null) {
+            engine.onQuantityChanged(item);
+        }
+        return item;
+    }
+
+    private boolean applyEdit(ItemEdit edit) {
+        if (edit.size() == 0 || !edit.apply(store)) {
+            return false;
+        }
+        editHistory.push(edit);
+        publishEdit(edit, false);
+        updateEditLabels();
+        return true;
+    }
+
+    // Publishes every row an edit touched in a single callback executor task, so the grid
+    // applies the whole batch in one pass. The same rows feed the low-stock check
+    private void publishEdit(ItemEdit edit, boolean reverted) {
+        LowStockAlertEngine engine = alertEngine;
+        final List<InventoryChange> changes = new ArrayList<>(edit.size());
+        for (long id : edit.getIds()) {
+            if (edit.getType() == ItemEdit.Type.DELETE && !reverted) {
+                changes.add(InventoryChange.deleted(id));
+                if (engine != null) {
+                    engine.onItemRemoved(id);
+                }
+                continue;
+            }
+            InventoryItem item = store.getItem(id);
+            if (item == null) {
+                continue;
+            }
+            changes.add(edit.getType() == ItemEdit.Type.DELETE ? InventoryChange.inserted(item)
+                    : InventoryChange.updated(item));
+            if (engine != null) {
+                engine.onQuantityChanged(item);
+            }
+        }
+        if (changeListeners.isEmpty() || changes.isEmpty()) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (ChangeListener listener : changeListeners) {
+                    for (InventoryChange change : changes) {
+                        listener.onChange(change);
+                    }
+                }
+            }
+        });
+    }
+
+    private void updateEditLabels() {
+        ItemEdit undo = editHistory.peekUndo();
+        ItemEdit redo = editHistory.peekRedo();
+        undoLabel = undo == null ? null : undo.getLabel();
+        redoLabel = redo == null ? null : redo.getLabel();
+    }
+
+    private void publish(final InventoryChange change) {
+        if (changeListeners.isEmpty()) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (ChangeListener listener : changeListeners) {
+                    listener.onChange(change);
+                }
+            }
+        });
+    }
+
+    private InventoryStore.ProgressListener onCallbackExecutor(final InventoryStore.ProgressListener listener) {
+        if (listener == null) {
+            return null;
+        }
+        return new InventoryStore.ProgressListener() {
+            @Override
+            public void onProgress(final long rowsProcessed) {
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onProgress(rowsProcessed);
+                    }
+                });
+            }
+        };
+    }
+
+    private <T> void deliverResult(final Callback<T> callback, final T result) {
+        if (callback == null) {
+            return;
+        }
+        if (callback instanceof DirectCallback) {
+            callback.onResult(result);
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResult(result);
+            }
+        });
+    }
+
+    private void deliverError(final Callback<?> callback, final Throwable error) {
+        if (callback == null) {
+            return;
+        }
+        if (callback instanceof DirectCallback) {
+            callback.onError(error);
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onError(error);
+            }
+        });
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
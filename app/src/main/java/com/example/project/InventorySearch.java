@@ -0,0 +1,66 @@
+package com.example.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Turns what the user typed into a search over item names. Every word of the query must
+// start a word of the name, in any order: "ch sa" finds "Salted Chips". Words are split on
+// anything that isn't a letter or digit, the same way the full-text index tokenizes names
+public final class InventorySearch {
+    private InventorySearch() {
+    }
+
+    // Lower cased words of the text, in order
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start == -1) {
+                start = i;
+            } else if (!wordChar && start != -1) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // Method to build the FTS MATCH expression, a prefix query per word. Returns null if the
+    // query has no words, so there is nothing to search for
+    public static String toMatchQuery(String query) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        // Tokens hold only letters and digits, so no FTS operator or quote can get through
+        StringBuilder match = new StringBuilder();
+        for (String token : tokens) {
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(token).append('*');
+        }
+        return match.toString();
+    }
+
+    // Method to check a single name against the query without the index, used for rows
+    // that change while results are on screen
+    public static boolean matches(String name, String query) {
+        List<String> nameTokens = tokenize(name);
+        for (String queryToken : tokenize(query)) {
+            boolean found = false;
+            for (String nameToken : nameTokens) {
+                if (nameToken.startsWith(queryToken)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The first page of the panel grid kept in a small file, so a cold start can draw panels
+// before the database has been opened and migrated. It is only a hint: the real first page
+// replaces it as soon as it loads
+public class InventorySnapshot {
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    // What the file holds, to skip rewriting it when the first page hasn't changed
+    private List<InventoryItem> written;
+
+    public InventorySnapshot(File file) {
+        this.file = file;
+    }
+
+    // Method to read the saved page. A missing or unreadable file is an empty snapshot
+    public synchronized List<InventoryItem> read() {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return Collections.emptyList();
+        }
+        try {
+            if (in.readUnsignedByte() != FORMAT_VERSION) {
+                return Collections.emptyList();
+            }
+            int count = in.readInt();
+            if (count < 0 || count > InventoryPager.PAGE_SIZE) {
+                return Collections.emptyList();
+            }
+            List<InventoryItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(new InventoryItem(in.readLong(), in.readUTF(), in.readInt(), in.readInt()));
+            }
+            written = items;
+            return items;
+        } catch (IOException e) {
+            return Collections.emptyList();
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Method to save a first page. Written to a temporary file and renamed over the old one,
+    // so a crash mid-write leaves the previous snapshot rather than a torn one
+    public synchronized void write(List<InventoryItem> items) throws IOException {
+        if (items.size() > InventoryPager.PAGE_SIZE) {
+            items = items.subList(0, InventoryPager.PAGE_SIZE);
+        }
+        if (sameItems(items, written)) {
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(items.size());
+            for (InventoryItem item : items) {
+                out.writeLong(item.getId());
+                out.writeUTF(item.getName());
+                out.writeInt(item.getQuantity());
+                out.writeInt(item.getReorderThreshold());
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+        written = new ArrayList<>(items);
+    }
+
+    public synchronized void clear() {
+        file.delete();
+        written = null;
+    }
+
+    private static boolean sameItems(List<InventoryItem> a, List<InventoryItem> b) {
+        if (b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            InventoryItem x = a.get(i);
+            InventoryItem y = b.get(i);
+            if (x.getId() != y.getId() || x.getQuantity() != y.getQuantity() ||
+                    x.getReorderThreshold() != y.getReorderThreshold() || !x.getName().equals(y.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
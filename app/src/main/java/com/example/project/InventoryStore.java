@@ -0,0 +1,151 @@
+package com.example.project;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+// Synchronous data operations behind InventoryRepository. InventoryDatabaseHelper is the
+// SQLite implementation, keeping this interface free of Android types lets the repository
+// be exercised on a plain JVM
+public interface InventoryStore {
+    // Rows written per transaction by bulk operations
+    int BATCH_SIZE = 1000;
+
+    interface ProgressListener {
+        void onProgress(long rowsProcessed);
+    }
+
+    interface ItemVisitor {
+        void visit(InventoryItem item) throws IOException;
+    }
+
+    long insertUser(String name, String email, String passwordHash);
+
+    String getPasswordHash(String email);
+
+    void updatePasswordHash(String email, String passwordHash);
+
+    long insertItem(String itemName, int quantity);
+
+    void deleteItem(long id);
+
+    // Item-level quantity writes go to the default location, which stops at zero. A total below
+    // the stock held in other locations ends up at that stock instead
+    void updateItemQuantity(long id, int newQuantity);
+
+    void adjustItemQuantity(long id, int delta);
+
+    void setStockQuantity(long itemId, long locationId, int quantity);
+
+    long insertLocation(String name);
+
+    List<Location> getLocations();
+
+    List<InventoryItem> getLocationItemsPage(long locationId, long afterId, int limit);
+
+    // Category tree. Returns -1 if a sibling already uses the name or the parent is gone
+    long insertCategory(long parentId, String name);
+
+    // A category's children, Category.ROOT's for the top level, by name with their subtree totals
+    List<Category> getCategories(long parentId);
+
+    // The category and the ones above it, top level first. Empty if there is no such category
+    List<Category> getCategoryPath(long id);
+
+    // Moves a category with everything below it. Returns false if the new parent is the
+    // category itself or below it, or a category there already uses its name
+    boolean moveCategory(long id, long newParentId);
+
+    // Hands the category's children and items to its parent. Returns false if one of the
+    // children's names is taken there
+    boolean deleteCategory(long id);
+
+    // Files the items under a category, or under none with Category.ROOT. Returns false if
+    // the category is gone or the write fails, with nothing filed
+    boolean setItemCategory(long[] itemIds, long categoryId);
+
+    // Items filed under the category or any category below it, with their totals, in _id
+    // order after afterId. Category.ROOT pages through every item
+    List<InventoryItem> getCategoryItemsPage(long categoryId, long afterId, int limit);
+
+    boolean updateItemName(long id, String newName);
+
+    void updateReorderThreshold(long id, int threshold);
+
+    // Batch edits, each in a single transaction. Quantity changes go to the default location
+    void deleteItems(long[] ids);
+
+    // Returns the change made to each item, which is smaller than asked where the default
+    // location stopped at zero, and 0 for items that no longer exist
+    int[] adjustItemQuantities(long[] ids, int[] deltas);
+
+    // All or nothing: returns false and renames nothing if any new name is taken
+    boolean updateItemNames(long[] ids, String[] names);
+
+    // Inserts deleted items again under their old ids, with their stock in the default
+    // location and no category. All or nothing: returns false if an id or name is taken by now
+    boolean restoreItems(List<InventoryItem> items, String[] skus);
+
+    // Items whose quantity is at or below their reorder threshold
+    List<InventoryItem> getLowStockItems();
+
+    // Returns null if there is no item with that id
+    InventoryItem getItem(long id);
+
+    // Matches names the way the unique item key does, see InventoryItem.normalizeName().
+    // Returns null if no item uses the name
+    InventoryItem findItemByName(String name);
+
+    long findItemIdBySku(String sku);
+
+    String getItemSku(long id);
+
+    boolean updateItemSku(long id, String sku);
+
+    List<InventoryItem> getItemsPage(long afterId, int limit);
+
+    // Items in the given order, continuing after the given item or from the first when it is
+    // null. With inStockOnly, items with a quantity of zero or less are left out
+    List<InventoryItem> getSortedItemsPage(ItemOrder order, boolean inStockOnly, InventoryItem after, int limit);
+
+    // Items whose name matches the search query, in _id order after afterId
+    List<InventoryItem> searchItems(String query, long afterId, int limit);
+
+    // An item's quantity changes, newest first, from fromMillis on. Continues after the given
+    // movement, or starts from the newest when it is null
+    List<StockMovement> getMovements(long itemId, long fromMillis, StockMovement after, int limit);
+
+    // An item's quantity at a point in time, -1 if the history doesn't go back that far
+    int getQuantityAt(long itemId, long atMillis);
+
+    // Folds movements older than beforeMillis into per-item snapshots. Returns the number removed
+    int compactMovements(long beforeMillis);
+
+    // Every item's movements with an id above afterId, oldest first. Movements of items since
+    // deleted aren't included
+    List<StockMovement> getMovementsAfter(long afterId, int limit);
+
+    // The id of the first movement made at or after fromMillis, or one past the newest
+    // movement when there is none
+    long findFirstMovementId(long fromMillis);
+
+    // Sync bookkeeping for SyncEngine, a small key-value table. Returns null for a missing key
+    String getSyncState(String key);
+
+    void setSyncState(String key, String value);
+
+    // Local quantity changes with a movement id above afterId, oldest first. Changes pulled
+    // from other devices aren't included, and neither are changes to items since deleted
+    List<SyncChange> getUnsyncedChanges(long afterId, int limit);
+
+    // Adds other devices' deltas, creating items that don't exist here yet, and stores the
+    // given sync state entry in the same transaction
+    void applyRemoteChanges(List<SyncChange> changes, String cursorKey, String cursorValue);
+
+    // Inserts new items and sets the quantity of items whose name already exists,
+    // BATCH_SIZE rows per transaction. Returns the number of rows applied
+    int upsertItems(Iterator<InventoryItem> items, ProgressListener listener);
+
+    // Streams every item in _id order without collecting them first
+    void forEachItem(ItemVisitor visitor) throws IOException;
+}
@@ -0,0 +1,163 @@
+package com.example.project;
+
+import android.app.Application;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.savedstate.SavedStateRegistry;
+
+import java.util.List;
+
+// MainActivity's grid state, kept across configuration changes. The adapter with its loaded
+// rows and selection, and the pager with its position in the table, outlive the activity, so
+// a rotation or resize only re-attaches them to the new RecyclerView. The pager stays
+// subscribed to the repository meanwhile, no change is missed and nothing is read again.
+// The search, location or category, order, filter and selection are also saved for after
+// process death, the rows are then loaded again from the first page
+public class InventoryViewModel extends AndroidViewModel {
+    private static final String KEY_STATE = "inventory_state";
+    private static final String KEY_QUERY = "query";
+    private static final String KEY_LOCATION_ID = "location_id";
+    private static final String KEY_LOCATION_NAME = "location_name";
+    private static final String KEY_CATEGORY_ID = "category_id";
+    private static final String KEY_CATEGORY_PARENT_ID = "category_parent_id";
+    private static final String KEY_CATEGORY_NAME = "category_name";
+    private static final String KEY_SELECTED_IDS = "selected_ids";
+    private static final String KEY_ORDER = "order";
+    private static final String KEY_IN_STOCK_ONLY = "in_stock_only";
+
+    private final InventoryRepository repository;
+    private final InventoryAdapter adapter;
+    private final InventoryPager pager;
+    // Null while the grid shows totals across all locations
+    private Location selectedLocation = null;
+    // Null while the grid isn't scoped to a category. Never set together with a location
+    private Category selectedCategory = null;
+    private String query = null;
+    private ItemOrder order = ItemOrder.ID;
+    private boolean inStockOnly = false;
+
+    public InventoryViewModel(@NonNull Application application, @NonNull SavedStateHandle savedState) {
+        super(application);
+        repository = InventoryRepository.getInstance(application);
+        adapter = new InventoryAdapter();
+        pager = new InventoryPager(repository, adapter);
+        // Writes come back as row-level changes, only the affected panel is touched
+        repository.addChangeListener(pager);
+
+        Bundle saved = savedState.get(KEY_STATE);
+        if (saved != null) {
+            query = saved.getString(KEY_QUERY);
+            if (saved.containsKey(KEY_LOCATION_ID)) {
+                selectedLocation = new Location(saved.getLong(KEY_LOCATION_ID), saved.getString(KEY_LOCATION_NAME));
+            }
+            if (saved.containsKey(KEY_CATEGORY_ID)) {
+                // Without its totals, those are read again when the category is shown
+                selectedCategory = new Category(saved.getLong(KEY_CATEGORY_ID), saved.getLong(KEY_CATEGORY_PARENT_ID),
+                        saved.getString(KEY_CATEGORY_NAME), 0, 0);
+            }
+            order = ItemOrder.valueOf(saved.getString(KEY_ORDER, ItemOrder.ID.name()));
+            inStockOnly = saved.getBoolean(KEY_IN_STOCK_ONLY);
+            long[] selectedIds = saved.getLongArray(KEY_SELECTED_IDS);
+            if (selectedIds != null) {
+                adapter.setSelectedIds(selectedIds);
+            }
+        }
+        // Read when the activity's state is saved, so nothing is written on every change
+        savedState.setSavedStateProvider(KEY_STATE, new SavedStateRegistry.SavedStateProvider() {
+            @NonNull
+            @Override
+            public Bundle saveState() {
+                Bundle state = new Bundle();
+                state.putString(KEY_QUERY, query);
+                if (selectedLocation != null) {
+                    state.putLong(KEY_LOCATION_ID, selectedLocation.getId());
+                    state.putString(KEY_LOCATION_NAME, selectedLocation.getName());
+                }
+                if (selectedCategory != null) {
+                    state.putLong(KEY_CATEGORY_ID, selectedCategory.getId());
+                    state.putLong(KEY_CATEGORY_PARENT_ID, selectedCategory.getParentId());
+                    state.putString(KEY_CATEGORY_NAME, selectedCategory.getName());
+                }
+                state.putString(KEY_ORDER, order.name());
+                state.putBoolean(KEY_IN_STOCK_ONLY, inStockOnly);
+                state.putLongArray(KEY_SELECTED_IDS, adapter.getSelectedIds());
+                return state;
+            }
+        });
+        load();
+    }
+
+    // Only runs when the view model is created, never for a configuration change
+    private void load() {
+        // Start from the first page, further pages are loaded as the list scrolls
+        pager.start(query, selectedLocation == null ? Location.ALL : selectedLocation.getId(),
+                selectedCategory == null ? Category.ROOT : selectedCategory.getId(), order, inStockOnly);
+        // On a cold start the database may still be opening, draw last run's first page meanwhile
+        repository.getSnapshot(new InventoryRepository.Callback<List<InventoryItem>>() {
+            @Override
+            public void onResult(List<InventoryItem> items) {
+                pager.showSnapshot(items);
+            }
+        });
+    }
+
+    public InventoryAdapter getAdapter() {
+        return adapter;
+    }
+
+    public InventoryPager getPager() {
+        return pager;
+    }
+
+    public Location getSelectedLocation() {
+        return selectedLocation;
+    }
+
+    public void selectLocation(Location location) {
+        selectedLocation = location;
+        selectedCategory = null;
+        pager.setLocation(location == null ? Location.ALL : location.getId());
+    }
+
+    public Category getSelectedCategory() {
+        return selectedCategory;
+    }
+
+    // Null, or Category.ROOT's id, shows every item again
+    public void selectCategory(Category category) {
+        selectedCategory = category == null || category.getId() == Category.ROOT ? null : category;
+        selectedLocation = null;
+        pager.setCategory(selectedCategory == null ? Category.ROOT : selectedCategory.getId());
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+        pager.setQuery(query);
+    }
+
+    public ItemOrder getOrder() {
+        return order;
+    }
+
+    public void setOrder(ItemOrder order) {
+        this.order = order;
+        pager.setOrder(order);
+    }
+
+    public boolean isInStockOnly() {
+        return inStockOnly;
+    }
+
+    public void setInStockOnly(boolean inStockOnly) {
+        this.inStockOnly = inStockOnly;
+        pager.setInStockOnly(inStockOnly);
+    }
+
+    @Override
+    protected void onCleared() {
+        repository.removeChangeListener(pager);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// One undoable change to a set of items, kept as parallel arrays rather than an object per row.
+// An edit is built from the rows as they are when it runs, so reverting it puts back exactly
+// what it changed: the deltas the store actually applied, the names actually replaced, the
+// rows deleted
+public final class ItemEdit {
+    public enum Type {
+        DELETE,
+        ADJUST_QUANTITY,
+        RENAME
+    }
+
+    // Stands for an item's current name in a rename pattern
+    public static final String NAME_PLACEHOLDER = "*";
+
+    private final Type type;
+    private final String label;
+    private final long[] ids;
+    // ADJUST_QUANTITY: the change asked for on each item, and the change the store made the
+    // last time the edit was applied. The default location stops at zero, so an item with
+    // stock elsewhere can change by less than its total suggests. Only the store knows
+    private final int[] deltas;
+    private int[] appliedDeltas;
+    // RENAME: each item's name before and after
+    private final String[] oldNames;
+    private final String[] newNames;
+    // DELETE: the rows as they were and their barcodes, to insert them again under the same ids
+    private final List<InventoryItem> deletedItems;
+    private final String[] deletedSkus;
+
+    private ItemEdit(Type type, String label, long[] ids, int[] deltas, String[] oldNames, String[] newNames,
+                     List<InventoryItem> deletedItems, String[] deletedSkus) {
+        this.type = type;
+        this.label = label;
+        this.ids = ids;
+        this.deltas = deltas;
+        this.oldNames = oldNames;
+        this.newNames = newNames;
+        this.deletedItems = deletedItems;
+        this.deletedSkus = deletedSkus;
+    }
+
+    // Method to build a delete of the given items. Ids that no longer exist are left out
+    public static ItemEdit delete(InventoryStore store, long[] ids) {
+        List<InventoryItem> items = existingItems(store, ids);
+        String[] skus = new String[items.size()];
+        for (int i = 0; i < skus.length; i++) {
+            skus[i] = store.getItemSku(items.get(i).getId());
+        }
+        return new ItemEdit(Type.DELETE, describe("Delete", items), idsOf(items), null, null, null, items, skus);
+    }
+
+    // Method to build an edit adding delta to each item's quantity, stopping at zero
+    public static ItemEdit adjustQuantity(InventoryStore store, long[] ids, int delta) {
+        List<InventoryItem> items = existingItems(store, ids);
+        int[] deltas = new int[items.size()];
+        Arrays.fill(deltas, delta);
+        String verb = delta >= 0 ? "Add " + delta + " to" : "Remove " + (-delta) + " from";
+        return new ItemEdit(Type.ADJUST_QUANTITY, describe(verb, items), idsOf(items), deltas, null, null, null, null);
+    }
+
+    // Method to build an edit adding deltas[i] to item ids[i], stopping at zero. An id given
+    // more than once gets the sum of its deltas
+    public static ItemEdit adjustQuantities(InventoryStore store, long[] ids, int[] deltas) {
+        Map<Long, Integer> merged = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            Integer delta = merged.get(ids[i]);
+            merged.put(ids[i], deltas[i] + (delta == null ? 0 : delta));
+        }
+        List<InventoryItem> items = new ArrayList<>(merged.size());
+        List<Integer> itemDeltas = new ArrayList<>(merged.size());
+        for (Map.Entry<Long, Integer> entry : merged.entrySet()) {
+            InventoryItem item = store.getItem(entry.getKey());
+            if (item != null) {
+                items.add(item);
+                itemDeltas.add(entry.getValue());
+            }
+        }
+        int[] summed = new int[itemDeltas.size()];
+        for (int i = 0; i < summed.length; i++) {
+            summed[i] = itemDeltas.get(i);
+        }
+        return new ItemEdit(Type.ADJUST_QUANTITY, describe("Adjust quantity of", items), idsOf(items), summed,
+                null, null, null, null);
+    }
+
+    // Method to build an edit setting one item's quantity, as a delta from its current one.
+    // Like updateItemQuantity() it can't go below the item's stock in other locations
+    public static ItemEdit setQuantity(InventoryStore store, long id, int quantity) {
+        List<InventoryItem> items = existingItems(store, new long[]{id});
+        int[] deltas = new int[items.size()];
+        if (!items.isEmpty()) {
+            deltas[0] = quantity - items.get(0).getQuantity();
+        }
+        return new ItemEdit(Type.ADJUST_QUANTITY, describe("Set quantity of", items), idsOf(items), deltas,
+                null, null, null, null);
+    }
+
+    // Method to build an edit giving one item a new name, taken as it is
+    public static ItemEdit setName(InventoryStore store, long id, String name) {
+        List<InventoryItem> items = existingItems(store, new long[]{id});
+        String[] oldNames = new String[items.size()];
+        String[] newNames = new String[items.size()];
+        if (!items.isEmpty()) {
+            oldNames[0] = items.get(0).getName();
+            newNames[0] = name;
+        }
+        return new ItemEdit(Type.RENAME, describe("Rename", items), idsOf(items), null, oldNames, newNames,
+                null, null);
+    }
+
+    // Method to build a rename from a pattern, where NAME_PLACEHOLDER is replaced by each
+    // item's current name. A pattern without it gives every item the same name
+    public static ItemEdit rename(InventoryStore store, long[] ids, String pattern) {
+        List<InventoryItem> items = existingItems(store, ids);
+        String[] oldNames = new String[items.size()];
+        String[] newNames = new String[items.size()];
+        for (int i = 0; i < oldNames.length; i++) {
+            oldNames[i] = items.get(i).getName();
+            newNames[i] = pattern.replace(NAME_PLACEHOLDER, oldNames[i]).trim();
+        }
+        return new ItemEdit(Type.RENAME, describe("Rename", items), idsOf(items), null, oldNames, newNames,
+                null, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // Shown in the undo and redo menu entries
+    public String getLabel() {
+        return label;
+    }
+
+    public long[] getIds() {
+        return ids;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    // Method to apply the edit, all rows in one transaction. Returns false if nothing was
+    // changed, a rename to a name another item has for example
+    public boolean apply(InventoryStore store) {
+        switch (type) {
+            case DELETE:
+                store.deleteItems(ids);
+                return true;
+            case ADJUST_QUANTITY:
+                appliedDeltas = store.adjustItemQuantities(ids, deltas);
+                return true;
+            case RENAME:
+            default:
+                return store.updateItemNames(ids, newNames);
+        }
+    }
+
+    // Method to undo the edit, all rows in one transaction. Returns false if nothing was
+    // changed, when a name has been taken again since for example
+    public boolean revert(InventoryStore store) {
+        switch (type) {
+            case DELETE:
+                return store.restoreItems(deletedItems, deletedSkus);
+            case ADJUST_QUANTITY:
+                int[] negated = new int[appliedDeltas.length];
+                for (int i = 0; i < negated.length; i++) {
+                    negated[i] = -appliedDeltas[i];
+                }
+                store.adjustItemQuantities(ids, negated);
+                return true;
+            case RENAME:
+            default:
+                return store.updateItemNames(ids, oldNames);
+        }
+    }
+
+    private static List<InventoryItem> existingItems(InventoryStore store, long[] ids) {
+        List<InventoryItem> items = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            InventoryItem item = store.getItem(id);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private static long[] idsOf(List<InventoryItem> items) {
+        long[] ids = new long[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = items.get(i).getId();
+        }
+        return ids;
+    }
+
+    private static String describe(String verb, List<InventoryItem> items) {
+        return items.size() == 1 ? verb + " " + items.get(0).getName() : verb + " " + items.size() + " items";
+    }
+}
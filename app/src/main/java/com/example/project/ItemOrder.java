@@ -0,0 +1,36 @@
+package com.example.project;
+
+// Orders the grid can be shown in. Pages are sorted by SQLite from an index, see
+// InventoryDatabaseHelper.getSortedItemsPage(). compare() only places a single changed row
+// among the rows already loaded, it gives the same order as the index
+public enum ItemOrder {
+    // Oldest first, the _id order every other read uses
+    ID("Oldest first"),
+    // A to Z by the normalized name, which is unique
+    NAME("Name A-Z"),
+    // Lowest stock first, equal quantities A to Z
+    QUANTITY("Lowest stock first");
+
+    private final String label;
+
+    ItemOrder(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int compare(InventoryItem a, InventoryItem b) {
+        switch (this) {
+            case NAME:
+                return InventoryItem.normalizeName(a.getName()).compareTo(InventoryItem.normalizeName(b.getName()));
+            case QUANTITY:
+                int byQuantity = Integer.compare(a.getQuantity(), b.getQuantity());
+                return byQuantity != 0 ? byQuantity : NAME.compare(a, b);
+            case ID:
+            default:
+                return Long.compare(a.getId(), b.getId());
+        }
+    }
+}
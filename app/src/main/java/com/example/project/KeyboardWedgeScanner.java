@@ -0,0 +1,67 @@
+package com.example.project;
+
+// Barcode scanners that pair as a keyboard type the code and press Enter, much faster than a
+// person can. Characters are collected while scanning is started, and a line only counts as
+// a barcode if every key came within MAX_KEY_GAP_MILLIS of the previous one
+public class KeyboardWedgeScanner implements BarcodeScanner {
+    static final long MAX_KEY_GAP_MILLIS = 50;
+    static final int MIN_LENGTH = 4;
+    private static final int MAX_LENGTH = 64;
+
+    private final StringBuilder line = new StringBuilder();
+    private long lastKeyMillis = 0;
+    private boolean typedSlowly = false;
+    private Listener listener;
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        reset();
+    }
+
+    @Override
+    public void stop() {
+        listener = null;
+        reset();
+    }
+
+    public boolean isStarted() {
+        return listener != null;
+    }
+
+    // Method to feed one typed character. Returns false when not scanning, so the key goes
+    // to the focused view as usual
+    public boolean onCharacter(char c, long eventTimeMillis) {
+        if (listener == null) {
+            return false;
+        }
+        if (line.length() > 0 && eventTimeMillis - lastKeyMillis > MAX_KEY_GAP_MILLIS) {
+            typedSlowly = true;
+        }
+        lastKeyMillis = eventTimeMillis;
+        if (line.length() < MAX_LENGTH) {
+            line.append(c);
+        }
+        return true;
+    }
+
+    // Method to feed the Enter key that ends a scan
+    public boolean onEnter(long eventTimeMillis) {
+        if (listener == null) {
+            return false;
+        }
+        String code = line.toString().trim();
+        boolean scanned = !typedSlowly && eventTimeMillis - lastKeyMillis <= MAX_KEY_GAP_MILLIS &&
+                code.length() >= MIN_LENGTH;
+        reset();
+        if (scanned) {
+            listener.onBarcode(code);
+        }
+        return true;
+    }
+
+    private void reset() {
+        line.setLength(0);
+        typedSlowly = false;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.project;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// In-process stand-in for the sync server: an in-memory log of every change pushed, numbered
+// in arrival order. Used to run several devices against each other without a network
+public class LocalSyncServer implements SyncServer {
+    private static class Entry {
+        final String deviceId;
+        final SyncChange change;
+
+        Entry(String deviceId, SyncChange change) {
+            this.deviceId = deviceId;
+            this.change = change;
+        }
+    }
+
+    // The sequence number of an entry is its index + 1
+    private final List<Entry> log = new ArrayList<>();
+    private final Map<String, Long> lastChangeIds = new HashMap<>();
+
+    @Override
+    public synchronized void push(String deviceId, byte[] batch) throws IOException {
+        Long last = lastChangeIds.get(deviceId);
+        long lastChangeId = last == null ? 0 : last;
+        for (SyncChange change : SyncBatch.decode(batch)) {
+            // Already received, the device is repeating a push it didn't see acknowledged
+            if (change.getChangeId() <= lastChangeId) {
+                continue;
+            }
+            log.add(new Entry(deviceId, change));
+            lastChangeId = change.getChangeId();
+        }
+        lastChangeIds.put(deviceId, lastChangeId);
+    }
+
+    @Override
+    public synchronized PullResponse pull(String deviceId, long afterSequence, int limit) throws IOException {
+        List<SyncChange> changes = new ArrayList<>();
+        int start = (int) Math.min(log.size(), afterSequence);
+        int end = Math.min(log.size(), start + limit);
+        for (int i = start; i < end; i++) {
+            Entry entry = log.get(i);
+            // A device's own changes are already applied on it
+            if (!entry.deviceId.equals(deviceId)) {
+                changes.add(entry.change);
+            }
+        }
+        return new PullResponse(SyncBatch.encode(changes), end, end < log.size());
+    }
+
+    // Number of changes received from all devices
+    public synchronized int size() {
+        return log.size();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.project;
+
+// A stockroom that holds its own quantity of each item. Item-level edits (adding an item,
+// setting its quantity, imports and sync) apply to the default location, the quantity an
+// item shows outside a location is its total across all of them
+public class Location {
+    // Created with the table, every item has a row here
+    public static final long DEFAULT_ID = 1;
+    // Not a stored location: the grid shows totals
+    public static final long ALL = 0;
+
+    private final long id;
+    private final String name;
+
+    public Location(long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -1,8 +1,6 @@
 package com.example.project;
 
 import android.content.Intent;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 
 import androidx.appcompat.app.AppCompatActivity;
@@ -18,15 +16,16 @@ public class LoginActivity extends AppCompatActivity {
     private EditText editTextEmail, editTextPassword;
     private TextView textViewInvalidLogin;
     private Button buttonSubmit, buttonRegister;
-    private InventoryDatabaseHelper dbHelper;
+    private InventoryRepository repository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_login);
 
-        // Initialize database helper
-        dbHelper = new InventoryDatabaseHelper(this);
+        // Initialize repository, and open the database in the background while the user types
+        repository = InventoryRepository.getInstance(this);
+        repository.warmUp();
 
         // Initialize UI components
         editTextEmail = findViewById(R.id.editTextEmail);
@@ -64,25 +63,29 @@ public class LoginActivity extends AppCompatActivity {
             return;
         }
 
-        // Check user credentials in the database
-        if (validateUser(email, password)) {
-            // Login successful, navigate to the next activity
-            Toast.makeText(this, "Login successful", Toast.LENGTH_SHORT).show();
-            // Navigate to the next activity
-            startActivity(new Intent(LoginActivity.this, MainActivity.class));
-            finish(); // Finish the LoginActivity so that pressing back button won't come back to it
-        } else {
-            // Login failed, display error message
-            textViewInvalidLogin.setVisibility(View.VISIBLE);
-        }
-    }
+        // Check user credentials in the database off the main thread
+        buttonSubmit.setEnabled(false);
+        repository.validateUser(email, password, new InventoryRepository.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean isValid) {
+                buttonSubmit.setEnabled(true);
+                if (isValid) {
+                    // Login successful, navigate to the next activity
+                    Toast.makeText(LoginActivity.this, "Login successful", Toast.LENGTH_SHORT).show();
+                    // Navigate to the next activity
+                    startActivity(new Intent(LoginActivity.this, MainActivity.class));
+                    finish(); // Finish the LoginActivity so that pressing back button won't come back to it
+                } else {
+                    // Login failed, display error message
+                    textViewInvalidLogin.setVisibility(View.VISIBLE);
+                }
+            }
 
-    private boolean validateUser(String email, String password) {
-        // Perform database query to validate user credentials
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT * FROM users WHERE email = ? AND password = ?", new String[]{email, password});
-        boolean isValid = cursor.moveToFirst();
-        cursor.close();
-        return isValid;
+            @Override
+            public void onError(Throwable error) {
+                buttonSubmit.setEnabled(true);
+                textViewInvalidLogin.setVisibility(View.VISIBLE);
+            }
+        });
     }
 }
\ No newline at end of file
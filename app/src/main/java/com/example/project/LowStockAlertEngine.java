@@ -0,0 +1,94 @@
+package com.example.project;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Watches quantity writes for items crossing their reorder threshold and coalesces the
+// crossings into at most one digest per window. An item alerts once when it drops to or
+// below its threshold and can only alert again after it has been restocked above it
+public class LowStockAlertEngine {
+    public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final AlertSender sender;
+    private final ScheduledExecutorService scheduler;
+    private final long windowMillis;
+
+    // Items that are currently low and have already been queued or sent
+    private final Set<Long> alerted = new HashSet<>();
+    // Crossings waiting for the current window to close, in the order they happened
+    private final Map<Long, InventoryItem> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    public LowStockAlertEngine(AlertSender sender, ScheduledExecutorService scheduler, long windowMillis) {
+        this.sender = sender;
+        this.scheduler = scheduler;
+        this.windowMillis = windowMillis;
+    }
+
+    // Method to evaluate one written row, cheap enough to run on every quantity write
+    public synchronized void onQuantityChanged(InventoryItem item) {
+        if (item.isLowStock()) {
+            if (alerted.add(item.getId())) {
+                pending.put(item.getId(), item);
+                scheduleFlush();
+            } else if (pending.containsKey(item.getId())) {
+                // Still waiting to be sent, report the latest quantity
+                pending.put(item.getId(), item);
+            }
+        } else {
+            alerted.remove(item.getId());
+            // Restocked before the digest went out, nothing to report
+            pending.remove(item.getId());
+        }
+    }
+
+    // Method to re-evaluate after a bulk write, given every item that is low right now
+    public synchronized void onBulkChange(List<InventoryItem> lowStockItems) {
+        Set<Long> stillLow = new HashSet<>();
+        for (InventoryItem item : lowStockItems) {
+            stillLow.add(item.getId());
+            onQuantityChanged(item);
+        }
+        alerted.retainAll(stillLow);
+        pending.keySet().retainAll(stillLow);
+    }
+
+    // Method to forget an item, for example after it has been deleted
+    public synchronized void onItemRemoved(long id) {
+        alerted.remove(id);
+        pending.remove(id);
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        List<InventoryItem> digest;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            digest = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        // Sent outside the lock so writers are never held up by the sender
+        sender.sendDigest(digest);
+    }
+}
@@ -1,43 +1,175 @@
 package com.example.project;
 
+import androidx.activity.result.ActivityResultCallback;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.content.ContextCompat;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.RecyclerView;
 
-import android.Manifest;
-import android.content.Context;
 import android.content.DialogInterface;
-import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
-import android.telephony.SmsManager;
-import android.telephony.TelephonyManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
 import android.text.InputType;
+import android.text.TextWatcher;
 import android.util.Log;
-import android.view.LayoutInflater;
+import android.view.KeyEvent;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.GridLayout;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.ImageButton;
 import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.PopupMenu;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 public class MainActivity extends AppCompatActivity {
-    private InventoryDatabaseHelper dbHelper;
+    private static final int MENU_IMPORT_CSV = 1;
+    private static final int MENU_EXPORT_CSV = 2;
+    private static final int MENU_RECEIVE = 3;
+    private static final int MENU_UNDO = 4;
+    private static final int MENU_REDO = 5;
+    private static final int MENU_DELETE_SELECTED = 6;
+    private static final int MENU_ADJUST_SELECTED = 7;
+    private static final int MENU_RENAME_SELECTED = 8;
+    private static final int MENU_CLEAR_SELECTION = 9;
+    private static final int MENU_SORT = 10;
+    private static final int MENU_IN_STOCK_ONLY = 11;
+    private static final int MENU_BACKUP = 12;
+    private static final int MENU_RESTORE = 13;
+    private static final int MENU_FILE_SELECTED = 14;
+    private static final int MENU_LAN_API = 15;
+    // Typing pause before the search runs, so a query isn't sent for every keystroke
+    private static final long SEARCH_DEBOUNCE_MILLIS = 250;
+    private static final int HISTORY_PAGE_SIZE = 50;
+    // Items listed in each report
+    private static final int REPORT_SIZE = 20;
+
+    private InventoryRepository repository;
     private ImageButton buttonAddItem;
+    // Survives rotation and resizing with the loaded rows, see InventoryViewModel
+    private InventoryViewModel viewModel;
+    private InventoryAdapter inventoryAdapter;
+    private RecyclerView recyclerViewPanels;
+    private TextView textViewInventory;
+    // Started from the menu. Each scan adds one to the item with that barcode
+    private final KeyboardWedgeScanner barcodeScanner = new KeyboardWedgeScanner();
+    private final BarcodeScanner.Listener receiveListener = new BarcodeScanner.Listener() {
+        @Override
+        public void onBarcode(final String code) {
+            // Runs on the writer thread, the panel is updated through the change listener
+            repository.receiveScan(code, 1, new InventoryRepository.Callback<InventoryItem>() {
+                @Override
+                public void onResult(InventoryItem item) {
+                    if (item == null) {
+                        Toast.makeText(MainActivity.this, "Unknown barcode " + code, Toast.LENGTH_SHORT).show();
+                    }
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    writeCallback.onError(error);
+                }
+            });
+        }
+    };
+    private ActivityResultLauncher<String[]> importCsvLauncher;
+    private ActivityResultLauncher<String> exportCsvLauncher;
+    private ActivityResultLauncher<String> exportMetricsLauncher;
+    private ActivityResultLauncher<String> backupLauncher;
+    private ActivityResultLauncher<String[]> restoreLauncher;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private String pendingQuery = "";
+    private final Runnable runSearch = new Runnable() {
+        @Override
+        public void run() {
+            viewModel.setQuery(pendingQuery);
+        }
+    };
+
+    // Batch edits, undo and redo come back as row changes too. False means nothing was changed
+    private final InventoryRepository.Callback<Boolean> editCallback = new InventoryRepository.Callback<Boolean>() {
+        @Override
+        public void onResult(Boolean changed) {
+            if (!changed) {
+                Toast.makeText(MainActivity.this, "Nothing was changed", Toast.LENGTH_SHORT).show();
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            writeCallback.onError(error);
+        }
+    };
+
+    // Panels are updated through InventoryPager's change listener, this only reports failures
+    private final InventoryRepository.Callback<Void> writeCallback = new InventoryRepository.Callback<Void>() {
+        @Override
+        public void onResult(Void result) {
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            Toast.makeText(MainActivity.this, "Failed to save changes", Toast.LENGTH_SHORT).show();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Initialize database helper
-        dbHelper = new InventoryDatabaseHelper(this);
+        // Initialize repository, all database work runs off the main thread
+        repository = InventoryRepository.getInstance(this);
 
         // Initialize button
         buttonAddItem = findViewById(R.id.button4);
 
+        // Set up the recycling panel grid, only visible panels are inflated and bound. The
+        // layout picks the column count for the width class. The adapter and pager come from
+        // the view model, so after a configuration change the rows already loaded are shown
+        // again without a query
+        viewModel = new ViewModelProvider(this).get(InventoryViewModel.class);
+        recyclerViewPanels = findViewById(R.id.recyclerView_panels);
+        inventoryAdapter = viewModel.getAdapter();
+        inventoryAdapter.setOnEditClickListener(new InventoryAdapter.OnEditClickListener() {
+            @Override
+            public void onEditClick(InventoryItem item) {
+                // Show edit options dialog
+                showEditOptionsDialog(item);
+            }
+        });
+        // While panels are selected the header counts them and the menu offers batch edits
+        inventoryAdapter.setOnSelectionChangeListener(new InventoryAdapter.OnSelectionChangeListener() {
+            @Override
+            public void onSelectionChanged(int selectedCount) {
+                updateHeader();
+            }
+        });
+        recyclerViewPanels.setAdapter(inventoryAdapter);
+        recyclerViewPanels.addOnScrollListener(viewModel.getPager());
 
         // Set click listener for the Add Item button
         buttonAddItem.setOnClickListener(new View.OnClickListener() {
@@ -48,7 +180,693 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        populatePanelsFromDatabase();
+        // Pick the CSV file to import from or export to
+        importCsvLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(),
+                new ActivityResultCallback<Uri>() {
+                    @Override
+                    public void onActivityResult(Uri uri) {
+                        if (uri != null) {
+                            importCsv(uri);
+                        }
+                    }
+                });
+        exportCsvLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("text/csv"),
+                new ActivityResultCallback<Uri>() {
+                    @Override
+                    public void onActivityResult(Uri uri) {
+                        if (uri != null) {
+                            exportCsv(uri);
+                        }
+                    }
+                });
+
+        // Pick where to write a database backup, or the backup to restore
+        backupLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("application/gzip"),
+                new ActivityResultCallback<Uri>() {
+                    @Override
+                    public void onActivityResult(Uri uri) {
+                        if (uri != null) {
+                            backupDatabase(uri);
+                        }
+                    }
+                });
+        restoreLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(),
+                new ActivityResultCallback<Uri>() {
+                    @Override
+                    public void onActivityResult(Uri uri) {
+                        if (uri != null) {
+                            restoreDatabase(uri);
+                        }
+                    }
+                });
+
+        exportMetricsLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("application/json"),
+                new ActivityResultCallback<Uri>() {
+                    @Override
+                    public void onActivityResult(Uri uri) {
+                        if (uri != null) {
+                            exportMetrics(uri);
+                        }
+                    }
+                });
+
+        // Search as the user types, once they pause
+        EditText editTextSearch = findViewById(R.id.editText_search);
+        editTextSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                pendingQuery = s.toString();
+                searchHandler.removeCallbacks(runSearch);
+                searchHandler.postDelayed(runSearch, SEARCH_DEBOUNCE_MILLIS);
+            }
+        });
+
+        // The header switches between totals and a single location's stock
+        textViewInventory = findViewById(R.id.textView_inventory);
+        textViewInventory.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showLocationDialog();
+            }
+        });
+
+        // Set click listener for the menu button
+        ImageButton buttonMenu = findViewById(R.id.btn_menu);
+        buttonMenu.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showMenu(v);
+            }
+        });
+
+        // The history and clock buttons open the consumption reports
+        findViewById(R.id.button2).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showReportDialog(false);
+            }
+        });
+        findViewById(R.id.button3).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showReportDialog(true);
+            }
+        });
+
+        // The group button browses the category tree
+        findViewById(R.id.button1).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Category category = viewModel.getSelectedCategory();
+                showCategoryDialog(category == null ? Category.ROOT : category.getId(), null);
+            }
+        });
+
+        // The settings button opens the performance metrics
+        ImageButton buttonSettings = findViewById(R.id.btn_settings);
+        buttonSettings.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showMetricsDialog();
+            }
+        });
+
+        updateHeader();
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        // While receiving, typed keys are the scanner's. Up events of those keys are dropped too
+        if (barcodeScanner.isStarted()) {
+            boolean down = event.getAction() == KeyEvent.ACTION_DOWN;
+            if (event.getKeyCode() == KeyEvent.KEYCODE_ENTER) {
+                return !down || barcodeScanner.onEnter(event.getEventTime());
+            }
+            int c = event.getUnicodeChar();
+            if (c != 0) {
+                return !down || barcodeScanner.onCharacter((char) c, event.getEventTime());
+            }
+        }
+        return super.dispatchKeyEvent(event);
+    }
+
+    @Override
+    protected void onDestroy() {
+        barcodeScanner.stop();
+        searchHandler.removeCallbacks(runSearch);
+        // The adapter lives on in the view model, let go of this activity's views and dialogs
+        recyclerViewPanels.setAdapter(null);
+        inventoryAdapter.setOnEditClickListener(null);
+        inventoryAdapter.setOnSelectionChangeListener(null);
+        super.onDestroy();
+    }
+
+    private void showMenu(View anchor) {
+        PopupMenu popupMenu = new PopupMenu(this, anchor);
+        popupMenu.getMenu().add(0, MENU_IMPORT_CSV, 0, "Import CSV");
+        popupMenu.getMenu().add(0, MENU_EXPORT_CSV, 1, "Export CSV");
+        popupMenu.getMenu().add(0, MENU_BACKUP, 1, "Back Up Database");
+        popupMenu.getMenu().add(0, MENU_RESTORE, 1, "Restore Database");
+        popupMenu.getMenu().add(0, MENU_LAN_API, 1,
+                InventoryHttpServer.getInstance(this).isRunning() ? "Stop LAN API" : "Start LAN API");
+        popupMenu.getMenu().add(0, MENU_RECEIVE, 2, barcodeScanner.isStarted() ? "Stop Receiving" : "Receive by Barcode");
+        // Applies to the totals, a search, location or category is shown in _id order with every item
+        popupMenu.getMenu().add(0, MENU_SORT, 2, "Sort: " + viewModel.getOrder().getLabel());
+        popupMenu.getMenu().add(0, MENU_IN_STOCK_ONLY, 2, viewModel.isInStockOnly() ? "Show Out of Stock" : "Hide Out of Stock");
+        if (inventoryAdapter.isSelecting()) {
+            int count = inventoryAdapter.getSelectedCount();
+            popupMenu.getMenu().add(0, MENU_DELETE_SELECTED, 3, count == 1 ? "Delete 1 Item" : "Delete " + count + " Items");
+            popupMenu.getMenu().add(0, MENU_ADJUST_SELECTED, 4, "Adjust Quantity");
+            popupMenu.getMenu().add(0, MENU_RENAME_SELECTED, 5, "Rename");
+            popupMenu.getMenu().add(0, MENU_FILE_SELECTED, 5, "File Under Category");
+            popupMenu.getMenu().add(0, MENU_CLEAR_SELECTION, 6, "Clear Selection");
+        }
+        // The labels are read as the menu opens, an edit still being written shows up next time
+        String undoLabel = repository.getUndoLabel();
+        if (undoLabel != null) {
+            popupMenu.getMenu().add(0, MENU_UNDO, 7, "Undo " + undoLabel);
+        }
+        String redoLabel = repository.getRedoLabel();
+        if (redoLabel != null) {
+            popupMenu.getMenu().add(0, MENU_REDO, 8, "Redo " + redoLabel);
+        }
+        popupMenu.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem menuItem) {
+                switch (menuItem.getItemId()) {
+                    case MENU_IMPORT_CSV:
+                        importCsvLauncher.launch(new String[]{"text/*"});
+                        return true;
+                    case MENU_EXPORT_CSV:
+                        exportCsvLauncher.launch("inventory.csv");
+                        return true;
+                    case MENU_BACKUP:
+                        backupLauncher.launch("inventory-backup.ivbk.gz");
+                        return true;
+                    case MENU_RESTORE:
+                        confirmRestore();
+                        return true;
+                    case MENU_LAN_API:
+                        toggleLanApi();
+                        return true;
+                    case MENU_RECEIVE:
+                        if (barcodeScanner.isStarted()) {
+                            barcodeScanner.stop();
+                        } else {
+                            barcodeScanner.start(receiveListener);
+                            Toast.makeText(MainActivity.this, "Scan items to add them to stock", Toast.LENGTH_SHORT).show();
+                        }
+                        return true;
+                    case MENU_SORT:
+                        showSortDialog();
+                        return true;
+                    case MENU_IN_STOCK_ONLY:
+                        viewModel.setInStockOnly(!viewModel.isInStockOnly());
+                        return true;
+                    case MENU_DELETE_SELECTED:
+                        deleteSelectedItems();
+                        return true;
+                    case MENU_ADJUST_SELECTED:
+                        showAdjustSelectedDialog();
+                        return true;
+                    case MENU_RENAME_SELECTED:
+                        showRenameSelectedDialog();
+                        return true;
+                    case MENU_FILE_SELECTED:
+                        fileSelectedItems();
+                        return true;
+                    case MENU_CLEAR_SELECTION:
+                        inventoryAdapter.clearSelection();
+                        return true;
+                    case MENU_UNDO:
+                        repository.undo(editCallback);
+                        return true;
+                    case MENU_REDO:
+                        repository.redo(editCallback);
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+        });
+        popupMenu.show();
+    }
+
+    private void showSortDialog() {
+        final ItemOrder[] orders = ItemOrder.values();
+        String[] labels = new String[orders.length];
+        for (int i = 0; i < orders.length; i++) {
+            labels[i] = orders[i].getLabel();
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Sort");
+        builder.setSingleChoiceItems(labels, viewModel.getOrder().ordinal(), new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                viewModel.setOrder(orders[which]);
+                dialog.dismiss();
+            }
+        });
+        builder.create().show();
+    }
+
+    private void updateHeader() {
+        if (inventoryAdapter.isSelecting()) {
+            textViewInventory.setText(inventoryAdapter.getSelectedCount() + " selected");
+        } else {
+            Location location = viewModel.getSelectedLocation();
+            Category category = viewModel.getSelectedCategory();
+            if (location != null) {
+                textViewInventory.setText(location.getName());
+            } else {
+                textViewInventory.setText(category == null ? "Inventory" : category.getName());
+            }
+        }
+    }
+
+    private void deleteSelectedItems() {
+        final long[] ids = inventoryAdapter.getSelectedIds();
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Confirm Deletion");
+        builder.setMessage("Delete " + ids.length + (ids.length == 1 ? " item?" : " items?") +
+                " This can be undone from the menu.");
+        builder.setPositiveButton("Delete", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                // One transaction, the panels go in one pass when the changes arrive
+                repository.deleteItems(ids, editCallback);
+                inventoryAdapter.clearSelection();
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.create().show();
+    }
+
+    private void showAdjustSelectedDialog() {
+        final long[] ids = inventoryAdapter.getSelectedIds();
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Adjust Quantity");
+        builder.setMessage("Add to each selected item, or enter a negative number to remove:");
+
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_SIGNED);
+        builder.setView(input);
+
+        builder.setPositiveButton("OK", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                String deltaStr = input.getText().toString().trim();
+                int delta;
+                try {
+                    delta = Integer.parseInt(deltaStr);
+                } catch (NumberFormatException e) {
+                    Toast.makeText(MainActivity.this, "Please enter a number", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                // Totals change in the default location, like other item-level edits
+                repository.adjustItemQuantities(ids, delta, editCallback);
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.create().show();
+    }
+
+    private void showRenameSelectedDialog() {
+        final long[] ids = inventoryAdapter.getSelectedIds();
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Rename");
+        builder.setMessage("Use " + ItemEdit.NAME_PLACEHOLDER + " for each item's current name, for example \"Organic " +
+                ItemEdit.NAME_PLACEHOLDER + "\":");
+
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_TEXT);
+        input.setText(ItemEdit.NAME_PLACEHOLDER);
+        builder.setView(input);
+
+        builder.setPositiveButton("OK", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                String pattern = input.getText().toString().trim();
+                // Without the placeholder every item would get the same name
+                if (!pattern.contains(ItemEdit.NAME_PLACEHOLDER) && ids.length > 1) {
+                    Toast.makeText(MainActivity.this, "The name must contain " + ItemEdit.NAME_PLACEHOLDER,
+                            Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                if (pattern.isEmpty() || pattern.equals(ItemEdit.NAME_PLACEHOLDER)) {
+                    return;
+                }
+                repository.renameItems(ids, pattern, new InventoryRepository.Callback<Boolean>() {
+                    @Override
+                    public void onResult(Boolean renamed) {
+                        if (!renamed) {
+                            Toast.makeText(MainActivity.this, "An item with one of those names already exists",
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        writeCallback.onError(error);
+                    }
+                });
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.create().show();
+    }
+
+    private void importCsv(Uri uri) {
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            Toast.makeText(this, "Unable to open file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final AlertDialog progressDialog = showProgressDialog("Importing");
+        repository.importCsv(in, new InventoryStore.ProgressListener() {
+            @Override
+            public void onProgress(long rowsProcessed) {
+                progressDialog.setMessage(rowsProcessed + " rows imported");
+            }
+        }, new InventoryRepository.Callback<InventoryCsv.ImportResult>() {
+            @Override
+            public void onResult(InventoryCsv.ImportResult result) {
+                progressDialog.dismiss();
+                Toast.makeText(MainActivity.this, result.getImported() + " items imported, " +
+                        result.getSkipped() + " rows skipped", Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                progressDialog.dismiss();
+                Log.e("MainActivity", "CSV import failed", error);
+                Toast.makeText(MainActivity.this, "Import failed", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void exportCsv(Uri uri) {
+        OutputStream out;
+        try {
+            out = getContentResolver().openOutputStream(uri);
+        } catch (FileNotFoundException e) {
+            Toast.makeText(this, "Unable to open file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final AlertDialog progressDialog = showProgressDialog("Exporting");
+        repository.exportCsv(out, new InventoryStore.ProgressListener() {
+            @Override
+            public void onProgress(long rowsProcessed) {
+                progressDialog.setMessage(rowsProcessed + " rows exported");
+            }
+        }, new InventoryRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer count) {
+                progressDialog.dismiss();
+                Toast.makeText(MainActivity.this, count + " items exported", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                progressDialog.dismiss();
+                Log.e("MainActivity", "CSV export failed", error);
+                Toast.makeText(MainActivity.this, "Export failed", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void backupDatabase(Uri uri) {
+        OutputStream out;
+        try {
+            out = getContentResolver().openOutputStream(uri);
+        } catch (FileNotFoundException e) {
+            Toast.makeText(this, "Unable to open file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final AlertDialog progressDialog = showProgressDialog("Backing Up");
+        repository.backup(out, new InventoryStore.ProgressListener() {
+            @Override
+            public void onProgress(long bytes) {
+                progressDialog.setMessage(bytes / (1024 * 1024) + " MB written");
+            }
+        }, new InventoryRepository.Callback<InventoryBackup.Result>() {
+            @Override
+            public void onResult(InventoryBackup.Result result) {
+                progressDialog.dismiss();
+                Toast.makeText(MainActivity.this, "Database backed up", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                progressDialog.dismiss();
+                Log.e("MainActivity", "Backup failed", error);
+                Toast.makeText(MainActivity.this, "Backup failed", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    // The server outlives the activity, it runs until stopped here or the process ends
+    private void toggleLanApi() {
+        InventoryHttpServer server = InventoryHttpServer.getInstance(this);
+        if (server.isRunning()) {
+            server.stop();
+            Toast.makeText(this, "LAN API stopped", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // Only served on the LAN
+        if (InventoryHttpServer.getLanAddress() == null) {
+            Toast.makeText(this, "Connect to the store's Wi-Fi to start the LAN API", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        try {
+            server.start();
+        } catch (IOException e) {
+            Log.e("MainActivity", "Unable to start the LAN API", e);
+            Toast.makeText(this, "Unable to start the LAN API", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Toast.makeText(this, "LAN API at http://" + server.getAddress() + ":" + server.getPort(),
+                Toast.LENGTH_LONG).show();
+    }
+
+    private void confirmRestore() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Restore Database");
+        builder.setMessage("Every item, location and movement will be replaced by the backup's.");
+        builder.setPositiveButton("Choose Backup", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                restoreLauncher.launch(new String[]{"application/gzip", "application/octet-stream"});
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.show();
+    }
+
+    // The backup is checked and staged, then the app restarts so the next start opens it
+    private void restoreDatabase(Uri uri) {
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            Toast.makeText(this, "Unable to open file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final AlertDialog progressDialog = showProgressDialog("Checking Backup");
+        repository.restore(in, new InventoryRepository.Callback<InventoryBackup.Result>() {
+            @Override
+            public void onResult(InventoryBackup.Result result) {
+                progressDialog.dismiss();
+                AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+                builder.setTitle("Restore Ready");
+                builder.setMessage("The app will restart now and open the backup.");
+                builder.setCancelable(false);
+                builder.setPositiveButton("Restart App", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        closeAndRestart();
+                    }
+                });
+                builder.show();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                progressDialog.dismiss();
+                Log.e("MainActivity", "Restore failed", error);
+                Toast.makeText(MainActivity.this, "Restore failed: " + error.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    // Method to let queued work finish and close the database before the process goes. The
+    // staged file is swapped in by the first acquire() of a process, and the helper, the LAN
+    // API and the alert engine are process-wide and still hold the old one, so the app is
+    // relaunched in a new process rather than reopened in this one
+    private void closeAndRestart() {
+        final AlertDialog progressDialog = showProgressDialog("Restarting");
+        InventoryHttpServer server = InventoryHttpServer.getInstance(this);
+        if (server.isRunning()) {
+            server.stop();
+        }
+        InventoryRepository.closeInstance(new InventoryRepository.Callback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                restart();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                // The restore is staged either way, the next start still opens it
+                Log.e("MainActivity", "Closing the database before restart failed", error);
+                restart();
+            }
+
+            private void restart() {
+                progressDialog.dismiss();
+                Intent launch = getPackageManager().getLaunchIntentForPackage(getPackageName());
+                startActivity(Intent.makeRestartActivityTask(launch.getComponent()));
+                Runtime.getRuntime().exit(0);
+            }
+        });
+    }
+
+    // Method to show the items consumed fastest over the report window, or with byCover the
+    // items that will run out soonest at their current rate
+    private void showReportDialog(final boolean byCover) {
+        repository.getReport(REPORT_SIZE, new InventoryRepository.Callback<ReportEngine.Report>() {
+            @Override
+            public void onResult(ReportEngine.Report report) {
+                List<ReportEngine.ItemReport> items = byCover ? report.getLowestCover() : report.getTopMovers();
+                StringBuilder message = new StringBuilder();
+                for (ReportEngine.ItemReport item : items) {
+                    message.append(item.getName()).append('\n');
+                    if (byCover) {
+                        message.append(String.format(Locale.US, "  %.1f days left  (%d in stock, %.1f/day)\n",
+                                item.getDaysOfCover(), item.getQuantity(), item.getConsumedPerDay()));
+                    } else {
+                        message.append(String.format(Locale.US, "  %d used  (%.1f/day, %d in stock)\n",
+                                item.getConsumed(), item.getConsumedPerDay(), item.getQuantity()));
+                    }
+                }
+                if (items.isEmpty()) {
+                    message.append("No stock used in the last ").append(report.getWindowDays()).append(" days");
+                }
+                AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+                builder.setTitle(byCover ? "Days of Cover" : "Top Movers, last " + report.getWindowDays() + " days");
+                builder.setMessage(message.toString().trim());
+                builder.setPositiveButton("Close", null);
+                builder.show();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                Toast.makeText(MainActivity.this, "Unable to build report", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    // Method to show the recorded latencies, slowest first by p99, with controls to switch
+    // recording on or off, clear it, or export it as JSON
+    private void showMetricsDialog() {
+        List<Metrics.Timer> timers = new ArrayList<>(Metrics.getTimers());
+        final Map<Metrics.Timer, Metrics.Summary> summaries = new HashMap<>();
+        for (Metrics.Timer timer : timers) {
+            summaries.put(timer, timer.getSummary());
+        }
+        Collections.sort(timers, new Comparator<Metrics.Timer>() {
+            @Override
+            public int compare(Metrics.Timer a, Metrics.Timer b) {
+                return Long.compare(summaries.get(b).getPercentileMicros(99), summaries.get(a).getPercentileMicros(99));
+            }
+        });
+        StringBuilder message = new StringBuilder();
+        for (Metrics.Timer timer : timers) {
+            Metrics.Summary summary = summaries.get(timer);
+            if (summary.getCount() > 0) {
+                message.append(String.format(Locale.US, "%s\n  n=%d  p50 %s  p99 %s  max %s\n", timer.getName(),
+                        summary.getCount(), formatMicros(summary.getPercentileMicros(50)),
+                        formatMicros(summary.getPercentileMicros(99)), formatMicros(summary.getMaxMicros())));
+            }
+        }
+        for (Metrics.Counter counter : Metrics.getCounters()) {
+            if (counter.get() > 0) {
+                message.append(counter.getName()).append(": ").append(counter.get()).append('\n');
+            }
+        }
+        if (message.length() == 0) {
+            message.append(Metrics.isEnabled() ? "Nothing recorded yet" : "Recording is off");
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Performance");
+        builder.setMessage(message.toString().trim());
+        builder.setPositiveButton("Export", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                exportMetricsLauncher.launch("inventory-metrics.json");
+            }
+        });
+        builder.setNeutralButton(Metrics.isEnabled() ? "Stop Recording" : "Start Recording",
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        Metrics.setEnabled(!Metrics.isEnabled());
+                    }
+                });
+        builder.setNegativeButton("Reset", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                Metrics.reset();
+            }
+        });
+        builder.show();
+    }
+
+    private static String formatMicros(long micros) {
+        return micros < 1000 ? micros + " us" : String.format(Locale.US, "%.1f ms", micros / 1000.0);
+    }
+
+    private void exportMetrics(Uri uri) {
+        OutputStream out;
+        try {
+            out = getContentResolver().openOutputStream(uri);
+        } catch (FileNotFoundException e) {
+            Toast.makeText(this, "Unable to open file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        repository.exportMetrics(out, new InventoryRepository.Callback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                Toast.makeText(MainActivity.this, "Metrics exported", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                Log.e("MainActivity", "Metrics export failed", error);
+                Toast.makeText(MainActivity.this, "Export failed", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private AlertDialog showProgressDialog(String title) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(title);
+        builder.setMessage("Starting...");
+        builder.setCancelable(false);
+        AlertDialog dialog = builder.create();
+        dialog.show();
+        return dialog;
     }
 
     // Method to show dialog for adding a new item
@@ -69,7 +887,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(DialogInterface dialog, int which) {
                 // Retrieve input values
-                String name = editTextName.getText().toString().trim();
+                final String name = editTextName.getText().toString().trim();
                 String quantityStr = editTextQuantity.getText().toString().trim();
 
                 // Validate input
@@ -79,19 +897,26 @@ public class MainActivity extends AppCompatActivity {
                 }
 
                 // Convert quantity to integer
-                int quantity = Integer.parseInt(quantityStr);
+                final int quantity = Integer.parseInt(quantityStr);
 
-                // Insert item into database
-                long result = dbHelper.insertItem(name, quantity);
+                // Check for an item with the same name first, a lookup in the cache
+                repository.findItemByName(name, new InventoryRepository.Callback<InventoryItem>() {
+                    @Override
+                    public void onResult(InventoryItem existing) {
+                        if (existing != null) {
+                            Toast.makeText(MainActivity.this, existing.getName() + " is already in the inventory",
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            addItem(name, quantity);
+                        }
+                    }
 
-                // Check if insertion was successful
-                if (result != -1) {
-                    Toast.makeText(MainActivity.this, "Item added successfully", Toast.LENGTH_SHORT).show();
-                    // Optionally update the grid layout with the new item
-                    populatePanelsFromDatabase();
-                } else {
-                    Toast.makeText(MainActivity.this, "Failed to add item", Toast.LENGTH_SHORT).show();
-                }
+                    @Override
+                    public void onError(Throwable error) {
+                        // The insert still rejects a duplicate name
+                        addItem(name, quantity);
+                    }
+                });
             }
         });
 
@@ -107,112 +932,378 @@ public class MainActivity extends AppCompatActivity {
         builder.create().show();
     }
 
-    private void populatePanelsFromDatabase() {
-        int position=0;
-        // Get a reference to the GridLayout where panels will be added
-        GridLayout gridLayoutPanels = findViewById(R.id.gridLayout_panels);
-
-        // Clear existing panels before adding new ones
-        gridLayoutPanels.removeAllViews();
-
-        // Get a readable database
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-
-        // Define the columns to be retrieved
-        String[] projection = {
-                InventoryDatabaseHelper.InventoryTable.COL_ITEM,
-                InventoryDatabaseHelper.InventoryTable.COL_QTY
-        };
-
-        // Query the database to retrieve all items
-        Cursor cursor = db.query(
-                InventoryDatabaseHelper.InventoryTable.TABLE,
-                projection,
-                null,
-                null,
-                null,
-                null,
-                null
-        );
-
-        // Iterate over the cursor to populate panels
-        while (cursor.moveToNext()) {
-            // Retrieve item name and quantity from the cursor
-            String itemName = cursor.getString(cursor.getColumnIndexOrThrow(InventoryDatabaseHelper.InventoryTable.COL_ITEM));
-            int quantity = cursor.getInt(cursor.getColumnIndexOrThrow(InventoryDatabaseHelper.InventoryTable.COL_QTY));
-
-            // Create a new panel for each item
-            addPanelToGridLayout(gridLayoutPanels, itemName, quantity, position);
-            position++;
-        }
+    private void addItem(String name, int quantity) {
+        // Insert item into database
+        repository.insertItem(name, quantity, new InventoryRepository.Callback<Long>() {
+            @Override
+            public void onResult(Long result) {
+                // Check if insertion was successful
+                if (result != -1) {
+                    Toast.makeText(MainActivity.this, "Item added successfully", Toast.LENGTH_SHORT).show();
+                } else {
+                    onError(null);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                // Also reached when an item with the same name was added in the meantime
+                Toast.makeText(MainActivity.this, "Failed to add item", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void showLocationDialog() {
+        repository.getLocations(new InventoryRepository.Callback<List<Location>>() {
+            @Override
+            public void onResult(final List<Location> locations) {
+                // All locations first, then each location, then a way to add one
+                String[] options = new String[locations.size() + 2];
+                options[0] = "All locations";
+                for (int i = 0; i < locations.size(); i++) {
+                    options[i + 1] = locations.get(i).getName();
+                }
+                options[options.length - 1] = "Add location";
+                AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+                builder.setTitle("Location");
+                builder.setItems(options, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (which == 0) {
+                            selectLocation(null);
+                        } else if (which <= locations.size()) {
+                            selectLocation(locations.get(which - 1));
+                        } else {
+                            showAddLocationDialog();
+                        }
+                    }
+                });
+                builder.create().show();
+            }
+        });
+    }
+
+    private void selectLocation(Location location) {
+        viewModel.selectLocation(location);
+        updateHeader();
+    }
 
-        // Close the cursor and database
-        cursor.close();
-        dbHelper.close();
-    }
-
-    private void addPanelToGridLayout(GridLayout gridLayout, String itemName, int quantity, int position) {
-        // Inflate the panel layout
-        View panelView = LayoutInflater.from(this).inflate(R.layout.panel_layout, gridLayout, false);
-
-        // Set item name and quantity in the panel
-        TextView textViewName = panelView.findViewById(R.id.textView_item);
-        TextView textViewQuantity = panelView.findViewById(R.id.textView_quantity);
-        textViewName.setText(itemName);
-        textViewQuantity.setText(String.valueOf(quantity));
-
-        // Set background color based on position
-        int colorResId;
-        switch (position % 3) {
-            case 0:
-                colorResId = R.color.green;
-                break;
-            case 1:
-                colorResId = R.color.blue;
-                break;
-            case 2:
-            default:
-                colorResId = R.color.red;
-                break;
+    private void showAddLocationDialog() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Add Location");
+
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_TEXT);
+        builder.setView(input);
+
+        builder.setPositiveButton("Add", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                final String name = input.getText().toString().trim();
+                if (name.isEmpty()) {
+                    Toast.makeText(MainActivity.this, "Please enter a name", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                repository.insertLocation(name, new InventoryRepository.Callback<Long>() {
+                    @Override
+                    public void onResult(Long id) {
+                        if (id == -1) {
+                            Toast.makeText(MainActivity.this, "A location with that name already exists",
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            selectLocation(new Location(id, name));
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        writeCallback.onError(error);
+                    }
+                });
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.create().show();
+    }
+
+    // Takes the category picked in showCategoryDialog(), Category.ROOT for the top level
+    private interface CategoryPicker {
+        // The option that picks the category shown
+        String getLabel(long categoryId);
+
+        void onPicked(long categoryId);
+    }
+
+    // The category tree one level at a time, each subcategory with its totals as stored, so
+    // a level costs two index reads however many items are below it. Browsing, the grid can be
+    // scoped to the category shown and long-pressing a subcategory moves or deletes it; with a
+    // picker the category shown is picked instead
+    private void showCategoryDialog(long categoryId, final CategoryPicker picker) {
+        if (categoryId == Category.ROOT) {
+            showCategoryLevel(Collections.<Category>emptyList(), picker);
+            return;
         }
-        panelView.setBackgroundColor(ContextCompat.getColor(this, colorResId));
+        repository.getCategoryPath(categoryId, new InventoryRepository.Callback<List<Category>>() {
+            @Override
+            public void onResult(List<Category> path) {
+                // Empty if the category was deleted meanwhile
+                showCategoryLevel(path, picker);
+            }
+        });
+    }
+
+    private void showCategoryLevel(final List<Category> path, final CategoryPicker picker) {
+        final Category current = path.isEmpty() ? null : path.get(path.size() - 1);
+        final long currentId = current == null ? Category.ROOT : current.getId();
+        repository.getCategories(currentId, new InventoryRepository.Callback<List<Category>>() {
+            @Override
+            public void onResult(final List<Category> children) {
+                // Subcategories first, then what can be done here
+                List<String> options = new ArrayList<>();
+                for (Category child : children) {
+                    options.add(child.getName() + " (" + child.getItemCount() + " items, " + child.getUnits() + " units)");
+                }
+                final int pickIndex = options.size();
+                if (picker != null) {
+                    options.add(picker.getLabel(currentId));
+                } else {
+                    options.add(current == null ? "Show All Items" : "Show These Items");
+                }
+                if (current != null) {
+                    options.add("Up");
+                }
+                options.add("New Category");
+
+                // A message would hide the list, the totals go in the title with the path
+                StringBuilder title = new StringBuilder("Categories");
+                for (Category category : path) {
+                    title.append(" \u203A ").append(category.getName());
+                }
+                if (current != null) {
+                    title.append(" (").append(current.getItemCount()).append(" items, ").append(current.getUnits())
+                            .append(" units)");
+                }
+                AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+                builder.setTitle(title);
+                builder.setItems(options.toArray(new String[0]), new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (which < pickIndex) {
+                            showCategoryDialog(children.get(which).getId(), picker);
+                        } else if (which == pickIndex) {
+                            if (picker != null) {
+                                picker.onPicked(currentId);
+                            } else {
+                                selectCategory(current);
+                            }
+                        } else if (current != null && which == pickIndex + 1) {
+                            showCategoryDialog(current.getParentId(), picker);
+                        } else {
+                            showAddCategoryDialog(currentId, picker);
+                        }
+                    }
+                });
+                final AlertDialog dialog = builder.create();
+                if (picker == null) {
+                    dialog.getListView().setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
+                        @Override
+                        public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
+                            if (position >= pickIndex) {
+                                return false;
+                            }
+                            dialog.dismiss();
+                            showCategoryOptionsDialog(children.get(position));
+                            return true;
+                        }
+                    });
+                }
+                dialog.show();
+            }
+        });
+    }
 
-        // Add the panel to the GridLayout
-        gridLayout.addView(panelView);
+    private void selectCategory(Category category) {
+        viewModel.selectCategory(category);
+        updateHeader();
+    }
+
+    private void showAddCategoryDialog(final long parentId, final CategoryPicker picker) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("New Category");
 
-        // Add edit button
-        ImageButton editButton = panelView.findViewById(R.id.edit_button);
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_TEXT);
+        builder.setView(input);
 
-        editButton.setOnClickListener(new View.OnClickListener() {
+        builder.setPositiveButton("Add", new DialogInterface.OnClickListener() {
             @Override
-            public void onClick(View v) {
-                // Show edit options dialog
-                showEditOptionsDialog(itemName, quantity);
+            public void onClick(DialogInterface dialog, int which) {
+                String name = input.getText().toString().trim();
+                if (name.isEmpty()) {
+                    Toast.makeText(MainActivity.this, "Please enter a name", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                repository.insertCategory(parentId, name, new InventoryRepository.Callback<Long>() {
+                    @Override
+                    public void onResult(Long id) {
+                        if (id == -1) {
+                            Toast.makeText(MainActivity.this, "A category with that name already exists here",
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                        // Back to the level it was added to, with the new category listed
+                        showCategoryDialog(parentId, picker);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        writeCallback.onError(error);
+                    }
+                });
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.create().show();
+    }
+
+    private void showCategoryOptionsDialog(final Category category) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(category.getName());
+        builder.setItems(new String[]{"Move", "Delete"}, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                if (which == 0) {
+                    moveCategory(category);
+                } else {
+                    confirmDeleteCategory(category);
+                }
+            }
+        });
+        builder.create().show();
+    }
+
+    private void moveCategory(final Category category) {
+        showCategoryDialog(Category.ROOT, new CategoryPicker() {
+            @Override
+            public String getLabel(long categoryId) {
+                return categoryId == Category.ROOT ? "Move to Top Level" : "Move Here";
+            }
+
+            @Override
+            public void onPicked(long categoryId) {
+                repository.moveCategory(category.getId(), categoryId, new InventoryRepository.Callback<Boolean>() {
+                    @Override
+                    public void onResult(Boolean moved) {
+                        if (!moved) {
+                            Toast.makeText(MainActivity.this, "Can't move a category into itself, or next to one " +
+                                    "with the same name", Toast.LENGTH_SHORT).show();
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        writeCallback.onError(error);
+                    }
+                });
             }
         });
     }
 
-    private void showEditOptionsDialog(final String itemName, final int quantity) {
+    private void confirmDeleteCategory(final Category category) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Delete Category");
+        builder.setMessage("Delete \"" + category.getName() + "\"? Its subcategories and items move up a level.");
+        builder.setPositiveButton("Delete", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                repository.deleteCategory(category.getId(), new InventoryRepository.Callback<Boolean>() {
+                    @Override
+                    public void onResult(Boolean deleted) {
+                        if (!deleted) {
+                            Toast.makeText(MainActivity.this, "A subcategory's name is already used one level up",
+                                    Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        Category selected = viewModel.getSelectedCategory();
+                        if (selected != null && selected.getId() == category.getId()) {
+                            selectCategory(null);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        writeCallback.onError(error);
+                    }
+                });
+            }
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.create().show();
+    }
+
+    private void fileSelectedItems() {
+        final long[] ids = inventoryAdapter.getSelectedIds();
+        showCategoryDialog(Category.ROOT, new CategoryPicker() {
+            @Override
+            public String getLabel(long categoryId) {
+                return categoryId == Category.ROOT ? "Remove from Category" : "File Here";
+            }
+
+            @Override
+            public void onPicked(long categoryId) {
+                repository.setItemCategory(ids, categoryId, new InventoryRepository.Callback<Boolean>() {
+                    @Override
+                    public void onResult(Boolean filed) {
+                        if (filed) {
+                            inventoryAdapter.clearSelection();
+                        } else {
+                            // The category was deleted meanwhile, or the database refused the write
+                            Toast.makeText(MainActivity.this, "Failed to file the items, the category may have been deleted",
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        writeCallback.onError(error);
+                    }
+                });
+            }
+        });
+    }
+
+    private void showEditOptionsDialog(final InventoryItem item) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Edit Options");
 
         // Set options in the dialog
-        String[] options = {"Edit Name", "Edit Quantity", "Delete"};
+        String[] options = {"Edit Name", "Edit Quantity", "Edit Reorder Level", "Set Barcode", "History", "Delete"};
         builder.setItems(options, new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
                 switch (which) {
                     case 0:
                         // Edit Name
-                        showEditNameDialog(itemName, quantity);
+                        showEditNameDialog(item);
                         break;
                     case 1:
                         // Edit Quantity
-                        showEditQuantityDialog(itemName, quantity);
+                        showEditQuantityDialog(item);
                         break;
                     case 2:
+                        // Edit Reorder Level
+                        showEditReorderLevelDialog(item);
+                        break;
+                    case 3:
+                        // Set Barcode
+                        showEditBarcodeDialog(item);
+                        break;
+                    case 4:
+                        // Stock history
+                        showHistoryDialog(item);
+                        break;
+                    case 5:
                         // Delete Item
-                        deleteItem(itemName);
+                        deleteItem(item);
                         break;
                 }
             }
@@ -222,7 +1313,78 @@ public class MainActivity extends AppCompatActivity {
         builder.create().show();
     }
 
-    private void showEditNameDialog(final String itemName, final int quantity) {
+    // Method to list an item's quantity changes, newest first. Further pages of the ledger
+    // are loaded as the list is scrolled to the end
+    private void showHistoryDialog(InventoryItem item) {
+        final HistoryLoader loader = new HistoryLoader(item.getId(),
+                new ArrayAdapter<String>(this, android.R.layout.simple_list_item_1));
+
+        ListView listView = new ListView(this);
+        listView.setAdapter(loader.rows);
+        listView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (totalItemCount > 0 && firstVisibleItem + visibleItemCount >= totalItemCount) {
+                    loader.loadNextPage();
+                }
+            }
+        });
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(item.getName() + " history");
+        builder.setView(listView);
+        builder.setPositiveButton("Close", null);
+        builder.create().show();
+        loader.loadNextPage();
+    }
+
+    // Keyset pages through one item's movements into a list adapter
+    private class HistoryLoader {
+        private final long itemId;
+        private final ArrayAdapter<String> rows;
+        private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        private StockMovement last = null;
+        private boolean loading = false;
+        private boolean endReached = false;
+
+        HistoryLoader(long itemId, ArrayAdapter<String> rows) {
+            this.itemId = itemId;
+            this.rows = rows;
+        }
+
+        void loadNextPage() {
+            if (loading || endReached) {
+                return;
+            }
+            loading = true;
+            repository.getMovements(itemId, 0, last, HISTORY_PAGE_SIZE,
+                    new InventoryRepository.Callback<List<StockMovement>>() {
+                        @Override
+                        public void onResult(List<StockMovement> page) {
+                            loading = false;
+                            endReached = page.size() < HISTORY_PAGE_SIZE;
+                            for (StockMovement movement : page) {
+                                String delta = movement.getDelta() > 0 ? "+" + movement.getDelta()
+                                        : String.valueOf(movement.getDelta());
+                                rows.add(dateFormat.format(new Date(movement.getCreatedAt())) + "   " + delta +
+                                        "   (" + movement.getQuantityAfter() + " in stock)");
+                                last = movement;
+                            }
+                        }
+
+                        @Override
+                        public void onError(Throwable error) {
+                            loading = false;
+                        }
+                    });
+        }
+    }
+
+    private void showEditNameDialog(final InventoryItem item) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Edit Name");
 
@@ -236,9 +1398,24 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(DialogInterface dialog, int which) {
                 String newName = input.getText().toString().trim();
-                // Update name in the database
-                dbHelper.updateItemName(itemName, newName);
-                populatePanelsFromDatabase();
+                if (newName.isEmpty()) {
+                    Toast.makeText(MainActivity.this, "Please enter a name", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                // Update name in the database, undoable from the menu
+                repository.setItemName(item.getId(), newName, new InventoryRepository.Callback<Boolean>() {
+                    @Override
+                    public void onResult(Boolean renamed) {
+                        if (!renamed) {
+                            Toast.makeText(MainActivity.this, "An item with that name already exists", Toast.LENGTH_SHORT).show();
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        writeCallback.onError(error);
+                    }
+                });
             }
         });
         builder.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
@@ -252,14 +1429,15 @@ public class MainActivity extends AppCompatActivity {
         builder.create().show();
     }
 
-    private void showEditQuantityDialog(final String itemName, final int quantity) {
+    private void showEditQuantityDialog(final InventoryItem item) {
+        final Location location = viewModel.getSelectedLocation();
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        builder.setTitle("Edit Quantity");
+        builder.setTitle(location == null ? "Edit Quantity" : "Edit Quantity at " + location.getName());
 
         // Set up the input
         final EditText input = new EditText(this);
         input.setInputType(InputType.TYPE_CLASS_NUMBER);
-        input.setText(String.valueOf(quantity)); // Pre-fill with current quantity
+        input.setText(String.valueOf(item.getQuantity())); // Pre-fill with current quantity
         builder.setView(input);
 
         // Set up the buttons
@@ -267,14 +1445,64 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(DialogInterface dialog, int which) {
                 int newQuantity = Integer.parseInt(input.getText().toString().trim());
-                // Update quantity in the database
-                dbHelper.updateItemQuantity(itemName, newQuantity);
+                // Update quantity in the database, the total or the selected location's.
+                // Low-stock alerts are raised by the repository's alert engine
+                if (location == null) {
+                    repository.setItemQuantity(item.getId(), newQuantity, editCallback);
+                } else {
+                    repository.setStockQuantity(item.getId(), location.getId(), newQuantity, writeCallback);
+                }
+            }
+        });
+        builder.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                dialog.cancel();
+            }
+        });
 
-                if (newQuantity == 0) {
-                    sendSMSNotification(itemName);
+        // Show the dialog
+        builder.create().show();
+    }
+
+    private void showEditBarcodeDialog(final InventoryItem item) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Barcode");
+        builder.setMessage("Scan or type the item's barcode, leave empty to remove it:");
+
+        // Set up the input, pre-filled once the current code has been read
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_TEXT);
+        builder.setView(input);
+        repository.getItemSku(item.getId(), new InventoryRepository.Callback<String>() {
+            @Override
+            public void onResult(String sku) {
+                if (sku != null && input.getText().length() == 0) {
+                    input.setText(sku);
                 }
+            }
+        });
+
+        // Set up the buttons
+        builder.setPositiveButton("OK", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                String sku = input.getText().toString().trim();
+                repository.updateItemSku(item.getId(), sku.isEmpty() ? null : sku,
+                        new InventoryRepository.Callback<Boolean>() {
+                            @Override
+                            public void onResult(Boolean updated) {
+                                if (!updated) {
+                                    Toast.makeText(MainActivity.this, "Another item already has that barcode",
+                                            Toast.LENGTH_SHORT).show();
+                                }
+                            }
 
-                populatePanelsFromDatabase();
+                            @Override
+                            public void onError(Throwable error) {
+                                writeCallback.onError(error);
+                            }
+                        });
             }
         });
         builder.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
@@ -288,18 +1516,26 @@ public class MainActivity extends AppCompatActivity {
         builder.create().show();
     }
 
-    private void deleteItem(final String itemName) {
+    private void showEditReorderLevelDialog(final InventoryItem item) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        builder.setTitle("Confirm Deletion");
-        builder.setMessage("Are you sure you want to delete this item?");
+        builder.setTitle("Reorder Level");
+        builder.setMessage("Send an alert when the quantity drops to or below:");
+
+        // Set up the input
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER);
+        input.setText(String.valueOf(item.getReorderThreshold())); // Pre-fill with current level
+        builder.setView(input);
 
         // Set up the buttons
-        builder.setPositiveButton("Delete", new DialogInterface.OnClickListener() {
+        builder.setPositiveButton("OK", new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
-                // Delete item from the database
-                dbHelper.deleteItem(itemName);
-                populatePanelsFromDatabase();
+                String levelStr = input.getText().toString().trim();
+                if (levelStr.isEmpty()) {
+                    return;
+                }
+                repository.updateReorderThreshold(item.getId(), Integer.parseInt(levelStr), writeCallback);
             }
         });
         builder.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
@@ -313,31 +1549,27 @@ public class MainActivity extends AppCompatActivity {
         builder.create().show();
     }
 
-    private void sendSMSNotification(String itemName) {
-        // Check if both permissions are granted
-        if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS)
-                == PackageManager.PERMISSION_GRANTED &&
-                ContextCompat.checkSelfPermission(this, Manifest.permission.READ_PHONE_NUMBERS)
-                        == PackageManager.PERMISSION_GRANTED) {
-            String message = "Item \"" + itemName + "\" has reached zero quantity.";
-
-            // Retrieve the device's phone number
-            // This can be updated to use numbers for any users by adding a field for phone numbers in UserTable
-            TelephonyManager telephonyManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
-            String phoneNumber = telephonyManager.getLine1Number();
-
-            // Check if the phone number is available
-            if (phoneNumber != null && !phoneNumber.isEmpty()) {
-                // Send SMS notification
-                Log.i("SMS", "sendSMSNotification: Sending message");
-                SmsManager smsManager = SmsManager.getDefault();
-                smsManager.sendTextMessage(phoneNumber, null, message, null, null);
-            } else {
-                // Phone number not available or permission not granted
-                Toast.makeText(this, "Unable to retrieve phone number.", Toast.LENGTH_SHORT).show();
+    private void deleteItem(final InventoryItem item) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Confirm Deletion");
+        builder.setMessage("Are you sure you want to delete this item?");
+
+        // Set up the buttons
+        builder.setPositiveButton("Delete", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                // Delete item from the database, undoable from the menu
+                repository.deleteItems(new long[]{item.getId()}, editCallback);
             }
-        } else {
-            Toast.makeText(this, "Not all permissions granted .", Toast.LENGTH_SHORT).show();
-        }
+        });
+        builder.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                dialog.cancel();
+            }
+        });
+
+        // Show the dialog
+        builder.create().show();
     }
 }
\ No newline at end of file
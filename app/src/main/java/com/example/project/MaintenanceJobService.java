@@ -0,0 +1,61 @@
+package com.example.project;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+
+import java.util.concurrent.TimeUnit;
+
+// Runs DatabaseMaintenance about once a day while the device is idle and charging, so the
+// rebuilds and vacuums never compete with someone using the app
+public class MaintenanceJobService extends JobService {
+    private static final int JOB_ID = 1;
+    private static final long INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private DatabaseMaintenance maintenance;
+
+    // Method to schedule the job once, later calls leave the pending job as it is
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+        scheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context, MaintenanceJobService.class))
+                .setPeriodic(INTERVAL_MILLIS)
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .build());
+    }
+
+    // Called on the main thread, the run itself goes to a thread of its own
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final InventoryDatabaseHelper helper = InventoryDatabaseHelper.acquire(this);
+        maintenance = new DatabaseMaintenance(helper, InventoryRepository.getInstance(this));
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    maintenance.run(DatabaseMaintenance.DEFAULT_BUDGET_MILLIS);
+                } finally {
+                    InventoryDatabaseHelper.release();
+                }
+                jobFinished(params, false);
+            }
+        }, "inventory-maintenance").start();
+        return true;
+    }
+
+    // The device is in use again or charging stopped. The step in progress finishes and the
+    // rest waits for the next run
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (maintenance != null) {
+            maintenance.stop();
+        }
+        return false;
+    }
+}
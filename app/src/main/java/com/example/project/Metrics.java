@@ -0,0 +1,275 @@
+package com.example.project;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide latency histograms and counters for the hot paths: store calls, queue waits,
+// page loads and panel inflate/bind. Recording never takes a lock (LongAdder and atomic
+// buckets), and while disabled a timed section costs one volatile read. Timers also open a
+// trace section named after them when a Tracer is set, so the same phases show up in systrace
+public final class Metrics {
+    // Four buckets per power of two of microseconds, percentiles are within 25%
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 160;
+
+    public interface Tracer {
+        void beginSection(String name);
+
+        void endSection();
+    }
+
+    private static final List<Timer> timers = new CopyOnWriteArrayList<>();
+    private static final List<Counter> counters = new CopyOnWriteArrayList<>();
+    private static volatile boolean enabled = false;
+    private static volatile Tracer tracer;
+
+    private Metrics() {
+    }
+
+    // Timers and counters are created once, in static fields of the class they measure
+    public static Timer timer(String name) {
+        Timer timer = new Timer(name);
+        timers.add(timer);
+        return timer;
+    }
+
+    public static Counter counter(String name) {
+        Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    public static void setTracer(Tracer tracer) {
+        Metrics.tracer = tracer;
+    }
+
+    public static List<Timer> getTimers() {
+        return timers;
+    }
+
+    public static List<Counter> getCounters() {
+        return counters;
+    }
+
+    public static void reset() {
+        for (Timer timer : timers) {
+            timer.reset();
+        }
+        for (Counter counter : counters) {
+            counter.reset();
+        }
+    }
+
+    // Method to dump every timer and counter that has recorded something, as one JSON object
+    public static String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"enabled\":").append(enabled).append(",\"timers\":[");
+        boolean first = true;
+        for (Timer timer : timers) {
+            Summary summary = timer.getSummary();
+            if (summary.getCount() == 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append(String.format(Locale.US,
+                    "{\"name\":\"%s\",\"count\":%d,\"meanMicros\":%d,\"p50Micros\":%d,\"p90Micros\":%d," +
+                            "\"p99Micros\":%d,\"maxMicros\":%d}",
+                    timer.getName(), summary.getCount(), summary.getMeanMicros(), summary.getPercentileMicros(50),
+                    summary.getPercentileMicros(90), summary.getPercentileMicros(99), summary.getMaxMicros()));
+        }
+        json.append("],\"counters\":[");
+        first = true;
+        for (Counter counter : counters) {
+            long value = counter.get();
+            if (value == 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"name\":\"").append(counter.getName()).append("\",\"value\":").append(value).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket, BUCKETS - 1);
+    }
+
+    // The largest value that lands in the bucket
+    static long bucketMaxMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public static final class Timer {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Method to start timing a section that stop() ends on the same thread. Returns 0
+        // while disabled, and stop(0) records nothing
+        public long start() {
+            if (!enabled) {
+                return 0;
+            }
+            Tracer current = tracer;
+            if (current != null) {
+                current.beginSection(name);
+            }
+            return System.nanoTime();
+        }
+
+        public void stop(long startNanos) {
+            if (startNanos == 0) {
+                return;
+            }
+            record(System.nanoTime() - startNanos);
+            Tracer current = tracer;
+            if (current != null) {
+                current.endSection();
+            }
+        }
+
+        // Method to record a duration measured elsewhere, such as a wait that spans threads
+        public void record(long nanos) {
+            if (!enabled) {
+                return;
+            }
+            count.increment();
+            totalNanos.add(nanos);
+            buckets.incrementAndGet(bucketOf(nanos / 1000));
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        // Buckets are read one by one while others may record, close enough for a debug screen
+        public Summary getSummary() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new Summary(count.sum(), totalNanos.sum() / 1000, maxNanos.get() / 1000, counts);
+        }
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
+    public static final class Counter {
+        private final String name;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void increment() {
+            if (enabled) {
+                value.increment();
+            }
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        void reset() {
+            value.reset();
+        }
+    }
+
+    public static final class Summary {
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long[] buckets;
+
+        Summary(long count, long totalMicros, long maxMicros, long[] buckets) {
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        // Upper bound of the bucket holding the percentile, never more than the max seen
+        public long getPercentileMicros(int percentile) {
+            long total = 0;
+            for (long bucketCount : buckets) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (total * percentile + 99) / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketMaxMicros(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+    }
+}
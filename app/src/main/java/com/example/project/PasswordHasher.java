@@ -0,0 +1,224 @@
+package com.example.project;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Salted scrypt (RFC 7914) password hashing. scrypt is memory hard: every hash needs
+// 128 * r * N bytes, which is what makes guessing on GPUs expensive. Hashes are stored as
+// "scrypt$log2(N)$r$p$salt$hash" so the cost can be raised later, stored hashes with other
+// parameters (or plaintext from older versions) report needsRehash() and are replaced on login
+public class PasswordHasher {
+    private static final String PREFIX = "scrypt";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+
+    // N = 2^14, r = 8, p = 1: 16 MB and around 100 ms on a low-end phone, see PasswordHashBenchmark
+    public static final int DEFAULT_LOG2_N = 14;
+    public static final int DEFAULT_R = 8;
+    public static final int DEFAULT_P = 1;
+
+    private final int log2N;
+    private final int r;
+    private final int p;
+    private final SecureRandom random = new SecureRandom();
+
+    public PasswordHasher() {
+        this(DEFAULT_LOG2_N, DEFAULT_R, DEFAULT_P);
+    }
+
+    public PasswordHasher(int log2N, int r, int p) {
+        if (log2N < 1 || log2N > 24 || r < 1 || p < 1) {
+            throw new IllegalArgumentException("Invalid scrypt parameters N=2^" + log2N + " r=" + r + " p=" + p);
+        }
+        this.log2N = log2N;
+        this.r = r;
+        this.p = p;
+    }
+
+    // Method to hash a password with a fresh random salt
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = scrypt(password.getBytes(StandardCharsets.UTF_8), salt, 1 << log2N, r, p, HASH_BYTES);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + log2N + "$" + r + "$" + p + "$" + base64.encodeToString(salt) + "$" +
+                base64.encodeToString(hash);
+    }
+
+    // Method to check a password against a stored value. Values that aren't scrypt hashes are
+    // plaintext passwords stored by older versions of the app
+    public boolean verify(String password, String stored) {
+        String[] parts = stored.split("\\$");
+        if (parts.length != 6 || !PREFIX.equals(parts[0])) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            int storedLog2N = Integer.parseInt(parts[1]);
+            int storedR = Integer.parseInt(parts[2]);
+            int storedP = Integer.parseInt(parts[3]);
+            byte[] salt = Base64.getDecoder().decode(parts[4]);
+            byte[] expected = Base64.getDecoder().decode(parts[5]);
+            if (storedLog2N < 1 || storedLog2N > 24 || storedR < 1 || storedP < 1) {
+                return false;
+            }
+            byte[] actual = scrypt(password.getBytes(StandardCharsets.UTF_8), salt, 1 << storedLog2N,
+                    storedR, storedP, expected.length);
+            // Constant time, a mismatch doesn't tell how many bytes were right
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // True for plaintext and for hashes made with other cost parameters
+    public boolean needsRehash(String stored) {
+        return !stored.startsWith(PREFIX + "$" + log2N + "$" + r + "$" + p + "$");
+    }
+
+    static byte[] scrypt(byte[] password, byte[] salt, int n, int r, int p, int length) {
+        byte[] b = pbkdf2Sha256(password, salt, 1, p * 128 * r);
+        int[] x = new int[32 * r];
+        int[] v = new int[32 * r * n];
+        int[] scratch = new int[32 * r];
+        for (int i = 0; i < p; i++) {
+            romix(b, i * 128 * r, r, n, x, v, scratch);
+        }
+        return pbkdf2Sha256(password, b, 1, length);
+    }
+
+    // ROMix on one 128 * r byte block of b, in place
+    private static void romix(byte[] b, int offset, int r, int n, int[] x, int[] v, int[] scratch) {
+        int words = 32 * r;
+        for (int i = 0; i < words; i++) {
+            int at = offset + i * 4;
+            x[i] = (b[at] & 0xff) | (b[at + 1] & 0xff) << 8 | (b[at + 2] & 0xff) << 16 | (b[at + 3] & 0xff) << 24;
+        }
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(x, 0, v, i * words, words);
+            blockMix(x, r, scratch);
+        }
+        for (int i = 0; i < n; i++) {
+            // Integerify: the first word of the last 64 byte block, modulo N
+            int j = x[(2 * r - 1) * 16] & (n - 1);
+            for (int k = 0; k < words; k++) {
+                x[k] ^= v[j * words + k];
+            }
+            blockMix(x, r, scratch);
+        }
+        for (int i = 0; i < words; i++) {
+            int at = offset + i * 4;
+            b[at] = (byte) x[i];
+            b[at + 1] = (byte) (x[i] >>> 8);
+            b[at + 2] = (byte) (x[i] >>> 16);
+            b[at + 3] = (byte) (x[i] >>> 24);
+        }
+    }
+
+    // BlockMix with Salsa20/8 on 2 * r blocks of 16 words, in place
+    private static void blockMix(int[] b, int r, int[] y) {
+        int[] t = new int[16];
+        System.arraycopy(b, (2 * r - 1) * 16, t, 0, 16);
+        for (int i = 0; i < 2 * r; i++) {
+            for (int k = 0; k < 16; k++) {
+                t[k] ^= b[i * 16 + k];
+            }
+            salsa208(t);
+            // Even blocks go to the first half of the output, odd blocks to the second
+            System.arraycopy(t, 0, y, ((i & 1) * r + (i >> 1)) * 16, 16);
+        }
+        System.arraycopy(y, 0, b, 0, 32 * r);
+    }
+
+    private static void salsa208(int[] b) {
+        int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3], x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7];
+        int x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11], x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+        for (int i = 0; i < 8; i += 2) {
+            x4 ^= Integer.rotateLeft(x0 + x12, 7);
+            x8 ^= Integer.rotateLeft(x4 + x0, 9);
+            x12 ^= Integer.rotateLeft(x8 + x4, 13);
+            x0 ^= Integer.rotateLeft(x12 + x8, 18);
+            x9 ^= Integer.rotateLeft(x5 + x1, 7);
+            x13 ^= Integer.rotateLeft(x9 + x5, 9);
+            x1 ^= Integer.rotateLeft(x13 + x9, 13);
+            x5 ^= Integer.rotateLeft(x1 + x13, 18);
+            x14 ^= Integer.rotateLeft(x10 + x6, 7);
+            x2 ^= Integer.rotateLeft(x14 + x10, 9);
+            x6 ^= Integer.rotateLeft(x2 + x14, 13);
+            x10 ^= Integer.rotateLeft(x6 + x2, 18);
+            x3 ^= Integer.rotateLeft(x15 + x11, 7);
+            x7 ^= Integer.rotateLeft(x3 + x15, 9);
+            x11 ^= Integer.rotateLeft(x7 + x3, 13);
+            x15 ^= Integer.rotateLeft(x11 + x7, 18);
+            x1 ^= Integer.rotateLeft(x0 + x3, 7);
+            x2 ^= Integer.rotateLeft(x1 + x0, 9);
+            x3 ^= Integer.rotateLeft(x2 + x1, 13);
+            x0 ^= Integer.rotateLeft(x3 + x2, 18);
+            x6 ^= Integer.rotateLeft(x5 + x4, 7);
+            x7 ^= Integer.rotateLeft(x6 + x5, 9);
+            x4 ^= Integer.rotateLeft(x7 + x6, 13);
+            x5 ^= Integer.rotateLeft(x4 + x7, 18);
+            x11 ^= Integer.rotateLeft(x10 + x9, 7);
+            x8 ^= Integer.rotateLeft(x11 + x10, 9);
+            x9 ^= Integer.rotateLeft(x8 + x11, 13);
+            x10 ^= Integer.rotateLeft(x9 + x8, 18);
+            x12 ^= Integer.rotateLeft(x15 + x14, 7);
+            x13 ^= Integer.rotateLeft(x12 + x15, 9);
+            x14 ^= Integer.rotateLeft(x13 + x12, 13);
+            x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        }
+        b[0] += x0;
+        b[1] += x1;
+        b[2] += x2;
+        b[3] += x3;
+        b[4] += x4;
+        b[5] += x5;
+        b[6] += x6;
+        b[7] += x7;
+        b[8] += x8;
+        b[9] += x9;
+        b[10] += x10;
+        b[11] += x11;
+        b[12] += x12;
+        b[13] += x13;
+        b[14] += x14;
+        b[15] += x15;
+    }
+
+    private static byte[] pbkdf2Sha256(byte[] password, byte[] salt, int iterations, int length) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            // An empty key is valid for HMAC but not for SecretKeySpec, which is padded to the same result
+            mac.init(new SecretKeySpec(password.length == 0 ? new byte[1] : password, "HmacSHA256"));
+            byte[] out = new byte[length];
+            byte[] block = new byte[4];
+            for (int i = 1, done = 0; done < length; i++) {
+                block[0] = (byte) (i >>> 24);
+                block[1] = (byte) (i >>> 16);
+                block[2] = (byte) (i >>> 8);
+                block[3] = (byte) i;
+                mac.update(salt);
+                byte[] u = mac.doFinal(block);
+                byte[] t = u.clone();
+                for (int c = 1; c < iterations; c++) {
+                    u = mac.doFinal(u);
+                    for (int k = 0; k < t.length; k++) {
+                        t[k] ^= u[k];
+                    }
+                }
+                int count = Math.min(t.length, length - done);
+                System.arraycopy(t, 0, out, done, count);
+                done += count;
+            }
+            return out;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
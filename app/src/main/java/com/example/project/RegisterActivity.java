@@ -20,15 +20,15 @@ public class RegisterActivity extends AppCompatActivity {
     private static final int PERMISSION_REQUEST_READ_PHONE_NUMBERS = 456;
     private EditText editTextName, editTextEmail, editTextPassword, editTextConfirmPassword;
     private Button buttonRegister;
-    private InventoryDatabaseHelper dbHelper;
+    private InventoryRepository repository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_register);
 
-        // Initialize database helper
-        dbHelper = new InventoryDatabaseHelper(this);
+        // Initialize repository
+        repository = InventoryRepository.getInstance(this);
 
         // Initialize UI components
         editTextName = findViewById(R.id.editTextName);
@@ -65,17 +65,26 @@ public class RegisterActivity extends AppCompatActivity {
             return;
         }
 
-        // Insert user into the database
-        long result = dbHelper.insertUser(name, email, password);
-        if (result != -1) {
-            // Registration successful
-            requestPermissions();
-            Toast.makeText(this, "Registration successful", Toast.LENGTH_SHORT).show();
-        } else {
-            // Registration failed
-            Log.e("RegisterActivity", "Registration failed");
-            Toast.makeText(this, "Registration failed", Toast.LENGTH_SHORT).show();
-        }
+        // Insert user into the database off the main thread
+        repository.insertUser(name, email, password, new InventoryRepository.Callback<Long>() {
+            @Override
+            public void onResult(Long result) {
+                if (result != -1) {
+                    // Registration successful
+                    requestPermissions();
+                    Toast.makeText(RegisterActivity.this, "Registration successful", Toast.LENGTH_SHORT).show();
+                } else {
+                    onError(null);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                // Registration failed
+                Log.e("RegisterActivity", "Registration failed", error);
+                Toast.makeText(RegisterActivity.this, "Registration failed", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void requestPermissions() {
@@ -0,0 +1,300 @@
+package com.example.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+// Per-item consumption over a rolling window of days, kept up to date one ledger movement at a
+// time. Each item holds a ring of daily totals and a running sum over it, so a movement costs
+// O(1) and a report reads the sums instead of the history. Stock leaving an item (any negative
+// delta) counts as consumption. Days are UTC days. Not thread safe, callers lock around it
+public class ReportEngine {
+    public static final int DEFAULT_WINDOW_DAYS = 28;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final int windowDays;
+    private final LongObjectMap<ItemFlow> flowsById = new LongObjectMap<>();
+    // The same flows in a list, for the report's pass over every item
+    private final List<ItemFlow> flows = new ArrayList<>();
+    private long lastMovementId = 0;
+    // The earliest day any movement was seen, so a short history isn't averaged over the whole window
+    private long firstDay = Long.MAX_VALUE;
+
+    public ReportEngine(int windowDays) {
+        this.windowDays = windowDays;
+    }
+
+    public int getWindowDays() {
+        return windowDays;
+    }
+
+    // The id of the newest movement applied, the ledger is read on from there
+    public long getLastMovementId() {
+        return lastMovementId;
+    }
+
+    // Method to apply one ledger movement. Movements must arrive in id order
+    public void onMovement(StockMovement movement) {
+        if (movement.getId() <= lastMovementId) {
+            return;
+        }
+        lastMovementId = movement.getId();
+        long day = movement.getCreatedAt() / DAY_MILLIS;
+        firstDay = Math.min(firstDay, day);
+        ItemFlow flow = flowsById.get(movement.getItemId());
+        if (flow == null) {
+            flow = new ItemFlow(movement.getItemId(), windowDays);
+            flowsById.put(flow.itemId, flow);
+            flow.index = flows.size();
+            flows.add(flow);
+        }
+        flow.quantity = movement.getQuantityAfter();
+        if (movement.getDelta() < 0) {
+            flow.addConsumed(day, -movement.getDelta());
+        }
+    }
+
+    // Method to drop an item, for example one that has been deleted
+    public void onItemRemoved(long itemId) {
+        ItemFlow flow = flowsById.remove(itemId);
+        if (flow == null) {
+            return;
+        }
+        // Swap the last flow into its place
+        ItemFlow last = flows.remove(flows.size() - 1);
+        if (last != flow) {
+            last.index = flow.index;
+            flows.set(flow.index, last);
+        }
+    }
+
+    public int getTrackedItemCount() {
+        return flows.size();
+    }
+
+    // Method to rank items as of nowMillis: the limit fastest movers, and the limit items that
+    // will run out soonest at their current rate. One pass over the items, O(n log limit)
+    public Report buildReport(long nowMillis, int limit) {
+        long today = nowMillis / DAY_MILLIS;
+        long observedDays = firstDay == Long.MAX_VALUE ? 1 : Math.max(1, Math.min(windowDays, today - firstDay + 1));
+        PriorityQueue<ItemReport> movers = new PriorityQueue<>(limit + 1, BY_CONSUMED);
+        PriorityQueue<ItemReport> cover = new PriorityQueue<>(limit + 1, Collections.reverseOrder(BY_COVER));
+        long totalConsumed = 0;
+        for (int i = 0; i < flows.size(); i++) {
+            ItemFlow flow = flows.get(i);
+            long consumed = flow.consumedInWindow(today);
+            if (consumed == 0) {
+                continue;
+            }
+            totalConsumed += consumed;
+            double perDay = (double) consumed / observedDays;
+            // Most items rank in neither list, and are skipped without allocating
+            ItemReport report = null;
+            ItemReport lastMover = movers.size() < limit ? null : movers.peek();
+            if (lastMover == null || consumed > lastMover.getConsumed()) {
+                report = new ItemReport(flow.itemId, null, flow.quantity, consumed, perDay);
+                offer(movers, report, limit);
+            }
+            ItemReport lastCover = cover.size() < limit ? null : cover.peek();
+            if (lastCover == null || Math.max(flow.quantity, 0) / perDay < lastCover.getDaysOfCover()) {
+                offer(cover, report != null ? report : new ItemReport(flow.itemId, null, flow.quantity, consumed, perDay),
+                        limit);
+            }
+        }
+        return new Report(sorted(movers, Collections.reverseOrder(BY_CONSUMED)), sorted(cover, BY_COVER),
+                totalConsumed, windowDays, nowMillis);
+    }
+
+    private static void offer(PriorityQueue<ItemReport> top, ItemReport report, int limit) {
+        top.add(report);
+        if (top.size() > limit) {
+            // The head is the one ranked last
+            top.poll();
+        }
+    }
+
+    private static List<ItemReport> sorted(PriorityQueue<ItemReport> top, Comparator<ItemReport> order) {
+        List<ItemReport> list = new ArrayList<>(top);
+        Collections.sort(list, order);
+        return list;
+    }
+
+    private static final Comparator<ItemReport> BY_CONSUMED = new Comparator<ItemReport>() {
+        @Override
+        public int compare(ItemReport a, ItemReport b) {
+            int byConsumed = Long.compare(a.getConsumed(), b.getConsumed());
+            return byConsumed != 0 ? byConsumed : Long.compare(b.getItemId(), a.getItemId());
+        }
+    };
+
+    private static final Comparator<ItemReport> BY_COVER = new Comparator<ItemReport>() {
+        @Override
+        public int compare(ItemReport a, ItemReport b) {
+            int byCover = Double.compare(a.getDaysOfCover(), b.getDaysOfCover());
+            return byCover != 0 ? byCover : Long.compare(a.getItemId(), b.getItemId());
+        }
+    };
+
+    private static class ItemFlow {
+        final long itemId;
+        // Consumed units per day, slot day % windowDays, for the windowDays ending at newestDay
+        final int[] consumedByDay;
+        long consumedSum;
+        long newestDay = Long.MIN_VALUE;
+        int quantity;
+        int index;
+
+        ItemFlow(long itemId, int windowDays) {
+            this.itemId = itemId;
+            this.consumedByDay = new int[windowDays];
+        }
+
+        void addConsumed(long day, int units) {
+            int window = consumedByDay.length;
+            if (newestDay == Long.MIN_VALUE || day - newestDay >= window) {
+                // Everything held so far has left the window
+                Arrays.fill(consumedByDay, 0);
+                consumedSum = 0;
+                newestDay = day;
+            } else if (day > newestDay) {
+                // Clear the days between, the oldest held day is in the slot after the newest
+                int slot = slot(newestDay);
+                for (long d = newestDay; d < day; d++) {
+                    slot = slot + 1 == window ? 0 : slot + 1;
+                    consumedSum -= consumedByDay[slot];
+                    consumedByDay[slot] = 0;
+                }
+                newestDay = day;
+            } else if (newestDay - day >= window) {
+                // Older than the window, a clock change can do this
+                return;
+            }
+            consumedByDay[slot(day)] += units;
+            consumedSum += units;
+        }
+
+        // The sum as of today, without the days that have left the window since the last movement
+        long consumedInWindow(long today) {
+            int window = consumedByDay.length;
+            if (newestDay == Long.MIN_VALUE || today - newestDay >= window) {
+                return 0;
+            }
+            long sum = consumedSum;
+            int slot = slot(newestDay);
+            for (long d = newestDay; d < today; d++) {
+                slot = slot + 1 == window ? 0 : slot + 1;
+                sum -= consumedByDay[slot];
+            }
+            return sum;
+        }
+
+        private int slot(long day) {
+            return (int) Math.floorMod(day, (long) consumedByDay.length);
+        }
+    }
+
+    public static final class ItemReport {
+        private final long itemId;
+        private final String name;
+        private final int quantity;
+        private final long consumed;
+        private final double consumedPerDay;
+
+        ItemReport(long itemId, String name, int quantity, long consumed, double consumedPerDay) {
+            this.itemId = itemId;
+            this.name = name;
+            this.quantity = quantity;
+            this.consumed = consumed;
+            this.consumedPerDay = consumedPerDay;
+        }
+
+        // The same figures under the item's current name
+        ItemReport withName(String name) {
+            return new ItemReport(itemId, name, quantity, consumed, consumedPerDay);
+        }
+
+        public long getItemId() {
+            return itemId;
+        }
+
+        // Null until the report has been matched to the items
+        public String getName() {
+            return name;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        // Units consumed over the window
+        public long getConsumed() {
+            return consumed;
+        }
+
+        public double getConsumedPerDay() {
+            return consumedPerDay;
+        }
+
+        // Days until the current quantity runs out at the current rate
+        public double getDaysOfCover() {
+            return Math.max(quantity, 0) / consumedPerDay;
+        }
+    }
+
+    public static final class Report {
+        private final List<ItemReport> topMovers;
+        private final List<ItemReport> lowestCover;
+        private final long totalConsumed;
+        private final int windowDays;
+        private final long asOfMillis;
+
+        Report(List<ItemReport> topMovers, List<ItemReport> lowestCover, long totalConsumed, int windowDays,
+               long asOfMillis) {
+            this.topMovers = topMovers;
+            this.lowestCover = lowestCover;
+            this.totalConsumed = totalConsumed;
+            this.windowDays = windowDays;
+            this.asOfMillis = asOfMillis;
+        }
+
+        // The same report with each item's current name filled in
+        Report withNames(LongObjectMap<String> names) {
+            return new Report(named(topMovers, names), named(lowestCover, names), totalConsumed, windowDays,
+                    asOfMillis);
+        }
+
+        private static List<ItemReport> named(List<ItemReport> reports, LongObjectMap<String> names) {
+            List<ItemReport> named = new ArrayList<>(reports.size());
+            for (ItemReport report : reports) {
+                named.add(report.withName(names.get(report.getItemId())));
+            }
+            return named;
+        }
+
+        // Most consumed first
+        public List<ItemReport> getTopMovers() {
+            return topMovers;
+        }
+
+        // Fewest days of cover first. Only items with consumption in the window have a rate
+        public List<ItemReport> getLowestCover() {
+            return lowestCover;
+        }
+
+        public long getTotalConsumed() {
+            return totalConsumed;
+        }
+
+        public int getWindowDays() {
+            return windowDays;
+        }
+
+        public long getAsOfMillis() {
+            return asOfMillis;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.project;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.telephony.SmsManager;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Sends low-stock digests by SMS to the device's own number
+public class SmsAlertSender implements AlertSender {
+    private static final String TAG = "SmsAlertSender";
+    // Items listed by name before the digest just gives a count
+    private static final int MAX_LISTED_ITEMS = 10;
+
+    private final Context context;
+
+    public SmsAlertSender(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public void sendDigest(List<InventoryItem> lowStockItems) {
+        // Check if both permissions are granted
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS)
+                != PackageManager.PERMISSION_GRANTED ||
+                ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_NUMBERS)
+                        != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "Not all permissions granted, dropping digest of " + lowStockItems.size() + " items");
+            return;
+        }
+
+        // Retrieve the device's phone number
+        // This can be updated to use numbers for any users by adding a field for phone numbers in UserTable
+        TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        String phoneNumber = telephonyManager.getLine1Number();
+        if (phoneNumber == null || phoneNumber.isEmpty()) {
+            Log.w(TAG, "Unable to retrieve phone number");
+            return;
+        }
+
+        Log.i(TAG, "sendDigest: Sending message for " + lowStockItems.size() + " items");
+        SmsManager smsManager = SmsManager.getDefault();
+        ArrayList<String> parts = smsManager.divideMessage(buildMessage(lowStockItems));
+        smsManager.sendMultipartTextMessage(phoneNumber, null, parts, null, null);
+    }
+
+    static String buildMessage(List<InventoryItem> lowStockItems) {
+        if (lowStockItems.size() == 1) {
+            InventoryItem item = lowStockItems.get(0);
+            return item.getQuantity() == 0
+                    ? "Item \"" + item.getName() + "\" has reached zero quantity."
+                    : "Item \"" + item.getName() + "\" is low on stock (" + item.getQuantity() + " left).";
+        }
+        StringBuilder message = new StringBuilder();
+        message.append(lowStockItems.size()).append(" items are low on stock:");
+        for (int i = 0; i < lowStockItems.size() && i < MAX_LISTED_ITEMS; i++) {
+            InventoryItem item = lowStockItems.get(i);
+            message.append("\n").append(item.getName()).append(": ").append(item.getQuantity());
+        }
+        if (lowStockItems.size() > MAX_LISTED_ITEMS) {
+            message.append("\n...and ").append(lowStockItems.size() - MAX_LISTED_ITEMS).append(" more");
+        }
+        return message.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.project;
+
+// Immutable snapshot of one row in the stock movement ledger: a change in an item's
+// quantity and the level it left the item at
+public class StockMovement {
+    private final long id;
+    private final long itemId;
+    private final int delta;
+    private final int quantityAfter;
+    private final long createdAt;
+
+    public StockMovement(long id, long itemId, int delta, int quantityAfter, long createdAt) {
+        this.id = id;
+        this.itemId = itemId;
+        this.delta = delta;
+        this.quantityAfter = quantityAfter;
+        this.createdAt = createdAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getItemId() {
+        return itemId;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    public int getQuantityAfter() {
+        return quantityAfter;
+    }
+
+    // Milliseconds since the epoch
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
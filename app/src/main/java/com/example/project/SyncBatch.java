@@ -0,0 +1,57 @@
+package com.example.project;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Wire format for a batch of sync changes: a count followed by (change id, name, delta) per
+// change, deflate compressed. Item names repeat a lot across a batch, which compresses well
+public final class SyncBatch {
+    private static final int FORMAT_VERSION = 1;
+
+    private SyncBatch() {
+    }
+
+    public static byte[] encode(List<SyncChange> changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(
+                new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED)));
+        try {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(changes.size());
+            for (SyncChange change : changes) {
+                out.writeLong(change.getChangeId());
+                out.writeUTF(change.getItemName());
+                out.writeInt(change.getDelta());
+            }
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<SyncChange> decode(byte[] batch) throws IOException {
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(batch)));
+        try {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported sync batch version " + version);
+            }
+            int count = in.readInt();
+            List<SyncChange> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                changes.add(new SyncChange(in.readLong(), in.readUTF(), in.readInt()));
+            }
+            return changes;
+        } finally {
+            in.close();
+        }
+    }
+}
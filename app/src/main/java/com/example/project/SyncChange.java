@@ -0,0 +1,29 @@
+package com.example.project;
+
+// One quantity change replicated between devices. Items are matched by name the same way the
+// unique item key matches them, since row ids differ from device to device. Changes carry a
+// delta rather than a level, so edits made concurrently on several devices add up
+public class SyncChange {
+    private final long changeId;
+    private final String itemName;
+    private final int delta;
+
+    public SyncChange(long changeId, String itemName, int delta) {
+        this.changeId = changeId;
+        this.itemName = itemName;
+        this.delta = delta;
+    }
+
+    // The stock movement id on the device that made the change, increasing per device
+    public long getChangeId() {
+        return changeId;
+    }
+
+    public String getItemName() {
+        return itemName;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+}
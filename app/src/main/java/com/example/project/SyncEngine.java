@@ -0,0 +1,98 @@
+package com.example.project;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+// Offline-first replication of stock levels between devices through a SyncServer. Every local
+// quantity change is already a row in the stock movement ledger, so the movement id is the
+// change version: a push sends the movements after the last one the server acknowledged, and a
+// pull applies other devices' deltas after the last server sequence seen. Both cursors are kept
+// in the store and only move once a batch has been handed over, so an interrupted sync simply
+// picks up where it stopped. Runs synchronously, call it from the repository's writer thread
+public class SyncEngine {
+    public static final String KEY_DEVICE_ID = "device_id";
+    // Id of the last local movement the server has received
+    public static final String KEY_PUSH_CURSOR = "push_cursor";
+    // Server sequence of the last change pulled
+    public static final String KEY_PULL_CURSOR = "pull_cursor";
+    public static final int BATCH_SIZE = 1000;
+
+    public static class Result {
+        private final int pushed;
+        private final int pulled;
+
+        Result(int pushed, int pulled) {
+            this.pushed = pushed;
+            this.pulled = pulled;
+        }
+
+        public int getPushed() {
+            return pushed;
+        }
+
+        public int getPulled() {
+            return pulled;
+        }
+    }
+
+    private final InventoryStore store;
+    private final SyncServer server;
+
+    public SyncEngine(InventoryStore store, SyncServer server) {
+        this.store = store;
+        this.server = server;
+    }
+
+    // Method to push local changes and then pull everyone else's. Throws if the server can't
+    // be reached, whatever was exchanged before that is kept
+    public Result sync() throws IOException {
+        String deviceId = getDeviceId();
+        return new Result(push(deviceId), pull(deviceId));
+    }
+
+    // This device's name towards the server, created on first sync
+    public String getDeviceId() {
+        String deviceId = store.getSyncState(KEY_DEVICE_ID);
+        if (deviceId == null) {
+            deviceId = UUID.randomUUID().toString();
+            store.setSyncState(KEY_DEVICE_ID, deviceId);
+        }
+        return deviceId;
+    }
+
+    private int push(String deviceId) throws IOException {
+        long cursor = readCursor(KEY_PUSH_CURSOR);
+        int pushed = 0;
+        List<SyncChange> changes;
+        while (!(changes = store.getUnsyncedChanges(cursor, BATCH_SIZE)).isEmpty()) {
+            server.push(deviceId, SyncBatch.encode(changes));
+            // Moved only after the server has the batch. If this is lost the batch is sent
+            // again and the server skips it
+            cursor = changes.get(changes.size() - 1).getChangeId();
+            store.setSyncState(KEY_PUSH_CURSOR, String.valueOf(cursor));
+            pushed += changes.size();
+        }
+        return pushed;
+    }
+
+    private int pull(String deviceId) throws IOException {
+        long cursor = readCursor(KEY_PULL_CURSOR);
+        int pulled = 0;
+        SyncServer.PullResponse response;
+        do {
+            response = server.pull(deviceId, cursor, BATCH_SIZE);
+            List<SyncChange> changes = SyncBatch.decode(response.getBatch());
+            cursor = response.getNextSequence();
+            // The changes and the new cursor are committed together, so a batch is applied once
+            store.applyRemoteChanges(changes, KEY_PULL_CURSOR, String.valueOf(cursor));
+            pulled += changes.size();
+        } while (response.hasMore());
+        return pulled;
+    }
+
+    private long readCursor(String key) {
+        String value = store.getSyncState(key);
+        return value == null ? 0 : Long.parseLong(value);
+    }
+}
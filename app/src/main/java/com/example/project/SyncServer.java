@@ -0,0 +1,39 @@
+package com.example.project;
+
+import java.io.IOException;
+
+// The shared end of sync. Batches are SyncBatch encoded. A push may be repeated after a
+// failure: the server keeps the highest change id applied per device and skips anything at
+// or below it, so a batch is never counted twice
+public interface SyncServer {
+    class PullResponse {
+        private final byte[] batch;
+        private final long nextSequence;
+        private final boolean hasMore;
+
+        public PullResponse(byte[] batch, long nextSequence, boolean hasMore) {
+            this.batch = batch;
+            this.nextSequence = nextSequence;
+            this.hasMore = hasMore;
+        }
+
+        // Changes made by other devices, in the order the server received them
+        public byte[] getBatch() {
+            return batch;
+        }
+
+        // Where the next pull continues from
+        public long getNextSequence() {
+            return nextSequence;
+        }
+
+        public boolean hasMore() {
+            return hasMore;
+        }
+    }
+
+    void push(String deviceId, byte[] batch) throws IOException;
+
+    // Changes other devices pushed after afterSequence, at most limit log entries at a time
+    PullResponse pull(String deviceId, long afterSequence, int limit) throws IOException;
+}
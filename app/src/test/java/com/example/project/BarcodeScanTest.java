@@ -0,0 +1,134 @@
+package com.example.project;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class BarcodeScanTest {
+    private FakeInventoryStore store;
+    private InventoryCache cache;
+    private InventoryRepository repository;
+
+    @Before
+    public void setUp() {
+        store = new FakeInventoryStore();
+        cache = new InventoryCache(store, 100);
+        repository = new InventoryRepository(cache, Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        repository.shutdown();
+    }
+
+    @Test
+    public void scan_addsToTheItemWithThatCode() throws Exception {
+        long soda = cache.insertItem("Soda", 3);
+        assertTrue(repository.updateItemSku(soda, "4006381333931", null).get());
+
+        InventoryItem scanned = repository.receiveScan("4006381333931", 1, null).get();
+
+        assertEquals(soda, scanned.getId());
+        assertEquals(4, scanned.getQuantity());
+        assertEquals(4, store.getItem(soda).getQuantity());
+        assertNull(repository.receiveScan("0000000000000", 1, null).get());
+    }
+
+    @Test
+    public void repeatedScans_resolveFromTheHotKeys() throws Exception {
+        long soda = cache.insertItem("Soda", 0);
+        cache.updateItemSku(soda, "111");
+
+        for (int i = 0; i < 100; i++) {
+            repository.receiveScan("111", 1, null);
+        }
+        assertEquals(100, repository.receiveScan("111", 0, null).get().getQuantity());
+        assertEquals(0, store.skuLookups.get());
+    }
+
+    @Test
+    public void changedOrDeletedCodes_stopResolving() throws Exception {
+        long soda = cache.insertItem("Soda", 0);
+        long chips = cache.insertItem("Chips", 0);
+        cache.updateItemSku(soda, "111");
+        cache.findItemIdBySku("111");
+
+        assertFalse(cache.updateItemSku(chips, "111"));
+        assertTrue(cache.updateItemSku(soda, "222"));
+        assertEquals(-1, cache.findItemIdBySku("111"));
+        assertEquals(soda, cache.findItemIdBySku("222"));
+        cache.deleteItem(soda);
+        assertEquals(-1, cache.findItemIdBySku("222"));
+        assertTrue(cache.updateItemSku(chips, "222"));
+    }
+
+    @Test
+    public void keyboardWedge_acceptsOnlyFastLines() {
+        final List<String> codes = new ArrayList<>();
+        KeyboardWedgeScanner scanner = new KeyboardWedgeScanner();
+        assertFalse(scanner.onCharacter('1', 0));
+        scanner.start(new BarcodeScanner.Listener() {
+            @Override
+            public void onBarcode(String code) {
+                codes.add(code);
+            }
+        });
+
+        type(scanner, "4006381333931", 1000, 8);
+        type(scanner, "12345", 2000, 200);
+        type(scanner, "123", 3000, 8);
+        type(scanner, "ABC-42", 4000, 8);
+        scanner.stop();
+
+        assertEquals(2, codes.size());
+        assertEquals("4006381333931", codes.get(0));
+        assertEquals("ABC-42", codes.get(1));
+        assertFalse(scanner.onEnter(5000));
+    }
+
+    @Test
+    public void sustainedScanning_appliesEveryScan() throws Exception {
+        int items = 500;
+        for (int i = 0; i < items; i++) {
+            long id = cache.insertItem("item" + i, 0);
+            cache.updateItemSku(id, "code" + i);
+        }
+        final List<Future<InventoryItem>> pending = new ArrayList<>();
+        KeyboardWedgeScanner scanner = new KeyboardWedgeScanner();
+        scanner.start(new BarcodeScanner.Listener() {
+            @Override
+            public void onBarcode(String code) {
+                pending.add(repository.receiveScan(code, 1, null));
+            }
+        });
+
+        int scans = 5000;
+        for (int i = 0; i < scans; i++) {
+            type(scanner, "code" + (i % items), i * 100L, 5);
+            if (pending.size() == 200) {
+                // Stay under the writer queue bound, as a scanner's pace would
+                pending.get(pending.size() - 1).get();
+                pending.clear();
+            }
+        }
+        for (Future<InventoryItem> future : pending) {
+            future.get();
+        }
+        assertEquals(scans / items, store.findItemByName("item7").getQuantity());
+    }
+
+    private static void type(KeyboardWedgeScanner scanner, String text, long startMillis, long gapMillis) {
+        long time = startMillis;
+        for (int i = 0; i < text.length(); i++) {
+            scanner.onCharacter(text.charAt(i), time);
+            time += gapMillis;
+        }
+        scanner.onEnter(time);
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.project;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class BatchEditTest {
+    private FakeInventoryStore store;
+    private InventoryCache cache;
+    private InventoryRepository repository;
+    private final List<InventoryChange> changes = new ArrayList<>();
+    // Callback executor tasks, each one a main thread turn
+    private int callbackTasks = 0;
+
+    @Before
+    public void setUp() {
+        store = new FakeInventoryStore();
+        cache = new InventoryCache(store, InventoryCache.DEFAULT_CAPACITY);
+        repository = new InventoryRepository(cache, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                callbackTasks++;
+                command.run();
+            }
+        });
+        repository.addChangeListener(new InventoryRepository.ChangeListener() {
+            @Override
+            public void onChange(InventoryChange change) {
+                changes.add(change);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        repository.shutdown();
+    }
+
+    @Test
+    public void adjust_isOneBatchOfChangesAndUndoesExactly() throws Exception {
+        long soda = store.insertItem("Soda", 5);
+        long chips = store.insertItem("Chips", 2);
+        long gum = store.insertItem("Gum", 10);
+        long[] ids = {soda, chips, gum};
+
+        callbackTasks = 0;
+        assertTrue(repository.adjustItemQuantities(ids, -3, null).get());
+        // Chips stopped at zero
+        assertEquals(2, cache.getItem(soda).getQuantity());
+        assertEquals(0, cache.getItem(chips).getQuantity());
+        assertEquals(7, store.getItem(gum).getQuantity());
+        // All three rows reach the listener in one task
+        assertEquals(3, changes.size());
+        assertEquals(1, callbackTasks);
+        assertEquals("Remove 3 from 3 items", repository.getUndoLabel());
+
+        assertTrue(repository.undo(null).get());
+        assertEquals(5, cache.getItem(soda).getQuantity());
+        assertEquals(2, cache.getItem(chips).getQuantity());
+        assertNull(repository.getUndoLabel());
+        assertEquals("Remove 3 from 3 items", repository.getRedoLabel());
+
+        assertTrue(repository.redo(null).get());
+        assertEquals(0, store.getItem(chips).getQuantity());
+        assertNull(repository.getRedoLabel());
+    }
+
+    @Test
+    public void quantityEdits_withStockElsewhere_undoWhatTheStoreChanged() throws Exception {
+        long soda = store.insertItem("Soda", 2);
+        long back = store.insertLocation("Back room");
+        store.setStockQuantity(soda, back, 8);
+        long[] ids = {soda};
+
+        // Only the default location's 2 can go
+        assertTrue(repository.adjustItemQuantities(ids, -5, null).get());
+        assertEquals(8, cache.getItem(soda).getQuantity());
+        assertEquals(8, store.getItem(soda).getQuantity());
+        assertTrue(repository.undo(null).get());
+        assertEquals(10, cache.getItem(soda).getQuantity());
+        assertEquals(10, store.getItem(soda).getQuantity());
+        assertTrue(repository.redo(null).get());
+        assertEquals(8, store.getItem(soda).getQuantity());
+        assertTrue(repository.undo(null).get());
+
+        assertTrue(repository.adjustItemQuantities(ids, new int[]{-3, -3}, null).get());
+        assertEquals(8, cache.getItem(soda).getQuantity());
+        assertTrue(repository.undo(null).get());
+        assertEquals(10, store.getItem(soda).getQuantity());
+
+        // The total can't go below the back room's stock
+        assertTrue(repository.setItemQuantity(soda, 0, null).get());
+        assertEquals(8, cache.getItem(soda).getQuantity());
+        assertEquals(8, store.getItem(soda).getQuantity());
+        assertTrue(repository.undo(null).get());
+        assertEquals(10, cache.getItem(soda).getQuantity());
+        assertEquals(10, store.getItem(soda).getQuantity());
+    }
+
+    @Test
+    public void delete_isUndoneUnderTheSameIds() throws Exception {
+        long soda = store.insertItem("Soda", 5);
+        long chips = store.insertItem("Chips", 2);
+        long gum = store.insertItem("Gum", 1);
+        cache.updateReorderThreshold(soda, 3);
+        cache.updateItemSku(soda, "4006381333931");
+        assertEquals(soda, cache.findItemIdBySku("4006381333931"));
+
+        assertTrue(repository.deleteItems(new long[]{soda, gum}, null).get());
+        assertNull(cache.getItem(soda));
+        assertEquals(-1, cache.findItemIdBySku("4006381333931"));
+        assertEquals(1, cache.getItemsPage(0, 10).size());
+        assertEquals(InventoryChange.Type.DELETE, changes.get(0).getType());
+
+        changes.clear();
+        assertTrue(repository.undo(null).get());
+        List<InventoryItem> page = cache.getItemsPage(0, 10);
+        assertEquals(3, page.size());
+        assertEquals(soda, page.get(0).getId());
+        assertEquals(chips, page.get(1).getId());
+        assertEquals(3, page.get(0).getReorderThreshold());
+        assertEquals(soda, cache.findItemIdBySku("4006381333931"));
+        assertEquals(InventoryChange.Type.INSERT, changes.get(0).getType());
+        assertEquals(2, changes.size());
+    }
+
+    @Test
+    public void rename_isAllOrNothing() throws Exception {
+        long soda = store.insertItem("Soda", 1);
+        long chips = store.insertItem("Chips", 1);
+        store.insertItem("Organic Chips", 1);
+
+        assertFalse(repository.renameItems(new long[]{soda, chips}, "Organic *", null).get());
+        assertEquals("Soda", cache.getItem(soda).getName());
+        assertNull(repository.getUndoLabel());
+
+        assertTrue(repository.renameItems(new long[]{soda}, "Organic *", null).get());
+        assertEquals("Organic Soda", cache.findItemByName("organic soda").getName());
+        assertNull(cache.findItemByName("Soda"));
+
+        // The old name was taken in the meantime, the edit can't be undone and is dropped
+        store.insertItem("Soda", 1);
+        cache.invalidate();
+        assertFalse(repository.undo(null).get());
+        assertNull(repository.getUndoLabel());
+        assertNull(repository.getRedoLabel());
+    }
+
+    @Test
+    public void renamePattern_canMoveNamesBetweenTheSelectedItems() throws Exception {
+        long a = store.insertItem("A", 1);
+        long a2 = store.insertItem("A 2", 1);
+        cache.getItem(a);
+
+        assertTrue(repository.renameItems(new long[]{a, a2}, "* 2", null).get());
+        assertEquals("A 2", cache.getItem(a).getName());
+        assertEquals("A 2 2", cache.getItem(a2).getName());
+        assertEquals(a, cache.findItemByName("a 2").getId());
+
+        assertTrue(repository.undo(null).get());
+        assertEquals("A", cache.getItem(a).getName());
+        assertEquals(a2, cache.findItemByName("A 2").getId());
+    }
+
+    @Test
+    public void newEdit_clearsRedo() throws Exception {
+        long soda = store.insertItem("Soda", 1);
+        repository.setItemQuantity(soda, 4, null);
+        repository.undo(null).get();
+        assertNotNull(repository.getRedoLabel());
+
+        repository.setItemName(soda, "Cola", null).get();
+        assertNull(repository.getRedoLabel());
+        assertEquals("Rename Soda", repository.getUndoLabel());
+        assertFalse(repository.redo(null).get());
+    }
+
+    @Test
+    public void history_isBoundedByEditsAndRows() {
+        FakeInventoryStore items = new FakeInventoryStore();
+        long[] ids = new long[10];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = items.insertItem("item" + i, 1);
+        }
+        EditHistory history = new EditHistory(3, 11);
+        history.push(ItemEdit.adjustQuantity(items, new long[]{ids[0]}, 1));
+        history.push(ItemEdit.adjustQuantity(items, new long[]{ids[1]}, 1));
+        history.push(ItemEdit.adjustQuantity(items, new long[]{ids[2]}, 1));
+        history.push(ItemEdit.adjustQuantity(items, new long[]{ids[3]}, 1));
+        assertEquals(3, history.getUndoCount());
+
+        // Ten more rows pushes the total past eleven, the oldest go first
+        ItemEdit large = ItemEdit.adjustQuantity(items, ids, 1);
+        history.push(large);
+        assertEquals(2, history.getUndoCount());
+        assertEquals(11, history.getRowCount());
+
+        // An undone edit moves to the redo stack and back
+        assertSame(large, history.popUndo());
+        history.pushRedo(large);
+        assertEquals(11, history.getRowCount());
+        assertSame(large, history.popRedo());
+        history.pushUndo(large);
+        assertSame(large, history.peekUndo());
+        assertNull(history.peekRedo());
+    }
+
+    @Test
+    public void batchOf1000_isPublishedOncePerEdit() throws Exception {
+        long[] ids = new long[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = store.insertItem("item" + i, 100);
+        }
+        // Loads the cache first
+        cache.getItem(ids[0]);
+        changes.clear();
+        callbackTasks = 0;
+
+        assertTrue(repository.adjustItemQuantities(ids, 5, null).get());
+        assertTrue(repository.renameItems(ids, "Bulk *", null).get());
+        assertTrue(repository.deleteItems(ids, null).get());
+        assertTrue(repository.undo(null).get());
+
+        assertEquals(4000, changes.size());
+        // One task per edit, not per row
+        assertEquals(4, callbackTasks);
+        assertEquals("Bulk item999", cache.getItem(ids[999]).getName());
+        assertEquals(105, cache.getItem(ids[999]).getQuantity());
+    }
+}
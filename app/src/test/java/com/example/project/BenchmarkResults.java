@@ -0,0 +1,141 @@
+package com.example.project;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assume.assumeTrue;
+
+// Results of the JVM benchmarks, written as one JSON file per suite so runs of different
+// versions can be compared:
+//   {"suite":..., "sqliteVersion":..., "schemaVersion":..., "results":[{"name":..., "rows":..., ...}]}
+// Files go to the directory in the benchmark.dir system property, build/benchmarks by default.
+// Benchmarks only run when the benchmark.sizes system property is set, see app/build.gradle.kts
+class BenchmarkResults {
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+
+    interface Operation {
+        // Runs operation number op
+        void run(int op) throws SQLException;
+    }
+
+    private final String suite;
+    private final String sqliteVersion;
+    private final List<String> results = new ArrayList<>();
+
+    // sqliteVersion is null for suites run against FakeInventoryStore
+    BenchmarkResults(String suite, String sqliteVersion) {
+        this.suite = suite;
+        this.sqliteVersion = sqliteVersion;
+    }
+
+    // Method to skip the calling benchmark unless benchmarks were asked for
+    static void assumeEnabled() {
+        assumeTrue("Benchmarks run with -Pbenchmark.sizes=...", !System.getProperty("benchmark.sizes", "").trim().isEmpty());
+    }
+
+    // Table sizes to run a benchmark at, from the benchmark.sizes system property
+    static List<Integer> sizes() {
+        assumeEnabled();
+        List<Integer> sizes = new ArrayList<>();
+        for (String size : System.getProperty("benchmark.sizes").split(",")) {
+            sizes.add(Integer.parseInt(size.trim()));
+        }
+        return sizes;
+    }
+
+    // Values are written in the order given, numbers as they are
+    void add(String name, int rows, Map<String, ? extends Number> values) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"name\":\"").append(name).append("\",\"rows\":").append(rows);
+        for (Map.Entry<String, ? extends Number> value : values.entrySet()) {
+            json.append(",\"").append(value.getKey()).append("\":");
+            Number number = value.getValue();
+            if (number instanceof Double || number instanceof Float) {
+                json.append(String.format(Locale.US, "%.1f", number.doubleValue()));
+            } else {
+                json.append(number);
+            }
+        }
+        results.add(json.append('}').toString());
+    }
+
+    // Method to time an operation like a JMH benchmark, warm-up iterations of ops operations
+    // first and then timed ones, and add the throughput and per-operation latencies
+    void measure(String name, int rows, int ops, Operation operation) throws SQLException {
+        for (int i = 0; i < WARMUP_ITERATIONS * ops; i++) {
+            operation.run(i);
+        }
+        long[] nanos = new long[ITERATIONS * ops];
+        double opsPerSecond = 0;
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            long iterationStart = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                long start = System.nanoTime();
+                operation.run(i);
+                nanos[iteration * ops + i] = System.nanoTime() - start;
+            }
+            opsPerSecond += ops * 1e9 / (System.nanoTime() - iterationStart);
+        }
+        Arrays.sort(nanos);
+        Map<String, Number> values = values();
+        values.put("ops", nanos.length);
+        values.put("opsPerSecond", opsPerSecond / ITERATIONS);
+        values.put("p50Micros", micros(nanos, 50));
+        values.put("p90Micros", micros(nanos, 90));
+        values.put("p99Micros", micros(nanos, 99));
+        values.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(nanos[nanos.length - 1]));
+        add(name, rows, values);
+    }
+
+    private static long micros(long[] sortedNanos, int percentile) {
+        int index = (int) Math.ceil(sortedNanos.length * percentile / 100.0) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sortedNanos[Math.max(0, index)]);
+    }
+
+    static Map<String, Number> values() {
+        return new LinkedHashMap<>();
+    }
+
+    String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"suite\":\"").append(suite).append("\",\"sqliteVersion\":")
+                .append(sqliteVersion == null ? "null" : "\"" + sqliteVersion + "\"")
+                .append(",\"schemaVersion\":").append(JdbcInventoryDatabase.SCHEMA_VERSION).append(",\"results\":[");
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0) {
+                json.append(",\n");
+            }
+            json.append(results.get(i));
+        }
+        return json.append("]}\n").toString();
+    }
+
+    // Returns the file written
+    File write() throws IOException {
+        File dir = new File(System.getProperty("benchmark.dir", "build/benchmarks"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        File file = new File(dir, suite + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write(toJson());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
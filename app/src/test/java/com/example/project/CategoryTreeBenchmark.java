@@ -0,0 +1,186 @@
+package com.example.project;
+
+import com.example.project.InventoryDatabaseHelper.CategoryClosureTable;
+import com.example.project.InventoryDatabaseHelper.InventoryTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times the category tree on the plain JVM with 5110 categories four levels deep and 100k
+ * items filed across them: reading a category's stored subtree totals, and the COUNT and SUM
+ * over its subtree they replace, a level of children, a breadcrumb, the first grid page of a
+ * top-level category, a quantity update that the triggers carry up to every ancestor, and
+ * moving a 111-category subtree to another parent. Results go to
+ * build/benchmarks/category-tree.json, nothing is asserted about the timings. Runs along
+ * with DataLayerBenchmark, when benchmark.sizes is set.
+ */
+public class CategoryTreeBenchmark {
+    private static final String SUITE = "category-tree";
+    private static final int ITEMS = 100000;
+    // Children per category on each level, 10 + 100 + 1000 + 4000 categories
+    private static final int[] FAN_OUT = {10, 10, 10, 4};
+    private static final int OPS = 1000;
+    // The totals the stored columns replace, counted from the items
+    private static final String COUNTED_TOTALS_SQL = "SELECT COUNT(*), IFNULL(SUM(" + InventoryTable.COL_QTY +
+            "), 0) FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_CATEGORY_ID + " IN (SELECT " +
+            CategoryClosureTable.COL_DESCENDANT_ID + " FROM " + CategoryClosureTable.TABLE + " WHERE " +
+            CategoryClosureTable.COL_ANCESTOR_ID + " = ?)";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+    private final List<List<Long>> levels = new ArrayList<>();
+    private long firstId;
+    private BenchmarkResults results;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        BenchmarkResults.assumeEnabled();
+        connection = new JdbcInventoryDatabase(folder.newFile("categories.db")).open();
+        results = new BenchmarkResults(SUITE, JdbcInventoryDatabase.sqliteVersion(connection));
+        firstId = JdbcInventoryDatabase.seed(connection, ITEMS);
+
+        List<Long> parents = new ArrayList<>();
+        parents.add(Category.ROOT);
+        connection.setAutoCommit(false);
+        for (int fanOut : FAN_OUT) {
+            List<Long> level = new ArrayList<>();
+            for (long parentId : parents) {
+                for (int i = 0; i < fanOut; i++) {
+                    // Unique names, so a moved subtree never clashes with its new siblings
+                    level.add(JdbcInventoryDatabase.insertCategory(connection, parentId, "Category " + levels.size() +
+                            "." + level.size()));
+                }
+            }
+            levels.add(level);
+            parents = level;
+        }
+        // Nine in ten items filed, anywhere in the tree
+        List<Long> all = new ArrayList<>();
+        for (List<Long> level : levels) {
+            all.addAll(level);
+        }
+        PreparedStatement file = connection.prepareStatement(InventoryDatabaseHelper.SET_ITEM_CATEGORY_SQL);
+        for (int i = 0; i < ITEMS; i++) {
+            if (random.nextInt(10) != 0) {
+                file.setLong(1, all.get(random.nextInt(all.size())));
+                file.setLong(2, firstId + i);
+                file.addBatch();
+            }
+        }
+        file.executeBatch();
+        file.close();
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void categoryTree() throws Exception {
+        final PreparedStatement category = connection.prepareStatement(InventoryDatabaseHelper.CATEGORY_SQL);
+        results.measure("subtreeTotals", ITEMS, OPS, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                category.setLong(1, pick(0));
+                assertEquals(1, count(category.executeQuery()));
+            }
+        });
+
+        final PreparedStatement counted = connection.prepareStatement(COUNTED_TOTALS_SQL);
+        results.measure("subtreeTotalsCounted", ITEMS, 20, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                counted.setLong(1, pick(0));
+                assertEquals(1, count(counted.executeQuery()));
+            }
+        });
+
+        final PreparedStatement children = connection.prepareStatement(InventoryDatabaseHelper.CHILD_CATEGORIES_SQL);
+        results.measure("children", ITEMS, OPS, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                children.setLong(1, pick(2));
+                assertEquals(FAN_OUT[3], count(children.executeQuery()));
+            }
+        });
+
+        final PreparedStatement path = connection.prepareStatement(InventoryDatabaseHelper.CATEGORY_PATH_SQL);
+        results.measure("path", ITEMS, OPS, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                path.setLong(1, pick(3));
+                assertEquals(FAN_OUT.length, count(path.executeQuery()));
+            }
+        });
+
+        final PreparedStatement page = connection.prepareStatement(InventoryDatabaseHelper.CATEGORY_ITEMS_PAGE_SQL);
+        results.measure("subtreeFirstPage", ITEMS, 200, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                page.setLong(1, pick(0));
+                page.setLong(2, 0);
+                page.setInt(3, InventoryPager.PAGE_SIZE);
+                assertEquals(InventoryPager.PAGE_SIZE, count(page.executeQuery()));
+            }
+        });
+
+        // Through the stock rollup, the category triggers add to four ancestors for most items
+        final PreparedStatement update = connection.prepareStatement(InventoryDatabaseHelper.UPDATE_ITEM_QUANTITY_SQL);
+        results.measure("updateFiled", ITEMS, OPS, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                long id = firstId + random.nextInt(ITEMS);
+                update.setInt(1, random.nextInt(1000));
+                update.setLong(2, id);
+                update.setLong(3, id);
+                assertEquals(1, update.executeUpdate());
+            }
+        });
+
+        // A second-level category with its 110 descendants, under another top-level category
+        results.measure("moveSubtree", ITEMS, 50, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                JdbcInventoryDatabase.moveCategory(connection, pick(1), pick(0));
+            }
+        });
+
+        results.write();
+    }
+
+    private long pick(int level) {
+        List<Long> ids = levels.get(level);
+        return ids.get(random.nextInt(ids.size()));
+    }
+
+    private static int count(ResultSet result) throws SQLException {
+        int rows = 0;
+        while (result.next()) {
+            rows++;
+        }
+        result.close();
+        return rows;
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.project;
+
+import com.example.project.InventoryDatabaseHelper.CategoryClosureTable;
+import com.example.project.InventoryDatabaseHelper.CategoryTable;
+import com.example.project.InventoryDatabaseHelper.InventoryTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CategoryTreeTest {
+    private static final int ITEMS = 2000;
+    private static final int CATEGORIES = 200;
+    private static final int EDITS = 400;
+    // The closure and the subtree totals worked out from parent_id alone
+    private static final String PATHS = "WITH RECURSIVE paths(ancestor_id, descendant_id, depth) AS (" +
+            "SELECT " + CategoryTable.COL_ID + ", " + CategoryTable.COL_ID + ", 0 FROM " + CategoryTable.TABLE +
+            " UNION ALL SELECT c." + CategoryTable.COL_PARENT_ID + ", p.descendant_id, p.depth + 1 FROM paths p JOIN " +
+            CategoryTable.TABLE + " c ON c." + CategoryTable.COL_ID + " = p.ancestor_id WHERE c." +
+            CategoryTable.COL_PARENT_ID + " <> " + Category.ROOT + ") ";
+    private static final String IN_SUBTREE = " FROM paths p JOIN " + InventoryTable.TABLE + " i ON i." +
+            InventoryTable.COL_CATEGORY_ID + " = p.descendant_id WHERE p.ancestor_id = c." + CategoryTable.COL_ID;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(7);
+    private final List<Long> categoryIds = new ArrayList<>();
+    private final List<Long> itemIds = new ArrayList<>();
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = new JdbcInventoryDatabase(folder.newFile("categories.db")).open();
+        long firstId = JdbcInventoryDatabase.seed(connection, ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            itemIds.add(firstId + i);
+        }
+        for (int i = 0; i < CATEGORIES; i++) {
+            long parentId = i == 0 || random.nextInt(10) == 0 ? Category.ROOT : pickCategory();
+            categoryIds.add(JdbcInventoryDatabase.insertCategory(connection, parentId, "Category " + i));
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void randomEdits_keepClosureAndSubtreeTotalsExact() throws Exception {
+        for (long itemId : itemIds) {
+            if (random.nextInt(4) != 0) {
+                JdbcInventoryDatabase.setItemCategory(connection, itemId, pickCategory());
+            }
+        }
+        assertTreeConsistent();
+
+        for (int i = 0; i < EDITS; i++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                case 1:
+                    // Through the stock rollup, so the category trigger fires from inside another trigger
+                    long itemId = pickItem();
+                    PreparedStatement update = connection.prepareStatement(InventoryDatabaseHelper.UPDATE_ITEM_QUANTITY_SQL);
+                    update.setInt(1, random.nextInt(500));
+                    update.setLong(2, itemId);
+                    update.setLong(3, itemId);
+                    update.executeUpdate();
+                    update.close();
+                    break;
+                case 2:
+                    JdbcInventoryDatabase.setItemCategory(connection, pickItem(), random.nextInt(5) == 0 ? Category.ROOT : pickCategory());
+                    break;
+                case 3:
+                    JdbcInventoryDatabase.moveCategory(connection, pickCategory(), random.nextInt(5) == 0 ? Category.ROOT : pickCategory());
+                    break;
+                case 4:
+                    if (random.nextInt(4) == 0) {
+                        JdbcInventoryDatabase.deleteCategory(connection, categoryIds.remove(random.nextInt(categoryIds.size())));
+                    } else {
+                        categoryIds.add(JdbcInventoryDatabase.insertCategory(connection, pickCategory(), "Category " + (CATEGORIES + i)));
+                    }
+                    break;
+                default:
+                    PreparedStatement delete = connection.prepareStatement(InventoryDatabaseHelper.DELETE_ITEM_SQL);
+                    delete.setLong(1, itemIds.remove(random.nextInt(itemIds.size())));
+                    delete.executeUpdate();
+                    delete.close();
+                    break;
+            }
+        }
+        assertTreeConsistent();
+    }
+
+    @Test
+    public void subtreePages_holdExactlyTheItemsBelow() throws Exception {
+        long tools = JdbcInventoryDatabase.insertCategory(connection, Category.ROOT, "Tools");
+        long power = JdbcInventoryDatabase.insertCategory(connection, tools, "Power");
+        long drills = JdbcInventoryDatabase.insertCategory(connection, power, "Drills");
+        long garden = JdbcInventoryDatabase.insertCategory(connection, Category.ROOT, "Garden");
+        List<Long> underTools = new ArrayList<>();
+        for (int i = 0; i < itemIds.size(); i += 7) {
+            long categoryId = i % 3 == 0 ? tools : i % 3 == 1 ? drills : garden;
+            JdbcInventoryDatabase.setItemCategory(connection, itemIds.get(i), categoryId);
+            if (categoryId != garden) {
+                underTools.add(itemIds.get(i));
+            }
+        }
+
+        assertEquals(underTools, pageAll(tools));
+        assertEquals(0, pageAll(JdbcInventoryDatabase.insertCategory(connection, drills, "Cordless")).size());
+        // Moved under Garden, its items go with it
+        JdbcInventoryDatabase.moveCategory(connection, power, garden);
+        List<Long> underPower = pageAll(power);
+        List<Long> underToolsNow = pageAll(tools);
+        assertEquals(underTools.size(), underPower.size() + underToolsNow.size());
+        assertTrue(pageAll(garden).containsAll(underPower));
+        // Deleted, its items stay under Tools
+        JdbcInventoryDatabase.deleteCategory(connection, power);
+        JdbcInventoryDatabase.moveCategory(connection, drills, tools);
+        assertEquals(underTools, pageAll(tools));
+        assertTreeConsistent();
+    }
+
+    // Every id in the subtree's pages, BATCH_SIZE at a time like the grid
+    private List<Long> pageAll(long categoryId) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        PreparedStatement page = connection.prepareStatement(InventoryDatabaseHelper.CATEGORY_ITEMS_PAGE_SQL);
+        try {
+            long afterId = 0;
+            int read;
+            do {
+                page.setLong(1, categoryId);
+                page.setLong(2, afterId);
+                page.setInt(3, InventoryStore.BATCH_SIZE);
+                ResultSet result = page.executeQuery();
+                read = 0;
+                while (result.next()) {
+                    afterId = result.getLong(1);
+                    ids.add(afterId);
+                    read++;
+                }
+                result.close();
+            } while (read == InventoryStore.BATCH_SIZE);
+        } finally {
+            page.close();
+        }
+        return ids;
+    }
+
+    private void assertTreeConsistent() throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            assertEquals(rows(statement, PATHS + "SELECT ancestor_id, descendant_id, depth FROM paths ORDER BY 1, 2"),
+                    rows(statement, "SELECT " + CategoryClosureTable.COL_ANCESTOR_ID + ", " +
+                            CategoryClosureTable.COL_DESCENDANT_ID + ", " + CategoryClosureTable.COL_DEPTH + " FROM " +
+                            CategoryClosureTable.TABLE + " ORDER BY 1, 2"));
+            List<String> totals = rows(statement, PATHS + "SELECT c." + CategoryTable.COL_ID + ", c." +
+                    CategoryTable.COL_ITEM_COUNT + ", c." + CategoryTable.COL_UNITS + ", (SELECT COUNT(*)" + IN_SUBTREE +
+                    "), (SELECT IFNULL(SUM(i." + InventoryTable.COL_QTY + "), 0)" + IN_SUBTREE + ") FROM " +
+                    CategoryTable.TABLE + " c ORDER BY 1");
+            int filled = 0;
+            for (String row : totals) {
+                String[] values = row.split(",");
+                assertEquals("Count of category " + values[0], values[3], values[1]);
+                assertEquals("Units of category " + values[0], values[4], values[2]);
+                if (!values[1].equals("0")) {
+                    filled++;
+                }
+            }
+            assertTrue(filled > 0);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static List<String> rows(Statement statement, String sql) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        ResultSet result = statement.executeQuery(sql);
+        try {
+            int columns = result.getMetaData().getColumnCount();
+            while (result.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= columns; i++) {
+                    row.append(i > 1 ? "," : "").append(result.getLong(i));
+                }
+                rows.add(row.toString());
+            }
+        } finally {
+            result.close();
+        }
+        return rows;
+    }
+
+    private long pickCategory() {
+        return categoryIds.get(random.nextInt(categoryIds.size()));
+    }
+
+    private long pickItem() {
+        return itemIds.get(random.nextInt(itemIds.size()));
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.example.project;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times the data layer's hot statements on the plain JVM: insert, quantity update, delete,
+ * a full keyset scan and the login lookup, at each table size in the benchmark.sizes system
+ * property, such as 1000,100000 or 1000,100000,1000000 for the large run. Skipped when it
+ * isn't set. Each is measured like a
+ * JMH benchmark, warm-up iterations first and then timed ones, and the throughput and
+ * per-operation latencies go to build/benchmarks/data-layer.json. Nothing is asserted about
+ * the timings, the file is compared across versions instead.
+ */
+public class DataLayerBenchmark {
+    private static final String SUITE = "data-layer";
+    // Operations per iteration, a full scan is one operation
+    private static final int OPS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+    private BenchmarkResults results;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        Connection version = new JdbcInventoryDatabase(folder.newFile("version.db")).open();
+        try {
+            results = new BenchmarkResults(SUITE, JdbcInventoryDatabase.sqliteVersion(version));
+        } finally {
+            version.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void dataLayer_atEachSize() throws Exception {
+        for (int size : BenchmarkResults.sizes()) {
+            benchmarkSize(size);
+        }
+        results.write();
+    }
+
+    private void benchmarkSize(final int rows) throws Exception {
+        File dbFile = new File(folder.getRoot(), "benchmark-" + rows + ".db");
+        connection = new JdbcInventoryDatabase(dbFile).open();
+        final long firstId = JdbcInventoryDatabase.seed(connection, rows);
+
+        final PreparedStatement login = connection.prepareStatement(InventoryDatabaseHelper.PASSWORD_HASH_SQL);
+        results.measure("login", rows, OPS, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                login.setString(1, JdbcInventoryDatabase.email(random.nextInt(rows)));
+                ResultSet result = login.executeQuery();
+                assertTrue(result.next());
+                result.close();
+            }
+        });
+
+        final PreparedStatement page = connection.prepareStatement(InventoryDatabaseHelper.ITEMS_PAGE_SQL);
+        results.measure("scan", rows, 1, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                assertEquals(rows, scan(page));
+            }
+        });
+
+        // Each in its own transaction, like a single edit through the helper
+        final PreparedStatement update = connection.prepareStatement(InventoryDatabaseHelper.UPDATE_ITEM_QUANTITY_SQL);
+        results.measure("update", rows, OPS, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                long id = firstId + random.nextInt(rows);
+                update.setInt(1, random.nextInt(1000));
+                update.setLong(2, id);
+                update.setLong(3, id);
+                assertEquals(1, update.executeUpdate());
+            }
+        });
+
+        final List<Long> inserted = new ArrayList<>();
+        final PreparedStatement insert = connection.prepareStatement(InventoryDatabaseHelper.INSERT_ITEM_SQL,
+                Statement.RETURN_GENERATED_KEYS);
+        results.measure("insert", rows, OPS, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                String name = "benchmark insert " + inserted.size();
+                insert.setString(1, name);
+                insert.setString(2, InventoryItem.normalizeName(name));
+                insert.setInt(3, op % 100);
+                insert.executeUpdate();
+                ResultSet keys = insert.getGeneratedKeys();
+                keys.next();
+                inserted.add(keys.getLong(1));
+                keys.close();
+            }
+        });
+
+        // Takes back the inserted rows, in a shuffled order
+        final PreparedStatement delete = connection.prepareStatement(InventoryDatabaseHelper.DELETE_ITEM_SQL);
+        final List<Long> toDelete = new ArrayList<>(inserted);
+        Collections.shuffle(toDelete, random);
+        results.measure("delete", rows, OPS, new BenchmarkResults.Operation() {
+            @Override
+            public void run(int op) throws SQLException {
+                delete.setLong(1, toDelete.remove(toDelete.size() - 1));
+                assertEquals(1, delete.executeUpdate());
+            }
+        });
+        assertEquals(rows, scan(page));
+
+        connection.close();
+        dbFile.delete();
+    }
+
+    // Pages through every item like the grid, returning the number of rows read
+    private static int scan(PreparedStatement page) throws SQLException {
+        int count = 0;
+        long afterId = 0;
+        while (true) {
+            page.setLong(1, afterId);
+            page.setInt(2, InventoryStore.BATCH_SIZE);
+            ResultSet result = page.executeQuery();
+            int read = 0;
+            try {
+                while (result.next()) {
+                    afterId = result.getLong(1);
+                    result.getString(2);
+                    result.getInt(3);
+                    result.getInt(4);
+                    read++;
+                }
+            } finally {
+                result.close();
+            }
+            count += read;
+            if (read < InventoryStore.BATCH_SIZE) {
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.project;
+
+import com.example.project.InventoryDatabaseHelper.InventoryTable;
+import com.example.project.InventoryDatabaseHelper.StockMovementTable;
+import com.example.project.InventoryDatabaseHelper.StockTable;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class DataLayerStressTest {
+    private static final int ITEMS = 1000;
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int WRITES_PER_WRITER = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JdbcInventoryDatabase database;
+    private long firstId;
+    private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+    private final AtomicLong lockFailures = new AtomicLong();
+
+    @Before
+    public void setUp() throws Exception {
+        database = new JdbcInventoryDatabase(folder.newFile("stress.db"));
+        Connection connection = database.open();
+        try {
+            firstId = JdbcInventoryDatabase.seed(connection, ITEMS);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void concurrentReadersAndWriters_loseNoUpdatesAndNeverLock() throws Exception {
+        // Writes per item, to check the totals against afterwards
+        final AtomicIntegerArray increments = new AtomicIntegerArray(ITEMS);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong maxWriteNanos = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        long initialTotal = total();
+        long initialMovements = movements();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            final int seed = w;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        Connection connection = database.open();
+                        try {
+                            start.await();
+                            PreparedStatement read = connection.prepareStatement("SELECT " + InventoryTable.COL_QTY +
+                                    " FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_ID + " = ?");
+                            PreparedStatement update = connection.prepareStatement(
+                                    InventoryDatabaseHelper.UPDATE_ITEM_QUANTITY_SQL);
+                            for (int i = 0; i < WRITES_PER_WRITER; i++) {
+                                int item = random.nextInt(ITEMS);
+                                long begin = System.nanoTime();
+                                // Read, then write what was read plus one: an update is lost
+                                // unless the transaction keeps other writers out in between
+                                if (write(connection, read, update, firstId + item)) {
+                                    increments.incrementAndGet(item);
+                                }
+                                long nanos = System.nanoTime() - begin;
+                                long max = maxWriteNanos.get();
+                                while (nanos > max && !maxWriteNanos.compareAndSet(max, nanos)) {
+                                    max = maxWriteNanos.get();
+                                }
+                            }
+                        } finally {
+                            connection.close();
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            }, "stress-writer-" + w));
+        }
+        for (int r = 0; r < READERS; r++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Connection connection = database.open();
+                        try {
+                            start.await();
+                            long lastTotal = 0;
+                            while (writing.get()) {
+                                long total = readConsistentTotal(connection);
+                                if (total < 0) {
+                                    continue;
+                                }
+                                // Writers only add, so a later snapshot never has less
+                                assertTrue("Total went from " + lastTotal + " to " + total, total >= lastTotal);
+                                lastTotal = total;
+                                reads.incrementAndGet();
+                            }
+                        } finally {
+                            connection.close();
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            }, "stress-reader-" + r));
+        }
+
+        long startNanos = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (int i = 0; i < WRITERS; i++) {
+            threads.get(i).join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (Throwable failure : failures) {
+            failure.printStackTrace();
+        }
+        assertEquals("database is locked", 0, lockFailures.get());
+        assertTrue(failures.isEmpty());
+        int written = 0;
+        Connection connection = database.open();
+        try {
+            PreparedStatement read = connection.prepareStatement("SELECT " + InventoryTable.COL_QTY + " FROM " +
+                    InventoryTable.TABLE + " WHERE " + InventoryTable.COL_ID + " = ?");
+            for (int item = 0; item < ITEMS; item++) {
+                read.setLong(1, firstId + item);
+                ResultSet result = read.executeQuery();
+                assertTrue(result.next());
+                // Seeded at item % 100
+                assertEquals("Item " + item, item % 100 + increments.get(item), result.getInt(1));
+                result.close();
+                written += increments.get(item);
+            }
+        } finally {
+            connection.close();
+        }
+        assertEquals(WRITERS * WRITES_PER_WRITER, written);
+        assertEquals(initialTotal + written, total());
+        // One ledger row per write, appended by the trigger
+        assertEquals(initialMovements + written, movements());
+
+        BenchmarkResults results;
+        connection = database.open();
+        try {
+            results = new BenchmarkResults("data-layer-stress", JdbcInventoryDatabase.sqliteVersion(connection));
+        } finally {
+            connection.close();
+        }
+        Map<String, Number> values = BenchmarkResults.values();
+        values.put("writers", WRITERS);
+        values.put("readers", READERS);
+        values.put("writes", written);
+        values.put("writesPerSecond", written * 1e9 / elapsedNanos);
+        values.put("reads", reads.get());
+        values.put("readsPerSecond", reads.get() * 1e9 / elapsedNanos);
+        values.put("maxWriteMicros", TimeUnit.NANOSECONDS.toMicros(maxWriteNanos.get()));
+        values.put("lockFailures", lockFailures.get());
+        results.add("readersAndWriters", ITEMS, values);
+        results.write();
+    }
+
+    // One read-modify-write in a transaction that takes the write lock up front, as Android's
+    // beginTransaction() does. Returns false if it failed because the database was locked
+    private boolean write(Connection connection, PreparedStatement read, PreparedStatement update, long id)
+            throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("BEGIN IMMEDIATE");
+        } catch (SQLException e) {
+            statement.close();
+            return lockFailed(e);
+        }
+        boolean committed = false;
+        try {
+            read.setLong(1, id);
+            ResultSet result = read.executeQuery();
+            assertTrue(result.next());
+            int quantity = result.getInt(1);
+            result.close();
+            update.setInt(1, quantity + 1);
+            update.setLong(2, id);
+            update.setLong(3, id);
+            assertEquals(1, update.executeUpdate());
+            statement.execute("COMMIT");
+            committed = true;
+            return true;
+        } catch (SQLException e) {
+            return lockFailed(e);
+        } finally {
+            if (!committed) {
+                statement.execute("ROLLBACK");
+            }
+            statement.close();
+        }
+    }
+
+    private boolean lockFailed(SQLException e) throws SQLException {
+        String message = String.valueOf(e.getMessage());
+        if (message.contains("SQLITE_BUSY") || message.contains("locked")) {
+            lockFailures.incrementAndGet();
+            return false;
+        }
+        throw e;
+    }
+
+    // Totals from inventory and from stock in one read transaction. The rollup triggers write
+    // both in the same transaction as the change, so a snapshot never sees them disagree.
+    // Returns -1 if the database was locked
+    private long readConsistentTotal(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("BEGIN");
+            try {
+                long items = longFor(statement, "SELECT SUM(" + InventoryTable.COL_QTY + ") FROM " + InventoryTable.TABLE);
+                long stock = longFor(statement, "SELECT SUM(" + StockTable.COL_QTY + ") FROM " + StockTable.TABLE);
+                assertEquals(items, stock);
+                return items;
+            } finally {
+                statement.execute("COMMIT");
+            }
+        } catch (SQLException e) {
+            lockFailed(e);
+            return -1;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private long total() throws SQLException {
+        return query("SELECT SUM(" + InventoryTable.COL_QTY + ") FROM " + InventoryTable.TABLE);
+    }
+
+    private long movements() throws SQLException {
+        return query("SELECT COUNT(*) FROM " + StockMovementTable.TABLE);
+    }
+
+    private long query(String sql) throws SQLException {
+        Connection connection = database.open();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                return longFor(statement, sql);
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static long longFor(Statement statement, String sql) throws SQLException {
+        ResultSet result = statement.executeQuery(sql);
+        try {
+            assertTrue(result.next());
+            return result.getLong(1);
+        } finally {
+            result.close();
+        }
+    }
+}
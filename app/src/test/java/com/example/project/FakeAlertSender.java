@@ -0,0 +1,28 @@
+package com.example.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Records digests instead of sending them
+class FakeAlertSender implements AlertSender {
+    final List<List<InventoryItem>> digests = new ArrayList<>();
+    final List<Thread> senderThreads = new ArrayList<>();
+
+    @Override
+    public synchronized void sendDigest(List<InventoryItem> lowStockItems) {
+        digests.add(lowStockItems);
+        senderThreads.add(Thread.currentThread());
+    }
+
+    synchronized int digestCount() {
+        return digests.size();
+    }
+
+    synchronized int alertedItemCount() {
+        int count = 0;
+        for (List<InventoryItem> digest : digests) {
+            count += digest.size();
+        }
+        return count;
+    }
+}
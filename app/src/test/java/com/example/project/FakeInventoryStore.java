@@ -0,0 +1,722 @@
+package com.example.project;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-memory InventoryStore for plain JVM tests. Writes can be held on a latch to simulate
+// busy storage
+class FakeInventoryStore implements InventoryStore {
+    // In _id order, like the primary key
+    private final Map<Long, InventoryItem> items = new TreeMap<>();
+    private final Map<String, Long> idsByKey = new HashMap<>();
+    private final Map<String, String> passwords = new LinkedHashMap<>();
+    private long nextId = 1;
+    // Ledger rows in the order the triggers would append them
+    private final List<StockMovement> movements = new ArrayList<>();
+    private long nextMovementId = 1;
+    // Time stamped on new movements, the current time when 0
+    volatile long movementTime = 0;
+    // Movements applied from other devices, never pushed back
+    private final Set<Long> remoteMovementIds = new HashSet<>();
+    private final Map<String, String> syncState = new HashMap<>();
+    private final List<Location> locations = new ArrayList<>();
+    private final Map<Long, String> skus = new HashMap<>();
+    // Stock outside the default location, per item. The default location holds the rest of
+    // each item's total, so item-level writes only touch the total
+    private final Map<Long, Map<Long, Integer>> otherStock = new HashMap<>();
+    // Category rows by id, their totals are left at 0 and added up when read
+    private final Map<Long, Category> categories = new TreeMap<>();
+    private long nextCategoryId = 1;
+    private final Map<Long, Long> itemCategories = new HashMap<>();
+    // Number of getItem()/findItemByName()/getItemsPage() calls, to check what a change costs in reads
+    final AtomicInteger reads = new AtomicInteger();
+    // Number of findItemIdBySku() calls that reached the store
+    final AtomicInteger skuLookups = new AtomicInteger();
+    volatile CountDownLatch writeGate = new CountDownLatch(0);
+    // Number of writes that found writeGate closed
+    final AtomicInteger gatedWrites = new AtomicInteger();
+
+    FakeInventoryStore() {
+        locations.add(new Location(Location.DEFAULT_ID, "Main stockroom"));
+    }
+
+    private void awaitGate() {
+        if (writeGate.getCount() > 0) {
+            gatedWrites.incrementAndGet();
+        }
+        try {
+            writeGate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized long insertUser(String name, String email, String passwordHash) {
+        if (passwords.containsKey(email)) {
+            return -1;
+        }
+        passwords.put(email, passwordHash);
+        return passwords.size();
+    }
+
+    @Override
+    public synchronized String getPasswordHash(String email) {
+        return passwords.get(email);
+    }
+
+    @Override
+    public synchronized void updatePasswordHash(String email, String passwordHash) {
+        if (passwords.containsKey(email)) {
+            passwords.put(email, passwordHash);
+        }
+    }
+
+    @Override
+    public long insertItem(String itemName, int quantity) {
+        awaitGate();
+        synchronized (this) {
+            if (findByName(itemName) != null) {
+                return -1;
+            }
+            return put(itemName, quantity);
+        }
+    }
+
+    @Override
+    public synchronized void deleteItem(long id) {
+        awaitGate();
+        InventoryItem item = items.remove(id);
+        if (item != null) {
+            idsByKey.remove(InventoryItem.normalizeName(item.getName()));
+            otherStock.remove(id);
+            skus.remove(id);
+            itemCategories.remove(id);
+            record(id, -item.getQuantity(), 0);
+        }
+    }
+
+    @Override
+    public synchronized void adjustItemQuantity(long id, int delta) {
+        awaitGate();
+        InventoryItem item = items.get(id);
+        if (item != null) {
+            // The default location stops at zero
+            delta = Math.max(delta, -defaultQuantity(item));
+        }
+        if (item != null && delta != 0) {
+            int quantity = item.getQuantity() + delta;
+            items.put(id, new InventoryItem(id, item.getName(), quantity, item.getReorderThreshold()));
+            record(id, delta, quantity);
+        }
+    }
+
+    @Override
+    public synchronized long findItemIdBySku(String sku) {
+        skuLookups.incrementAndGet();
+        return idForSku(sku);
+    }
+
+    private long idForSku(String sku) {
+        for (Map.Entry<Long, String> entry : skus.entrySet()) {
+            if (entry.getValue().equals(sku)) {
+                return entry.getKey();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized String getItemSku(long id) {
+        return skus.get(id);
+    }
+
+    @Override
+    public synchronized boolean updateItemSku(long id, String sku) {
+        awaitGate();
+        if (!items.containsKey(id)) {
+            return false;
+        }
+        if (sku == null) {
+            skus.remove(id);
+            return true;
+        }
+        long existing = idForSku(sku);
+        if (existing != -1 && existing != id) {
+            return false;
+        }
+        skus.put(id, sku);
+        return true;
+    }
+
+    @Override
+    public synchronized void setStockQuantity(long itemId, long locationId, int quantity) {
+        awaitGate();
+        InventoryItem item = items.get(itemId);
+        if (item == null) {
+            return;
+        }
+        Integer previous = locationId == Location.DEFAULT_ID ? Integer.valueOf(defaultQuantity(item))
+                : stockOf(itemId).put(locationId, quantity);
+        int delta = quantity - (previous == null ? 0 : previous);
+        if (delta != 0) {
+            int total = item.getQuantity() + delta;
+            items.put(itemId, new InventoryItem(itemId, item.getName(), total, item.getReorderThreshold()));
+            record(itemId, delta, total);
+        }
+    }
+
+    @Override
+    public synchronized long insertLocation(String name) {
+        for (Location location : locations) {
+            if (location.getName().equalsIgnoreCase(name)) {
+                return -1;
+            }
+        }
+        long id = locations.get(locations.size() - 1).getId() + 1;
+        locations.add(new Location(id, name));
+        return id;
+    }
+
+    @Override
+    public synchronized List<Location> getLocations() {
+        return new ArrayList<>(locations);
+    }
+
+    @Override
+    public synchronized List<InventoryItem> getLocationItemsPage(long locationId, long afterId, int limit) {
+        List<InventoryItem> page = new ArrayList<>();
+        for (InventoryItem item : items.values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            if (item.getId() <= afterId) {
+                continue;
+            }
+            Integer quantity = locationId == Location.DEFAULT_ID ? Integer.valueOf(defaultQuantity(item))
+                    : stockOf(item.getId()).get(locationId);
+            if (quantity != null) {
+                page.add(new InventoryItem(item.getId(), item.getName(), quantity, item.getReorderThreshold()));
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized long insertCategory(long parentId, String name) {
+        if ((parentId != Category.ROOT && !categories.containsKey(parentId)) || childNamed(parentId, name) != null) {
+            return -1;
+        }
+        long id = nextCategoryId++;
+        categories.put(id, new Category(id, parentId, name, 0, 0));
+        return id;
+    }
+
+    @Override
+    public synchronized List<Category> getCategories(long parentId) {
+        List<Category> children = new ArrayList<>();
+        for (Category category : categories.values()) {
+            if (category.getParentId() == parentId) {
+                children.add(withTotals(category));
+            }
+        }
+        Collections.sort(children, new Comparator<Category>() {
+            @Override
+            public int compare(Category a, Category b) {
+                return a.getName().compareToIgnoreCase(b.getName());
+            }
+        });
+        return children;
+    }
+
+    @Override
+    public synchronized List<Category> getCategoryPath(long id) {
+        List<Category> path = new ArrayList<>();
+        for (Category category = categories.get(id); category != null; category = categories.get(category.getParentId())) {
+            path.add(0, withTotals(category));
+        }
+        return path;
+    }
+
+    @Override
+    public synchronized boolean moveCategory(long id, long newParentId) {
+        Category category = categories.get(id);
+        if (category == null || (newParentId != Category.ROOT && !categories.containsKey(newParentId))) {
+            return false;
+        }
+        if (category.getParentId() == newParentId) {
+            return true;
+        }
+        if (isWithin(newParentId, id) || childNamed(newParentId, category.getName()) != null) {
+            return false;
+        }
+        categories.put(id, new Category(id, newParentId, category.getName(), 0, 0));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean deleteCategory(long id) {
+        Category category = categories.get(id);
+        if (category == null) {
+            return false;
+        }
+        long parentId = category.getParentId();
+        for (Category child : categories.values()) {
+            if (child.getParentId() == id && childNamed(parentId, child.getName()) != null) {
+                return false;
+            }
+        }
+        for (Category child : new ArrayList<>(categories.values())) {
+            if (child.getParentId() == id) {
+                categories.put(child.getId(), new Category(child.getId(), parentId, child.getName(), 0, 0));
+            }
+        }
+        for (Map.Entry<Long, Long> filed : new ArrayList<>(itemCategories.entrySet())) {
+            if (filed.getValue() == id) {
+                if (parentId == Category.ROOT) {
+                    itemCategories.remove(filed.getKey());
+                } else {
+                    filed.setValue(parentId);
+                }
+            }
+        }
+        categories.remove(id);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean setItemCategory(long[] itemIds, long categoryId) {
+        awaitGate();
+        if (categoryId != Category.ROOT && !categories.containsKey(categoryId)) {
+            return false;
+        }
+        for (long itemId : itemIds) {
+            if (!items.containsKey(itemId)) {
+                continue;
+            }
+            if (categoryId == Category.ROOT) {
+                itemCategories.remove(itemId);
+            } else {
+                itemCategories.put(itemId, categoryId);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized List<InventoryItem> getCategoryItemsPage(long categoryId, long afterId, int limit) {
+        List<InventoryItem> page = new ArrayList<>();
+        for (InventoryItem item : items.values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            Long filedUnder = itemCategories.get(item.getId());
+            if (item.getId() > afterId && (categoryId == Category.ROOT ||
+                    (filedUnder != null && isWithin(filedUnder, categoryId)))) {
+                page.add(item);
+            }
+        }
+        return page;
+    }
+
+    // Whether the category is the ancestor or below it
+    private boolean isWithin(long categoryId, long ancestorId) {
+        for (Category category = categories.get(categoryId); category != null;
+             category = categories.get(category.getParentId())) {
+            if (category.getId() == ancestorId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Category childNamed(long parentId, String name) {
+        for (Category category : categories.values()) {
+            if (category.getParentId() == parentId && category.getName().equalsIgnoreCase(name)) {
+                return category;
+            }
+        }
+        return null;
+    }
+
+    private Category withTotals(Category category) {
+        int count = 0;
+        long units = 0;
+        for (Map.Entry<Long, Long> filed : itemCategories.entrySet()) {
+            if (isWithin(filed.getValue(), category.getId())) {
+                count++;
+                units += items.get(filed.getKey()).getQuantity();
+            }
+        }
+        return new Category(category.getId(), category.getParentId(), category.getName(), count, units);
+    }
+
+    private Map<Long, Integer> stockOf(long itemId) {
+        Map<Long, Integer> stock = otherStock.get(itemId);
+        if (stock == null) {
+            stock = new HashMap<>();
+            otherStock.put(itemId, stock);
+        }
+        return stock;
+    }
+
+    private int defaultQuantity(InventoryItem item) {
+        int quantity = item.getQuantity();
+        for (int other : stockOf(item.getId()).values()) {
+            quantity -= other;
+        }
+        return quantity;
+    }
+
+    @Override
+    public synchronized void updateItemQuantity(long id, int newQuantity) {
+        awaitGate();
+        InventoryItem item = items.get(id);
+        if (item != null) {
+            newQuantity = Math.max(newQuantity, item.getQuantity() - defaultQuantity(item));
+            items.put(id, new InventoryItem(id, item.getName(), newQuantity, item.getReorderThreshold()));
+            if (newQuantity != item.getQuantity()) {
+                record(id, newQuantity - item.getQuantity(), newQuantity);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean updateItemName(long id, String newName) {
+        awaitGate();
+        InventoryItem item = items.get(id);
+        InventoryItem existing = findByName(newName);
+        if (item == null || (existing != null && existing.getId() != id)) {
+            return false;
+        }
+        idsByKey.remove(InventoryItem.normalizeName(item.getName()));
+        idsByKey.put(InventoryItem.normalizeName(newName), id);
+        items.put(id, new InventoryItem(id, newName, item.getQuantity(), item.getReorderThreshold()));
+        return true;
+    }
+
+    private InventoryItem findByName(String name) {
+        Long id = idsByKey.get(InventoryItem.normalizeName(name));
+        return id == null ? null : items.get(id);
+    }
+
+    private long put(String name, int quantity) {
+        long id = nextId++;
+        items.put(id, new InventoryItem(id, name, quantity));
+        idsByKey.put(InventoryItem.normalizeName(name), id);
+        record(id, quantity, quantity);
+        return id;
+    }
+
+    private void record(long itemId, int delta, int quantityAfter) {
+        long createdAt = movementTime != 0 ? movementTime : System.currentTimeMillis();
+        movements.add(new StockMovement(nextMovementId++, itemId, delta, quantityAfter, createdAt));
+    }
+
+    @Override
+    public synchronized void updateReorderThreshold(long id, int threshold) {
+        awaitGate();
+        InventoryItem item = items.get(id);
+        if (item != null) {
+            items.put(id, new InventoryItem(id, item.getName(), item.getQuantity(), threshold));
+        }
+    }
+
+    @Override
+    public synchronized void deleteItems(long[] ids) {
+        for (long id : ids) {
+            deleteItem(id);
+        }
+    }
+
+    @Override
+    public synchronized int[] adjustItemQuantities(long[] ids, int[] deltas) {
+        int[] applied = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            InventoryItem item = items.get(ids[i]);
+            if (item != null) {
+                applied[i] = Math.max(deltas[i], -defaultQuantity(item));
+                adjustItemQuantity(ids[i], applied[i]);
+            }
+        }
+        return applied;
+    }
+
+    // Every old name is given up before the new ones are taken, like the temporary keys in
+    // SQLite, so names can move between the renamed items. Put back on the first failure
+    @Override
+    public synchronized boolean updateItemNames(long[] ids, String[] names) {
+        awaitGate();
+        InventoryItem[] old = new InventoryItem[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            old[i] = items.get(ids[i]);
+            if (old[i] == null) {
+                return false;
+            }
+        }
+        for (InventoryItem item : old) {
+            idsByKey.remove(InventoryItem.normalizeName(item.getName()));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            String key = InventoryItem.normalizeName(names[i]);
+            if (idsByKey.containsKey(key)) {
+                for (int j = 0; j < i; j++) {
+                    idsByKey.remove(InventoryItem.normalizeName(names[j]));
+                }
+                for (InventoryItem item : old) {
+                    idsByKey.put(InventoryItem.normalizeName(item.getName()), item.getId());
+                }
+                return false;
+            }
+            idsByKey.put(key, ids[i]);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            items.put(ids[i], new InventoryItem(ids[i], names[i], old[i].getQuantity(), old[i].getReorderThreshold()));
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean restoreItems(List<InventoryItem> restored, String[] itemSkus) {
+        awaitGate();
+        for (int i = 0; i < restored.size(); i++) {
+            InventoryItem item = restored.get(i);
+            if (items.containsKey(item.getId()) || findByName(item.getName()) != null
+                    || (itemSkus[i] != null && idForSku(itemSkus[i]) != -1)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < restored.size(); i++) {
+            InventoryItem item = restored.get(i);
+            items.put(item.getId(), item);
+            idsByKey.put(InventoryItem.normalizeName(item.getName()), item.getId());
+            if (itemSkus[i] != null) {
+                skus.put(item.getId(), itemSkus[i]);
+            }
+            record(item.getId(), item.getQuantity(), item.getQuantity());
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized List<InventoryItem> getLowStockItems() {
+        List<InventoryItem> low = new ArrayList<>();
+        for (InventoryItem item : items.values()) {
+            if (item.isLowStock()) {
+                low.add(item);
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public synchronized InventoryItem getItem(long id) {
+        reads.incrementAndGet();
+        return items.get(id);
+    }
+
+    @Override
+    public synchronized InventoryItem findItemByName(String name) {
+        reads.incrementAndGet();
+        return findByName(name);
+    }
+
+    @Override
+    public synchronized List<InventoryItem> getItemsPage(long afterId, int limit) {
+        reads.incrementAndGet();
+        List<InventoryItem> page = new ArrayList<>();
+        for (InventoryItem item : items.values()) {
+            if (item.getId() > afterId && page.size() < limit) {
+                page.add(item);
+            }
+        }
+        return page;
+    }
+
+    // Sorts a copy on every call, where the database reads its index in order
+    @Override
+    public synchronized List<InventoryItem> getSortedItemsPage(final ItemOrder order, boolean inStockOnly,
+                                                               InventoryItem after, int limit) {
+        reads.incrementAndGet();
+        List<InventoryItem> sorted = new ArrayList<>();
+        for (InventoryItem item : items.values()) {
+            if ((!inStockOnly || item.getQuantity() > 0) && (after == null || order.compare(item, after) > 0)) {
+                sorted.add(item);
+            }
+        }
+        Collections.sort(sorted, new Comparator<InventoryItem>() {
+            @Override
+            public int compare(InventoryItem a, InventoryItem b) {
+                return order.compare(a, b);
+            }
+        });
+        return new ArrayList<>(sorted.subList(0, Math.min(limit, sorted.size())));
+    }
+
+    @Override
+    public synchronized List<InventoryItem> searchItems(String query, long afterId, int limit) {
+        reads.incrementAndGet();
+        List<InventoryItem> page = new ArrayList<>();
+        if (InventorySearch.toMatchQuery(query) == null) {
+            return page;
+        }
+        for (InventoryItem item : items.values()) {
+            if (item.getId() > afterId && page.size() < limit && InventorySearch.matches(item.getName(), query)) {
+                page.add(item);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized List<StockMovement> getMovements(long itemId, long fromMillis, StockMovement after, int limit) {
+        List<StockMovement> page = new ArrayList<>();
+        for (int i = movements.size() - 1; i >= 0 && page.size() < limit; i--) {
+            StockMovement movement = movements.get(i);
+            if (movement.getItemId() == itemId && movement.getCreatedAt() >= fromMillis
+                    && (after == null || movement.getId() < after.getId())) {
+                page.add(movement);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized int getQuantityAt(long itemId, long atMillis) {
+        for (int i = movements.size() - 1; i >= 0; i--) {
+            StockMovement movement = movements.get(i);
+            if (movement.getItemId() == itemId && movement.getCreatedAt() <= atMillis) {
+                return movement.getQuantityAfter();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized int compactMovements(long beforeMillis) {
+        int removed = 0;
+        for (Iterator<StockMovement> it = movements.iterator(); it.hasNext(); ) {
+            if (it.next().getCreatedAt() < beforeMillis) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized List<StockMovement> getMovementsAfter(long afterId, int limit) {
+        List<StockMovement> page = new ArrayList<>();
+        for (StockMovement movement : movements) {
+            if (page.size() < limit && movement.getId() > afterId && items.containsKey(movement.getItemId())) {
+                page.add(movement);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized long findFirstMovementId(long fromMillis) {
+        for (StockMovement movement : movements) {
+            if (movement.getCreatedAt() >= fromMillis) {
+                return movement.getId();
+            }
+        }
+        return nextMovementId;
+    }
+
+    @Override
+    public synchronized String getSyncState(String key) {
+        return syncState.get(key);
+    }
+
+    @Override
+    public synchronized void setSyncState(String key, String value) {
+        syncState.put(key, value);
+    }
+
+    @Override
+    public synchronized List<SyncChange> getUnsyncedChanges(long afterId, int limit) {
+        List<SyncChange> changes = new ArrayList<>();
+        for (StockMovement movement : movements) {
+            InventoryItem item = items.get(movement.getItemId());
+            if (changes.size() < limit && movement.getId() > afterId && item != null
+                    && !remoteMovementIds.contains(movement.getId())) {
+                changes.add(new SyncChange(movement.getId(), item.getName(), movement.getDelta()));
+            }
+        }
+        return changes;
+    }
+
+    @Override
+    public void applyRemoteChanges(List<SyncChange> changes, String cursorKey, String cursorValue) {
+        awaitGate();
+        synchronized (this) {
+            long before = nextMovementId;
+            for (SyncChange change : changes) {
+                InventoryItem existing = findByName(change.getItemName());
+                if (existing == null) {
+                    put(change.getItemName(), change.getDelta());
+                } else {
+                    int quantity = existing.getQuantity() + change.getDelta();
+                    items.put(existing.getId(), new InventoryItem(existing.getId(), existing.getName(), quantity,
+                            existing.getReorderThreshold()));
+                    record(existing.getId(), change.getDelta(), quantity);
+                }
+            }
+            for (long id = before; id < nextMovementId; id++) {
+                remoteMovementIds.add(id);
+            }
+            syncState.put(cursorKey, cursorValue);
+        }
+    }
+
+    @Override
+    public int upsertItems(Iterator<InventoryItem> rows, ProgressListener listener) {
+        awaitGate();
+        int count = 0;
+        synchronized (this) {
+            while (rows.hasNext()) {
+                InventoryItem row = rows.next();
+                InventoryItem existing = findByName(row.getName());
+                if (existing == null) {
+                    put(row.getName(), row.getQuantity());
+                } else {
+                    int quantity = Math.max(row.getQuantity(), existing.getQuantity() - defaultQuantity(existing));
+                    items.put(existing.getId(), new InventoryItem(existing.getId(), existing.getName(),
+                            quantity, existing.getReorderThreshold()));
+                    if (quantity != existing.getQuantity()) {
+                        record(existing.getId(), quantity - existing.getQuantity(), quantity);
+                    }
+                }
+                count++;
+                if (listener != null && count % BATCH_SIZE == 0) {
+                    listener.onProgress(count);
+                }
+            }
+        }
+        if (listener != null) {
+            listener.onProgress(count);
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void forEachItem(ItemVisitor visitor) throws IOException {
+        for (InventoryItem item : items.values()) {
+            visitor.visit(item);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.project;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class InventoryCacheTest {
+    private FakeInventoryStore store;
+    private InventoryCache cache;
+
+    @Before
+    public void setUp() {
+        store = new FakeInventoryStore();
+        cache = new InventoryCache(store, 100);
+    }
+
+    @Test
+    public void reads_afterFirstLoad_doNotTouchTheStore() {
+        for (int i = 0; i < 50; i++) {
+            store.insertItem("item" + i, i);
+        }
+        cache.getItem(1);
+        int readsAfterLoad = store.reads.get();
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 50, cache.getItem(i % 50 + 1).getQuantity());
+            assertEquals(i % 50 + 1, cache.findItemByName("  ITEM" + (i % 50)).getId());
+            assertEquals(10, cache.getItemsPage(i % 40, 10).size());
+        }
+        assertEquals(readsAfterLoad, store.reads.get());
+    }
+
+    @Test
+    public void writes_areVisibleThroughTheCache() {
+        long soda = cache.insertItem("Soda", 4);
+        long chips = cache.insertItem("Chips", 2);
+        cache.getItem(soda);
+
+        long gum = cache.insertItem("Gum", 7);
+        cache.updateItemQuantity(soda, 9);
+        cache.updateReorderThreshold(chips, 3);
+        assertTrue(cache.updateItemName(gum, "Mint Gum"));
+        cache.deleteItem(chips);
+
+        assertEquals(9, cache.getItem(soda).getQuantity());
+        assertNull(cache.getItem(chips));
+        assertNull(cache.findItemByName("gum"));
+        assertEquals(gum, cache.findItemByName("mint gum").getId());
+        assertEquals(Arrays.asList(soda, gum), ids(cache.getItemsPage(0, 10)));
+        // The copy matches the store row for row
+        assertEquals(ids(store.getItemsPage(0, 10)), ids(cache.getItemsPage(0, 10)));
+    }
+
+    @Test
+    public void failedWrites_leaveTheCacheAlone() {
+        long soda = cache.insertItem("Soda", 4);
+        long chips = cache.insertItem("Chips", 2);
+        cache.getItem(soda);
+
+        assertEquals(-1, cache.insertItem("SODA", 1));
+        assertFalse(cache.updateItemName(chips, "soda"));
+
+        assertEquals(4, cache.findItemByName("soda").getQuantity());
+        assertEquals("Chips", cache.getItem(chips).getName());
+    }
+
+    @Test
+    public void upsert_reloadsTheCopy() {
+        long soda = cache.insertItem("Soda", 4);
+        cache.getItem(soda);
+
+        cache.upsertItems(Arrays.asList(new InventoryItem(0, "soda", 12), new InventoryItem(0, "Chips", 3)).iterator(),
+                null);
+
+        assertEquals(12, cache.getItem(soda).getQuantity());
+        assertNotNull(cache.findItemByName("chips"));
+    }
+
+    @Test
+    public void catalogLargerThanCapacity_isReadFromTheStore() {
+        for (int i = 0; i < 150; i++) {
+            store.insertItem("item" + i, i);
+        }
+
+        int reads = store.reads.get();
+        assertEquals(149, cache.getItem(150).getQuantity());
+        assertEquals(100, cache.getItemsPage(0, 100).size());
+        // Nothing is kept once the load finds the table too big, every read goes to the store
+        int readsPerCall = store.reads.get();
+        cache.getItem(1);
+        assertEquals(readsPerCall + 1, store.reads.get());
+        assertTrue(readsPerCall > reads);
+    }
+
+    @Test
+    public void insertsPastCapacity_dropTheCopy() {
+        for (int i = 0; i < 100; i++) {
+            store.insertItem("item" + i, i);
+        }
+        cache.getItem(1);
+
+        long id = cache.insertItem("one too many", 1);
+        int reads = store.reads.get();
+
+        assertEquals(1, cache.getItem(id).getQuantity());
+        assertEquals(reads + 1, store.reads.get());
+    }
+
+    @Test
+    public void lowStockItems_areServedFromTheCopy() {
+        long soda = cache.insertItem("Soda", 0);
+        long chips = cache.insertItem("Chips", 5);
+        cache.updateReorderThreshold(chips, 5);
+        cache.insertItem("Gum", 3);
+
+        assertEquals(Arrays.asList(soda, chips), ids(cache.getLowStockItems()));
+    }
+
+    @Test
+    public void locationWrites_updateTheCachedTotal() {
+        long soda = cache.insertItem("Soda", 10);
+        long back = cache.insertLocation("Back room");
+        cache.getItem(soda);
+
+        cache.setStockQuantity(soda, back, 4);
+        assertEquals(14, cache.getItem(soda).getQuantity());
+        cache.updateItemQuantity(soda, 20);
+        cache.setStockQuantity(soda, back, 1);
+
+        assertEquals(17, cache.getItem(soda).getQuantity());
+        assertEquals(16, cache.getLocationItemsPage(Location.DEFAULT_ID, 0, 10).get(0).getQuantity());
+        assertEquals(1, cache.getLocationItemsPage(back, 0, 10).get(0).getQuantity());
+        assertEquals(-1, cache.insertLocation("back ROOM"));
+    }
+
+    @Test
+    public void totalsBelowOtherLocations_stopAtTheirStock() {
+        long soda = cache.insertItem("Soda", 10);
+        long back = cache.insertLocation("Back room");
+        cache.setStockQuantity(soda, back, 4);
+        cache.getItem(soda);
+
+        cache.updateItemQuantity(soda, 1);
+        assertEquals(4, cache.getItem(soda).getQuantity());
+        assertEquals(0, cache.getLocationItemsPage(Location.DEFAULT_ID, 0, 10).get(0).getQuantity());
+        cache.adjustItemQuantity(soda, 3);
+        cache.adjustItemQuantity(soda, -5);
+        assertEquals(4, cache.getItem(soda).getQuantity());
+        assertEquals(4, cache.getLocationItemsPage(back, 0, 10).get(0).getQuantity());
+    }
+
+    @Test
+    public void batchAdjust_withStockElsewhere_keepsTheCacheOnTheStore() {
+        long soda = cache.insertItem("Soda", 2);
+        long chips = cache.insertItem("Chips", 6);
+        long back = cache.insertLocation("Back room");
+        cache.setStockQuantity(soda, back, 8);
+        cache.getItem(soda);
+
+        int[] applied = cache.adjustItemQuantities(new long[]{soda, chips, 99}, new int[]{-5, -2, 1});
+
+        assertArrayEquals(new int[]{-2, -2, 0}, applied);
+        assertEquals(8, cache.getItem(soda).getQuantity());
+        assertEquals(store.getItem(soda).getQuantity(), cache.getItem(soda).getQuantity());
+        assertEquals(4, cache.getItem(chips).getQuantity());
+        assertEquals(8, cache.getLocationItemsPage(back, 0, 10).get(0).getQuantity());
+    }
+
+    @Test
+    public void longObjectMap_matchesHashMap() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // A small key range forces collisions, removals and reinsertions
+            long key = random.nextInt(2000) - 10;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = "v" + i;
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -10; key < 1990; key++) {
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void sortedPages_comeFromTheStoreExceptIdOrder() {
+        long soda = store.insertItem("Soda", 4);
+        long apples = store.insertItem("apples", 0);
+        long chips = store.insertItem("Chips", 2);
+        cache.getItem(soda);
+        int readsAfterLoad = store.reads.get();
+
+        assertEquals(Arrays.asList(soda, apples, chips), ids(cache.getSortedItemsPage(ItemOrder.ID, false, null, 10)));
+        assertEquals(Arrays.asList(chips), ids(cache.getSortedItemsPage(ItemOrder.ID, false, cache.getItem(apples), 10)));
+        assertEquals(readsAfterLoad, store.reads.get());
+
+        assertEquals(Arrays.asList(apples, chips, soda), ids(cache.getSortedItemsPage(ItemOrder.NAME, false, null, 10)));
+        assertEquals(Arrays.asList(chips, soda), ids(cache.getSortedItemsPage(ItemOrder.QUANTITY, true, null, 10)));
+        assertEquals(Arrays.asList(soda), ids(cache.getSortedItemsPage(ItemOrder.QUANTITY, true, cache.getItem(chips), 10)));
+        assertEquals(Arrays.asList(soda, chips), ids(cache.getSortedItemsPage(ItemOrder.ID, true, null, 10)));
+        assertEquals(readsAfterLoad + 4, store.reads.get());
+    }
+
+    private static List<Long> ids(List<InventoryItem> items) {
+        Long[] ids = new Long[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = items.get(i).getId();
+        }
+        return Arrays.asList(ids);
+    }
+}
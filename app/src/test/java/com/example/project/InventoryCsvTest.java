@@ -0,0 +1,115 @@
+package com.example.project;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InventoryCsvTest {
+
+    @Test
+    public void reader_handlesQuotesEscapesAndLineEndings() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a,\"b,c\"\r\n\"say \"\"hi\"\"\",\"two\nlines\"\nlast,"));
+
+        assertEquals(Arrays.asList("a", "b,c"), reader.readRecord());
+        assertEquals(Arrays.asList("say \"hi\"", "two\nlines"), reader.readRecord());
+        assertEquals(Arrays.asList("last", ""), reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+
+    @Test(expected = IOException.class)
+    public void reader_rejectsUnterminatedQuote() throws IOException {
+        new CsvReader(new StringReader("\"open,1\n")).readRecord();
+    }
+
+    @Test
+    public void import_usesHeaderOrderAndSkipsBadRows() throws IOException {
+        FakeInventoryStore store = new FakeInventoryStore();
+        store.insertItem("Soda", 1);
+
+        InventoryCsv.ImportResult result = new InventoryCsv(store).importFrom(
+                new StringReader("qty,item\n5,soda\n3,Chips\n\nx,Bad\n2,\n"), null);
+
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getSkipped());
+        List<InventoryItem> items = store.getItemsPage(0, 10);
+        assertEquals(2, items.size());
+        assertEquals("Soda", items.get(0).getName());
+        assertEquals(5, items.get(0).getQuantity());
+        assertEquals("Chips", items.get(1).getName());
+    }
+
+    @Test
+    public void exportThenImport_roundTrips() throws IOException {
+        FakeInventoryStore source = new FakeInventoryStore();
+        source.insertItem("Plain", 1);
+        source.insertItem("Comma, quoted \"name\"", 2);
+        StringWriter csv = new StringWriter();
+
+        assertEquals(2, new InventoryCsv(source).exportTo(csv, null));
+
+        FakeInventoryStore target = new FakeInventoryStore();
+        new InventoryCsv(target).importFrom(new StringReader(csv.toString()), null);
+        List<InventoryItem> items = target.getItemsPage(0, 10);
+        assertEquals("Comma, quoted \"name\"", items.get(1).getName());
+        assertEquals(2, items.get(1).getQuantity());
+    }
+
+    // Parses and applies 100k generated rows without materializing the file
+    @Test
+    public void import_streams100kRowsWithProgress() throws IOException {
+        final int rows = 100_000;
+        FakeInventoryStore store = new FakeInventoryStore();
+        final long[] lastProgress = {0};
+
+        InventoryCsv.ImportResult result = new InventoryCsv(store).importFrom(new GeneratedCsv(rows),
+                new InventoryStore.ProgressListener() {
+                    @Override
+                    public void onProgress(long rowsProcessed) {
+                        lastProgress[0] = rowsProcessed;
+                    }
+                });
+
+        assertEquals(rows, result.getImported());
+        assertEquals(rows, lastProgress[0]);
+        assertEquals(rows, store.getItemsPage(0, rows + 1).size());
+    }
+
+    // Produces "item,qty" CSV on the fly
+    private static class GeneratedCsv extends Reader {
+        private final int rows;
+        private int row = -1;
+        private String line = "";
+        private int offset = 0;
+
+        GeneratedCsv(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) {
+            if (offset == line.length()) {
+                if (row >= rows) {
+                    return -1;
+                }
+                line = row < 0 ? "item,qty\n" : "SKU-" + row + "," + (row % 500) + "\n";
+                row++;
+                offset = 0;
+            }
+            int count = Math.min(len, line.length() - offset);
+            line.getChars(offset, offset + count, buffer, off);
+            offset += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.project;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class InventoryHttpServerLoadTest {
+    private static final int ITEMS = 10000;
+    private static final int CLIENTS = 8;
+    private static final int WARMUP_WINDOWS = 10;
+    private static final int WINDOWS_PER_CLIENT = 40;
+    // Requests pipelined per window before the responses are read
+    private static final int WINDOW = 16;
+
+    private FakeInventoryStore store;
+    private InventoryRepository repository;
+    private InventoryHttpServer server;
+    private final long[] ids = new long[ITEMS];
+    private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        // Timed like the benchmarks, the results go to build/benchmarks/http-load.json
+        BenchmarkResults.assumeEnabled();
+        store = new FakeInventoryStore();
+        repository = new InventoryRepository(store, Runnable::run, new PasswordHasher(4, 8, 1));
+        repository.insertUser("Clerk", "clerk@example.com", "secret", null).get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < ITEMS; i++) {
+            ids[i] = store.insertItem("Item " + i, 100);
+        }
+        server = new InventoryHttpServer(repository, InetAddress.getLoopbackAddress(), 0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+            repository.shutdown();
+        }
+    }
+
+    @Test
+    public void pipelinedClients_areAllServed() throws Exception {
+        RawHttpClient login = new RawHttpClient(server.getPort());
+        final String token;
+        try {
+            token = (String) ((Map<?, ?>) login.request("POST", "/api/token", null,
+                    "{\"email\":\"clerk@example.com\",\"password\":\"secret\"}").json()).get("token");
+        } finally {
+            login.close();
+        }
+        // Adjustments sent per item, to check the quantities against afterwards
+        final AtomicIntegerArray adjustments = new AtomicIntegerArray(ITEMS);
+        final long[][] latencies = new long[CLIENTS][];
+        final CountDownLatch warmedUp = new CountDownLatch(CLIENTS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            final int client = c;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(client);
+                    long[] nanos = new long[WINDOWS_PER_CLIENT * WINDOW];
+                    try {
+                        RawHttpClient http = new RawHttpClient(server.getPort());
+                        try {
+                            // Class loading and JIT first, untimed
+                            for (int w = 0; w < WARMUP_WINDOWS; w++) {
+                                runWindow(http, token, random, client + w, adjustments, null, 0);
+                            }
+                            warmedUp.countDown();
+                            start.await();
+                            for (int w = 0; w < WINDOWS_PER_CLIENT; w++) {
+                                runWindow(http, token, random, client + w, adjustments, nanos, w * WINDOW);
+                            }
+                        } finally {
+                            http.close();
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                        warmedUp.countDown();
+                    }
+                    latencies[client] = nanos;
+                }
+            }, "http-client-" + c));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        warmedUp.await();
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        assertTrue(failures.size() + " clients failed, first with " + (failures.isEmpty() ? null : failures.get(0)),
+                failures.isEmpty());
+        for (int i = 0; i < ITEMS; i++) {
+            assertEquals("Item " + i, 100 + adjustments.get(i), store.getItem(ids[i]).getQuantity());
+        }
+        int requests = CLIENTS * WINDOWS_PER_CLIENT * WINDOW;
+        double requestsPerSecond = requests * 1e9 / elapsedNanos;
+
+        long[] all = new long[requests];
+        for (int c = 0; c < CLIENTS; c++) {
+            System.arraycopy(latencies[c], 0, all, c * latencies[c].length, latencies[c].length);
+        }
+        Arrays.sort(all);
+        BenchmarkResults results = new BenchmarkResults("http-load", null);
+        Map<String, Number> values = BenchmarkResults.values();
+        values.put("clients", CLIENTS);
+        values.put("pipelined", WINDOW);
+        values.put("requests", requests);
+        values.put("requestsPerSecond", requestsPerSecond);
+        values.put("p50Micros", TimeUnit.NANOSECONDS.toMicros(all[requests / 2]));
+        values.put("p99Micros", TimeUnit.NANOSECONDS.toMicros(all[requests * 99 / 100]));
+        values.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(all[requests - 1]));
+        results.add("pipelinedClients", ITEMS, values);
+        results.write();
+    }
+
+    // Sends one window of pipelined requests and reads the responses: a page, an item and an
+    // adjustment in turn, and every tenth window the whole list first. Latencies go to
+    // nanos from offset on, unless it is null
+    private void runWindow(RawHttpClient http, String token, Random random, int window, AtomicIntegerArray adjustments,
+                           long[] nanos, int offset) throws Exception {
+        int[] kinds = new int[WINDOW];
+        for (int r = 0; r < WINDOW; r++) {
+            int item = random.nextInt(ITEMS);
+            kinds[r] = window % 10 == 0 && r == 0 ? 3 : r % 3;
+            if (kinds[r] == 0) {
+                http.send("GET", "/api/items?after=" + ids[item] + "&limit=20", token, null);
+            } else if (kinds[r] == 1) {
+                http.send("GET", "/api/items/" + ids[item], token, null);
+            } else if (kinds[r] == 2) {
+                http.send("POST", "/api/items/" + ids[item] + "/adjust", token, "{\"delta\":1}");
+                adjustments.incrementAndGet(item);
+            } else {
+                http.send("GET", "/api/items", token, null);
+            }
+        }
+        long sent = System.nanoTime();
+        http.flush();
+        for (int r = 0; r < WINDOW; r++) {
+            RawHttpClient.Response response = http.read();
+            if (nanos != null) {
+                nanos[offset + r] = System.nanoTime() - sent;
+            }
+            assertEquals(200, response.status);
+            if (kinds[r] == 3) {
+                assertEquals(ITEMS, ((List<?>) response.json()).size());
+            }
+        }
+    }
+}
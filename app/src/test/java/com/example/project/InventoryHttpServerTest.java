@@ -0,0 +1,256 @@
+package com.example.project;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InventoryHttpServerTest {
+    private static final String EMAIL = "clerk@example.com";
+    private static final String PASSWORD = "secret";
+
+    private FakeInventoryStore store;
+    private InventoryRepository repository;
+    private InventoryHttpServer server;
+    private RawHttpClient client;
+    private String token;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FakeInventoryStore();
+        // Cheap hashing costs keep the tests fast
+        repository = new InventoryRepository(store, Runnable::run, new PasswordHasher(4, 8, 1));
+        repository.insertUser("Clerk", EMAIL, PASSWORD, null).get(5, TimeUnit.SECONDS);
+        server = new InventoryHttpServer(repository, InetAddress.getLoopbackAddress(), 0);
+        server.start();
+        client = new RawHttpClient(server.getPort());
+        token = login(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+        repository.shutdown();
+    }
+
+    @Test
+    public void tokens_areOnlyIssuedForValidPasswordsAndEndWithTheServer() throws Exception {
+        RawHttpClient.Response response = client.request("GET", "/api/items", null, null);
+        assertEquals(401, response.status);
+        assertEquals("Bearer", response.headers.get("www-authenticate"));
+        assertEquals(401, client.request("GET", "/api/items", "not-a-token", null).status);
+        assertEquals(401, client.request("POST", "/api/token", null,
+                "{\"email\":\"" + EMAIL + "\",\"password\":\"wrong\"}").status);
+        assertEquals(401, client.request("POST", "/api/token", null,
+                "{\"email\":\"nobody@example.com\",\"password\":\"" + PASSWORD + "\"}").status);
+        assertEquals(200, client.request("GET", "/api/items", token, null).status);
+
+        server.stop();
+        server.start();
+        client.close();
+        client = new RawHttpClient(server.getPort());
+        assertEquals(401, client.request("GET", "/api/items", token, null).status);
+        assertEquals(200, client.request("GET", "/api/items", login(client), null).status);
+    }
+
+    @Test
+    public void restart_ignoresCallsLeftFromTheLastRun() throws Exception {
+        long id = store.insertItem("Widget", 0);
+        store.writeGate = new CountDownLatch(1);
+        client.send("POST", "/api/items/" + id + "/adjust", token, "{\"delta\":1}");
+        client.flush();
+        // Until the adjust is held in the store, with its callback still to come
+        while (store.gatedWrites.get() == 0) {
+            Thread.sleep(1);
+        }
+
+        server.stop();
+        server.start();
+        store.writeGate.countDown();
+        client.close();
+        client = new RawHttpClient(server.getPort());
+        String newToken = login(client);
+
+        for (int i = 0; i < 100; i++) {
+            client.send("POST", "/api/items/" + id + "/adjust", newToken, "{\"delta\":1}");
+        }
+        client.flush();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(200, client.read().status);
+        }
+        // The call from the last run still landed, once
+        assertEquals(101L, ((Map<?, ?>) client.request("GET", "/api/items/" + id, newToken, null).json()).get("quantity"));
+    }
+
+    @Test
+    public void items_areStreamedInChunksAPageAtATime() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 1234; i++) {
+            ids.add(store.insertItem("Item \"" + i + "\"", i));
+        }
+
+        RawHttpClient.Response response = client.request("GET", "/api/items", token, null);
+        assertEquals(200, response.status);
+        assertEquals("chunked", response.headers.get("transfer-encoding"));
+        // 500, 500 and 234 items
+        assertEquals(3, response.chunks);
+        List<?> items = (List<?>) response.json();
+        assertEquals(ids.size(), items.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Map<?, ?> item = (Map<?, ?>) items.get(i);
+            assertEquals(ids.get(i), item.get("id"));
+            assertEquals("Item \"" + i + "\"", item.get("name"));
+            assertEquals((long) i, item.get("quantity"));
+        }
+
+        List<?> page = (List<?>) client.request("GET", "/api/items?after=" + ids.get(9) + "&limit=5", token, null).json();
+        assertEquals(5, page.size());
+        assertEquals(ids.get(10), ((Map<?, ?>) page.get(0)).get("id"));
+        assertEquals(0, ((List<?>) client.request("GET", "/api/items?limit=0", token, null).json()).size());
+        assertEquals(400, client.request("GET", "/api/items?limit=ten", token, null).status);
+    }
+
+    @Test
+    public void search_location_andCategory_scopeTheList() throws Exception {
+        long redPen = store.insertItem("Red pen", 10);
+        long bluePen = store.insertItem("Blue pen", 10);
+        long stapler = store.insertItem("Stapler", 3);
+        long van = store.insertLocation("Van");
+        store.setStockQuantity(bluePen, van, 4);
+        long office = store.insertCategory(Category.ROOT, "Office");
+        store.setItemCategory(new long[]{stapler}, office);
+
+        assertEquals(ids(redPen, bluePen), ids(client.request("GET", "/api/items?q=pen", token, null)));
+        assertEquals(ids(bluePen), ids(client.request("GET", "/api/items?location=" + van, token, null)));
+        assertEquals(ids(stapler), ids(client.request("GET", "/api/items?category=" + office, token, null)));
+        List<?> inVan = (List<?>) client.request("GET", "/api/items?location=" + van, token, null).json();
+        assertEquals(4L, ((Map<?, ?>) inVan.get(0)).get("quantity"));
+
+        Map<?, ?> item = (Map<?, ?>) client.request("GET", "/api/items/" + stapler, token, null).json();
+        assertEquals("Stapler", item.get("name"));
+        assertEquals(404, client.request("GET", "/api/items/999999", token, null).status);
+    }
+
+    @Test
+    public void adjust_bulkAdjust_andScan_areUndoableEdits() throws Exception {
+        long a = store.insertItem("Widget", 10);
+        long b = store.insertItem("Gadget", 4);
+        store.updateItemSku(a, "012345678905");
+
+        RawHttpClient.Response adjusted = client.request("POST", "/api/items/" + a + "/adjust", token, "{\"delta\":-3}");
+        assertEquals(200, adjusted.status);
+        assertEquals(7L, ((Map<?, ?>) adjusted.json()).get("quantity"));
+
+        // A listed twice gets both deltas, B stops at zero
+        assertEquals(200, client.request("POST", "/api/adjust", token,
+                "{\"items\":[{\"id\":" + a + ",\"delta\":5},{\"id\":" + b + ",\"delta\":-100},{\"id\":" + a +
+                        ",\"delta\":1}]}").status);
+        assertEquals(13, store.getItem(a).getQuantity());
+        assertEquals(0, store.getItem(b).getQuantity());
+        assertTrue(repository.undo(null).get(5, TimeUnit.SECONDS));
+        assertEquals(7, store.getItem(a).getQuantity());
+        assertEquals(4, store.getItem(b).getQuantity());
+
+        RawHttpClient.Response scanned = client.request("POST", "/api/scan", token,
+                "{\"sku\":\"012345678905\",\"quantity\":2}");
+        assertEquals(9L, ((Map<?, ?>) scanned.json()).get("quantity"));
+        assertEquals(404, client.request("POST", "/api/scan", token, "{\"sku\":\"000\"}").status);
+        assertEquals(404, client.request("POST", "/api/items/999999/adjust", token, "{\"delta\":1}").status);
+        assertEquals(404, client.request("POST", "/api/adjust", token, "{\"items\":[{\"id\":999999,\"delta\":1}]}").status);
+
+        assertEquals(400, client.request("POST", "/api/items/" + a + "/adjust", token, "{\"delta\":\"1\"}").status);
+        assertEquals(400, client.request("POST", "/api/items/" + a + "/adjust", token, "{\"delta\":1e3}").status);
+        assertEquals(400, client.request("POST", "/api/items/" + a + "/adjust", token, "{\"delta\":5000000}").status);
+        assertEquals(400, client.request("POST", "/api/items/" + a + "/adjust", token, "delta=1").status);
+        assertEquals(400, client.request("POST", "/api/adjust", token, "{\"items\":[]}").status);
+        assertEquals(405, client.request("GET", "/api/adjust", token, null).status);
+        assertEquals(9, store.getItem(a).getQuantity());
+    }
+
+    @Test
+    public void pipelinedRequests_areAnsweredInOrderAndReadsSeeEarlierWrites() throws Exception {
+        long id = store.insertItem("Widget", 0);
+        for (int i = 0; i < 40; i++) {
+            client.send("POST", "/api/items/" + id + "/adjust", token, "{\"delta\":1}");
+            client.send("GET", "/api/items/" + id, token, null);
+            client.send("GET", "/api/items?limit=1", token, null);
+        }
+        client.flush();
+
+        for (int i = 1; i <= 40; i++) {
+            assertEquals(i + "", (long) i, ((Map<?, ?>) client.read().json()).get("quantity"));
+            assertEquals(i + "", (long) i, ((Map<?, ?>) client.read().json()).get("quantity"));
+            assertEquals(i + "", (long) i, ((Map<?, ?>) ((List<?>) client.read().json()).get(0)).get("quantity"));
+        }
+    }
+
+    @Test
+    public void unusableRequests_getAnErrorAndEndTheConnection() throws Exception {
+        // Answered, and the connection stays open
+        assertEquals(404, client.request("GET", "/nowhere", token, null).status);
+
+        client.sendRaw("NOT A REQUEST\r\n\r\n");
+        client.flush();
+        assertEquals(400, client.read().status);
+        assertTrue(client.isClosedByServer());
+
+        assertEquals(431, rawRequest("GET /api/items HTTP/1.1\r\nX-Padding: " + new String(new char[9000]).replace('\0', 'a') +
+                "\r\n\r\n").status);
+        assertEquals(501, rawRequest("POST /api/adjust HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n").status);
+        assertEquals(505, rawRequest("GET /api/items HTTP/2.0\r\n\r\n").status);
+
+        // HTTP/1.0 gets the list without chunks, ended by closing the connection
+        store.insertItem("Widget", 1);
+        RawHttpClient.Response list = rawRequest("GET /api/items HTTP/1.0\r\nAuthorization: Bearer " + token + "\r\n\r\n");
+        assertEquals(200, list.status);
+        assertEquals(0, list.chunks);
+        assertEquals(1, ((List<?>) list.json()).size());
+    }
+
+    // On a new connection, which the server closes after answering
+    private RawHttpClient.Response rawRequest(String request) throws Exception {
+        RawHttpClient raw = new RawHttpClient(server.getPort());
+        try {
+            raw.sendRaw(request);
+            raw.flush();
+            RawHttpClient.Response response = raw.read();
+            assertTrue(raw.isClosedByServer());
+            return response;
+        } finally {
+            raw.close();
+        }
+    }
+
+    private static String login(RawHttpClient client) throws Exception {
+        RawHttpClient.Response response = client.request("POST", "/api/token", null,
+                "{\"email\":\"" + EMAIL + "\",\"password\":\"" + PASSWORD + "\"}");
+        assertEquals(200, response.status);
+        return (String) ((Map<?, ?>) response.json()).get("token");
+    }
+
+    private static List<Long> ids(long... ids) {
+        List<Long> list = new ArrayList<>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static List<Long> ids(RawHttpClient.Response response) {
+        assertEquals(200, response.status);
+        List<Long> ids = new ArrayList<>();
+        for (Object item : (List<?>) response.json()) {
+            ids.add((Long) ((Map<?, ?>) item).get("id"));
+        }
+        return ids;
+    }
+}
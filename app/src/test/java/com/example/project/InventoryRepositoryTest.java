@@ -0,0 +1,165 @@
+package com.example.project;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InventoryRepositoryTest {
+    private FakeInventoryStore store;
+    private InventoryRepository repository;
+
+    @Before
+    public void setUp() {
+        store = new FakeInventoryStore();
+        // Run callbacks inline, there is no main looper on the JVM. Cheap hashing costs keep the tests fast
+        repository = new InventoryRepository(store, Runnable::run, new PasswordHasher(4, 8, 1));
+    }
+
+    @After
+    public void tearDown() {
+        store.writeGate.countDown();
+        repository.shutdown();
+    }
+
+    @Test
+    public void calls_returnImmediatelyWhileWritesAreBlocked() throws Exception {
+        // Warm up the worker threads, class loading and JIT
+        for (int i = 0; i < 200; i++) {
+            repository.insertItem("warmup" + i, i, null);
+            repository.getItemsPage(0, 10, null).get(5, TimeUnit.SECONDS);
+        }
+
+        CountDownLatch gate = new CountDownLatch(1);
+        store.writeGate = gate;
+        List<Future<Long>> pending = new ArrayList<>();
+        long totalNanos = 0;
+        for (int i = 0; i < 100; i++) {
+            long start = System.nanoTime();
+            pending.add(repository.insertItem("item" + i, i, null));
+            Future<List<InventoryItem>> read = repository.getItemsPage(0, 10, null);
+            totalNanos += System.nanoTime() - start;
+            // Reads are not held up behind the blocked writer
+            read.get(5, TimeUnit.SECONDS);
+        }
+        long averageNanos = totalNanos / 200;
+
+        assertTrue("calls took " + averageNanos + "ns on average", averageNanos < TimeUnit.MILLISECONDS.toNanos(1));
+        assertFalse(pending.get(0).isDone());
+
+        gate.countDown();
+        for (Future<Long> future : pending) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(300, repository.getItemsPage(0, 1000, null).get().size());
+    }
+
+    @Test
+    public void writes_areAppliedInSubmissionOrder() throws Exception {
+        long id = repository.insertItem("widget", 1, null).get(5, TimeUnit.SECONDS);
+        repository.updateItemQuantity(id, 2, null);
+        repository.updateItemName(id, "gadget", null);
+        Future<Void> last = repository.updateItemQuantity(id, 3, null);
+        last.get(5, TimeUnit.SECONDS);
+
+        InventoryItem item = repository.getItemsPage(0, 10, null).get().get(0);
+        assertEquals("gadget", item.getName());
+        assertEquals(3, item.getQuantity());
+    }
+
+    @Test
+    public void callback_receivesResult() throws Exception {
+        final long[] result = {-1};
+        final CountDownLatch delivered = new CountDownLatch(1);
+        repository.insertUser("Ana", "ana@example.com", "secret", new InventoryRepository.Callback<Long>() {
+            @Override
+            public void onResult(Long id) {
+                result[0] = id;
+                delivered.countDown();
+            }
+        });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, result[0]);
+        assertTrue(repository.validateUser("ana@example.com", "secret", null).get());
+        assertFalse(repository.validateUser("ana@example.com", "wrong", null).get());
+        assertFalse(repository.validateUser("bob@example.com", "secret", null).get());
+        assertFalse(store.getPasswordHash("ana@example.com").contains("secret"));
+    }
+
+    @Test
+    public void login_upgradesPlaintextPasswordOnSuccess() throws Exception {
+        // A row written before passwords were hashed
+        store.insertUser("Ana", "ana@example.com", "secret");
+
+        assertFalse(repository.validateUser("ana@example.com", "wrong", null).get());
+        assertEquals("secret", store.getPasswordHash("ana@example.com"));
+        assertTrue(repository.validateUser("ana@example.com", "secret", null).get());
+
+        String upgraded = store.getPasswordHash("ana@example.com");
+        assertTrue(upgraded, upgraded.startsWith("scrypt$4$8$1$"));
+        assertTrue(repository.validateUser("ana@example.com", "secret", null).get());
+    }
+
+    @Test
+    public void login_doesNotWaitForBlockedWrites() throws Exception {
+        store.insertUser("Ana", "ana@example.com", new PasswordHasher(4, 8, 1).hash("secret"));
+        store.writeGate = new CountDownLatch(1);
+        repository.insertItem("Soda", 1, null);
+
+        assertTrue(repository.validateUser("ana@example.com", "secret", null).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void fullWriteQueue_failsFastInsteadOfBlocking() throws Exception {
+        store.writeGate = new CountDownLatch(1);
+        Future<Long> rejected = null;
+        for (int i = 0; i < 1000 && rejected == null; i++) {
+            Future<Long> future = repository.insertItem("item" + i, i, null);
+            if (future.isDone()) {
+                rejected = future;
+            }
+        }
+        assertNotNull(rejected);
+        rejected.get();
+    }
+
+    @Test
+    public void edits_publishOneRowLevelChangeWithOneRead() throws Exception {
+        final List<InventoryChange> changes = new ArrayList<>();
+        repository.addChangeListener(new InventoryRepository.ChangeListener() {
+            @Override
+            public void onChange(InventoryChange change) {
+                synchronized (changes) {
+                    changes.add(change);
+                }
+            }
+        });
+        for (int i = 0; i < 1000; i++) {
+            store.insertItem("item" + i, i);
+        }
+        long id = repository.insertItem("widget", 1, null).get(5, TimeUnit.SECONDS);
+        store.reads.set(0);
+
+        repository.updateItemQuantity(id, 7, null).get(5, TimeUnit.SECONDS);
+        repository.deleteItem(id, null).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, store.reads.get());
+        synchronized (changes) {
+            assertEquals(3, changes.size());
+            assertEquals(InventoryChange.Type.INSERT, changes.get(0).getType());
+            assertEquals(InventoryChange.Type.UPDATE, changes.get(1).getType());
+            assertEquals(id, changes.get(1).getId());
+            assertEquals(7, changes.get(1).getItem().getQuantity());
+            assertEquals(InventoryChange.Type.DELETE, changes.get(2).getType());
+        }
+    }
+}
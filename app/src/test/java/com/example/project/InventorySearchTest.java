@@ -0,0 +1,37 @@
+package com.example.project;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class InventorySearchTest {
+    @Test
+    public void tokenize_splitsOnPunctuationAndLowerCases() {
+        assertEquals(Arrays.asList("salted", "chips", "200g"), InventorySearch.tokenize("  Salted-Chips (200g)"));
+        assertEquals(Collections.emptyList(), InventorySearch.tokenize(" -- "));
+    }
+
+    @Test
+    public void matchQuery_isAPrefixQueryPerWord() {
+        assertEquals("sal* ch*", InventorySearch.toMatchQuery("Sal ch"));
+        assertNull(InventorySearch.toMatchQuery("   "));
+    }
+
+    @Test
+    public void matchQuery_dropsFtsSyntax() {
+        // Operators only count in upper case, so lower cased words are plain terms
+        assertEquals("a* or* b*", InventorySearch.toMatchQuery("\"a\" OR b*"));
+        assertEquals("chips* near* 2* salt*", InventorySearch.toMatchQuery("chips NEAR/2 -salt"));
+    }
+
+    @Test
+    public void matches_needsEveryWordToStartAWordOfTheName() {
+        assertTrue(InventorySearch.matches("Salted Chips", "ch sa"));
+        assertTrue(InventorySearch.matches("Salted Chips", "CHIPS"));
+        assertFalse(InventorySearch.matches("Salted Chips", "hips"));
+        assertFalse(InventorySearch.matches("Salted Chips", "chips soda"));
+    }
+}
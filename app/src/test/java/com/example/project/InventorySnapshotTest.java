@@ -0,0 +1,107 @@
+package com.example.project;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InventorySnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void write_thenRead_roundTrips() throws Exception {
+        File file = folder.newFile();
+        List<InventoryItem> items = new ArrayList<>();
+        items.add(new InventoryItem(3, "Soda", 12, 4));
+        items.add(new InventoryItem(7, "Cr\u00e8me br\u00fbl\u00e9e", 0, 1));
+
+        new InventorySnapshot(file).write(items);
+        List<InventoryItem> read = new InventorySnapshot(file).read();
+
+        assertEquals(2, read.size());
+        assertEquals(7, read.get(1).getId());
+        assertEquals("Cr\u00e8me br\u00fbl\u00e9e", read.get(1).getName());
+        assertEquals(12, read.get(0).getQuantity());
+        assertEquals(4, read.get(0).getReorderThreshold());
+    }
+
+    @Test
+    public void missingOrCorruptFile_readsAsEmpty() throws Exception {
+        File file = new File(folder.getRoot(), "snapshot.bin");
+        assertTrue(new InventorySnapshot(file).read().isEmpty());
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 0, 0, 0, 5, 0});
+        out.close();
+        assertTrue(new InventorySnapshot(file).read().isEmpty());
+    }
+
+    @Test
+    public void write_keepsOnlyTheFirstPage() throws Exception {
+        File file = folder.newFile();
+        List<InventoryItem> items = new ArrayList<>();
+        for (int i = 0; i < InventoryPager.PAGE_SIZE * 2; i++) {
+            items.add(new InventoryItem(i + 1, "item" + i, i));
+        }
+
+        new InventorySnapshot(file).write(items);
+
+        assertEquals(InventoryPager.PAGE_SIZE, new InventorySnapshot(file).read().size());
+    }
+
+    @Test
+    public void repository_savesFirstPageForTheNextStart() throws Exception {
+        FakeInventoryStore store = new FakeInventoryStore();
+        for (int i = 0; i < 100; i++) {
+            store.insertItem("item" + i, i);
+        }
+        File file = folder.newFile();
+        InventoryRepository repository = new InventoryRepository(store, Runnable::run);
+        repository.setSnapshot(new InventorySnapshot(file));
+        try {
+            repository.getItemsPage(0, InventoryPager.PAGE_SIZE, null).get();
+            // Later pages and short reads don't replace it
+            repository.getItemsPage(InventoryPager.PAGE_SIZE, InventoryPager.PAGE_SIZE, null).get();
+            repository.getItemsPage(0, 5, null).get();
+        } finally {
+            repository.shutdown();
+        }
+
+        InventoryRepository restarted = new InventoryRepository(new FakeInventoryStore(), Runnable::run);
+        restarted.setSnapshot(new InventorySnapshot(file));
+        try {
+            List<InventoryItem> items = restarted.getSnapshot(null).get();
+            assertEquals(InventoryPager.PAGE_SIZE, items.size());
+            assertEquals("item0", items.get(0).getName());
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+    // The snapshot holds the same first page a cold cache would load over 50k rows
+    @Test
+    public void coldStart_snapshotMatchesTheFirstPage() throws Exception {
+        FakeInventoryStore store = new FakeInventoryStore();
+        List<InventoryItem> rows = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            rows.add(new InventoryItem(0, "item" + i, i % 100));
+        }
+        store.upsertItems(rows.iterator(), null);
+        File file = folder.newFile();
+        new InventorySnapshot(file).write(store.getItemsPage(0, InventoryPager.PAGE_SIZE));
+
+        List<InventoryItem> snapshot = new InventorySnapshot(file).read();
+        List<InventoryItem> page = new InventoryCache(store, InventoryCache.DEFAULT_CAPACITY)
+                .getItemsPage(0, InventoryPager.PAGE_SIZE);
+
+        assertEquals(page.size(), snapshot.size());
+        assertEquals(page.get(59).getName(), snapshot.get(59).getName());
+    }
+}
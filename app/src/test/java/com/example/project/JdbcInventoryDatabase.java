@@ -0,0 +1,415 @@
+package com.example.project;
+
+import com.example.project.InventoryDatabaseHelper.CategoryClosureTable;
+import com.example.project.InventoryDatabaseHelper.CategoryTable;
+import com.example.project.InventoryDatabaseHelper.InventorySearchTable;
+import com.example.project.InventoryDatabaseHelper.InventoryTable;
+import com.example.project.InventoryDatabaseHelper.LocationTable;
+import com.example.project.InventoryDatabaseHelper.MaintenanceLogTable;
+import com.example.project.InventoryDatabaseHelper.StockMovementTable;
+import com.example.project.InventoryDatabaseHelper.StockSnapshotTable;
+import com.example.project.InventoryDatabaseHelper.StockTable;
+import com.example.project.InventoryDatabaseHelper.SyncStateTable;
+import com.example.project.InventoryDatabaseHelper.UserTable;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+// iventory.db's schema on the plain JVM, through the SQLite JDBC driver, for benchmarks and
+// stress tests that can't start Android's SQLiteDatabase. The tables, indexes and triggers
+// are those InventoryDatabaseHelper's migrations leave at SCHEMA_VERSION, connections are
+// configured like onConfigure(). The statements under test are the helper's own *_SQL constants
+class JdbcInventoryDatabase {
+    // Bump together with InventoryDatabaseHelper.DATABASE_VERSION, after copying its new migration below
+    static final int SCHEMA_VERSION = 12;
+    // Android waits this long for a lock before failing with "database is locked"
+    static final int BUSY_TIMEOUT_MILLIS = 2500;
+
+    private final File file;
+
+    JdbcInventoryDatabase(File file) throws SQLException {
+        if (SCHEMA_VERSION != InventoryDatabaseHelper.DATABASE_VERSION) {
+            throw new IllegalStateException("JDBC schema is at version " + SCHEMA_VERSION + ", the app at " +
+                    InventoryDatabaseHelper.DATABASE_VERSION);
+        }
+        this.file = file;
+        Connection connection = open();
+        try {
+            createSchema(connection);
+        } finally {
+            connection.close();
+        }
+    }
+
+    // Method to open a new connection configured like the helper's
+    Connection open() throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS);
+            statement.execute("PRAGMA auto_vacuum=INCREMENTAL");
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+        } finally {
+            statement.close();
+        }
+        return connection;
+    }
+
+    static String sqliteVersion(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery("SELECT sqlite_version()");
+            result.next();
+            return result.getString(1);
+        } finally {
+            statement.close();
+        }
+    }
+
+    // Method to add items and one user per item, in transactions of InventoryStore.BATCH_SIZE
+    // like upsertItems(). Returns the first new item id
+    static long seed(Connection connection, int count) throws SQLException {
+        PreparedStatement insertItem = connection.prepareStatement(InventoryDatabaseHelper.INSERT_ITEM_SQL,
+                Statement.RETURN_GENERATED_KEYS);
+        PreparedStatement insertUser = connection.prepareStatement("INSERT INTO " + UserTable.TABLE + " (" +
+                UserTable.COL_NAME + ", " + UserTable.COL_EMAIL + ", " + UserTable.COL_PASSWORD + ") VALUES (?, ?, ?)");
+        // A lookup only reads the column, one real hash stands in for every user's
+        String passwordHash = new PasswordHasher().hash("benchmark password");
+        long firstId = -1;
+        try {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < count; i++) {
+                String name = "seeded item " + i;
+                insertItem.setString(1, name);
+                insertItem.setString(2, InventoryItem.normalizeName(name));
+                insertItem.setInt(3, i % 100);
+                insertItem.executeUpdate();
+                if (firstId == -1) {
+                    ResultSet keys = insertItem.getGeneratedKeys();
+                    keys.next();
+                    firstId = keys.getLong(1);
+                }
+                insertUser.setString(1, "User " + i);
+                insertUser.setString(2, email(i));
+                insertUser.setString(3, passwordHash);
+                insertUser.executeUpdate();
+                if ((i + 1) % InventoryStore.BATCH_SIZE == 0) {
+                    connection.commit();
+                }
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+            insertItem.close();
+            insertUser.close();
+        }
+        return firstId;
+    }
+
+    static String email(int user) {
+        return "user" + user + "@example.com";
+    }
+
+    // Returns the new category's id
+    static long insertCategory(Connection connection, long parentId, String name) throws SQLException {
+        PreparedStatement insert = connection.prepareStatement(InventoryDatabaseHelper.INSERT_CATEGORY_SQL,
+                Statement.RETURN_GENERATED_KEYS);
+        try {
+            insert.setLong(1, parentId);
+            insert.setString(2, name);
+            insert.executeUpdate();
+            ResultSet keys = insert.getGeneratedKeys();
+            keys.next();
+            return keys.getLong(1);
+        } finally {
+            insert.close();
+        }
+    }
+
+    static void setItemCategory(Connection connection, long itemId, long categoryId) throws SQLException {
+        PreparedStatement update = connection.prepareStatement(InventoryDatabaseHelper.SET_ITEM_CATEGORY_SQL);
+        try {
+            if (categoryId == Category.ROOT) {
+                update.setNull(1, Types.INTEGER);
+            } else {
+                update.setLong(1, categoryId);
+            }
+            update.setLong(2, itemId);
+            update.executeUpdate();
+        } finally {
+            update.close();
+        }
+    }
+
+    // The statements of InventoryDatabaseHelper.moveCategory(), in its order. Refused moves do nothing
+    static void moveCategory(Connection connection, long id, long newParentId) throws SQLException {
+        long[] category = category(connection, id);
+        if (category[0] == newParentId) {
+            return;
+        }
+        if (newParentId != Category.ROOT && longFor(connection, InventoryDatabaseHelper.IS_ANCESTOR_SQL, id, newParentId) != 0) {
+            return;
+        }
+        connection.setAutoCommit(false);
+        try {
+            execute(connection, InventoryDatabaseHelper.SET_CATEGORY_PARENT_SQL, newParentId, id);
+            execute(connection, InventoryDatabaseHelper.ADJUST_ANCESTORS_SQL, -category[1], -category[2], id);
+            execute(connection, InventoryDatabaseHelper.DETACH_SUBTREE_SQL, id, id);
+            if (newParentId != Category.ROOT) {
+                execute(connection, InventoryDatabaseHelper.ATTACH_SUBTREE_SQL, newParentId, id);
+                execute(connection, InventoryDatabaseHelper.ADJUST_ANCESTORS_SQL, category[1], category[2], id);
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    // The statements of InventoryDatabaseHelper.deleteCategory(), in its order
+    static void deleteCategory(Connection connection, long id) throws SQLException {
+        long parentId = category(connection, id)[0];
+        connection.setAutoCommit(false);
+        try {
+            execute(connection, InventoryDatabaseHelper.REPARENT_CHILDREN_SQL, parentId, id);
+            PreparedStatement refile = connection.prepareStatement(InventoryDatabaseHelper.REFILE_ITEMS_SQL);
+            if (parentId == Category.ROOT) {
+                refile.setNull(1, Types.INTEGER);
+            } else {
+                refile.setLong(1, parentId);
+            }
+            refile.setLong(2, id);
+            refile.executeUpdate();
+            refile.close();
+            execute(connection, InventoryDatabaseHelper.SHORTEN_PATHS_SQL, id, id);
+            execute(connection, InventoryDatabaseHelper.DELETE_CATEGORY_DESCENDANTS_SQL, id);
+            execute(connection, InventoryDatabaseHelper.DELETE_CATEGORY_ANCESTORS_SQL, id);
+            execute(connection, InventoryDatabaseHelper.DELETE_CATEGORY_SQL, id);
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    // Parent id, item count and units
+    private static long[] category(Connection connection, long id) throws SQLException {
+        PreparedStatement query = connection.prepareStatement(InventoryDatabaseHelper.CATEGORY_SQL);
+        try {
+            query.setLong(1, id);
+            ResultSet result = query.executeQuery();
+            result.next();
+            return new long[]{result.getLong(2), result.getLong(4), result.getLong(5)};
+        } finally {
+            query.close();
+        }
+    }
+
+    private static long longFor(Connection connection, String sql, long... args) throws SQLException {
+        PreparedStatement query = connection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                query.setLong(i + 1, args[i]);
+            }
+            ResultSet result = query.executeQuery();
+            result.next();
+            return result.getLong(1);
+        } finally {
+            query.close();
+        }
+    }
+
+    private static void execute(Connection connection, String sql, long... args) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                statement.setLong(i + 1, args[i]);
+            }
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    // Migrations 1 to 12 folded together, without the steps that only move existing rows
+    private static void createSchema(Connection connection) throws SQLException {
+        Statement db = connection.createStatement();
+        try {
+            db.execute("CREATE TABLE " + InventoryTable.TABLE + " (" +
+                    InventoryTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    InventoryTable.COL_ITEM + " TEXT, " +
+                    InventoryTable.COL_QTY + " INTEGER, " +
+                    InventoryTable.COL_ITEM_KEY + " TEXT, " +
+                    InventoryTable.COL_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0, " +
+                    InventoryTable.COL_SKU + " TEXT, " +
+                    InventoryTable.COL_CATEGORY_ID + " INTEGER)");
+            db.execute("CREATE TABLE " + UserTable.TABLE + " (" +
+                    UserTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    UserTable.COL_NAME + " TEXT, " +
+                    UserTable.COL_EMAIL + " TEXT UNIQUE, " +
+                    UserTable.COL_PASSWORD + " TEXT)");
+            db.execute("CREATE UNIQUE INDEX " + InventoryTable.INDEX_ITEM_KEY + " ON " +
+                    InventoryTable.TABLE + " (" + InventoryTable.COL_ITEM_KEY + ")");
+            db.execute("CREATE UNIQUE INDEX " + InventoryTable.INDEX_SKU + " ON " + InventoryTable.TABLE +
+                    " (" + InventoryTable.COL_SKU + ") WHERE " + InventoryTable.COL_SKU + " IS NOT NULL");
+            String rest = InventoryTable.COL_ITEM + ", " + InventoryTable.COL_REORDER_THRESHOLD + ")";
+            db.execute("CREATE INDEX " + InventoryTable.INDEX_NAME_ORDER + " ON " + InventoryTable.TABLE + " (" +
+                    InventoryTable.COL_ITEM_KEY + ", " + InventoryTable.COL_QTY + ", " + rest);
+            db.execute("CREATE INDEX " + InventoryTable.INDEX_QTY_ORDER + " ON " + InventoryTable.TABLE + " (" +
+                    InventoryTable.COL_QTY + ", " + InventoryTable.COL_ITEM_KEY + ", " + rest);
+
+            // Versions 2, 3, 8 and 10 are above, 4 is full-text search
+            String fts = InventorySearchTable.TABLE;
+            db.execute("CREATE VIRTUAL TABLE " + fts + " USING fts4(" +
+                    "content=\"" + InventoryTable.TABLE + "\", " + InventorySearchTable.COL_ITEM + ", " +
+                    "tokenize=unicode61, prefix=\"2,3\")");
+            String insertRow = " INSERT INTO " + fts + "(docid, " + InventorySearchTable.COL_ITEM + ")" +
+                    " VALUES (new." + InventoryTable.COL_ID + ", new." + InventoryTable.COL_ITEM + "); END";
+            String deleteRow = " DELETE FROM " + fts + " WHERE docid = old." + InventoryTable.COL_ID + "; END";
+            db.execute("CREATE TRIGGER " + InventorySearchTable.TRIGGER_INSERT + " AFTER INSERT ON " +
+                    InventoryTable.TABLE + " BEGIN" + insertRow);
+            db.execute("CREATE TRIGGER " + InventorySearchTable.TRIGGER_BEFORE_UPDATE + " BEFORE UPDATE OF " +
+                    InventoryTable.COL_ITEM + " ON " + InventoryTable.TABLE + " BEGIN" + deleteRow);
+            db.execute("CREATE TRIGGER " + InventorySearchTable.TRIGGER_AFTER_UPDATE + " AFTER UPDATE OF " +
+                    InventoryTable.COL_ITEM + " ON " + InventoryTable.TABLE + " BEGIN" + insertRow);
+            db.execute("CREATE TRIGGER " + InventorySearchTable.TRIGGER_DELETE + " BEFORE DELETE ON " +
+                    InventoryTable.TABLE + " BEGIN" + deleteRow);
+
+            // Versions 5, 6 and 7
+            String ledger = StockMovementTable.TABLE;
+            db.execute("CREATE TABLE " + ledger + " (" +
+                    StockMovementTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    StockMovementTable.COL_ITEM_ID + " INTEGER NOT NULL, " +
+                    StockMovementTable.COL_DELTA + " INTEGER NOT NULL, " +
+                    StockMovementTable.COL_QTY_AFTER + " INTEGER NOT NULL, " +
+                    StockMovementTable.COL_CREATED_AT + " INTEGER NOT NULL, " +
+                    StockMovementTable.COL_REMOTE + " INTEGER NOT NULL DEFAULT 0)");
+            db.execute("CREATE INDEX " + StockMovementTable.INDEX_ITEM_TIME + " ON " + ledger + " (" +
+                    StockMovementTable.COL_ITEM_ID + ", " + StockMovementTable.COL_CREATED_AT + ", " +
+                    StockMovementTable.COL_ID + ")");
+            String now = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+            String append = " INSERT INTO " + ledger + " (" + StockMovementTable.COL_ITEM_ID + ", " +
+                    StockMovementTable.COL_DELTA + ", " + StockMovementTable.COL_QTY_AFTER + ", " +
+                    StockMovementTable.COL_CREATED_AT + ") VALUES ";
+            db.execute("CREATE TRIGGER " + StockMovementTable.TRIGGER_INSERT + " AFTER INSERT ON " +
+                    InventoryTable.TABLE + " BEGIN" + append +
+                    "(new._id, new.qty, new.qty, " + now + "); END");
+            db.execute("CREATE TRIGGER " + StockMovementTable.TRIGGER_UPDATE + " AFTER UPDATE OF " +
+                    InventoryTable.COL_QTY + " ON " + InventoryTable.TABLE + " WHEN new.qty IS NOT old.qty BEGIN" +
+                    append + "(new._id, new.qty - old.qty, new.qty, " + now + "); END");
+            db.execute("CREATE TRIGGER " + StockMovementTable.TRIGGER_DELETE + " BEFORE DELETE ON " +
+                    InventoryTable.TABLE + " BEGIN" + append + "(old._id, -old.qty, 0, " + now + "); END");
+            db.execute("CREATE TABLE " + StockSnapshotTable.TABLE + " (" +
+                    StockSnapshotTable.COL_ITEM_ID + " INTEGER PRIMARY KEY, " +
+                    StockSnapshotTable.COL_QTY + " INTEGER NOT NULL, " +
+                    StockSnapshotTable.COL_AS_OF + " INTEGER NOT NULL, " +
+                    StockSnapshotTable.COL_LAST_MOVEMENT_ID + " INTEGER NOT NULL)");
+            db.execute("CREATE TABLE " + SyncStateTable.TABLE + " (" +
+                    SyncStateTable.COL_KEY + " TEXT PRIMARY KEY, " +
+                    SyncStateTable.COL_VALUE + " TEXT NOT NULL)");
+
+            db.execute("CREATE TABLE " + LocationTable.TABLE + " (" +
+                    LocationTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    LocationTable.COL_NAME + " TEXT NOT NULL UNIQUE COLLATE NOCASE)");
+            db.execute("INSERT INTO " + LocationTable.TABLE + " (" + LocationTable.COL_ID + ", " +
+                    LocationTable.COL_NAME + ") VALUES (" + Location.DEFAULT_ID + ", 'Main stockroom')");
+            String stock = StockTable.TABLE;
+            db.execute("CREATE TABLE " + stock + " (" +
+                    StockTable.COL_ITEM_ID + " INTEGER NOT NULL, " +
+                    StockTable.COL_LOCATION_ID + " INTEGER NOT NULL, " +
+                    StockTable.COL_QTY + " INTEGER NOT NULL, " +
+                    "PRIMARY KEY (" + StockTable.COL_ITEM_ID + ", " + StockTable.COL_LOCATION_ID + ")) WITHOUT ROWID");
+            db.execute("CREATE INDEX " + StockTable.INDEX_LOCATION_ITEM + " ON " + stock + " (" +
+                    StockTable.COL_LOCATION_ID + ", " + StockTable.COL_ITEM_ID + ", " + StockTable.COL_QTY + ")");
+            String rollup = " UPDATE " + InventoryTable.TABLE + " SET " + InventoryTable.COL_QTY + " = " +
+                    InventoryTable.COL_QTY + " + ";
+            db.execute("CREATE TRIGGER " + StockTable.TRIGGER_ROLLUP_INSERT + " AFTER INSERT ON " + stock +
+                    " WHEN new." + StockTable.COL_LOCATION_ID + " <> " + Location.DEFAULT_ID + " BEGIN" + rollup +
+                    "new.qty WHERE " + InventoryTable.COL_ID + " = new.item_id; END");
+            db.execute("CREATE TRIGGER " + StockTable.TRIGGER_ROLLUP_UPDATE + " AFTER UPDATE OF " + StockTable.COL_QTY +
+                    " ON " + stock + " WHEN new.qty IS NOT old.qty BEGIN" + rollup +
+                    "new.qty - old.qty WHERE " + InventoryTable.COL_ID + " = new.item_id; END");
+            db.execute("CREATE TRIGGER " + StockTable.TRIGGER_ROLLUP_DELETE + " AFTER DELETE ON " + stock + " BEGIN" +
+                    rollup + "-old.qty WHERE " + InventoryTable.COL_ID + " = old.item_id; END");
+            db.execute("CREATE TRIGGER " + StockTable.TRIGGER_ITEM_INSERT + " AFTER INSERT ON " + InventoryTable.TABLE +
+                    " BEGIN INSERT INTO " + stock + " VALUES (new._id, " + Location.DEFAULT_ID + ", IFNULL(new.qty, 0)); END");
+            db.execute("CREATE TRIGGER " + StockTable.TRIGGER_ITEM_DELETE + " AFTER DELETE ON " + InventoryTable.TABLE +
+                    " BEGIN DELETE FROM " + stock + " WHERE " + StockTable.COL_ITEM_ID + " = old._id; END");
+
+            // Version 9
+            db.execute("CREATE TABLE " + MaintenanceLogTable.TABLE + " (" +
+                    MaintenanceLogTable.COL_ID + " INTEGER PRIMARY KEY, " +
+                    MaintenanceLogTable.COL_STARTED_AT + " INTEGER NOT NULL, " +
+                    MaintenanceLogTable.COL_DURATION_MILLIS + " INTEGER NOT NULL, " +
+                    MaintenanceLogTable.COL_SIZE_BEFORE + " INTEGER NOT NULL, " +
+                    MaintenanceLogTable.COL_SIZE_AFTER + " INTEGER NOT NULL, " +
+                    MaintenanceLogTable.COL_PROBE_MICROS_BEFORE + " INTEGER NOT NULL, " +
+                    MaintenanceLogTable.COL_PROBE_MICROS_AFTER + " INTEGER NOT NULL, " +
+                    MaintenanceLogTable.COL_PAGES_FREED + " INTEGER NOT NULL, " +
+                    MaintenanceLogTable.COL_INTEGRITY_OK + " INTEGER, " +
+                    MaintenanceLogTable.COL_COMPLETED + " INTEGER NOT NULL)");
+
+            // Version 11, the column is above
+            db.execute("CREATE TABLE " + CategoryTable.TABLE + " (" +
+                    CategoryTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    CategoryTable.COL_PARENT_ID + " INTEGER NOT NULL, " +
+                    CategoryTable.COL_NAME + " TEXT NOT NULL, " +
+                    CategoryTable.COL_ITEM_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                    CategoryTable.COL_UNITS + " INTEGER NOT NULL DEFAULT 0)");
+            db.execute("CREATE UNIQUE INDEX " + CategoryTable.INDEX_PARENT_NAME + " ON " + CategoryTable.TABLE + " (" +
+                    CategoryTable.COL_PARENT_ID + ", " + CategoryTable.COL_NAME + " COLLATE NOCASE)");
+            String closure = CategoryClosureTable.TABLE;
+            db.execute("CREATE TABLE " + closure + " (" +
+                    CategoryClosureTable.COL_ANCESTOR_ID + " INTEGER NOT NULL, " +
+                    CategoryClosureTable.COL_DESCENDANT_ID + " INTEGER NOT NULL, " +
+                    CategoryClosureTable.COL_DEPTH + " INTEGER NOT NULL, " +
+                    "PRIMARY KEY (" + CategoryClosureTable.COL_ANCESTOR_ID + ", " +
+                    CategoryClosureTable.COL_DESCENDANT_ID + ")) WITHOUT ROWID");
+            db.execute("CREATE INDEX " + CategoryClosureTable.INDEX_DESCENDANT + " ON " + closure + " (" +
+                    CategoryClosureTable.COL_DESCENDANT_ID + ", " + CategoryClosureTable.COL_DEPTH + ", " +
+                    CategoryClosureTable.COL_ANCESTOR_ID + ")");
+            db.execute("CREATE INDEX " + InventoryTable.INDEX_CATEGORY + " ON " + InventoryTable.TABLE + " (" +
+                    InventoryTable.COL_CATEGORY_ID + ") WHERE " + InventoryTable.COL_CATEGORY_ID + " IS NOT NULL");
+            db.execute("CREATE TRIGGER " + CategoryTable.TRIGGER_INSERT + " AFTER INSERT ON " + CategoryTable.TABLE +
+                    " BEGIN INSERT INTO " + closure + " SELECT " + CategoryClosureTable.COL_ANCESTOR_ID + ", new._id, " +
+                    CategoryClosureTable.COL_DEPTH + " + 1 FROM " + closure + " WHERE " +
+                    CategoryClosureTable.COL_DESCENDANT_ID + " = new." + CategoryTable.COL_PARENT_ID + ";" +
+                    " INSERT INTO " + closure + " VALUES (new._id, new._id, 0); END");
+            db.execute("CREATE TRIGGER " + CategoryTable.TRIGGER_ITEM_INSERT + " AFTER INSERT ON " + InventoryTable.TABLE +
+                    " WHEN new.category_id IS NOT NULL BEGIN" + addToCategories("1", "IFNULL(new.qty, 0)", "new") + " END");
+            db.execute("CREATE TRIGGER " + CategoryTable.TRIGGER_ITEM_QTY + " AFTER UPDATE OF " + InventoryTable.COL_QTY +
+                    " ON " + InventoryTable.TABLE + " WHEN new.category_id IS NOT NULL AND new.category_id IS old.category_id" +
+                    " AND new.qty IS NOT old.qty BEGIN" +
+                    addToCategories("0", "IFNULL(new.qty, 0) - IFNULL(old.qty, 0)", "new") + " END");
+            db.execute("CREATE TRIGGER " + CategoryTable.TRIGGER_ITEM_MOVE + " AFTER UPDATE OF " +
+                    InventoryTable.COL_CATEGORY_ID + " ON " + InventoryTable.TABLE +
+                    " WHEN new.category_id IS NOT old.category_id BEGIN" +
+                    addToCategories("-1", "-IFNULL(old.qty, 0)", "old") +
+                    addToCategories("1", "IFNULL(new.qty, 0)", "new") + " END");
+            db.execute("CREATE TRIGGER " + CategoryTable.TRIGGER_ITEM_DELETE + " AFTER DELETE ON " + InventoryTable.TABLE +
+                    " WHEN old.category_id IS NOT NULL BEGIN" +
+                    addToCategories("-1", "-IFNULL(old.qty, 0)", "old") + " END");
+
+            // Version 12
+            db.execute("CREATE INDEX " + StockMovementTable.INDEX_TIME + " ON " + ledger + " (" +
+                    StockMovementTable.COL_CREATED_AT + ")");
+
+            db.execute("PRAGMA user_version=" + SCHEMA_VERSION);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static String addToCategories(String count, String units, String row) {
+        return " UPDATE " + CategoryTable.TABLE + " SET " + CategoryTable.COL_ITEM_COUNT + " = " +
+                CategoryTable.COL_ITEM_COUNT + " + " + count + ", " + CategoryTable.COL_UNITS + " = " +
+                CategoryTable.COL_UNITS + " + " + units + " WHERE " + CategoryTable.COL_ID + " IN (SELECT " +
+                CategoryClosureTable.COL_ANCESTOR_ID + " FROM " + CategoryClosureTable.TABLE + " WHERE " +
+                CategoryClosureTable.COL_DESCENDANT_ID + " = " + row + "." + InventoryTable.COL_CATEGORY_ID + ");";
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.project;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LowStockAlertEngineTest {
+    private static final long WINDOW_MILLIS = 50;
+
+    private FakeAlertSender sender;
+    private ScheduledExecutorService scheduler;
+    private LowStockAlertEngine engine;
+
+    @Before
+    public void setUp() {
+        sender = new FakeAlertSender();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        engine = new LowStockAlertEngine(sender, scheduler, WINDOW_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void crossings_areCoalescedIntoOneDigest() throws Exception {
+        engine.onQuantityChanged(new InventoryItem(1, "Soda", 2, 5));
+        engine.onQuantityChanged(new InventoryItem(2, "Chips", 0, 0));
+        engine.onQuantityChanged(new InventoryItem(3, "Gum", 9, 5));
+        waitForWindow();
+
+        assertEquals(1, sender.digestCount());
+        assertEquals(2, sender.digests.get(0).size());
+        assertNotSame(Thread.currentThread(), sender.senderThreads.get(0));
+    }
+
+    @Test
+    public void itemStayingLow_alertsOnceUntilRestocked() throws Exception {
+        engine.onQuantityChanged(new InventoryItem(1, "Soda", 2, 5));
+        waitForWindow();
+        engine.onQuantityChanged(new InventoryItem(1, "Soda", 1, 5));
+        waitForWindow();
+        assertEquals(1, sender.digestCount());
+
+        engine.onQuantityChanged(new InventoryItem(1, "Soda", 10, 5));
+        engine.onQuantityChanged(new InventoryItem(1, "Soda", 0, 5));
+        waitForWindow();
+        assertEquals(2, sender.digestCount());
+    }
+
+    @Test
+    public void restockBeforeWindowCloses_sendsNothing() throws Exception {
+        engine.onQuantityChanged(new InventoryItem(1, "Soda", 0, 0));
+        engine.onQuantityChanged(new InventoryItem(1, "Soda", 4, 0));
+        waitForWindow();
+
+        assertEquals(0, sender.digestCount());
+    }
+
+    @Test
+    public void bulkChange_clearsItemsNoLongerLow() throws Exception {
+        engine.onQuantityChanged(new InventoryItem(1, "Soda", 0, 0));
+        waitForWindow();
+        // Bulk import restocked Soda and emptied Chips
+        engine.onBulkChange(Collections.singletonList(new InventoryItem(2, "Chips", 0, 0)));
+        engine.onBulkChange(Arrays.asList(new InventoryItem(1, "Soda", 0, 0), new InventoryItem(2, "Chips", 0, 0)));
+        waitForWindow();
+
+        assertEquals(2, sender.digestCount());
+        assertEquals(2, sender.digests.get(1).size());
+    }
+
+    @Test
+    public void tenThousandUpdates_produceABoundedNumberOfMessages() throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            // 500 items bouncing between empty and restocked
+            engine.onQuantityChanged(new InventoryItem(i % 500, "item" + (i % 500), (i / 500) % 2 == 0 ? 0 : 10, 0));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        waitForWindow();
+
+        long maxDigests = elapsedMillis / WINDOW_MILLIS + 2;
+        assertTrue(sender.digestCount() + " digests", sender.digestCount() <= maxDigests);
+        assertTrue(sender.alertedItemCount() <= 500);
+    }
+
+    private void waitForWindow() throws InterruptedException {
+        Thread.sleep(WINDOW_MILLIS * 3);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.project;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+    private static final Metrics.Timer TIMER = Metrics.timer("test.timer");
+    private static final Metrics.Counter COUNTER = Metrics.counter("test.counter");
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.setTracer(null);
+        Metrics.reset();
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        long start = TIMER.start();
+        TIMER.stop(start);
+        TIMER.record(1000);
+        COUNTER.increment();
+
+        assertEquals(0, start);
+        assertEquals(0, TIMER.getSummary().getCount());
+        assertEquals(0, COUNTER.get());
+        assertEquals("{\"enabled\":false,\"timers\":[],\"counters\":[]}", Metrics.toJson());
+    }
+
+    @Test
+    public void percentiles_areWithinABucket() {
+        Metrics.setEnabled(true);
+        // 1..1000 us
+        for (int i = 1; i <= 1000; i++) {
+            TIMER.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        Metrics.Summary summary = TIMER.getSummary();
+        assertEquals(1000, summary.getCount());
+        assertEquals(500, summary.getMeanMicros());
+        assertEquals(1000, summary.getMaxMicros());
+        assertInRange(500, summary.getPercentileMicros(50));
+        assertInRange(990, summary.getPercentileMicros(99));
+        assertEquals(1000, summary.getPercentileMicros(100));
+    }
+
+    @Test
+    public void buckets_coverEveryValueInOrder() {
+        int previous = 0;
+        for (long micros = 0; micros < 1L << 40; micros = micros < 100_000 ? micros + 1 : micros * 3 / 2) {
+            int bucket = Metrics.bucketOf(micros);
+            assertTrue(bucket >= previous);
+            assertTrue(micros + " past its bucket", micros <= Metrics.bucketMaxMicros(bucket));
+            assertTrue(bucket == 0 || micros > Metrics.bucketMaxMicros(bucket - 1));
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void concurrentRecording_losesNothing() throws Exception {
+        Metrics.setEnabled(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100_000; i++) {
+                        TIMER.record(i);
+                        COUNTER.increment();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400_000, TIMER.getSummary().getCount());
+        assertEquals(400_000, COUNTER.get());
+        assertEquals(99, TIMER.getSummary().getMaxMicros());
+    }
+
+    @Test
+    public void timedSections_areTracedAndExported() {
+        final List<String> sections = new ArrayList<>();
+        Metrics.setTracer(new Metrics.Tracer() {
+            @Override
+            public void beginSection(String name) {
+                sections.add(name);
+            }
+
+            @Override
+            public void endSection() {
+                sections.add("end");
+            }
+        });
+        Metrics.setEnabled(true);
+
+        TIMER.stop(TIMER.start());
+        COUNTER.increment();
+
+        assertEquals(2, sections.size());
+        assertEquals("test.timer", sections.get(0));
+        String json = Metrics.toJson();
+        assertTrue(json, json.startsWith("{\"enabled\":true,\"timers\":[{\"name\":\"test.timer\",\"count\":1,"));
+        assertTrue(json, json.endsWith("\"counters\":[{\"name\":\"test.counter\",\"value\":1}]}"));
+    }
+
+    @Test
+    public void repositoryCalls_areTimedWithTheirQueueWait() throws Exception {
+        Metrics.setEnabled(true);
+        InventoryRepository repository = new InventoryRepository(new FakeInventoryStore(), Runnable::run);
+        try {
+            for (int i = 0; i < 9; i++) {
+                repository.insertItem("item" + i, i, null);
+            }
+            // Writes run in order, so the last one finishing means all have
+            repository.insertItem("item9", 9, null).get();
+            repository.getItemsPage(0, 10, null).get();
+        } finally {
+            repository.shutdown();
+        }
+
+        String json = Metrics.toJson();
+        assertTrue(json, json.contains("{\"name\":\"store.insertItem\",\"count\":10,"));
+        assertTrue(json, json.contains("{\"name\":\"store.getItemsPage\",\"count\":1,"));
+        assertTrue(json, json.contains("{\"name\":\"queue.write\",\"count\":10,"));
+    }
+
+    // MetricsOverheadBenchmark measures what a timed section costs on a device
+    @Test
+    public void switchingOff_onlyCountsSectionsTimedWhileOn() {
+        long startedOff = TIMER.start();
+        Metrics.setEnabled(true);
+        TIMER.stop(startedOff);
+        for (int i = 0; i < 1000; i++) {
+            TIMER.stop(TIMER.start());
+        }
+        long startedOn = TIMER.start();
+        Metrics.setEnabled(false);
+        TIMER.stop(startedOn);
+        for (int i = 0; i < 1000; i++) {
+            TIMER.stop(TIMER.start());
+        }
+
+        assertEquals(1000, TIMER.getSummary().getCount());
+    }
+
+    private static void assertInRange(long expected, long actual) {
+        assertTrue(actual + " not within 25% of " + expected, actual >= expected && actual <= expected * 5 / 4);
+    }
+}
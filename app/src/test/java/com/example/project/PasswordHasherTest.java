@@ -0,0 +1,61 @@
+package com.example.project;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class PasswordHasherTest {
+    private final PasswordHasher hasher = new PasswordHasher(4, 8, 1);
+
+    @Test
+    public void scrypt_matchesRfc7914Vectors() {
+        assertEquals("77d6576238657b203b19ca42c18a0497f16b4844e3074ae8dfdffa3fede21442" +
+                        "fcd0069ded0948f8326a753a0fc81f17e8d3e0fb2e0d3628cf35e20c38d18906",
+                hex(PasswordHasher.scrypt(new byte[0], new byte[0], 16, 1, 1, 64)));
+        assertEquals("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162" +
+                        "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640",
+                hex(PasswordHasher.scrypt("password".getBytes(StandardCharsets.UTF_8),
+                        "NaCl".getBytes(StandardCharsets.UTF_8), 1024, 8, 16, 64)));
+    }
+
+    @Test
+    public void hash_isSaltedAndVerifies() {
+        String first = hasher.hash("secret");
+        String second = hasher.hash("secret");
+
+        assertNotEquals(first, second);
+        assertTrue(hasher.verify("secret", first));
+        assertTrue(hasher.verify("secret", second));
+        assertFalse(hasher.verify("Secret", first));
+        assertFalse(hasher.needsRehash(first));
+    }
+
+    @Test
+    public void plaintextAndOtherCosts_needRehash() {
+        String older = new PasswordHasher(3, 8, 1).hash("secret");
+
+        // Hashes carry their own costs, so old ones still verify until they are replaced
+        assertTrue(hasher.verify("secret", older));
+        assertTrue(hasher.needsRehash(older));
+        assertTrue(hasher.verify("secret", "secret"));
+        assertFalse(hasher.verify("secret", "secret2"));
+        assertTrue(hasher.needsRehash("secret"));
+    }
+
+    @Test
+    public void malformedHash_doesNotVerify() {
+        assertFalse(hasher.verify("secret", "scrypt$x$8$1$AAAA$AAAA"));
+        assertFalse(hasher.verify("secret", "scrypt$99$8$1$AAAA$AAAA"));
+        assertFalse(hasher.verify("secret", "scrypt$4$8$1$!!$AAAA"));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder out = new StringBuilder();
+        for (byte b : bytes) {
+            out.append(String.format("%02x", b));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Blocking HTTP/1.1 client on one socket for the InventoryHttpServer tests. Requests are only
+// buffered by send() until flush(), so several can be pipelined, and responses are read back
+// one at a time with their chunks counted
+class RawHttpClient implements Closeable {
+    static final class Response {
+        final int status;
+        // Names in lower case
+        final Map<String, String> headers;
+        final String body;
+        // 0 unless the body was chunked
+        final int chunks;
+
+        Response(int status, Map<String, String> headers, String body, int chunks) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.chunks = chunks;
+        }
+
+        Object json() {
+            return Json.parse(body);
+        }
+    }
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    RawHttpClient(int port) throws IOException {
+        socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(10000);
+        socket.setTcpNoDelay(true);
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    // The token is sent as a bearer token unless null, the body as JSON unless null
+    void send(String method, String path, String token, String body) throws IOException {
+        byte[] content = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder request = new StringBuilder();
+        request.append(method).append(' ').append(path).append(" HTTP/1.1\r\nHost: localhost\r\n");
+        if (token != null) {
+            request.append("Authorization: Bearer ").append(token).append("\r\n");
+        }
+        if (body != null) {
+            request.append("Content-Type: application/json\r\nContent-Length: ").append(content.length).append("\r\n");
+        }
+        request.append("\r\n");
+        out.write(request.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(content);
+    }
+
+    void sendRaw(String request) throws IOException {
+        out.write(request.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    Response request(String method, String path, String token, String body) throws IOException {
+        send(method, path, token, body);
+        flush();
+        return read();
+    }
+
+    Response read() throws IOException {
+        String statusLine = readLine();
+        String[] parts = statusLine.split(" ", 3);
+        int status = Integer.parseInt(parts[1]);
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int chunks = 0;
+        if ("chunked".equals(headers.get("transfer-encoding"))) {
+            while (true) {
+                int size = Integer.parseInt(readLine().trim(), 16);
+                if (size == 0) {
+                    readLine();
+                    break;
+                }
+                readFully(body, size);
+                readLine();
+                chunks++;
+            }
+        } else if (headers.containsKey("content-length")) {
+            readFully(body, Integer.parseInt(headers.get("content-length")));
+        } else {
+            // Ended by the server closing the connection
+            int b;
+            while ((b = in.read()) != -1) {
+                body.write(b);
+            }
+        }
+        return new Response(status, headers, new String(body.toByteArray(), StandardCharsets.UTF_8), chunks);
+    }
+
+    // True once the server has closed the connection and everything it sent was read
+    boolean isClosedByServer() throws IOException {
+        return in.read() == -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("Connection closed after \"" + line + "\"");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private void readFully(ByteArrayOutputStream body, int size) throws IOException {
+        byte[] buffer = new byte[Math.min(size, 8192)];
+        while (size > 0) {
+            int read = in.read(buffer, 0, Math.min(size, buffer.length));
+            if (read == -1) {
+                throw new EOFException(size + " bytes missing");
+            }
+            body.write(buffer, 0, read);
+            size -= read;
+        }
+    }
+}
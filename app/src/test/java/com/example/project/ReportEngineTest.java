@@ -0,0 +1,171 @@
+package com.example.project;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReportEngineTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    // Noon UTC on some day
+    private static final long START = 20_000 * DAY + DAY / 2;
+
+    private InventoryRepository repository;
+
+    @After
+    public void tearDown() {
+        if (repository != null) {
+            repository.shutdown();
+        }
+    }
+
+    @Test
+    public void rateAndCover_comeFromConsumptionInTheWindow() {
+        ReportEngine engine = new ReportEngine(28);
+        long id = 0;
+        // Stocked with 100, then 6 used a day for 10 days
+        engine.onMovement(new StockMovement(++id, 7, 100, 100, START));
+        int quantity = 100;
+        for (int day = 0; day < 10; day++) {
+            quantity -= 6;
+            engine.onMovement(new StockMovement(++id, 7, -6, quantity, START + day * DAY));
+        }
+
+        ReportEngine.ItemReport item = engine.buildReport(START + 9 * DAY, 10).getTopMovers().get(0);
+        assertEquals(60, item.getConsumed());
+        assertEquals(6.0, item.getConsumedPerDay(), 1e-9);
+        assertEquals(40, item.getQuantity());
+        assertEquals(40 / 6.0, item.getDaysOfCover(), 1e-9);
+    }
+
+    @Test
+    public void window_dropsDaysAsTheyAge() {
+        ReportEngine engine = new ReportEngine(7);
+        engine.onMovement(new StockMovement(1, 1, -10, 90, START));
+        engine.onMovement(new StockMovement(2, 1, -5, 85, START + 3 * DAY));
+
+        assertEquals(15, engine.buildReport(START + 6 * DAY, 5).getTotalConsumed());
+        // The first day has left the window, nothing new was recorded
+        assertEquals(5, engine.buildReport(START + 7 * DAY, 5).getTotalConsumed());
+        assertTrue(engine.buildReport(START + 10 * DAY, 5).getTopMovers().isEmpty());
+
+        // A movement after a long gap starts the ring over
+        engine.onMovement(new StockMovement(3, 1, -2, 83, START + 30 * DAY));
+        assertEquals(2, engine.buildReport(START + 30 * DAY, 5).getTotalConsumed());
+    }
+
+    @Test
+    public void rankings_areLimitedAndOrdered() {
+        ReportEngine engine = new ReportEngine(28);
+        long id = 0;
+        for (int item = 1; item <= 50; item++) {
+            // Item n uses n units and has 1000 - 10n left
+            engine.onMovement(new StockMovement(++id, item, -item, 1000 - 10 * item, START));
+        }
+        // Restocks and repeated ids are not consumption
+        engine.onMovement(new StockMovement(++id, 3, 500, 1470, START));
+        engine.onMovement(new StockMovement(id, 3, -500, 970, START));
+
+        ReportEngine.Report report = engine.buildReport(START, 5);
+        assertEquals(5, report.getTopMovers().size());
+        assertEquals(50, report.getTopMovers().get(0).getItemId());
+        assertEquals(46, report.getTopMovers().get(4).getItemId());
+        // 500 / 50 per day is the shortest cover
+        assertEquals(50, report.getLowestCover().get(0).getItemId());
+        assertEquals(10.0, report.getLowestCover().get(0).getDaysOfCover(), 1e-9);
+        assertEquals(50 * 51 / 2, report.getTotalConsumed());
+    }
+
+    @Test
+    public void incrementalSums_matchRecomputingFromHistory() {
+        int windowDays = 14;
+        ReportEngine engine = new ReportEngine(windowDays);
+        List<StockMovement> history = new ArrayList<>();
+        Random random = new Random(42);
+        long time = START;
+        for (long id = 1; id <= 20_000; id++) {
+            // Mostly forward in time, sometimes by several days at once
+            time += random.nextInt(10) == 0 ? random.nextInt(5) * DAY : random.nextInt(60_000);
+            int delta = random.nextInt(20) - 14;
+            StockMovement movement = new StockMovement(id, 1 + random.nextInt(30), delta, random.nextInt(100), time);
+            history.add(movement);
+            engine.onMovement(movement);
+
+            if (id % 500 == 0) {
+                long now = time + random.nextInt(3) * DAY;
+                Map<Long, Long> expected = new HashMap<>();
+                long today = now / DAY;
+                for (StockMovement m : history) {
+                    if (m.getDelta() < 0 && m.getCreatedAt() / DAY > today - windowDays) {
+                        Long sum = expected.get(m.getItemId());
+                        expected.put(m.getItemId(), (sum == null ? 0 : sum) - m.getDelta());
+                    }
+                }
+                for (ReportEngine.ItemReport item : engine.buildReport(now, 30).getTopMovers()) {
+                    assertEquals(expected.get(item.getItemId()).longValue(), item.getConsumed());
+                }
+                assertEquals(expected.size(), engine.buildReport(now, 30).getTopMovers().size());
+            }
+        }
+    }
+
+    @Test
+    public void repository_readsOnlyNewMovementsAndDropsDeletedItems() throws Exception {
+        FakeInventoryStore store = new FakeInventoryStore();
+        repository = new InventoryRepository(store, Runnable::run);
+        long now = System.currentTimeMillis();
+        // Used up long before the window, never reported
+        store.movementTime = now - 60 * DAY;
+        long old = store.insertItem("Old", 10);
+        store.updateItemQuantity(old, 0);
+        store.movementTime = 0;
+        long soda = store.insertItem("Soda", 50);
+        long chips = store.insertItem("Chips", 50);
+        store.updateItemQuantity(soda, 20);
+        store.updateItemQuantity(chips, 40);
+
+        ReportEngine.Report report = repository.getReport(10, null).get();
+        assertEquals(2, report.getTopMovers().size());
+        assertEquals("Soda", report.getTopMovers().get(0).getName());
+        assertEquals(30, report.getTopMovers().get(0).getConsumed());
+
+        store.updateItemQuantity(chips, 0);
+        store.deleteItem(soda);
+        report = repository.getReport(10, null).get();
+        assertEquals(1, report.getTopMovers().size());
+        assertEquals("Chips", report.getTopMovers().get(0).getName());
+        assertEquals(50, report.getTopMovers().get(0).getConsumed());
+        assertEquals(0, report.getLowestCover().get(0).getDaysOfCover(), 0);
+    }
+
+    @Test
+    public void reportFor50kItems_isBuiltFromTheSums() {
+        int items = 50_000;
+        ReportEngine engine = new ReportEngine(ReportEngine.DEFAULT_WINDOW_DAYS);
+        Random random = new Random(7);
+        long id = 0;
+        // 28 days of history, ten movements per item
+        for (int day = 0; day < 28; day++) {
+            for (int i = 0; i < items * 10 / 28; i++) {
+                engine.onMovement(new StockMovement(++id, 1 + random.nextInt(items), -1 - random.nextInt(5),
+                        random.nextInt(500), START + day * DAY));
+            }
+        }
+
+        ReportEngine.Report report = engine.buildReport(START + 27 * DAY, 20);
+
+        assertEquals(20, report.getTopMovers().size());
+        assertTrue(engine.getTrackedItemCount() > items * 99 / 100);
+        List<ReportEngine.ItemReport> movers = report.getTopMovers();
+        for (int i = 1; i < movers.size(); i++) {
+            assertTrue(movers.get(i - 1).getConsumed() >= movers.get(i).getConsumed());
+        }
+    }
+}
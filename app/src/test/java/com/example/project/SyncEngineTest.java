@@ -0,0 +1,187 @@
+package com.example.project;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SyncEngineTest {
+    private LocalSyncServer server;
+    private FakeInventoryStore phoneA;
+    private FakeInventoryStore phoneB;
+
+    @Before
+    public void setUp() {
+        server = new LocalSyncServer();
+        phoneA = new FakeInventoryStore();
+        phoneB = new FakeInventoryStore();
+    }
+
+    @Test
+    public void newItems_reachTheOtherDevice() throws Exception {
+        phoneA.insertItem("Soda", 10);
+        phoneA.insertItem("Chips", 4);
+
+        SyncEngine.Result pushed = new SyncEngine(phoneA, server).sync();
+        SyncEngine.Result pulled = new SyncEngine(phoneB, server).sync();
+
+        assertEquals(2, pushed.getPushed());
+        assertEquals(2, pulled.getPulled());
+        assertEquals(10, phoneB.findItemByName("soda").getQuantity());
+        assertEquals(4, phoneB.findItemByName("CHIPS").getQuantity());
+    }
+
+    @Test
+    public void concurrentEdits_addUpInsteadOfOverwriting() throws Exception {
+        long soda = phoneA.insertItem("Soda", 10);
+        new SyncEngine(phoneA, server).sync();
+        new SyncEngine(phoneB, server).sync();
+        long sodaOnB = phoneB.findItemByName("Soda").getId();
+
+        // Both phones edit while offline: A sells 3, B receives 5
+        phoneA.updateItemQuantity(soda, 7);
+        phoneB.updateItemQuantity(sodaOnB, 15);
+        new SyncEngine(phoneA, server).sync();
+        new SyncEngine(phoneB, server).sync();
+        new SyncEngine(phoneA, server).sync();
+
+        assertEquals(12, phoneA.getItem(soda).getQuantity());
+        assertEquals(12, phoneB.getItem(sodaOnB).getQuantity());
+    }
+
+    @Test
+    public void pulledChanges_areNotPushedBack() throws Exception {
+        phoneA.insertItem("Soda", 10);
+        new SyncEngine(phoneA, server).sync();
+        new SyncEngine(phoneB, server).sync();
+
+        SyncEngine.Result again = new SyncEngine(phoneB, server).sync();
+        new SyncEngine(phoneA, server).sync();
+
+        assertEquals(0, again.getPushed());
+        assertEquals(1, server.size());
+        assertEquals(10, phoneA.findItemByName("Soda").getQuantity());
+    }
+
+    @Test
+    public void interruptedPush_resumesWithoutCountingTwice() throws Exception {
+        for (int i = 0; i < 2500; i++) {
+            phoneA.insertItem("item" + i, i);
+        }
+        // The second batch reaches the server but the acknowledgement is lost
+        FlakySyncServer flaky = new FlakySyncServer(server);
+        flaky.failAfterPush = 2;
+        try {
+            new SyncEngine(phoneA, flaky).sync();
+            fail("Expected the sync to be interrupted");
+        } catch (IOException expected) {
+        }
+
+        SyncEngine.Result resumed = new SyncEngine(phoneA, flaky).sync();
+        new SyncEngine(phoneB, server).sync();
+
+        assertEquals(1500, resumed.getPushed());
+        assertEquals(2500, server.size());
+        assertEquals(1234, phoneB.findItemByName("item1234").getQuantity());
+    }
+
+    @Test
+    public void interruptedPull_resumesWithoutApplyingTwice() throws Exception {
+        for (int i = 0; i < 2500; i++) {
+            phoneA.insertItem("item" + i, 1);
+        }
+        new SyncEngine(phoneA, server).sync();
+        FlakySyncServer flaky = new FlakySyncServer(server);
+        flaky.failOnPull = 2;
+        try {
+            new SyncEngine(phoneB, flaky).sync();
+            fail("Expected the sync to be interrupted");
+        } catch (IOException expected) {
+        }
+
+        SyncEngine.Result resumed = new SyncEngine(phoneB, flaky).sync();
+
+        assertEquals(1500, resumed.getPulled());
+        for (int i = 0; i < 2500; i += 100) {
+            assertEquals(1, phoneB.findItemByName("item" + i).getQuantity());
+        }
+    }
+
+    @Test
+    public void batch_roundTripsAndCompresses() throws Exception {
+        List<SyncChange> changes = new ArrayList<>();
+        for (int i = 0; i < SyncEngine.BATCH_SIZE; i++) {
+            changes.add(new SyncChange(i + 1, "Sparkling Water 500ml #" + (i % 50), i % 7 - 3));
+        }
+
+        byte[] batch = SyncBatch.encode(changes);
+        List<SyncChange> decoded = SyncBatch.decode(batch);
+
+        assertEquals(changes.size(), decoded.size());
+        assertEquals("Sparkling Water 500ml #17", decoded.get(117).getItemName());
+        assertEquals(117 % 7 - 3, decoded.get(117).getDelta());
+        assertEquals(118, decoded.get(117).getChangeId());
+        // Uncompressed each record is at least 8 + 2 + 20 + 4 bytes
+        assertTrue(batch.length + " bytes", batch.length < changes.size() * 34 / 4);
+    }
+
+    @Test
+    public void sync_replicates50kChangedRows() throws Exception {
+        final int rows = 50_000;
+        phoneA.upsertItems(new Iterator<InventoryItem>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < rows;
+            }
+
+            @Override
+            public InventoryItem next() {
+                i++;
+                return new InventoryItem(0, "item" + i, i % 100);
+            }
+        }, null);
+
+        SyncEngine.Result pushed = new SyncEngine(phoneA, server).sync();
+        SyncEngine.Result pulled = new SyncEngine(phoneB, server).sync();
+
+        assertEquals(rows, pushed.getPushed());
+        assertEquals(rows, pulled.getPulled());
+        assertEquals(4321 % 100, phoneB.findItemByName("item4321").getQuantity());
+    }
+
+    // Delegates to a real server, failing one call on purpose
+    private static class FlakySyncServer implements SyncServer {
+        private final SyncServer server;
+        int failAfterPush = -1;
+        int failOnPull = -1;
+        private int pushes = 0;
+        private int pulls = 0;
+
+        FlakySyncServer(SyncServer server) {
+            this.server = server;
+        }
+
+        @Override
+        public void push(String deviceId, byte[] batch) throws IOException {
+            server.push(deviceId, batch);
+            if (++pushes == failAfterPush) {
+                throw new IOException("Connection reset");
+            }
+        }
+
+        @Override
+        public PullResponse pull(String deviceId, long afterSequence, int limit) throws IOException {
+            if (++pulls == failOnPull) {
+                throw new IOException("Connection reset");
+            }
+            return server.pull(deviceId, afterSequence, limit);
+        }
+    }
+}